@@ -35,6 +35,7 @@ import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
 import org.apache.hadoop.hdfs.util.ByteArrayManager;
+import org.apache.hadoop.hdfs.util.StripedReadLatencyTracker;
 import org.apache.hadoop.net.DNSToSwitchMapping;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.net.NetworkTopology;
@@ -83,6 +84,11 @@ public class ClientContext {
    */
   private final PeerCache peerCache;
 
+  /**
+   * Caches connections which carry several streams to a DataNode.
+   */
+  private final MultiplexedConnectionCache multiplexedConnectionCache;
+
   /**
    * Stores information about socket paths.
    */
@@ -109,6 +115,11 @@ public class ClientContext {
   /** Creating byte[] for {@link DFSOutputStream}. */
   private final ByteArrayManager byteArrayManager;
 
+  /**
+   * Tracks striped read latency per DataNode, used to hedge slow chunk reads.
+   */
+  private final StripedReadLatencyTracker stripedReadLatencyTracker;
+
   /**
    * Whether or not we complained about a DFSClient fetching a CacheContext that
    * didn't match its config values yet.
@@ -127,6 +138,8 @@ public class ClientContext {
     this.shortCircuitCache = ShortCircuitCache.fromConf(scConf);
     this.peerCache = new PeerCache(scConf.getSocketCacheCapacity(),
         scConf.getSocketCacheExpiry());
+    this.multiplexedConnectionCache = new MultiplexedConnectionCache(
+        conf.getDataTransferMultiplexMaxStreams());
     this.keyProviderCache = new KeyProviderCache(
         scConf.getKeyProviderCacheExpiryMs());
     this.useLegacyBlockReaderLocal = scConf.isUseLegacyBlockReaderLocal();
@@ -134,6 +147,9 @@ public class ClientContext {
 
     this.byteArrayManager = ByteArrayManager.newInstance(
         conf.getWriteByteArrayManagerConf());
+    this.stripedReadLatencyTracker = new StripedReadLatencyTracker(
+        conf.getStripedReadHedgingPercentile(),
+        conf.getStripedReadHedgingMinDelayMillis());
     initTopologyResolution(config);
   }
 
@@ -215,6 +231,10 @@ public class ClientContext {
     return peerCache;
   }
 
+  public MultiplexedConnectionCache getMultiplexedConnectionCache() {
+    return multiplexedConnectionCache;
+  }
+
   public KeyProviderCache getKeyProviderCache() {
     return keyProviderCache;
   }
@@ -239,6 +259,10 @@ public class ClientContext {
     return byteArrayManager;
   }
 
+  public StripedReadLatencyTracker getStripedReadLatencyTracker() {
+    return stripedReadLatencyTracker;
+  }
+
   public int getNetworkDistance(DatanodeInfo datanodeInfo) throws IOException {
     // If applications disable the feature or the client machine can't
     // resolve its network location, clientNode will be set to null.
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nearby {@link FileRange}s which are read from the file at once.
+ */
+class CombinedFileRange {
+  private final long offset;
+  private long end;
+  private final List<FileRange> ranges = new ArrayList<>();
+
+  private CombinedFileRange(FileRange first) {
+    this.offset = first.getOffset();
+    this.end = first.getOffset() + first.getLength();
+    ranges.add(first);
+  }
+
+  long getOffset() {
+    return offset;
+  }
+
+  int getLength() {
+    return (int) (end - offset);
+  }
+
+  List<FileRange> getRanges() {
+    return ranges;
+  }
+
+  /**
+   * Add the range if it starts at most minSeek bytes after the end of this
+   * one, and the merged range is at most maxSize bytes long.
+   * @return whether the range was added.
+   */
+  private boolean merge(FileRange range, int minSeek, int maxSize) {
+    final long rangeEnd = range.getOffset() + range.getLength();
+    if (range.getOffset() - end > minSeek ||
+        Math.max(end, rangeEnd) - offset > maxSize) {
+      return false;
+    }
+    end = Math.max(end, rangeEnd);
+    ranges.add(range);
+    return true;
+  }
+
+  /**
+   * Merge ranges sorted by offset.
+   *
+   * @param sortedRanges the ranges, sorted by offset.
+   * @param minSeek gaps up to this size between ranges are read through.
+   * @param maxSize the maximum size of a merged range, unless a single range
+   *                is larger.
+   * @return the merged ranges.
+   */
+  static List<CombinedFileRange> mergeSortedRanges(
+      List<FileRange> sortedRanges, int minSeek, int maxSize) {
+    final List<CombinedFileRange> merged = new ArrayList<>();
+    CombinedFileRange current = null;
+    for (FileRange range : sortedRanges) {
+      if (current == null || !current.merge(range, minSeek, maxSize)) {
+        current = new CombinedFileRange(range);
+        merged.add(current);
+      }
+    }
+    return merged;
+  }
+
+  @Override
+  public String toString() {
+    return "CombinedFileRange[" + offset + ", " + end + ") of " + ranges;
+  }
+}
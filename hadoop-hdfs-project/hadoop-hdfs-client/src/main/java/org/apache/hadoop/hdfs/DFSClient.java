@@ -28,6 +28,7 @@ import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SERV
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_TEST_DROP_NAMENODE_RESPONSE_NUM_DEFAULT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_TEST_DROP_NAMENODE_RESPONSE_NUM_KEY;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -99,6 +100,8 @@ import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.client.impl.LeaseRenewer;
+import org.apache.hadoop.hdfs.net.MultiplexedConnection;
+import org.apache.hadoop.hdfs.net.MultiplexedPeer;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AddErasureCodingPolicyResponse;
@@ -153,6 +156,7 @@ import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.DataEncryptionKeyFactor
 import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.DataTransferSaslUtil;
 import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.SaslDataTransferClient;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
 import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
@@ -238,6 +242,7 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
   private static volatile ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
   private final int smallBufferSize;
   private final long serverDefaultsValidityPeriod;
 
@@ -2925,6 +2930,108 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   public Peer newConnectedPeer(InetSocketAddress addr,
       Token<BlockTokenIdentifier> blockToken, DatanodeID datanodeId)
       throws IOException {
+    if (dfsClientConf.isDataTransferMultiplexEnabled()) {
+      Peer peer = newMultiplexedPeer(addr, blockToken, datanodeId);
+      if (peer != null) {
+        return peer;
+      }
+    }
+    return newSocketPeer(addr, blockToken, datanodeId);
+  }
+
+  /**
+   * Open a stream on the multiplexed connection to the datanode, connecting
+   * it first if needed.
+   * @return the stream, or null if the datanode does not multiplex or the
+   *         connection is busy.
+   */
+  private Peer newMultiplexedPeer(InetSocketAddress addr,
+      Token<BlockTokenIdentifier> blockToken, DatanodeID datanodeId)
+      throws IOException {
+    final MultiplexedConnectionCache cache =
+        clientContext.getMultiplexedConnectionCache();
+    MultiplexedConnection.Stream stream;
+    try {
+      stream = cache.openStream(datanodeId);
+    } catch (IOException e) {
+      LOG.debug("Failed to open a stream to {}", datanodeId, e);
+      return null;
+    }
+    if (stream == null) {
+      if (!cache.isSupported(datanodeId)) {
+        return null;
+      }
+      final MultiplexedConnection connection =
+          newMultiplexedConnection(addr, blockToken, datanodeId);
+      if (connection == null) {
+        cache.setUnsupported(datanodeId);
+        return null;
+      }
+      cache.put(datanodeId, connection);
+      try {
+        stream = connection.openStream();
+      } catch (IOException e) {
+        LOG.debug("Failed to open a stream on {}", connection, e);
+        return null;
+      }
+    }
+    return new MultiplexedPeer(stream);
+  }
+
+  /**
+   * Connect to the datanode and ask it to multiplex the connection.
+   * @return the connection, or null if the datanode refused.
+   */
+  private MultiplexedConnection newMultiplexedConnection(
+      InetSocketAddress addr, Token<BlockTokenIdentifier> blockToken,
+      DatanodeID datanodeId) throws IOException {
+    final Peer peer = newSocketPeer(addr, blockToken, datanodeId);
+    boolean success = false;
+    try {
+      final int window = dfsClientConf.getDataTransferMultiplexStreamWindow();
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(peer.getOutputStream(), smallBufferSize));
+      new Sender(out).multiplex(clientName, window);
+      out.flush();
+      final BlockOpResponseProto reply;
+      try {
+        reply = BlockOpResponseProto.parseFrom(
+            PBHelperClient.vintPrefixed(peer.getInputStream()));
+      } catch (IOException e) {
+        // Datanodes which do not know the operation close the connection.
+        LOG.debug("{} did not accept multiplexing", datanodeId, e);
+        return null;
+      }
+      if (reply.getStatus() != Status.SUCCESS) {
+        LOG.debug("{} refused multiplexing: {}", datanodeId,
+            reply.getMessage());
+        return null;
+      }
+      // The connection closes itself once it has been idle this long.
+      peer.setReadTimeout((int) dfsClientConf.getShortCircuitConf()
+          .getSocketCacheExpiry());
+      final MultiplexedConnection connection = new MultiplexedConnection(
+          peer, peer.getInputStream(), peer.getOutputStream(), window, null);
+      Daemon reader = new Daemon(new Runnable() {
+        @Override
+        public void run() {
+          connection.run();
+        }
+      });
+      reader.setName("Multiplexed connection to " + datanodeId);
+      reader.start();
+      success = true;
+      return connection;
+    } finally {
+      if (!success) {
+        IOUtilsClient.cleanup(LOG, peer);
+      }
+    }
+  }
+
+  private Peer newSocketPeer(InetSocketAddress addr,
+      Token<BlockTokenIdentifier> blockToken, DatanodeID datanodeId)
+      throws IOException {
     Peer peer = null;
     boolean success = false;
     Socket sock = null;
@@ -3015,6 +3122,26 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
     return STRIPED_READ_THREAD_POOL;
   }
 
+  /**
+   * Get the thread pool for vectored reads, VECTORED_READ_THREAD_POOL,
+   * creating it on first use.
+   */
+  ThreadPoolExecutor getVectoredReadsThreadPool() {
+    if (VECTORED_READ_THREAD_POOL != null) {
+      return VECTORED_READ_THREAD_POOL;
+    }
+    synchronized (DFSClient.class) {
+      if (VECTORED_READ_THREAD_POOL == null) {
+        ThreadPoolExecutor threadPool = DFSUtilClient.getThreadPoolExecutor(1,
+            dfsClientConf.getVectoredReadThreadpoolSize(), 60,
+            "VectoredRead-", true);
+        threadPool.allowCoreThreadTimeOut(true);
+        VECTORED_READ_THREAD_POOL = threadPool;
+      }
+      return VECTORED_READ_THREAD_POOL;
+    }
+  }
+
   boolean isHedgedReadsEnabled() {
     return (HEDGED_READ_THREAD_POOL != null) &&
         HEDGED_READ_THREAD_POOL.getMaximumPoolSize() > 0;
@@ -27,6 +27,8 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -41,6 +43,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -59,6 +63,7 @@ import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.StreamCapabilities;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
@@ -1368,6 +1373,148 @@ public class DFSInputStream extends FSInputStream
     return realLen;
   }
 
+  /**
+   * Read ranges of the file asynchronously.
+   *
+   * The ranges are sorted, and nearby ranges in the same block are merged
+   * into a single positional read, up to
+   * {@link HdfsClientConfigKeys.VectoredRead#MAX_MERGED_SIZE_KEY} bytes. The
+   * merged reads are issued in parallel. For a striped file, the blocks are
+   * the block groups, so each merged read fetches the cells of all the
+   * ranges it covers from each internal block at once.
+   *
+   * @param ranges the ranges to read. The data of each is delivered through
+   *               {@link FileRange#getData()}.
+   * @param pool the thread-safe pool the buffers of the data are taken from.
+   * @throws IOException if the stream is closed, or the block locations
+   *                     cannot be fetched. The ranges which were not read
+   *                     yet then fail with the same exception.
+   */
+  public void readVectored(List<FileRange> ranges, ByteBufferPool pool)
+      throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    final List<FileRange> sorted = new ArrayList<>(ranges);
+    Collections.sort(sorted, new Comparator<FileRange>() {
+      @Override
+      public int compare(FileRange a, FileRange b) {
+        return Long.compare(a.getOffset(), b.getOffset());
+      }
+    });
+
+    final long fileLen = getFileLength();
+    List<FileRange> blockRanges = new ArrayList<>();
+    long blockEnd = -1;
+    int next = 0;
+    try {
+      for (; next < sorted.size(); next++) {
+        final FileRange range = sorted.get(next);
+        if (range.getOffset() + range.getLength() > fileLen) {
+          range.setException(new EOFException("Range " + range
+              + " is beyond the end of the file (" + fileLen + ")"));
+          continue;
+        }
+        if (range.getLength() == 0) {
+          final ByteBuffer empty = pool.getBuffer(false, 0);
+          empty.clear();
+          empty.limit(0);
+          range.setData(empty);
+          continue;
+        }
+        if (range.getOffset() >= blockEnd) {
+          final List<FileRange> toRead = blockRanges;
+          blockRanges = new ArrayList<>();
+          readMergedRanges(toRead, pool);
+          final LocatedBlock blk = getBlockAt(range.getOffset());
+          blockEnd = blk.getStartOffset() + blk.getBlockSize();
+        }
+        blockRanges.add(range);
+      }
+      final List<FileRange> toRead = blockRanges;
+      blockRanges = new ArrayList<>();
+      readMergedRanges(toRead, pool);
+    } catch (IOException | RuntimeException e) {
+      // Complete the ranges no read was issued for, so that nobody waits
+      // for them forever.
+      for (FileRange range : blockRanges) {
+        range.setException(e);
+      }
+      for (FileRange range : sorted.subList(next, sorted.size())) {
+        range.setException(e);
+      }
+      throw e;
+    }
+  }
+
+  /** Merge the sorted ranges of a block and read them asynchronously. */
+  private void readMergedRanges(List<FileRange> blockRanges,
+      final ByteBufferPool pool) {
+    if (blockRanges.isEmpty()) {
+      return;
+    }
+    final DfsClientConf conf = dfsClient.getConf();
+    final ThreadPoolExecutor executor = dfsClient.getVectoredReadsThreadPool();
+    for (final CombinedFileRange combined : CombinedFileRange
+        .mergeSortedRanges(blockRanges, conf.getVectoredReadMinSeekSize(),
+            conf.getVectoredReadMaxMergedSize())) {
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            readCombinedRange(combined, pool);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        for (FileRange range : combined.getRanges()) {
+          range.setException(e);
+        }
+      }
+    }
+  }
+
+  private void readCombinedRange(CombinedFileRange combined,
+      ByteBufferPool pool) {
+    final int length = combined.getLength();
+    ByteBuffer buffer = null;
+    try {
+      buffer = pool.getBuffer(false, length);
+      buffer.clear();
+      buffer.limit(length);
+      final int nread = pread(combined.getOffset(), buffer);
+      if (nread < length) {
+        throw new EOFException("Read " + nread + " bytes of " + combined);
+      }
+      buffer.flip();
+      final List<FileRange> ranges = combined.getRanges();
+      if (ranges.size() == 1) {
+        ranges.get(0).setData(buffer);
+        buffer = null;
+        return;
+      }
+      for (FileRange range : ranges) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position((int) (range.getOffset() - combined.getOffset()));
+        slice.limit(slice.position() + range.getLength());
+        final ByteBuffer data = pool.getBuffer(false, range.getLength());
+        data.clear();
+        data.put(slice);
+        data.flip();
+        range.setData(data);
+      }
+    } catch (Throwable t) {
+      DFSClient.LOG.debug("Failed to read {}", combined, t);
+      for (FileRange range : combined.getRanges()) {
+        range.setException(t);
+      }
+    } finally {
+      if (buffer != null) {
+        pool.putBuffer(buffer);
+      }
+    }
+  }
+
   /**
    * DFSInputStream reports checksum failure.
    * For replicated blocks, we have the following logic:
@@ -215,6 +215,13 @@ public class DFSPacket {
     buf = null;
   }
 
+  /**
+   * @return the number of data bytes in the packet
+   */
+  synchronized int getDataLength() {
+    return dataPos - dataStart;
+  }
+
   /**
    * get the packet's last byte's offset in the block
    *
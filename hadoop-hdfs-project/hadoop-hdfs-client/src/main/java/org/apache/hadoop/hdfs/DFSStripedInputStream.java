@@ -29,6 +29,7 @@ import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
 import org.apache.hadoop.hdfs.StripeReader.BlockReaderInfo;
 import org.apache.hadoop.hdfs.StripeReader.ReaderRetryPolicy;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.apache.hadoop.hdfs.util.StripedReadLatencyTracker;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.AlignedStripe;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.StripeRange;
 import org.apache.hadoop.io.ByteBufferPool;
@@ -159,6 +160,22 @@ public class DFSStripedInputStream extends DFSInputStream {
   protected ThreadPoolExecutor getStripedReadsThreadPool(){
     return dfsClient.getStripedReadsThreadPool();
   }
+
+  /**
+   * @return the latency tracker used to hedge slow chunk reads, or null if
+   * striped read hedging is disabled.
+   */
+  protected StripedReadLatencyTracker getStripedReadLatencyTracker() {
+    if (!dfsClient.getConf().isStripedReadHedgingEnabled()) {
+      return null;
+    }
+    return dfsClient.getClientContext().getStripedReadLatencyTracker();
+  }
+
+  protected DFSHedgedReadMetrics getHedgedReadMetrics() {
+    return dfsClient.getHedgedReadMetrics();
+  }
+
   /**
    * When seeking into a new block group, create blockReader for each internal
    * block in the group.
@@ -221,16 +238,25 @@ public class DFSStripedInputStream extends DFSInputStream {
 
   protected void closeReader(BlockReaderInfo readerInfo) {
     if (readerInfo != null) {
-      if (readerInfo.reader != null) {
-        try {
-          readerInfo.reader.close();
-        } catch (Throwable ignored) {
-        }
-      }
+      closeReaderForReopen(readerInfo);
       readerInfo.skip();
     }
   }
 
+  /**
+   * Close the reader of a block which is still usable, e.g. one whose read
+   * was abandoned for being slower than a hedged read. Unlike
+   * {@link #closeReader}, the block is not skipped by later stripes.
+   */
+  void closeReaderForReopen(BlockReaderInfo readerInfo) {
+    if (readerInfo != null && readerInfo.reader != null) {
+      try {
+        readerInfo.reader.close();
+      } catch (Throwable ignored) {
+      }
+    }
+  }
+
   private long getOffsetInBlockGroup() {
     return getOffsetInBlockGroup(pos);
   }
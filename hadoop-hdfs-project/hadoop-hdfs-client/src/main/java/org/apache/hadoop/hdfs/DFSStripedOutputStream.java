@@ -19,6 +19,7 @@ package org.apache.hadoop.hdfs;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.CreateFlag;
@@ -265,7 +266,14 @@ public class DFSStripedOutputStream extends DFSOutputStream
   }
 
   private final Coordinator coordinator;
-  private final CellBuffers cellBuffers;
+  private CellBuffers cellBuffers;
+  /**
+   * With asynchronous encoding, the buffers of the stripe whose parity is
+   * being encoded, or spare buffers for the next stripe.
+   */
+  private CellBuffers encodingCellBuffers;
+  private ExecutorService encodeExecutor;
+  private Future<Void> pendingEncode;
   private final ErasureCodingPolicy ecPolicy;
   private final RawErasureEncoder encoder;
   private final List<StripedDataStreamer> streamers;
@@ -312,6 +320,12 @@ public class DFSStripedOutputStream extends DFSOutputStream
 
     coordinator = new Coordinator(numAllBlocks);
     cellBuffers = new CellBuffers(numParityBlocks);
+    if (dfsClient.getConf().isStripedWriteAsyncEncoding()) {
+      encodingCellBuffers = new CellBuffers(numParityBlocks);
+      encodeExecutor = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("StripedEncoder for fileId " + fileId).build());
+    }
 
     streamers = new ArrayList<>(numAllBlocks);
     for (short i = 0; i < numAllBlocks; i++) {
@@ -547,7 +561,11 @@ public class DFSStripedOutputStream extends DFSOutputStream
       //converted to packets and put to their DataStreamer's queue.
       if (next == numDataBlocks) {
         cellBuffers.flipDataBuffers();
-        writeParityCells();
+        if (encodeExecutor != null) {
+          encodeParityCellsAsync();
+        } else {
+          writeParityCells();
+        }
         next = 0;
 
         // if this is the end of the block group, end each internal block
@@ -1091,6 +1109,57 @@ public class DFSStripedOutputStream extends DFSOutputStream
     cellBuffers.clear();
   }
 
+  /**
+   * Start encoding the parity of the full stripe in {@link #cellBuffers} on
+   * the encoder thread, and switch to the spare buffers for the next stripe.
+   * The parity of the previous stripe is written first, so that the parity
+   * cells reach the streamers in order.
+   */
+  private void encodeParityCellsAsync() throws IOException {
+    writePendingParityCells();
+    if (!checkAnyParityStreamerIsHealthy()) {
+      cellBuffers.clear();
+      return;
+    }
+    final CellBuffers full = cellBuffers;
+    cellBuffers = encodingCellBuffers;
+    encodingCellBuffers = full;
+    pendingEncode = encodeExecutor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        encode(encoder, numDataBlocks, full.getBuffers());
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Wait for the parity being encoded asynchronously, if any, and write it
+   * to the parity streamers.
+   */
+  private void writePendingParityCells() throws IOException {
+    if (pendingEncode == null) {
+      return;
+    }
+    try {
+      pendingEncode.get();
+    } catch (InterruptedException ie) {
+      throw DFSUtilClient.toInterruptedIOException(
+          "Interrupted while encoding parity cells", ie);
+    } catch (ExecutionException ee) {
+      throw new IOException("Failed to encode parity cells", ee.getCause());
+    } finally {
+      pendingEncode = null;
+    }
+    final int current = getCurrentIndex();
+    final ByteBuffer[] buffers = encodingCellBuffers.getBuffers();
+    for (int i = numDataBlocks; i < numAllBlocks; i++) {
+      writeParity(i, buffers[i], encodingCellBuffers.getChecksumArray(i));
+    }
+    encodingCellBuffers.clear();
+    setCurrentStreamer(current);
+  }
+
   private boolean checkAnyParityStreamerIsHealthy() {
     for (int i = numDataBlocks; i < numAllBlocks; i++) {
       if (streamers.get(i).isHealthy()) {
@@ -1142,6 +1211,20 @@ public class DFSStripedOutputStream extends DFSOutputStream
     for (int i = 0; i < numAllBlocks; i++) {
       getStripedDataStreamer(i).release();
     }
+    if (encodeExecutor != null) {
+      // the encoder thread may still be using the buffers
+      if (pendingEncode != null) {
+        try {
+          pendingEncode.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+        pendingEncode = null;
+      }
+      encodeExecutor.shutdownNow();
+      encodingCellBuffers.release();
+    }
     cellBuffers.release();
   }
 
@@ -1176,6 +1259,7 @@ public class DFSStripedOutputStream extends DFSOutputStream
       try {
         // flush from all upper layers
         flushBuffer();
+        writePendingParityCells();
         // if the last stripe is incomplete, generate and write parity cells
         if (generateParityCellsForLastStripe()) {
           writeParityCells();
@@ -1244,6 +1328,7 @@ public class DFSStripedOutputStream extends DFSOutputStream
   }
 
   void flushAllInternals() throws IOException {
+    writePendingParityCells();
     Map<Future<Void>, Integer> flushAllFuturesMap = new HashMap<>();
     Future<Void> future = null;
     int current = getCurrentIndex();
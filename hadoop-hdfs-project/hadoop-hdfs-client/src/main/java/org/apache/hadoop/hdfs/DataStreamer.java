@@ -513,6 +513,8 @@ class DataStreamer extends Daemon {
   // both dataQueue and ackQueue are protected by dataQueue lock
   protected final LinkedList<DFSPacket> dataQueue = new LinkedList<>();
   private final Map<Long, Long> packetSendTime = new HashMap<>();
+  /** Sizes the window of packets in flight, if it adapts to the pipeline. */
+  private final WriteWindowEstimator windowEstimator;
   private final LinkedList<DFSPacket> ackQueue = new LinkedList<>();
   private final AtomicReference<CachingStrategy> cachingStrategy;
   private final ByteArrayManager byteArrayManager;
@@ -556,6 +558,9 @@ class DataStreamer extends Daemon {
     this.excludedNodes = initExcludedNodes(conf.getExcludedNodesCacheExpiry());
     this.errorState = new ErrorState(conf.getDatanodeRestartTimeout());
     this.addBlockFlags = flags;
+    this.windowEstimator = conf.isWriteAdaptiveWindow() ?
+        new WriteWindowEstimator(conf.getWriteMaxPackets(),
+            conf.getWriteAdaptiveMaxPackets()) : null;
   }
 
   /**
@@ -761,7 +766,7 @@ class DataStreamer extends Daemon {
             scope = null;
             dataQueue.removeFirst();
             ackQueue.addLast(one);
-            packetSendTime.put(one.getSeqno(), Time.monotonicNow());
+            packetSendTime.put(one.getSeqno(), Time.monotonicNowNanos());
             dataQueue.notifyAll();
           }
         }
@@ -772,7 +777,9 @@ class DataStreamer extends Daemon {
         try (TraceScope ignored = dfsClient.getTracer().
             newScope("DataStreamer#writeTo", spanId)) {
           one.writeTo(blockStream);
-          blockStream.flush();
+          if (!canCoalesce(one)) {
+            blockStream.flush();
+          }
         } catch (IOException e) {
           // HDFS-3398 treat primary DN is down since client is unable to
           // write to primary DN. If a failed or restarting node has already
@@ -903,6 +910,31 @@ class DataStreamer extends Daemon {
     }
   }
 
+  /**
+   * @return the number of packets which may be queued or in flight.
+   */
+  private int getMaxPacketsInFlight() {
+    return windowEstimator != null ? windowEstimator.getWindow() :
+        dfsClient.getConf().getWriteMaxPackets();
+  }
+
+  /**
+   * In the adaptive mode, a data packet followed by another queued packet
+   * is left in the stream buffer, so that small packets go out in fewer
+   * writes. The packet before the last packet of a block is always flushed,
+   * as the last one is only sent after all the others are acked.
+   */
+  private boolean canCoalesce(DFSPacket one) {
+    if (windowEstimator == null || one.isHeartbeatPacket() ||
+        one.isLastPacketInBlock()) {
+      return false;
+    }
+    synchronized (dataQueue) {
+      return !dataQueue.isEmpty() &&
+          !dataQueue.getFirst().isLastPacketInBlock();
+    }
+  }
+
   /**
    * wait for space of dataQueue and queue the packet
    *
@@ -916,7 +948,7 @@ class DataStreamer extends Daemon {
         boolean firstWait = true;
         try {
           while (!streamerClosed && dataQueue.size() + ackQueue.size() >
-              dfsClient.getConf().getWriteMaxPackets()) {
+              getMaxPacketsInFlight()) {
             if (firstWait) {
               Span span = Tracer.getCurrentSpan();
               if (span != null) {
@@ -1087,7 +1119,8 @@ class DataStreamer extends Daemon {
           if (ack.getSeqno() != DFSPacket.HEART_BEAT_SEQNO) {
             Long begin = packetSendTime.get(ack.getSeqno());
             if (begin != null) {
-              long duration = Time.monotonicNow() - begin;
+              long duration =
+                  (Time.monotonicNowNanos() - begin) / 1000000;
               if (duration > dfsclientSlowLogThresholdMs) {
                 LOG.info("Slow ReadProcessor read fields for block " + block
                     + " took " + duration + "ms (threshold="
@@ -1179,7 +1212,11 @@ class DataStreamer extends Daemon {
             lastAckedSeqno = seqno;
             pipelineRecoveryCount = 0;
             ackQueue.removeFirst();
-            packetSendTime.remove(seqno);
+            Long begin = packetSendTime.remove(seqno);
+            if (windowEstimator != null && begin != null) {
+              long now = Time.monotonicNowNanos();
+              windowEstimator.onAck(now, now - begin, one.getDataLength());
+            }
             dataQueue.notifyAll();
 
             one.releaseBuffer(byteArrayManager);
@@ -1239,6 +1276,9 @@ class DataStreamer extends Daemon {
       dataQueue.addAll(0, ackQueue);
       ackQueue.clear();
       packetSendTime.clear();
+      if (windowEstimator != null) {
+        windowEstimator.reset();
+      }
     }
 
     // If we had to recover the pipeline five times in a row for the
@@ -1732,8 +1772,13 @@ class DataStreamer extends Daemon {
             unbufOut, unbufIn, dfsClient, accessToken, nodes[0]);
         unbufOut = saslStreams.out;
         unbufIn = saslStreams.in;
+        // In the adaptive mode, the buffer holds a full packet so that
+        // smaller packets can be coalesced.
+        final int bufferSize = windowEstimator != null ?
+            dfsClient.getConf().getWritePacketSize() :
+            DFSUtilClient.getSmallBufferSize(dfsClient.getConfiguration());
         out = new DataOutputStream(new BufferedOutputStream(unbufOut,
-            DFSUtilClient.getSmallBufferSize(dfsClient.getConfiguration())));
+            bufferSize));
         blockReplyStream = new DataInputStream(unbufIn);
 
         //
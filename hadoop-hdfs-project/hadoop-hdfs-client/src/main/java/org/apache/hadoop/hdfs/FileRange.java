@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A range of a file to read with
+ * {@link DFSInputStream#readVectored(java.util.List,
+ * org.apache.hadoop.io.ByteBufferPool)}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class FileRange {
+  private final long offset;
+  private final int length;
+  private final SettableFuture<ByteBuffer> data = SettableFuture.create();
+
+  public FileRange(long offset, int length) {
+    Preconditions.checkArgument(offset >= 0, "Negative offset %s", offset);
+    Preconditions.checkArgument(length >= 0, "Negative length %s", length);
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the data of the range, once it is read. The buffer is taken from
+   * the pool given to the read, and should be returned to it by the caller.
+   * If the range extends past the end of the file, the future fails with an
+   * {@link java.io.EOFException}.
+   */
+  public Future<ByteBuffer> getData() {
+    return data;
+  }
+
+  void setData(ByteBuffer buffer) {
+    data.set(buffer);
+  }
+
+  void setException(Throwable t) {
+    data.setException(t);
+  }
+
+  @Override
+  public String toString() {
+    return "FileRange[" + offset + ", " + (offset + length) + ")";
+  }
+}
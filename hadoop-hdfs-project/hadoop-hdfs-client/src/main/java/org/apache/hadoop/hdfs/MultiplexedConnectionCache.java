@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.net.MultiplexedConnection;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+
+/**
+ * A cache of the multiplexed connections to Data Nodes, over which the
+ * streams of block readers are opened.
+ *
+ * A connection is only handed out while it carries fewer than the maximum
+ * number of streams. Connections close themselves once they have been idle
+ * for a while. Data Nodes which refused to multiplex are not asked again
+ * for some time.
+ */
+@InterfaceAudience.Private
+public class MultiplexedConnectionCache {
+  /** How long a Data Node which refused to multiplex is not asked again. */
+  private static final long UNSUPPORTED_EXPIRY_MINUTES = 10;
+
+  private final int maxStreams;
+  private final Map<DatanodeID, MultiplexedConnection> connections =
+      new HashMap<>();
+  private final Cache<DatanodeID, Boolean> unsupported =
+      CacheBuilder.newBuilder()
+          .expireAfterWrite(UNSUPPORTED_EXPIRY_MINUTES, TimeUnit.MINUTES)
+          .build();
+
+  public MultiplexedConnectionCache(int maxStreams) {
+    Preconditions.checkArgument(maxStreams > 0);
+    this.maxStreams = maxStreams;
+  }
+
+  /**
+   * @return an open connection to the Data Node with room for another
+   *         stream, or null if there is none.
+   */
+  public synchronized MultiplexedConnection get(DatanodeID dnId) {
+    final MultiplexedConnection connection = connections.get(dnId);
+    if (connection == null) {
+      return null;
+    }
+    if (connection.isClosed()) {
+      connections.remove(dnId);
+      return null;
+    }
+    return connection.getNumStreams() < maxStreams ? connection : null;
+  }
+
+  /**
+   * Open a stream on the connection to the Data Node, if there is an open
+   * one with room for another stream. The room is checked and taken under
+   * the connection's lock, so concurrent callers never exceed the maximum.
+   * @return the stream, or null if there is no such connection.
+   */
+  public MultiplexedConnection.Stream openStream(DatanodeID dnId)
+      throws IOException {
+    final MultiplexedConnection connection;
+    synchronized (this) {
+      connection = connections.get(dnId);
+      if (connection == null) {
+        return null;
+      }
+      if (connection.isClosed()) {
+        connections.remove(dnId);
+        return null;
+      }
+    }
+    return connection.openStream(maxStreams);
+  }
+
+  /**
+   * Add a new connection to the Data Node. Any connection it replaces keeps
+   * serving its streams until they close.
+   */
+  public synchronized void put(DatanodeID dnId,
+      MultiplexedConnection connection) {
+    connections.put(dnId, connection);
+  }
+
+  /** @return whether the Data Node may be asked to multiplex. */
+  public boolean isSupported(DatanodeID dnId) {
+    return unsupported.getIfPresent(dnId) == null;
+  }
+
+  /** Remember that the Data Node refused to multiplex. */
+  public void setUnsupported(DatanodeID dnId) {
+    unsupported.put(dnId, Boolean.TRUE);
+  }
+
+  /** Close all the connections. */
+  public synchronized void close() {
+    for (MultiplexedConnection connection : connections.values()) {
+      connection.close();
+    }
+    connections.clear();
+  }
+}
@@ -272,8 +272,10 @@ public class PeerCache {
     multimap.clear();
   }
 
-  @VisibleForTesting
-  void close() {
+  /**
+   * Close all cached sockets and stop the expiry daemon.
+   */
+  public void close() {
     clear();
     if (daemon != null) {
       daemon.interrupt();
@@ -28,18 +28,24 @@ import org.apache.hadoop.hdfs.util.StripedBlockUtil.BlockReadStats;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.StripingChunk;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.AlignedStripe;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.StripingChunkReadResult;
+import org.apache.hadoop.hdfs.util.StripedReadLatencyTracker;
 import org.apache.hadoop.io.erasurecode.ECChunk;
 import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
+import org.apache.hadoop.util.Time;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 
@@ -263,6 +269,7 @@ abstract class StripeReader {
       final long targetReaderOffset, final ByteBufferStrategy[] strategies,
       final ExtendedBlock currentBlock) {
     return () -> {
+      final long startNanos = Time.monotonicNowNanos();
       // reader can be null if getBlockReaderWithRetry failed or
       // the reader hit exception before
       if (reader == null) {
@@ -282,7 +289,7 @@ abstract class StripeReader {
         ret += bytesReead;
       }
       return new BlockReadStats(ret, reader.isShortCircuit(),
-          reader.getNetworkDistance());
+          reader.getNetworkDistance(), Time.monotonicNowNanos() - startNanos);
     };
   }
 
@@ -341,12 +348,36 @@ abstract class StripeReader {
     }
     // TODO: for a full stripe we can start reading (dataBlkNum + 1) chunks
 
+    // With hedging enabled, a parity read is started once the stripe has been
+    // outstanding for longer than the recent read latency percentile allows.
+    final StripedReadLatencyTracker latencyTracker =
+        dfsStripedInputStream.getStripedReadLatencyTracker();
+    long hedgeDeadline = getHedgeDeadline(latencyTracker);
+    boolean hedged = false;
+
     // Input buffers for potential decode operation, which remains null until
     // first read failure
     while (!futures.isEmpty()) {
       try {
+        long waitMillis = 0;
+        if (!hedged && hedgeDeadline > 0) {
+          if (!canHedge()) {
+            hedgeDeadline = -1;
+          } else {
+            waitMillis = hedgeDeadline - Time.monotonicNow();
+            if (waitMillis <= 0) {
+              hedgeDeadline = -1;
+              hedged = startHedgedRead(latencyTracker);
+              continue;
+            }
+          }
+        }
         StripingChunkReadResult r = StripedBlockUtil
-            .getNextCompletedStripedRead(service, futures, 0);
+            .getNextCompletedStripedRead(service, futures, waitMillis);
+        if (r.state == StripingChunkReadResult.TIMEOUT) {
+          // Loop back to start the hedged read.
+          continue;
+        }
         dfsStripedInputStream.updateReadStats(r.getReadStats());
         if (DFSClient.LOG.isDebugEnabled()) {
           DFSClient.LOG.debug("Read task returned: " + r + ", for stripe "
@@ -360,7 +391,14 @@ abstract class StripeReader {
           returnedChunk.state = StripingChunk.FETCHED;
           alignedStripe.fetchedChunksNum++;
           updateState4SuccessRead(r);
+          if (latencyTracker != null) {
+            latencyTracker.addSample(readerInfos[r.index].datanode
+                .getXferAddr(), r.getReadStats());
+          }
           if (alignedStripe.fetchedChunksNum == dataBlkNum) {
+            if (hedged) {
+              abandonPendingReads();
+            }
             clearFutures();
             break;
           }
@@ -390,6 +428,120 @@ abstract class StripeReader {
     }
   }
 
+  /**
+   * @return the monotonic time in milliseconds at which the outstanding reads
+   * of this stripe should be hedged, or -1 if they should not be hedged.
+   */
+  private long getHedgeDeadline(StripedReadLatencyTracker latencyTracker) {
+    if (latencyTracker == null || futures.isEmpty()) {
+      return -1;
+    }
+    final long delay =
+        latencyTracker.getHedgeDelayMillis(alignedStripe.getSpanInBlock());
+    return delay < 0 ? -1 : Time.monotonicNow() + delay;
+  }
+
+  /**
+   * @return true if there is a parity chunk which has not been requested yet
+   * and could be read in addition to the outstanding reads.
+   */
+  private boolean canHedge() {
+    for (int i = dataBlkNum; i < dataBlkNum + parityBlkNum; i++) {
+      if (alignedStripe.chunks[i] == null && targetBlocks[i] != null &&
+          (readerInfos[i] == null || !readerInfos[i].shouldSkip)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Some outstanding chunk read is lagging behind. Switch the stripe into
+   * decoding mode and start one more parity read from the fastest parity
+   * source, so that the first data-unit-number chunks to complete can be used.
+   *
+   * @return true if an extra read was started.
+   */
+  private boolean startHedgedRead(
+      final StripedReadLatencyTracker latencyTracker) throws IOException {
+    final int missing = alignedStripe.missingChunksNum;
+    readDataForDecoding();
+    int toRead = alignedStripe.missingChunksNum - missing + 1;
+
+    final List<Integer> parityIndices = new ArrayList<>(parityBlkNum);
+    for (int i = dataBlkNum; i < dataBlkNum + parityBlkNum; i++) {
+      if (alignedStripe.chunks[i] == null) {
+        parityIndices.add(i);
+      }
+    }
+    parityIndices.sort((i, j) -> {
+      if (targetBlocks[i] == null || targetBlocks[j] == null) {
+        return targetBlocks[i] == null ? (targetBlocks[j] == null ? 0 : 1) :
+            -1;
+      }
+      return latencyTracker.compare(
+          targetBlocks[i].getLocations()[0].getXferAddr(),
+          targetBlocks[j].getLocations()[0].getXferAddr());
+    });
+
+    boolean started = false;
+    for (int i : parityIndices) {
+      if (toRead == 0) {
+        break;
+      }
+      if (prepareParityChunk(i) && readChunk(targetBlocks[i], i)) {
+        toRead--;
+        started = true;
+      } else {
+        alignedStripe.missingChunksNum++;
+      }
+    }
+    checkMissingBlocks();
+    if (started) {
+      dfsStripedInputStream.getHedgedReadMetrics().incHedgedReadOps();
+      if (DFSClient.LOG.isDebugEnabled()) {
+        DFSClient.LOG.debug("Started hedged read for stripe " + alignedStripe);
+      }
+    }
+    return started;
+  }
+
+  /**
+   * Enough chunks have been fetched to decode the stripe after a hedged read.
+   * The chunks still pending are treated as missing and their readers are
+   * not used any more. The outstanding reads are waited for, since they may
+   * still write into the buffers the decoded data goes to. The abandoned
+   * readers are not skipped, and are reopened by the next stripe.
+   */
+  private void abandonPendingReads() throws InterruptedIOException {
+    if (futures.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<Future<BlockReadStats>, Integer> entry :
+        futures.entrySet()) {
+      final int index = entry.getValue();
+      alignedStripe.chunks[index].state = StripingChunk.MISSING;
+      alignedStripe.missingChunksNum++;
+      // Closing the reader makes the outstanding read fail fast. The block
+      // was only slower than the others, so rather than skipping it, drop
+      // the reader and let the next stripe open a new one.
+      dfsStripedInputStream.closeReaderForReopen(readerInfos[index]);
+      readerInfos[index] = null;
+    }
+    for (Future<BlockReadStats> future : futures.keySet()) {
+      try {
+        future.get();
+      } catch (ExecutionException | CancellationException e) {
+        DFSClient.LOG.debug("Abandoned read failed", e);
+      } catch (InterruptedException ie) {
+        clearFutures();
+        throw new InterruptedIOException("Read request interrupted");
+      }
+    }
+    futures.clear();
+    dfsStripedInputStream.getHedgedReadMetrics().incHedgedReadWins();
+  }
+
   /**
    * Some fetched {@link StripingChunk} might be stored in original application
    * buffer instead of prepared decode input buffers. Some others are beyond
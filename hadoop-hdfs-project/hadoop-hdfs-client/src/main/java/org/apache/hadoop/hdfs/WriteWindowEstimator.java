@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Estimates how many packets a {@link DataStreamer} should keep in flight
+ * to fill its pipeline, from the round trip times and delivery rate seen in
+ * the acks.
+ *
+ * The window is twice the bandwidth-delay product, where the bandwidth is
+ * the highest delivery rate and the delay the lowest round trip time seen
+ * recently, in packets of the average size acked. It is kept between the
+ * configured minimum and maximum.
+ *
+ * This class is not thread-safe.
+ */
+class WriteWindowEstimator {
+  /** How long a minimum round trip time or maximum rate is trusted for. */
+  static final long FILTER_NANOS = 10_000_000_000L;
+  /** The weight of a new packet in the average packet size. */
+  private static final double PACKET_SIZE_GAIN = 0.125;
+
+  private final int minWindow;
+  private final int maxWindow;
+
+  private long minRttNanos = Long.MAX_VALUE;
+  private long minRttStamp;
+  /** The delivery rate, in bytes per nanosecond. */
+  private double maxRate;
+  private long maxRateStamp;
+  private double avgPacketBytes;
+
+  private long sampleStart = -1;
+  private long sampleBytes;
+
+  private int window;
+
+  WriteWindowEstimator(int minWindow, int maxWindow) {
+    Preconditions.checkArgument(minWindow > 0 && minWindow <= maxWindow,
+        "Invalid window bounds [%s, %s]", minWindow, maxWindow);
+    this.minWindow = minWindow;
+    this.maxWindow = maxWindow;
+    this.window = minWindow;
+  }
+
+  /**
+   * Record the ack of a packet.
+   *
+   * @param now the monotonic time of the ack, in nanoseconds.
+   * @param rttNanos the time between sending the packet and its ack.
+   * @param bytes the number of data bytes in the packet.
+   */
+  void onAck(long now, long rttNanos, int bytes) {
+    if (rttNanos > 0 && (rttNanos <= minRttNanos ||
+        now - minRttStamp > FILTER_NANOS)) {
+      minRttNanos = rttNanos;
+      minRttStamp = now;
+    }
+    if (bytes <= 0) {
+      return;
+    }
+    avgPacketBytes = avgPacketBytes == 0 ? bytes :
+        avgPacketBytes + PACKET_SIZE_GAIN * (bytes - avgPacketBytes);
+
+    // Measure the delivery rate over at least one round trip, since single
+    // acks arrive in bursts.
+    if (sampleStart < 0) {
+      sampleStart = now;
+      sampleBytes = 0;
+      return;
+    }
+    sampleBytes += bytes;
+    final long elapsed = now - sampleStart;
+    if (minRttNanos == Long.MAX_VALUE || elapsed < minRttNanos ||
+        elapsed <= 0) {
+      return;
+    }
+    final double rate = (double) sampleBytes / elapsed;
+    if (rate >= maxRate || now - maxRateStamp > FILTER_NANOS) {
+      maxRate = rate;
+      maxRateStamp = now;
+    }
+    sampleStart = now;
+    sampleBytes = 0;
+    updateWindow();
+  }
+
+  private void updateWindow() {
+    final double bdpPackets = maxRate * minRttNanos / avgPacketBytes;
+    final long packets = Math.round(2 * bdpPackets);
+    window = (int) Math.max(minWindow, Math.min(maxWindow, packets));
+  }
+
+  /**
+   * Forget the measurements, when the pipeline changes.
+   */
+  void reset() {
+    minRttNanos = Long.MAX_VALUE;
+    maxRate = 0;
+    sampleStart = -1;
+    window = minWindow;
+  }
+
+  /** @return the number of packets to keep in flight. */
+  int getWindow() {
+    return window;
+  }
+
+  long getMinRttNanos() {
+    return minRttNanos;
+  }
+}
@@ -89,6 +89,15 @@ public interface HdfsClientConfigKeys {
   String  DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY =
       "dfs.client.socketcache.expiryMsec";
   long    DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT = 3000;
+  String  DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY =
+      "dfs.client.data.transfer.multiplex.enabled";
+  boolean DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_DEFAULT = false;
+  String  DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_KEY =
+      "dfs.client.data.transfer.multiplex.max.streams";
+  int     DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_DEFAULT = 64;
+  String  DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_KEY =
+      "dfs.client.data.transfer.multiplex.stream.window";
+  int     DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_DEFAULT = 256 * 1024;
   String  DFS_CLIENT_USE_DN_HOSTNAME = "dfs.client.use.datanode.hostname";
   boolean DFS_CLIENT_USE_DN_HOSTNAME_DEFAULT = false;
   String  DFS_CLIENT_CACHE_DROP_BEHIND_WRITES =
@@ -288,6 +297,18 @@ public interface HdfsClientConfigKeys {
 
     String  MAX_PACKETS_IN_FLIGHT_KEY = PREFIX + "max-packets-in-flight";
     int     MAX_PACKETS_IN_FLIGHT_DEFAULT = 80;
+    String  ADAPTIVE_WINDOW_ENABLED_KEY = PREFIX + "adaptive-window.enabled";
+    boolean ADAPTIVE_WINDOW_ENABLED_DEFAULT = false;
+    String  ADAPTIVE_WINDOW_MAX_PACKETS_KEY =
+        PREFIX + "adaptive-window.max-packets-in-flight";
+    int     ADAPTIVE_WINDOW_MAX_PACKETS_DEFAULT = 1024;
+    /**
+     * Encode the parity of a full stripe of an erasure coded file on a
+     * separate thread, while the next stripe is being written.
+     */
+    String  STRIPED_ASYNC_ENCODING_ENABLED_KEY =
+        PREFIX + "striped.async-encoding.enabled";
+    boolean STRIPED_ASYNC_ENCODING_ENABLED_DEFAULT = false;
     String  EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_KEY =
         PREFIX + "exclude.nodes.cache.expiry.interval.millis";
     long    EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT = 10*MINUTE;
@@ -354,6 +375,9 @@ public interface HdfsClientConfigKeys {
       int     STREAMS_CACHE_SIZE_DEFAULT = 256;
       String  STREAMS_CACHE_EXPIRY_MS_KEY = PREFIX + "streams.cache.expiry.ms";
       long    STREAMS_CACHE_EXPIRY_MS_DEFAULT = 5*MINUTE;
+      String  STREAMS_CACHE_FREQUENCY_AWARE_KEY =
+          PREFIX + "streams.cache.frequency.aware";
+      boolean STREAMS_CACHE_FREQUENCY_AWARE_DEFAULT = false;
 
       String  METRICS_SAMPLING_PERCENTAGE_KEY =
           PREFIX + "metrics.sampling.percentage";
@@ -382,6 +406,8 @@ public interface HdfsClientConfigKeys {
     long    CACHE_TIMEOUT_MS_DEFAULT  = 60*MINUTE;
     String  RETRY_TIMEOUT_MS_KEY = PREFIX + "retry.timeout.ms";
     long    RETRY_TIMEOUT_MS_DEFAULT = 5*MINUTE;
+    String  CACHE_MAX_BYTES_KEY = PREFIX + "cache.max.bytes";
+    long    CACHE_MAX_BYTES_DEFAULT = 0;
   }
 
   /** dfs.client.hedged.read configuration properties */
@@ -404,6 +430,31 @@ public interface HdfsClientConfigKeys {
      * span 6 DNs, so this default value accommodates 3 read streams
      */
     int     THREADPOOL_SIZE_DEFAULT = 18;
+
+    /**
+     * Start an extra parity read for a stripe when a chunk read lags behind
+     * the recent read latency percentile, and use the first data-unit-number
+     * chunks that complete.
+     */
+    String  HEDGED_ENABLED_KEY = PREFIX + "hedged.enabled";
+    boolean HEDGED_ENABLED_DEFAULT = false;
+    String  HEDGED_PERCENTILE_KEY = PREFIX + "hedged.percentile";
+    double  HEDGED_PERCENTILE_DEFAULT = 95;
+    String  HEDGED_MIN_DELAY_MILLIS_KEY = PREFIX + "hedged.min.delay.millis";
+    long    HEDGED_MIN_DELAY_MILLIS_DEFAULT = 10;
+  }
+
+  /** dfs.client.read.vectored configuration properties */
+  interface VectoredRead {
+    String PREFIX = Read.PREFIX + "vectored.";
+
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+    /** Ranges at most this far apart are read with a single request. */
+    String  MIN_SEEK_SIZE_KEY = PREFIX + "min.seek.size";
+    int     MIN_SEEK_SIZE_DEFAULT = 4 * 1024;
+    String  MAX_MERGED_SIZE_KEY = PREFIX + "max.merged.size";
+    int     MAX_MERGED_SIZE_DEFAULT = 1024 * 1024;
   }
 
   /** dfs.http.client configuration properties */
@@ -47,6 +47,12 @@ import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CACH
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CACHED_CONN_RETRY_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATANODE_RESTART_TIMEOUT_DEFAULT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATANODE_RESTART_TIMEOUT_KEY;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_DEFAULT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_KEY;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_DEFAULT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC_DEFAULT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_DEFAULT;
@@ -112,6 +118,9 @@ public class DfsClientConf {
   private final ChecksumCombineMode checksumCombineMode;
   private final int writePacketSize;
   private final int writeMaxPackets;
+  private final boolean writeAdaptiveWindow;
+  private final int writeAdaptiveMaxPackets;
+  private final boolean stripedWriteAsyncEncoding;
   private final ByteArrayManager.Conf writeByteArrayManagerConf;
   private final int socketTimeout;
   private final int socketSendBufferSize;
@@ -141,6 +150,15 @@ public class DfsClientConf {
       replicaAccessorBuilderClasses;
 
   private final int stripedReadThreadpoolSize;
+  private final int vectoredReadThreadpoolSize;
+  private final int vectoredReadMinSeekSize;
+  private final int vectoredReadMaxMergedSize;
+  private final boolean dataTransferMultiplexEnabled;
+  private final int dataTransferMultiplexMaxStreams;
+  private final int dataTransferMultiplexStreamWindow;
+  private final boolean stripedReadHedgingEnabled;
+  private final double stripedReadHedgingPercentile;
+  private final long stripedReadHedgingMinDelayMillis;
 
   private final boolean dataTransferTcpNoDelay;
 
@@ -196,6 +214,15 @@ public class DfsClientConf {
     writeMaxPackets = conf.getInt(
         Write.MAX_PACKETS_IN_FLIGHT_KEY,
         Write.MAX_PACKETS_IN_FLIGHT_DEFAULT);
+    writeAdaptiveWindow = conf.getBoolean(
+        Write.ADAPTIVE_WINDOW_ENABLED_KEY,
+        Write.ADAPTIVE_WINDOW_ENABLED_DEFAULT);
+    writeAdaptiveMaxPackets = Math.max(writeMaxPackets, conf.getInt(
+        Write.ADAPTIVE_WINDOW_MAX_PACKETS_KEY,
+        Write.ADAPTIVE_WINDOW_MAX_PACKETS_DEFAULT));
+    stripedWriteAsyncEncoding = conf.getBoolean(
+        Write.STRIPED_ASYNC_ENCODING_ENABLED_KEY,
+        Write.STRIPED_ASYNC_ENCODING_ENABLED_DEFAULT);
 
     final boolean byteArrayManagerEnabled = conf.getBoolean(
         Write.ByteArrayManager.ENABLED_KEY,
@@ -264,6 +291,46 @@ public class DfsClientConf {
     Preconditions.checkArgument(stripedReadThreadpoolSize > 0, "The value of " +
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY +
         " must be greater than 0.");
+    stripedReadHedgingEnabled = conf.getBoolean(
+        HdfsClientConfigKeys.StripedRead.HEDGED_ENABLED_KEY,
+        HdfsClientConfigKeys.StripedRead.HEDGED_ENABLED_DEFAULT);
+    stripedReadHedgingPercentile = conf.getDouble(
+        HdfsClientConfigKeys.StripedRead.HEDGED_PERCENTILE_KEY,
+        HdfsClientConfigKeys.StripedRead.HEDGED_PERCENTILE_DEFAULT);
+    Preconditions.checkArgument(stripedReadHedgingPercentile > 0 &&
+        stripedReadHedgingPercentile <= 100, "The value of " +
+        HdfsClientConfigKeys.StripedRead.HEDGED_PERCENTILE_KEY +
+        " must be in (0, 100].");
+    stripedReadHedgingMinDelayMillis = conf.getLong(
+        HdfsClientConfigKeys.StripedRead.HEDGED_MIN_DELAY_MILLIS_KEY,
+        HdfsClientConfigKeys.StripedRead.HEDGED_MIN_DELAY_MILLIS_DEFAULT);
+    vectoredReadThreadpoolSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(vectoredReadThreadpoolSize > 0, "The value " +
+        "of " + HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY +
+        " must be greater than 0.");
+    vectoredReadMinSeekSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.MIN_SEEK_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.MIN_SEEK_SIZE_DEFAULT);
+    vectoredReadMaxMergedSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.MAX_MERGED_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.MAX_MERGED_SIZE_DEFAULT);
+    dataTransferMultiplexEnabled = conf.getBoolean(
+        DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY,
+        DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_DEFAULT);
+    dataTransferMultiplexMaxStreams = conf.getInt(
+        DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_KEY,
+        DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_DEFAULT);
+    Preconditions.checkArgument(dataTransferMultiplexMaxStreams > 0,
+        "The value of " + DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_MAX_STREAMS_KEY +
+        " must be greater than 0.");
+    dataTransferMultiplexStreamWindow = conf.getInt(
+        DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_KEY,
+        DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_DEFAULT);
+    Preconditions.checkArgument(dataTransferMultiplexStreamWindow > 0,
+        "The value of " + DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_KEY +
+        " must be greater than 0.");
     replicaAccessorBuilderClasses = loadReplicaAccessorBuilderClasses(conf);
   }
 
@@ -433,6 +500,27 @@ public class DfsClientConf {
     return writeMaxPackets;
   }
 
+  /**
+   * @return whether the number of packets in flight adapts to the pipeline
+   */
+  public boolean isWriteAdaptiveWindow() {
+    return writeAdaptiveWindow;
+  }
+
+  /**
+   * @return the writeAdaptiveMaxPackets
+   */
+  public int getWriteAdaptiveMaxPackets() {
+    return writeAdaptiveMaxPackets;
+  }
+
+  /**
+   * @return whether the parity of striped writes is encoded asynchronously
+   */
+  public boolean isStripedWriteAsyncEncoding() {
+    return stripedWriteAsyncEncoding;
+  }
+
   /**
    * @return the writeByteArrayManagerConf
    */
@@ -587,6 +675,69 @@ public class DfsClientConf {
     return stripedReadThreadpoolSize;
   }
 
+  /**
+   * @return whether straggler-aware hedging of striped reads is enabled
+   */
+  public boolean isStripedReadHedgingEnabled() {
+    return stripedReadHedgingEnabled;
+  }
+
+  /**
+   * @return the read latency percentile that triggers a hedged striped read
+   */
+  public double getStripedReadHedgingPercentile() {
+    return stripedReadHedgingPercentile;
+  }
+
+  /**
+   * @return the minimum delay before a hedged striped read is started
+   */
+  public long getStripedReadHedgingMinDelayMillis() {
+    return stripedReadHedgingMinDelayMillis;
+  }
+
+  /**
+   * @return the vectoredReadThreadpoolSize
+   */
+  public int getVectoredReadThreadpoolSize() {
+    return vectoredReadThreadpoolSize;
+  }
+
+  /**
+   * @return the largest gap between ranges read with a single request
+   */
+  public int getVectoredReadMinSeekSize() {
+    return vectoredReadMinSeekSize;
+  }
+
+  /**
+   * @return the vectoredReadMaxMergedSize
+   */
+  public int getVectoredReadMaxMergedSize() {
+    return vectoredReadMaxMergedSize;
+  }
+
+  /**
+   * @return whether streams to a datanode share one connection
+   */
+  public boolean isDataTransferMultiplexEnabled() {
+    return dataTransferMultiplexEnabled;
+  }
+
+  /**
+   * @return the dataTransferMultiplexMaxStreams
+   */
+  public int getDataTransferMultiplexMaxStreams() {
+    return dataTransferMultiplexMaxStreams;
+  }
+
+  /**
+   * @return the dataTransferMultiplexStreamWindow
+   */
+  public int getDataTransferMultiplexStreamWindow() {
+    return dataTransferMultiplexStreamWindow;
+  }
+
   /**
    * @return the replicaAccessorBuilderClasses
    */
@@ -620,6 +771,7 @@ public class DfsClientConf {
     private final boolean domainSocketDataTraffic;
     private final int shortCircuitStreamsCacheSize;
     private final long shortCircuitStreamsCacheExpiryMs;
+    private final boolean shortCircuitStreamsCacheFrequencyAware;
     private final int shortCircuitSharedMemoryWatcherInterruptCheckMs;
 
     // Short Circuit Read Metrics
@@ -630,6 +782,7 @@ public class DfsClientConf {
     private final int shortCircuitMmapCacheSize;
     private final long shortCircuitMmapCacheExpiryMs;
     private final long shortCircuitMmapCacheRetryTimeout;
+    private final long shortCircuitMmapCacheMaxBytes;
     private final long shortCircuitCacheStaleThresholdMs;
     private final long domainSocketDisableIntervalSeconds;
 
@@ -691,6 +844,9 @@ public class DfsClientConf {
       shortCircuitStreamsCacheExpiryMs = conf.getLong(
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_KEY,
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_DEFAULT);
+      shortCircuitStreamsCacheFrequencyAware = conf.getBoolean(
+          Read.ShortCircuit.STREAMS_CACHE_FREQUENCY_AWARE_KEY,
+          Read.ShortCircuit.STREAMS_CACHE_FREQUENCY_AWARE_DEFAULT);
       shortCircuitMmapEnabled = conf.getBoolean(
           Mmap.ENABLED_KEY,
           Mmap.ENABLED_DEFAULT);
@@ -703,6 +859,9 @@ public class DfsClientConf {
       shortCircuitMmapCacheRetryTimeout = conf.getLong(
           Mmap.RETRY_TIMEOUT_MS_KEY,
           Mmap.RETRY_TIMEOUT_MS_DEFAULT);
+      shortCircuitMmapCacheMaxBytes = conf.getLong(
+          Mmap.CACHE_MAX_BYTES_KEY,
+          Mmap.CACHE_MAX_BYTES_DEFAULT);
       shortCircuitCacheStaleThresholdMs = conf.getLong(
           ShortCircuit.REPLICA_STALE_THRESHOLD_MS_KEY,
           ShortCircuit.REPLICA_STALE_THRESHOLD_MS_DEFAULT);
@@ -786,6 +945,13 @@ public class DfsClientConf {
       return shortCircuitStreamsCacheExpiryMs;
     }
 
+    /**
+     * @return the shortCircuitStreamsCacheFrequencyAware
+     */
+    public boolean isShortCircuitStreamsCacheFrequencyAware() {
+      return shortCircuitStreamsCacheFrequencyAware;
+    }
+
     /**
      * @return the shortCircuitSharedMemoryWatcherInterruptCheckMs
      */
@@ -821,6 +987,13 @@ public class DfsClientConf {
       return shortCircuitMmapCacheRetryTimeout;
     }
 
+    /**
+     * @return the shortCircuitMmapCacheMaxBytes
+     */
+    public long getShortCircuitMmapCacheMaxBytes() {
+      return shortCircuitMmapCacheMaxBytes;
+    }
+
     /**
      * @return the shortCircuitCacheStaleThresholdMs
      */
@@ -848,12 +1021,16 @@ public class DfsClientConf {
           + shortCircuitStreamsCacheSize
           + ", shortCircuitStreamsCacheExpiryMs = "
           + shortCircuitStreamsCacheExpiryMs
+          + ", shortCircuitStreamsCacheFrequencyAware = "
+          + shortCircuitStreamsCacheFrequencyAware
           + ", shortCircuitMmapCacheSize = "
           + shortCircuitMmapCacheSize
           + ", shortCircuitMmapCacheExpiryMs = "
           + shortCircuitMmapCacheExpiryMs
           + ", shortCircuitMmapCacheRetryTimeout = "
           + shortCircuitMmapCacheRetryTimeout
+          + ", shortCircuitMmapCacheMaxBytes = "
+          + shortCircuitMmapCacheMaxBytes
           + ", shortCircuitCacheStaleThresholdMs = "
           + shortCircuitCacheStaleThresholdMs
           + ", socketCacheCapacity = "
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl.metrics;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.MetricsSystem;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
+
+/**
+ * This class maintains the metrics of a short-circuit replica cache.
+ */
+@InterfaceAudience.Private
+@Metrics(about="Short-circuit replica cache", context="dfs")
+public class ShortCircuitCacheMetrics {
+
+  @Metric("Replicas found in the cache")
+  private MutableCounterLong replicaHits;
+  @Metric("Replicas not found in the cache")
+  private MutableCounterLong replicaMisses;
+  @Metric("Replicas evicted from the cache")
+  private MutableCounterLong replicaEvictions;
+  @Metric("Client mmaps of replicas which were already mapped")
+  private MutableCounterLong mmapHits;
+  @Metric("Replicas mapped, each of which faults in the pages it reads")
+  private MutableCounterLong mmapCreates;
+  @Metric("Replicas which could not be mapped")
+  private MutableCounterLong mmapFailures;
+  @Metric("Replicas unmapped while they were evictable")
+  private MutableCounterLong mmapDemotions;
+  @Metric("Bytes mapped by the cache")
+  private MutableGaugeLong mmappedBytes;
+
+  private final String name;
+
+  private ShortCircuitCacheMetrics(String name) {
+    this.name = name;
+  }
+
+  public static ShortCircuitCacheMetrics create(String name) {
+    MetricsSystem ms = DefaultMetricsSystem.instance();
+    return ms.register(name, null, new ShortCircuitCacheMetrics(name));
+  }
+
+  public void incrReplicaHits() {
+    replicaHits.incr();
+  }
+
+  public void incrReplicaMisses() {
+    replicaMisses.incr();
+  }
+
+  public void incrReplicaEvictions() {
+    replicaEvictions.incr();
+  }
+
+  public void incrMmapHits() {
+    mmapHits.incr();
+  }
+
+  public void incrMmapCreates() {
+    mmapCreates.incr();
+  }
+
+  public void incrMmapFailures() {
+    mmapFailures.incr();
+  }
+
+  public void incrMmapDemotions() {
+    mmapDemotions.incr();
+  }
+
+  public void incrMmappedBytes(long delta) {
+    mmappedBytes.incr(delta);
+  }
+
+  public long getReplicaHits() {
+    return replicaHits.value();
+  }
+
+  public long getReplicaMisses() {
+    return replicaMisses.value();
+  }
+
+  public long getReplicaEvictions() {
+    return replicaEvictions.value();
+  }
+
+  public long getMmapHits() {
+    return mmapHits.value();
+  }
+
+  public long getMmapCreates() {
+    return mmapCreates.value();
+  }
+
+  public long getMmapDemotions() {
+    return mmapDemotions.value();
+  }
+
+  public void unregister() {
+    DefaultMetricsSystem.instance().unregisterSource(name);
+  }
+}
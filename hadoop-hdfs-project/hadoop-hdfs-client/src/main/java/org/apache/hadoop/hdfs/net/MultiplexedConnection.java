@@ -0,0 +1,625 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Carries several independent byte streams over one connection to a peer.
+ *
+ * Each frame on the connection is a type byte, a stream id, a length and,
+ * for data frames, that many bytes of payload. Either side may only send as
+ * many bytes on a stream as the other side has granted it: every stream
+ * starts with a window of credit, and the receiver grants more as the bytes
+ * are consumed. So a stream whose reader is slow cannot hold up the others.
+ *
+ * One thread reads frames from the connection and hands them to the
+ * streams, via {@link #run()}. The side which opens the connection opens
+ * the streams; the other side is told of them through a
+ * {@link StreamListener}.
+ */
+@InterfaceAudience.Private
+public class MultiplexedConnection implements Closeable {
+  static final Logger LOG =
+      LoggerFactory.getLogger(MultiplexedConnection.class);
+
+  private static final byte OPEN = 1;
+  private static final byte DATA = 2;
+  private static final byte CLOSE = 3;
+  private static final byte WINDOW = 4;
+
+  /** The largest payload of a data frame. */
+  @VisibleForTesting
+  static final int MAX_FRAME_SIZE = 64 * 1024;
+  private static final int HEADER_SIZE = 9;
+
+  /**
+   * Receives the streams opened by the other side of a connection.
+   */
+  public interface StreamListener {
+    /**
+     * Called on the thread reading the connection, so it should hand the
+     * stream off rather than use it.
+     */
+    void onOpen(Stream stream);
+  }
+
+  private final Peer peer;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private final int window;
+  private final StreamListener listener;
+
+  /** The open streams, by id. Guarded by this. */
+  private final Map<Integer, Stream> streams = new HashMap<>();
+  /** The id of the next stream this side opens. Guarded by this. */
+  private int nextStreamId = 1;
+  /** When the last stream was closed. Guarded by this. */
+  private long idleSince = Time.monotonicNow();
+  /** Guarded by this. */
+  private boolean closed;
+  /** Why the connection failed, if it did. Guarded by this. */
+  private IOException failure;
+
+  /**
+   * @param peer the connection, which is closed with this object.
+   * @param in the stream to read frames from.
+   * @param out the stream to write frames to.
+   * @param window the number of bytes each side may send on a stream before
+   *               the other side grants more.
+   * @param listener receives the streams opened by the other side, or null
+   *                 if the other side may not open streams.
+   */
+  public MultiplexedConnection(Peer peer, InputStream in, OutputStream out,
+      int window, StreamListener listener) {
+    Preconditions.checkArgument(window > 0, "Invalid window %s", window);
+    this.peer = peer;
+    this.in = in instanceof DataInputStream ? (DataInputStream) in :
+        new DataInputStream(new BufferedInputStream(in, MAX_FRAME_SIZE));
+    this.out = new DataOutputStream(
+        new BufferedOutputStream(out, MAX_FRAME_SIZE + HEADER_SIZE));
+    this.window = window;
+    this.listener = listener;
+  }
+
+  public Peer getPeer() {
+    return peer;
+  }
+
+  /**
+   * Read frames from the connection until it is closed or fails.
+   *
+   * If no frame arrives within the read timeout of the peer while no
+   * streams are open, the connection is closed.
+   */
+  public void run() {
+    IOException cause = null;
+    try {
+      while (true) {
+        final byte type;
+        try {
+          type = in.readByte();
+        } catch (SocketTimeoutException e) {
+          if (closeIfIdle()) {
+            return;
+          }
+          continue;
+        }
+        final int id = in.readInt();
+        final int length = in.readInt();
+        switch (type) {
+        case OPEN:
+          receiveOpen(id);
+          break;
+        case DATA:
+          receiveData(id, length);
+          break;
+        case CLOSE:
+          final Stream closing;
+          synchronized (this) {
+            closing = streams.remove(id);
+            updateIdleSince();
+          }
+          if (closing != null) {
+            closing.receiveClose();
+          }
+          break;
+        case WINDOW:
+          final Stream granted = getStream(id);
+          if (granted != null) {
+            granted.grant(length);
+          }
+          break;
+        default:
+          throw new IOException("Unknown frame type " + type + " on " + this);
+        }
+      }
+    } catch (IOException e) {
+      cause = e;
+    } finally {
+      fail(cause != null ? cause :
+          new IOException("Stopped reading " + this));
+    }
+  }
+
+  private void receiveOpen(int id) throws IOException {
+    if (listener == null) {
+      throw new IOException("Unexpected stream " + id + " opened on " + this);
+    }
+    final Stream stream = new Stream(id);
+    synchronized (this) {
+      if (streams.containsKey(id)) {
+        throw new IOException("Stream " + id + " reopened on " + this);
+      }
+      streams.put(id, stream);
+    }
+    listener.onOpen(stream);
+  }
+
+  private void receiveData(int id, int length) throws IOException {
+    if (length < 0 || length > MAX_FRAME_SIZE) {
+      throw new IOException("Invalid frame length " + length + " on " + this);
+    }
+    final byte[] data = new byte[length];
+    in.readFully(data);
+    final Stream stream = getStream(id);
+    // The stream may have been closed here while the data was in flight.
+    if (stream != null) {
+      stream.receive(data);
+    }
+  }
+
+  private synchronized Stream getStream(int id) {
+    return streams.get(id);
+  }
+
+  private synchronized boolean closeIfIdle() {
+    if (!streams.isEmpty()) {
+      return false;
+    }
+    LOG.debug("Closing idle {}", this);
+    closed = true;
+    return true;
+  }
+
+  private void updateIdleSince() {
+    assert Thread.holdsLock(this);
+    if (streams.isEmpty()) {
+      idleSince = Time.monotonicNow();
+    }
+  }
+
+  /**
+   * Open a new stream to the other side.
+   */
+  public Stream openStream() throws IOException {
+    return openStream(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Open a new stream to the other side, unless the connection already
+   * carries the given number of streams.
+   * @return the stream, or null if the connection is full.
+   */
+  public Stream openStream(int maxStreams) throws IOException {
+    final Stream stream;
+    synchronized (this) {
+      if (closed) {
+        throw new IOException(this + " is closed", failure);
+      }
+      if (streams.size() >= maxStreams) {
+        return null;
+      }
+      stream = new Stream(nextStreamId);
+      nextStreamId += 2;
+      streams.put(stream.id, stream);
+    }
+    try {
+      writeFrame(OPEN, stream.id, null, 0, 0, true);
+    } catch (IOException e) {
+      stream.close();
+      throw e;
+    }
+    return stream;
+  }
+
+  private void writeFrame(byte type, int id, byte[] buf, int off, int len,
+      boolean flush) throws IOException {
+    synchronized (out) {
+      out.writeByte(type);
+      out.writeInt(id);
+      out.writeInt(len);
+      if (buf != null) {
+        out.write(buf, off, len);
+      }
+      if (flush) {
+        out.flush();
+      }
+    }
+  }
+
+  private void flush() throws IOException {
+    synchronized (out) {
+      out.flush();
+    }
+  }
+
+  /** @return the number of open streams. */
+  public synchronized int getNumStreams() {
+    return streams.size();
+  }
+
+  /** @return when the last stream was closed, if none are open. */
+  public synchronized long getIdleSince() {
+    return idleSince;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Fail all the streams, and close the connection.
+   */
+  private void fail(IOException cause) {
+    final List<Stream> failed;
+    synchronized (this) {
+      closed = true;
+      if (failure == null) {
+        failure = cause;
+      }
+      failed = new ArrayList<>(streams.values());
+      streams.clear();
+    }
+    for (Stream stream : failed) {
+      stream.fail(cause);
+    }
+    IOUtils.cleanupWithLogger(LOG, peer);
+  }
+
+  @Override
+  public void close() {
+    fail(new IOException(this + " was closed"));
+  }
+
+  @Override
+  public String toString() {
+    return "MultiplexedConnection(" + peer + ")";
+  }
+
+  /**
+   * One of the streams carried by a connection.
+   */
+  public class Stream implements Closeable {
+    private final int id;
+    private final StreamInputStream inputStream = new StreamInputStream();
+    private final StreamOutputStream outputStream = new StreamOutputStream();
+
+    // All guarded by this.
+    private final LinkedList<ByteBuffer> received = new LinkedList<>();
+    private int bufferedBytes;
+    /** The bytes read, which have not been granted back to the sender. */
+    private int consumed;
+    /** The bytes this side may still send. */
+    private int credit = window;
+    private boolean localClosed;
+    private boolean remoteClosed;
+    private IOException failure;
+    private int readTimeout;
+    private int writeTimeout;
+
+    private Stream(int id) {
+      this.id = id;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public MultiplexedConnection getConnection() {
+      return MultiplexedConnection.this;
+    }
+
+    public InputStream getInputStream() {
+      return inputStream;
+    }
+
+    public ReadableByteChannel getInputStreamChannel() {
+      return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+      return outputStream;
+    }
+
+    public synchronized void setReadTimeout(int timeoutMs) {
+      this.readTimeout = timeoutMs;
+    }
+
+    public synchronized void setWriteTimeout(int timeoutMs) {
+      this.writeTimeout = timeoutMs;
+    }
+
+    /**
+     * @return true if either side has closed the stream, or the connection
+     *         failed.
+     */
+    public synchronized boolean isClosed() {
+      return localClosed || remoteClosed;
+    }
+
+    private synchronized void receive(byte[] data) throws IOException {
+      if (bufferedBytes + data.length > window) {
+        throw new IOException("Stream " + id + " on " + getConnection() +
+            " overran its window of " + window + " bytes");
+      }
+      received.add(ByteBuffer.wrap(data));
+      bufferedBytes += data.length;
+      notifyAll();
+    }
+
+    private synchronized void receiveClose() {
+      remoteClosed = true;
+      notifyAll();
+    }
+
+    private synchronized void grant(int bytes) {
+      credit += bytes;
+      notifyAll();
+    }
+
+    private synchronized void fail(IOException cause) {
+      if (!remoteClosed) {
+        failure = cause;
+        remoteClosed = true;
+      }
+      notifyAll();
+    }
+
+    /**
+     * Wait for the condition to become false, or the timeout to pass.
+     */
+    private void await(long deadline, int timeout, String what)
+        throws IOException {
+      assert Thread.holdsLock(this);
+      try {
+        if (timeout <= 0) {
+          wait();
+          return;
+        }
+        final long remaining = deadline - Time.monotonicNow();
+        if (remaining <= 0) {
+          throw new SocketTimeoutException(timeout + " millis timeout " +
+              "while waiting to " + what + " stream " + id + " on " +
+              getConnection());
+        }
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting to " + what + " stream " + id);
+      }
+    }
+
+    /**
+     * Copy received bytes into the buffer.
+     *
+     * @return the number of bytes copied, or -1 at the end of the stream.
+     */
+    private int read(ByteBuffer dst) throws IOException {
+      final int n;
+      int toGrant = 0;
+      synchronized (this) {
+        final long deadline = Time.monotonicNow() + readTimeout;
+        while (received.isEmpty() && !remoteClosed && !localClosed) {
+          await(deadline, readTimeout, "read from");
+        }
+        if (localClosed) {
+          throw new ClosedChannelException();
+        }
+        if (received.isEmpty()) {
+          if (failure != null) {
+            throw new IOException("Failed reading stream " + id, failure);
+          }
+          return -1;
+        }
+        int copied = 0;
+        while (dst.hasRemaining() && !received.isEmpty()) {
+          final ByteBuffer head = received.getFirst();
+          final int len = Math.min(head.remaining(), dst.remaining());
+          final int limit = head.limit();
+          head.limit(head.position() + len);
+          dst.put(head);
+          head.limit(limit);
+          if (!head.hasRemaining()) {
+            received.removeFirst();
+          }
+          copied += len;
+        }
+        n = copied;
+        bufferedBytes -= n;
+        consumed += n;
+        if (consumed >= window / 2 && !remoteClosed) {
+          toGrant = consumed;
+          consumed = 0;
+        }
+      }
+      if (toGrant > 0) {
+        writeFrame(WINDOW, id, null, 0, toGrant, true);
+      }
+      return n;
+    }
+
+    private void write(byte[] buf, int off, int len) throws IOException {
+      while (len > 0) {
+        if (!hasCredit()) {
+          // Send what has been written, so that the other side can read it
+          // and grant more.
+          flush();
+        }
+        final int n = takeCredit(len);
+        writeFrame(DATA, id, buf, off, n, false);
+        off += n;
+        len -= n;
+      }
+    }
+
+    private synchronized boolean hasCredit() {
+      return credit > 0;
+    }
+
+    /**
+     * Wait for credit to send some bytes.
+     *
+     * @return the number of bytes, at most len, which may be sent.
+     */
+    private synchronized int takeCredit(int len) throws IOException {
+      final long deadline = Time.monotonicNow() + writeTimeout;
+      while (credit == 0 && !remoteClosed && !localClosed) {
+        await(deadline, writeTimeout, "write to");
+      }
+      if (localClosed || remoteClosed) {
+        throw new IOException("Stream " + id + " on " + getConnection() +
+            " is closed", failure);
+      }
+      final int n = Math.min(Math.min(len, credit), MAX_FRAME_SIZE);
+      credit -= n;
+      return n;
+    }
+
+    @Override
+    public void close() {
+      final boolean sendClose;
+      synchronized (this) {
+        if (localClosed) {
+          return;
+        }
+        localClosed = true;
+        sendClose = !remoteClosed;
+        received.clear();
+        notifyAll();
+      }
+      synchronized (MultiplexedConnection.this) {
+        streams.remove(id);
+        updateIdleSince();
+      }
+      if (sendClose) {
+        try {
+          writeFrame(CLOSE, id, null, 0, 0, true);
+        } catch (IOException e) {
+          LOG.debug("Failed to close stream {} on {}", id, getConnection(), e);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Stream(" + id + ", " + getConnection() + ")";
+    }
+
+    private class StreamInputStream extends InputStream
+        implements ReadableByteChannel {
+      @Override
+      public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        return Stream.this.read(ByteBuffer.wrap(b, off, len));
+      }
+
+      @Override
+      public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+          return 0;
+        }
+        return Stream.this.read(dst);
+      }
+
+      @Override
+      public int available() {
+        synchronized (Stream.this) {
+          return bufferedBytes;
+        }
+      }
+
+      @Override
+      public boolean isOpen() {
+        return !isClosed();
+      }
+
+      @Override
+      public void close() {
+        Stream.this.close();
+      }
+    }
+
+    private class StreamOutputStream extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        Stream.this.write(b, off, len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        MultiplexedConnection.this.flush();
+      }
+
+      @Override
+      public void close() {
+        Stream.this.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.net.unix.DomainSocket;
+
+/**
+ * Represents a peer that we communicate with over one stream of a
+ * {@link MultiplexedConnection}.
+ *
+ * Any encryption is done by the connection, so this peer has a secure
+ * channel if the connection does.
+ */
+@InterfaceAudience.Private
+public class MultiplexedPeer implements Peer {
+  private final MultiplexedConnection.Stream stream;
+  private final Peer connectionPeer;
+
+  public MultiplexedPeer(MultiplexedConnection.Stream stream) {
+    this.stream = stream;
+    this.connectionPeer = stream.getConnection().getPeer();
+  }
+
+  public MultiplexedConnection.Stream getStream() {
+    return stream;
+  }
+
+  @Override
+  public ReadableByteChannel getInputStreamChannel() {
+    return stream.getInputStreamChannel();
+  }
+
+  @Override
+  public void setReadTimeout(int timeoutMs) {
+    stream.setReadTimeout(timeoutMs);
+  }
+
+  @Override
+  public int getReceiveBufferSize() throws IOException {
+    return connectionPeer.getReceiveBufferSize();
+  }
+
+  @Override
+  public boolean getTcpNoDelay() throws IOException {
+    return connectionPeer.getTcpNoDelay();
+  }
+
+  @Override
+  public void setWriteTimeout(int timeoutMs) {
+    stream.setWriteTimeout(timeoutMs);
+  }
+
+  @Override
+  public boolean isClosed() {
+    return stream.isClosed();
+  }
+
+  @Override
+  public void close() {
+    stream.close();
+  }
+
+  @Override
+  public String getRemoteAddressString() {
+    return connectionPeer.getRemoteAddressString();
+  }
+
+  @Override
+  public String getLocalAddressString() {
+    return connectionPeer.getLocalAddressString();
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return stream.getInputStream();
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return stream.getOutputStream();
+  }
+
+  @Override
+  public boolean isLocal() {
+    return connectionPeer.isLocal();
+  }
+
+  @Override
+  public String toString() {
+    return "MultiplexedPeer(" + stream + ")";
+  }
+
+  @Override
+  public DomainSocket getDomainSocket() {
+    return null;
+  }
+
+  @Override
+  public boolean hasSecureChannel() {
+    return connectionPeer.hasSecureChannel();
+  }
+}
@@ -178,6 +178,17 @@ public interface DataTransferProtocol {
    */
   void requestShortCircuitShm(String clientName) throws IOException;
 
+  /**
+   * Carry several data transfer streams over this connection, each of which
+   * starts with its own operation. The connection can not be used for
+   * anything else afterwards.
+   *
+   * @param clientName       The name of the client.
+   * @param streamWindow     The number of bytes either side may send on a
+   *                         stream before the other side grants more.
+   */
+  void multiplex(String clientName, int streamWindow) throws IOException;
+
   /**
    * Receive a block from a source datanode
    * and then notifies the namenode
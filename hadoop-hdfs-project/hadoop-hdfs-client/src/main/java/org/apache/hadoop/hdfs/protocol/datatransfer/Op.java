@@ -39,6 +39,7 @@ public enum Op {
   RELEASE_SHORT_CIRCUIT_FDS((byte)88),
   REQUEST_SHORT_CIRCUIT_SHM((byte)89),
   BLOCK_GROUP_CHECKSUM((byte)90),
+  MULTIPLEX((byte)91),
   CUSTOM((byte)127);
 
   /** The code for this operation. */
@@ -39,6 +39,7 @@ import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockChecksumP
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockGroupChecksumProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpCopyBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReadBlockProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpMultiplexProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReplaceBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpRequestShortCircuitAccessProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpTransferBlockProto;
@@ -237,6 +238,22 @@ public class Sender implements DataTransferProtocol {
     send(out, Op.REQUEST_SHORT_CIRCUIT_SHM, proto);
   }
 
+  @Override
+  public void multiplex(String clientName, int streamWindow)
+      throws IOException {
+    OpMultiplexProto.Builder builder = OpMultiplexProto.newBuilder().
+        setClientName(clientName).
+        setStreamWindow(streamWindow);
+    SpanId spanId = Tracer.getCurrentSpanId();
+    if (spanId.isValid()) {
+      builder.setTraceInfo(DataTransferTraceInfoProto.newBuilder().
+          setTraceId(spanId.getHigh()).
+          setParentId(spanId.getLow()));
+    }
+    OpMultiplexProto proto = builder.build();
+    send(out, Op.MULTIPLEX, proto);
+  }
+
   @Override
   public void replaceBlock(final ExtendedBlock blk,
       final StorageType storageType,
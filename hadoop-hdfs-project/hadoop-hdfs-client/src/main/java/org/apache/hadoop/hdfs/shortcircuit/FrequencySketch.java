@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.shortcircuit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Estimates how often keys have been accessed recently, in the manner of
+ * TinyLFU.
+ *
+ * The counts are kept in a count-min sketch of 4 bit counters, so they are
+ * capped at 15. Once the number of accesses reaches ten times the capacity,
+ * all counters are halved, so that the estimates favor recent accesses.
+ *
+ * This class is not thread-safe.
+ */
+class FrequencySketch {
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+  private static final int[] SEEDS = {
+      0x97cb3127, 0x8f2b6c35, 0x5b9e2a1d, 0xc3a5c85c};
+
+  private final byte[][] table;
+  private final int mask;
+  private final int sampleSize;
+  private int size;
+
+  /**
+   * @param capacity the number of keys whose frequency is of interest.
+   */
+  FrequencySketch(int capacity) {
+    Preconditions.checkArgument(capacity > 0);
+    int width = Integer.highestOneBit(Math.max(16, capacity * 4) - 1) << 1;
+    this.table = new byte[DEPTH][width];
+    this.mask = width - 1;
+    this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * capacity);
+  }
+
+  private int index(int hash, int row) {
+    int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  /** Record an access to the key. */
+  void increment(Object key) {
+    final int hash = key.hashCode();
+    boolean added = false;
+    for (int i = 0; i < DEPTH; i++) {
+      final int index = index(hash, i);
+      if (table[i][index] < MAX_COUNT) {
+        table[i][index]++;
+        added = true;
+      }
+    }
+    if (added && ++size >= sampleSize) {
+      reset();
+    }
+  }
+
+  /** @return the estimated number of recent accesses to the key. */
+  int frequency(Object key) {
+    final int hash = key.hashCode();
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < DEPTH; i++) {
+      frequency = Math.min(frequency, table[i][index(hash, i)]);
+    }
+    return frequency;
+  }
+
+  /** Halve all counters. */
+  private void reset() {
+    for (byte[] row : table) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] >>= 1;
+      }
+    }
+    size /= 2;
+  }
+}
@@ -30,6 +30,7 @@ import java.util.NoSuchElementException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -38,6 +39,7 @@ import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.ExtendedBlockId;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf.ShortCircuitConf;
+import org.apache.hadoop.hdfs.client.impl.metrics.ShortCircuitCacheMetrics;
 import org.apache.hadoop.hdfs.net.DomainPeer;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.datatransfer.Sender;
@@ -127,6 +129,7 @@ public class ShortCircuitCache implements Closeable {
                 StringUtils.getStackTrace(Thread.currentThread()));
           }
           purge(replica);
+          metrics.incrReplicaEvictions();
           numPurged++;
         }
 
@@ -329,6 +332,26 @@ public class ShortCircuitCache implements Closeable {
    */
   private final DfsClientShmManager shmManager;
 
+  /**
+   * Number of bytes mapped by the caches of this process, not counting the
+   * replicas which the DataNode has cached in memory.
+   */
+  private static final AtomicLong MMAPPED_BYTES = new AtomicLong();
+
+  /**
+   * Maximum number of bytes mapped by the caches of this process, or 0 if
+   * there is no limit.
+   */
+  private final long maxMmappedBytes;
+
+  /**
+   * How often the replicas have been used recently, or null if the cache is
+   * not frequency aware.
+   */
+  private final FrequencySketch frequencySketch;
+
+  private final ShortCircuitCacheMetrics metrics;
+
   public static ShortCircuitCache fromConf(ShortCircuitConf conf) {
     return new ShortCircuitCache(
         conf.getShortCircuitStreamsCacheSize(),
@@ -337,12 +360,23 @@ public class ShortCircuitCache implements Closeable {
         conf.getShortCircuitMmapCacheExpiryMs(),
         conf.getShortCircuitMmapCacheRetryTimeout(),
         conf.getShortCircuitCacheStaleThresholdMs(),
-        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs());
+        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs(),
+        conf.isShortCircuitStreamsCacheFrequencyAware(),
+        conf.getShortCircuitMmapCacheMaxBytes());
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, shmInterruptCheckMs, false, 0);
+  }
+
+  public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
+      int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
+      long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs,
+      boolean frequencyAware, long maxMmappedBytes) {
     Preconditions.checkArgument(maxTotalSize >= 0);
     this.maxTotalSize = maxTotalSize;
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0);
@@ -353,6 +387,12 @@ public class ShortCircuitCache implements Closeable {
     this.maxEvictableMmapedLifespanMs = maxEvictableMmapedLifespanMs;
     this.mmapRetryTimeoutMs = mmapRetryTimeoutMs;
     this.staleThresholdMs = staleThresholdMs;
+    this.frequencySketch = frequencyAware ?
+        new FrequencySketch(Math.max(1, maxTotalSize)) : null;
+    Preconditions.checkArgument(maxMmappedBytes >= 0);
+    this.maxMmappedBytes = maxMmappedBytes;
+    this.metrics = ShortCircuitCacheMetrics.create("ShortCircuitCache-" +
+        Integer.toHexString(System.identityHashCode(this)));
     DfsClientShmManager shmManager = null;
     if ((shmInterruptCheckMs > 0) &&
         (DomainSocketWatcher.getLoadingFailureReason() == null)) {
@@ -503,14 +543,16 @@ public class ShortCircuitCache implements Closeable {
       evictionTimeNs = (Long)eldestKey;
       long evictionTimeMs =
           TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
+      ShortCircuitReplica replica;
       if (evictionTimeMs + maxEvictableMmapedLifespanMs >= now) {
         if (evictableMmapped.size() < maxEvictableMmapedSize) {
           break;
         }
         needMoreSpace = true;
+        replica = chooseEvictable(evictableMmapped, false);
+      } else {
+        replica = (ShortCircuitReplica)evictableMmapped.get(eldestKey);
       }
-      ShortCircuitReplica replica = (ShortCircuitReplica)evictableMmapped.get(
-          eldestKey);
       if (LOG.isTraceEnabled()) {
         String rationale = needMoreSpace ? "because we need more space" :
             "because it's too old";
@@ -518,14 +560,84 @@ public class ShortCircuitCache implements Closeable {
             rationale + ": " +
             StringUtils.getStackTrace(Thread.currentThread()));
       }
-      removeEvictable(replica, evictableMmapped);
-      munmap(replica);
-      insertEvictable(evictionTimeNs, replica, evictable);
+      demote(replica);
+      numDemoted++;
+    }
+    // Unmap more replicas if the process maps too many bytes.
+    while (maxMmappedBytes > 0 && MMAPPED_BYTES.get() > maxMmappedBytes) {
+      ShortCircuitReplica replica = chooseEvictable(evictableMmapped, true);
+      if (replica == null) {
+        break;
+      }
+      LOG.trace("demoteOldEvictable: demoting {} because {} bytes are mapped",
+          replica, MMAPPED_BYTES.get());
+      demote(replica);
       numDemoted++;
     }
     return numDemoted;
   }
 
+  /**
+   * Unmap an evictable replica, and move it into the regular eviction map.
+   *
+   * You must hold the cache lock while calling this function.
+   *
+   * @param replica  The replica to demote.
+   */
+  private void demote(ShortCircuitReplica replica) {
+    Long evictionTimeNs = replica.getEvictableTimeNs();
+    removeEvictable(replica, evictableMmapped);
+    munmap(replica);
+    insertEvictable(evictionTimeNs, replica, evictable);
+    metrics.incrMmapDemotions();
+  }
+
+  /**
+   * Choose the replica to evict from an eviction map.
+   *
+   * This is the least recently used replica, unless the cache is frequency
+   * aware and the most recently used replica has been used less often.  So
+   * once the cache is full, a replica stays in it only if it is used more
+   * often than the replica it would displace.
+   *
+   * You must hold the cache lock while calling this function.
+   *
+   * @param map          The eviction map.
+   * @param chargedOnly  Only consider replicas whose mapped bytes count
+   *                     against the limit of the process.
+   * @return             The replica to evict, or null if there is none.
+   */
+  private ShortCircuitReplica chooseEvictable(LinkedMap map,
+      boolean chargedOnly) {
+    if (map.isEmpty()) {
+      return null;
+    }
+    ShortCircuitReplica eldest = null;
+    for (Object key = map.firstKey(); key != null; key = map.nextKey(key)) {
+      ShortCircuitReplica replica = (ShortCircuitReplica)map.get(key);
+      if (!chargedOnly || replica.chargedMmapBytes > 0) {
+        eldest = replica;
+        break;
+      }
+    }
+    if (eldest == null || frequencySketch == null) {
+      return eldest;
+    }
+    ShortCircuitReplica newest = null;
+    for (Object key = map.lastKey(); key != null; key = map.previousKey(key)) {
+      ShortCircuitReplica replica = (ShortCircuitReplica)map.get(key);
+      if (!chargedOnly || replica.chargedMmapBytes > 0) {
+        newest = replica;
+        break;
+      }
+    }
+    if (frequencySketch.frequency(newest.key) <
+        frequencySketch.frequency(eldest.key)) {
+      return newest;
+    }
+    return eldest;
+  }
+
   /**
    * Trim the eviction lists.
    */
@@ -539,15 +651,9 @@ public class ShortCircuitCache implements Closeable {
       if (evictableSize + evictableMmappedSize <= maxTotalSize) {
         return;
       }
-      ShortCircuitReplica replica;
-      try {
-        if (evictableSize == 0) {
-          replica = (ShortCircuitReplica)evictableMmapped.get(evictableMmapped
-              .firstKey());
-        } else {
-          replica = (ShortCircuitReplica)evictable.get(evictable.firstKey());
-        }
-      } catch (NoSuchElementException e) {
+      ShortCircuitReplica replica = chooseEvictable(
+          evictableSize == 0 ? evictableMmapped : evictable, false);
+      if (replica == null) {
         break;
       }
       if (LOG.isTraceEnabled()) {
@@ -555,6 +661,7 @@ public class ShortCircuitCache implements Closeable {
             StringUtils.getStackTrace(Thread.currentThread()));
       }
       purge(replica);
+      metrics.incrReplicaEvictions();
     }
   }
 
@@ -568,6 +675,39 @@ public class ShortCircuitCache implements Closeable {
     outstandingMmapCount--;
   }
 
+  /**
+   * Account for a new mmap of a replica.
+   *
+   * You must hold the cache lock while calling this function.
+   *
+   * @param replica  The replica which was mapped.
+   * @param mmap     Its mmap.
+   */
+  private void chargeMmap(ShortCircuitReplica replica, MappedByteBuffer mmap) {
+    metrics.incrMmappedBytes(mmap.capacity());
+    // The pages of replicas which the DataNode cached are locked in memory,
+    // so mapping them does not take any memory from others.
+    Slot slot = replica.getSlot();
+    if (slot == null || !slot.isAnchorable()) {
+      replica.chargedMmapBytes = mmap.capacity();
+      MMAPPED_BYTES.addAndGet(replica.chargedMmapBytes);
+    }
+  }
+
+  /**
+   * Account for the release of the mmap of a replica.
+   *
+   * You must hold the cache lock while calling this function.
+   *
+   * @param replica  The replica which is being unmapped.
+   * @param mmap     Its mmap.
+   */
+  void releaseMmap(ShortCircuitReplica replica, MappedByteBuffer mmap) {
+    metrics.incrMmappedBytes(-mmap.capacity());
+    MMAPPED_BYTES.addAndGet(-replica.chargedMmapBytes);
+    replica.chargedMmapBytes = 0;
+  }
+
   /**
    * Remove a replica from an evictable map.
    *
@@ -699,7 +839,16 @@ public class ShortCircuitCache implements Closeable {
           }
         }
       }
-      if (info != null) return info;
+      if (frequencySketch != null) {
+        frequencySketch.increment(key);
+      }
+      if (info != null) {
+        if (info.getReplica() != null) {
+          metrics.incrReplicaHits();
+        }
+        return info;
+      }
+      metrics.incrReplicaMisses();
       // We need to load the replica ourselves.
       newWaitable = new Waitable<>(lock.newCondition());
       replicaInfoMap.put(key, newWaitable);
@@ -822,6 +971,7 @@ public class ShortCircuitCache implements Closeable {
     try {
       while (replica.mmapData != null) {
         if (replica.mmapData instanceof MappedByteBuffer) {
+          metrics.incrMmapHits();
           ref(replica);
           MappedByteBuffer mmap = (MappedByteBuffer)replica.mmapData;
           return new ClientMmap(replica, mmap, anchored);
@@ -852,14 +1002,20 @@ public class ShortCircuitCache implements Closeable {
     lock.lock();
     try {
       if (map == null) {
+        metrics.incrMmapFailures();
         replica.mmapData = Time.monotonicNow();
         newCond.signalAll();
         return null;
       } else {
+        metrics.incrMmapCreates();
         outstandingMmapCount++;
         replica.mmapData = map;
+        chargeMmap(replica, map);
         ref(replica);
         newCond.signalAll();
+        if (maxMmappedBytes > 0 && MMAPPED_BYTES.get() > maxMmappedBytes) {
+          demoteOldEvictableMmaped(Time.monotonicNow());
+        }
         return new ClientMmap(replica, map, anchored);
       }
     } finally {
@@ -932,6 +1088,7 @@ public class ShortCircuitCache implements Closeable {
           + "to terminate", e);
     }
     IOUtilsClient.cleanup(LOG, shmManager);
+    metrics.unregister();
   }
 
   @VisibleForTesting // ONLY for testing
@@ -1029,6 +1186,11 @@ public class ShortCircuitCache implements Closeable {
     releaserExecutor.execute(new SlotReleaser(slot));
   }
 
+  @VisibleForTesting
+  public ShortCircuitCacheMetrics getMetrics() {
+    return metrics;
+  }
+
   @VisibleForTesting
   public DfsClientShmManager getDfsClientShmManager() {
     return shmManager;
@@ -94,6 +94,14 @@ public class ShortCircuitReplica {
    */
   Object mmapData;
 
+  /**
+   * The number of mapped bytes counted against the limit of the process, or 0
+   * if the replica is not mapped or the DataNode has cached it in memory.
+   *
+   * Protected by the cache lock.
+   */
+  long chargedMmapBytes = 0;
+
   /**
    * True if this replica has been purged from the cache; false otherwise.
    *
@@ -220,6 +228,7 @@ public class ShortCircuitReplica {
    */
   void munmap() {
     MappedByteBuffer mmap = (MappedByteBuffer)mmapData;
+    cache.releaseMmap(this, mmap);
     NativeIO.POSIX.munmap(mmap);
     mmapData = null;
   }
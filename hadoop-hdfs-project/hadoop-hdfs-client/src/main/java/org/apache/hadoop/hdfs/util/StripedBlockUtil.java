@@ -85,12 +85,19 @@ public class StripedBlockUtil {
     private final int bytesRead;
     private final boolean isShortCircuit;
     private final int networkDistance;
+    private final long readTimeNanos;
 
     public BlockReadStats(int numBytesRead, boolean shortCircuit,
         int distance) {
+      this(numBytesRead, shortCircuit, distance, 0);
+    }
+
+    public BlockReadStats(int numBytesRead, boolean shortCircuit,
+        int distance, long elapsedNanos) {
       bytesRead = numBytesRead;
       isShortCircuit = shortCircuit;
       networkDistance = distance;
+      readTimeNanos = elapsedNanos;
     }
 
     public int getBytesRead() {
@@ -105,6 +112,13 @@ public class StripedBlockUtil {
       return networkDistance;
     }
 
+    /**
+     * @return the time spent on the read in nanoseconds, or 0 if unknown.
+     */
+    public long getReadTimeNanos() {
+      return readTimeNanos;
+    }
+
     @Override
     public String toString() {
       final StringBuilder sb = new StringBuilder();
@@ -113,6 +127,8 @@ public class StripedBlockUtil {
       sb.append("isShortCircuit=").append(isShortCircuit);
       sb.append(',');
       sb.append("networkDistance=").append(networkDistance);
+      sb.append(',');
+      sb.append("readTimeNanos=").append(readTimeNanos);
       return sb.toString();
     }
   }
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the latency of striped chunk reads per source DataNode and decides
+ * when an outstanding read should be hedged by an additional parity read.
+ * <p>
+ * Every sample is normalized to nanoseconds per byte so that reads of
+ * different lengths (a full cell, a partial last cell, a reconstruction
+ * buffer) can be compared with each other. Two views are kept:
+ * <ul>
+ *   <li>an exponentially weighted moving average per DataNode, used to rank
+ *   candidate sources when an extra read has to be started;</li>
+ *   <li>a fixed-size window of the most recent samples across all DataNodes,
+ *   used to estimate the latency percentile a healthy read should finish
+ *   within.</li>
+ * </ul>
+ * DataNodes reported as slow by an external detector (e.g. the DataNode peer
+ * metrics outlier detection) are always ranked behind the others.
+ * <p>
+ * This class is thread safe.
+ */
+@InterfaceAudience.Private
+public class StripedReadLatencyTracker {
+
+  /** Smoothing factor of the per DataNode moving average. */
+  static final double EWMA_ALPHA = 0.2;
+
+  /** Number of recent samples used to compute the latency percentile. */
+  static final int WINDOW_SIZE = 256;
+
+  /** Minimum number of samples required before hedging is attempted. */
+  static final int MIN_SAMPLES = 16;
+
+  private final double percentile;
+  private final long minDelayMillis;
+
+  private final ConcurrentMap<String, Double> nodeLatency =
+      new ConcurrentHashMap<>();
+  private volatile Set<String> slowNodes = Collections.emptySet();
+
+  private final double[] window = new double[WINDOW_SIZE];
+  private int windowPos = 0;
+  private int windowCount = 0;
+
+  /**
+   * @param percentile the latency percentile, in (0, 100], a read is allowed
+   *                   to reach before a hedged read is started.
+   * @param minDelayMillis the lower bound of the hedging delay, which avoids
+   *                       hedging reads that are merely a little slower
+   *                       than average.
+   */
+  public StripedReadLatencyTracker(double percentile, long minDelayMillis) {
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100,
+        "Invalid percentile %s", percentile);
+    Preconditions.checkArgument(minDelayMillis >= 0,
+        "Invalid minimum hedging delay %s", minDelayMillis);
+    this.percentile = percentile;
+    this.minDelayMillis = minDelayMillis;
+  }
+
+  /**
+   * Record a completed read.
+   *
+   * @param node the name of the source DataNode.
+   * @param stats the statistics returned by the read.
+   */
+  public void addSample(String node, StripedBlockUtil.BlockReadStats stats) {
+    if (stats != null) {
+      addSample(node, stats.getBytesRead(), stats.getReadTimeNanos());
+    }
+  }
+
+  /**
+   * Record a completed read.
+   *
+   * @param node the name of the source DataNode.
+   * @param bytes number of bytes read.
+   * @param elapsedNanos the time taken by the read.
+   */
+  public void addSample(String node, long bytes, long elapsedNanos) {
+    if (node == null || bytes <= 0 || elapsedNanos <= 0) {
+      return;
+    }
+    final double sample = (double) elapsedNanos / bytes;
+    nodeLatency.merge(node, sample,
+        (old, cur) -> old + EWMA_ALPHA * (cur - old));
+    synchronized (window) {
+      window[windowPos] = sample;
+      windowPos = (windowPos + 1) % WINDOW_SIZE;
+      if (windowCount < WINDOW_SIZE) {
+        windowCount++;
+      }
+    }
+  }
+
+  /**
+   * Replace the set of DataNodes which are known to be slow.
+   */
+  public void setSlowNodes(Collection<String> nodes) {
+    slowNodes = nodes == null || nodes.isEmpty() ?
+        Collections.<String>emptySet() :
+        Collections.unmodifiableSet(new HashSet<>(nodes));
+  }
+
+  /**
+   * @return true if the given DataNode is known to be slow, either through
+   * the external detector or because its average latency is above the
+   * hedging percentile.
+   */
+  public boolean isSlow(String node) {
+    if (slowNodes.contains(node)) {
+      return true;
+    }
+    final Double latency = nodeLatency.get(node);
+    final double threshold = getPercentileNanosPerByte();
+    return latency != null && !Double.isNaN(threshold) && latency > threshold;
+  }
+
+  /**
+   * @return the moving average latency of the given DataNode in nanoseconds
+   * per byte, or NaN if no read from it has been recorded yet.
+   */
+  public double getAverageNanosPerByte(String node) {
+    final Double latency = nodeLatency.get(node);
+    return latency == null ? Double.NaN : latency;
+  }
+
+  /**
+   * @return the configured latency percentile over the recent samples, in
+   * nanoseconds per byte, or NaN if there are not enough samples yet.
+   */
+  public double getPercentileNanosPerByte() {
+    final double[] sorted;
+    synchronized (window) {
+      if (windowCount < MIN_SAMPLES) {
+        return Double.NaN;
+      }
+      sorted = Arrays.copyOf(window, windowCount);
+    }
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+  }
+
+  /**
+   * Get how long a read of the given length may stay outstanding before a
+   * hedged read should be started for it.
+   *
+   * @param bytes the number of bytes the read requests.
+   * @return the hedging delay in milliseconds, or -1 if there is not enough
+   * history to decide, in which case the caller should not hedge.
+   */
+  public long getHedgeDelayMillis(long bytes) {
+    final double threshold = getPercentileNanosPerByte();
+    if (Double.isNaN(threshold) || bytes <= 0) {
+      return -1;
+    }
+    final long delay = (long) Math.ceil(threshold * bytes / 1000000);
+    return Math.max(minDelayMillis, delay);
+  }
+
+  /**
+   * Compare two DataNodes by how fast they are expected to serve a read.
+   * Slow nodes come last, nodes without history come before nodes with a
+   * higher average latency than the median.
+   */
+  public int compare(String node1, String node2) {
+    final boolean slow1 = slowNodes.contains(node1);
+    final boolean slow2 = slowNodes.contains(node2);
+    if (slow1 != slow2) {
+      return slow1 ? 1 : -1;
+    }
+    return Double.compare(expectedLatency(node1), expectedLatency(node2));
+  }
+
+  private double expectedLatency(String node) {
+    final Double latency = nodeLatency.get(node);
+    if (latency != null) {
+      return latency;
+    }
+    // An unknown node is assumed to be as fast as the median read.
+    final double median;
+    synchronized (window) {
+      if (windowCount == 0) {
+        return 0;
+      }
+      final double[] sorted = Arrays.copyOf(window, windowCount);
+      Arrays.sort(sorted);
+      median = sorted[sorted.length / 2];
+    }
+    return median;
+  }
+
+  @VisibleForTesting
+  int getNumSamples() {
+    synchronized (window) {
+      return windowCount;
+    }
+  }
+
+  @VisibleForTesting
+  Set<String> getSlowNodes() {
+    return slowNodes;
+  }
+}
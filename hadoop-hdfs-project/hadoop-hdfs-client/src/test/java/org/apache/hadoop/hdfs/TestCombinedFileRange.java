@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test {@link CombinedFileRange}.
+ */
+public class TestCombinedFileRange {
+
+  @Test
+  public void testMergeNearbyRanges() {
+    FileRange a = new FileRange(0, 100);
+    FileRange b = new FileRange(150, 50);
+    FileRange c = new FileRange(1000, 10);
+    List<CombinedFileRange> merged = CombinedFileRange.mergeSortedRanges(
+        Arrays.asList(a, b, c), 100, 1024);
+    assertEquals(2, merged.size());
+    assertEquals(0, merged.get(0).getOffset());
+    assertEquals(200, merged.get(0).getLength());
+    assertEquals(Arrays.asList(a, b), merged.get(0).getRanges());
+    assertEquals(1000, merged.get(1).getOffset());
+    assertEquals(10, merged.get(1).getLength());
+    assertSame(c, merged.get(1).getRanges().get(0));
+  }
+
+  @Test
+  public void testMergeOverlappingRanges() {
+    FileRange a = new FileRange(0, 100);
+    FileRange b = new FileRange(10, 20);
+    FileRange c = new FileRange(90, 30);
+    List<CombinedFileRange> merged = CombinedFileRange.mergeSortedRanges(
+        Arrays.asList(a, b, c), 0, 1024);
+    assertEquals(1, merged.size());
+    assertEquals(120, merged.get(0).getLength());
+    assertEquals(3, merged.get(0).getRanges().size());
+  }
+
+  @Test
+  public void testMergedSizeIsLimited() {
+    FileRange a = new FileRange(0, 600);
+    FileRange b = new FileRange(600, 600);
+    FileRange c = new FileRange(1200, 2000);
+    List<CombinedFileRange> merged = CombinedFileRange.mergeSortedRanges(
+        Arrays.asList(a, b, c), 100, 1024);
+    assertEquals(3, merged.size());
+    // A single range larger than the limit is still read at once.
+    assertEquals(2000, merged.get(2).getLength());
+  }
+}
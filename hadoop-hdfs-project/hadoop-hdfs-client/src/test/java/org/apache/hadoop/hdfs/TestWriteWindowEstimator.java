@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test {@link WriteWindowEstimator}.
+ */
+public class TestWriteWindowEstimator {
+  private static final long MS = 1000000L;
+  private static final int PACKET = 64 * 1024;
+
+  /**
+   * Ack packets at a steady rate.
+   * @return the time of the last ack
+   */
+  private static long ack(WriteWindowEstimator estimator, long start,
+      int packets, long intervalNanos, long rttNanos) {
+    long now = start;
+    for (int i = 0; i < packets; i++) {
+      now += intervalNanos;
+      estimator.onAck(now, rttNanos, PACKET);
+    }
+    return now;
+  }
+
+  @Test
+  public void testWindowCoversBandwidthDelayProduct() {
+    WriteWindowEstimator estimator = new WriteWindowEstimator(8, 1024);
+    assertEquals(8, estimator.getWindow());
+    // One packet every 0.1ms with a 10ms round trip: 100 packets in flight.
+    ack(estimator, 0, 1000, MS / 10, 10 * MS);
+    assertEquals(10 * MS, estimator.getMinRttNanos());
+    assertEquals(200, estimator.getWindow());
+  }
+
+  @Test
+  public void testWindowIsBounded() {
+    WriteWindowEstimator estimator = new WriteWindowEstimator(80, 128);
+    long now = ack(estimator, 0, 1000, MS / 10, 10 * MS);
+    assertEquals(128, estimator.getWindow());
+    // A fast pipeline with a short round trip needs few packets.
+    estimator.reset();
+    ack(estimator, now, 1000, MS, MS);
+    assertEquals(80, estimator.getWindow());
+  }
+
+  @Test
+  public void testStaleMinimumRttExpires() {
+    WriteWindowEstimator estimator = new WriteWindowEstimator(1, 1024);
+    long now = ack(estimator, 0, 10, MS, MS);
+    assertEquals(MS, estimator.getMinRttNanos());
+    now = ack(estimator, now, 10, MS, 5 * MS);
+    assertEquals(MS, estimator.getMinRttNanos());
+    ack(estimator, now + WriteWindowEstimator.FILTER_NANOS, 10, MS, 5 * MS);
+    assertEquals(5 * MS, estimator.getMinRttNanos());
+  }
+}
@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Daemon;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test {@link MultiplexedConnection}.
+ */
+public class TestMultiplexedConnection {
+  private static final int WINDOW = 4096;
+
+  private MultiplexedConnection client;
+  private MultiplexedConnection server;
+
+  @After
+  public void tearDown() {
+    IOUtils.cleanupWithLogger(null, client, server);
+  }
+
+  /**
+   * Connect a client and a server over a local socket.
+   */
+  private void connect(MultiplexedConnection.StreamListener listener,
+      int clientReadTimeout) throws IOException {
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.bind(new InetSocketAddress("localhost", 0));
+      SocketChannel clientChannel =
+          SocketChannel.open(serverChannel.getLocalAddress());
+      Peer clientPeer = new NioInetPeer(clientChannel.socket());
+      Peer serverPeer = new NioInetPeer(serverChannel.accept().socket());
+      clientPeer.setReadTimeout(clientReadTimeout);
+      client = new MultiplexedConnection(clientPeer,
+          clientPeer.getInputStream(), clientPeer.getOutputStream(), WINDOW,
+          null);
+      server = new MultiplexedConnection(serverPeer,
+          serverPeer.getInputStream(), serverPeer.getOutputStream(), WINDOW,
+          listener);
+    } finally {
+      serverChannel.close();
+    }
+    start(client);
+    start(server);
+  }
+
+  private static void start(final MultiplexedConnection connection) {
+    new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        connection.run();
+      }
+    }).start();
+  }
+
+  /** Echoes every stream back until the client closes it. */
+  private static final MultiplexedConnection.StreamListener ECHO =
+      new MultiplexedConnection.StreamListener() {
+        @Override
+        public void onOpen(final MultiplexedConnection.Stream stream) {
+          new Daemon(new Runnable() {
+            @Override
+            public void run() {
+              byte[] buf = new byte[1000];
+              try {
+                InputStream in = stream.getInputStream();
+                OutputStream out = stream.getOutputStream();
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                  out.write(buf, 0, n);
+                  out.flush();
+                }
+              } catch (IOException e) {
+                // The stream failed.
+              } finally {
+                stream.close();
+              }
+            }
+          }).start();
+        }
+      };
+
+  @Test(timeout = 60000)
+  public void testStreamsAreIndependent() throws Exception {
+    connect(ECHO, 0);
+    final int numStreams = 4;
+    final byte[][] data = new byte[numStreams][];
+    final MultiplexedConnection.Stream[] streams =
+        new MultiplexedConnection.Stream[numStreams];
+    Random random = new Random(0);
+    for (int i = 0; i < numStreams; i++) {
+      // More than a window each, so that the echo waits for the reader.
+      data[i] = new byte[3 * WINDOW + i];
+      random.nextBytes(data[i]);
+      streams[i] = client.openStream();
+    }
+    assertEquals(numStreams, client.getNumStreams());
+
+    Thread[] writers = new Thread[numStreams];
+    for (int i = 0; i < numStreams; i++) {
+      final int index = i;
+      writers[i] = new Daemon(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            OutputStream out = streams[index].getOutputStream();
+            out.write(data[index]);
+            out.flush();
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      writers[i].start();
+    }
+    // Read the streams in reverse order.
+    for (int i = numStreams - 1; i >= 0; i--) {
+      byte[] echoed = new byte[data[i].length];
+      new DataInputStream(streams[i].getInputStream()).readFully(echoed);
+      assertArrayEquals(data[i], echoed);
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    // Reads through the channel.
+    ByteBuffer buf = ByteBuffer.allocate(10);
+    streams[0].getOutputStream().write(new byte[10]);
+    streams[0].getOutputStream().flush();
+    while (buf.hasRemaining()) {
+      assertTrue(streams[0].getInputStreamChannel().read(buf) > 0);
+    }
+
+    for (MultiplexedConnection.Stream stream : streams) {
+      stream.close();
+    }
+    assertEquals(0, client.getNumStreams());
+  }
+
+  @Test(timeout = 60000)
+  public void testWriteWaitsForWindow() throws Exception {
+    // The server never reads its streams.
+    connect(new MultiplexedConnection.StreamListener() {
+      @Override
+      public void onOpen(MultiplexedConnection.Stream stream) {
+      }
+    }, 0);
+    MultiplexedConnection.Stream stream = client.openStream();
+    stream.setWriteTimeout(500);
+    OutputStream out = stream.getOutputStream();
+    out.write(new byte[WINDOW]);
+    out.flush();
+    try {
+      out.write(1);
+      fail("Wrote more than the window");
+    } catch (SocketTimeoutException e) {
+      GenericTestUtils.assertExceptionContains("timeout", e);
+    }
+    // Other streams are not held up.
+    MultiplexedConnection.Stream other = client.openStream();
+    other.getOutputStream().write(new byte[WINDOW]);
+    other.getOutputStream().flush();
+  }
+
+  @Test(timeout = 60000)
+  public void testReadTimeout() throws Exception {
+    connect(ECHO, 0);
+    MultiplexedConnection.Stream stream = client.openStream();
+    stream.setReadTimeout(100);
+    try {
+      stream.getInputStream().read();
+      fail("Read from an empty stream");
+    } catch (SocketTimeoutException e) {
+      GenericTestUtils.assertExceptionContains("timeout", e);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testOpenStreamRespectsLimit() throws Exception {
+    connect(ECHO, 0);
+    final int maxStreams = 2;
+    final int numOpeners = 8;
+    final AtomicInteger opened = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] openers = new Thread[numOpeners];
+    for (int i = 0; i < numOpeners; i++) {
+      openers[i] = new Daemon(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            if (client.openStream(maxStreams) != null) {
+              opened.incrementAndGet();
+            }
+          } catch (Exception e) {
+            // Counted as not opened.
+          }
+        }
+      });
+      openers[i].start();
+    }
+    start.countDown();
+    for (Thread opener : openers) {
+      opener.join();
+    }
+    assertEquals(maxStreams, opened.get());
+    assertEquals(maxStreams, client.getNumStreams());
+    assertNull(client.openStream(maxStreams));
+  }
+
+  @Test(timeout = 60000)
+  public void testRemoteClose() throws Exception {
+    connect(new MultiplexedConnection.StreamListener() {
+      @Override
+      public void onOpen(MultiplexedConnection.Stream stream) {
+        stream.close();
+      }
+    }, 0);
+    MultiplexedConnection.Stream stream = client.openStream();
+    assertEquals(-1, stream.getInputStream().read());
+    assertTrue(stream.isClosed());
+    try {
+      stream.getOutputStream().write(1);
+      fail("Wrote to a closed stream");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("closed", e);
+    }
+    assertEquals(0, client.getNumStreams());
+  }
+
+  @Test(timeout = 60000)
+  public void testConnectionFailure() throws Exception {
+    connect(ECHO, 0);
+    MultiplexedConnection.Stream stream = client.openStream();
+    server.close();
+    try {
+      stream.getInputStream().read();
+      fail("Read from a failed connection");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Failed reading stream", e);
+    }
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return client.isClosed();
+      }
+    }, 10, 10000);
+    try {
+      client.openStream();
+      fail("Opened a stream on a closed connection");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("is closed", e);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testIdleConnectionIsClosed() throws Exception {
+    connect(ECHO, 100);
+    MultiplexedConnection.Stream stream = client.openStream();
+    Thread.sleep(300);
+    // An open stream keeps the connection open.
+    assertTrue(!client.isClosed());
+    stream.close();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return client.isClosed() && server.isClosed();
+      }
+    }, 10, 10000);
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.shortcircuit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hdfs.ExtendedBlockId;
+import org.junit.Test;
+
+/**
+ * Test {@link FrequencySketch}.
+ */
+public class TestFrequencySketch {
+
+  private static ExtendedBlockId key(long blockId) {
+    return new ExtendedBlockId(blockId, "test_bp1");
+  }
+
+  @Test
+  public void testFrequency() {
+    FrequencySketch sketch = new FrequencySketch(64);
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(key(1));
+    }
+    sketch.increment(key(2));
+    assertEquals(5, sketch.frequency(key(1)));
+    assertEquals(1, sketch.frequency(key(2)));
+    assertEquals(0, sketch.frequency(key(3)));
+  }
+
+  @Test
+  public void testFrequencyIsCapped() {
+    FrequencySketch sketch = new FrequencySketch(64);
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(key(1));
+    }
+    assertEquals(15, sketch.frequency(key(1)));
+  }
+
+  @Test
+  public void testOldAccessesAreForgotten() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    for (int i = 0; i < 8; i++) {
+      sketch.increment(key(1));
+    }
+    // After ten times the capacity of accesses, the counters are halved.
+    for (int i = 0; i < 160; i++) {
+      sketch.increment(key(100 + i));
+    }
+    assertTrue(sketch.frequency(key(1)) < 8);
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link StripedReadLatencyTracker}.
+ */
+public class TestStripedReadLatencyTracker {
+
+  @Test
+  public void testNoHedgingWithoutHistory() {
+    StripedReadLatencyTracker tracker = new StripedReadLatencyTracker(95, 10);
+    assertEquals(-1, tracker.getHedgeDelayMillis(1024 * 1024));
+    for (int i = 0; i < StripedReadLatencyTracker.MIN_SAMPLES - 1; i++) {
+      tracker.addSample("dn1", 1024, 1024);
+    }
+    assertEquals(-1, tracker.getHedgeDelayMillis(1024 * 1024));
+    tracker.addSample("dn1", 1024, 1024);
+    assertTrue(tracker.getHedgeDelayMillis(1024 * 1024) >= 10);
+  }
+
+  @Test
+  public void testIgnoreInvalidSamples() {
+    StripedReadLatencyTracker tracker = new StripedReadLatencyTracker(95, 0);
+    tracker.addSample("dn1", 0, 100);
+    tracker.addSample("dn1", 100, 0);
+    tracker.addSample(null, 100, 100);
+    tracker.addSample("dn1", null);
+    assertEquals(0, tracker.getNumSamples());
+    assertTrue(Double.isNaN(tracker.getAverageNanosPerByte("dn1")));
+  }
+
+  @Test
+  public void testPercentileDelay() {
+    StripedReadLatencyTracker tracker = new StripedReadLatencyTracker(95, 0);
+    // 1ns per byte for 95 samples, 100ns per byte for 5 samples.
+    for (int i = 0; i < 95; i++) {
+      tracker.addSample("fast", 1000, 1000);
+    }
+    for (int i = 0; i < 5; i++) {
+      tracker.addSample("slow", 1000, 100000);
+    }
+    assertEquals(1.0, tracker.getPercentileNanosPerByte(), 0.0001);
+    // 1ns per byte for 10MB is 10ms.
+    assertEquals(10, tracker.getHedgeDelayMillis(10 * 1000 * 1000));
+
+    StripedReadLatencyTracker bounded = new StripedReadLatencyTracker(95, 50);
+    for (int i = 0; i < 100; i++) {
+      bounded.addSample("fast", 1000, 1000);
+    }
+    assertEquals(50, bounded.getHedgeDelayMillis(10 * 1000 * 1000));
+  }
+
+  @Test
+  public void testSlowNodes() {
+    StripedReadLatencyTracker tracker = new StripedReadLatencyTracker(90, 0);
+    for (int i = 0; i < 20; i++) {
+      tracker.addSample("dn" + i, 1000, 1000);
+    }
+    for (int i = 0; i < 2; i++) {
+      tracker.addSample("slow", 1000, 50000);
+    }
+    assertTrue(tracker.isSlow("slow"));
+    assertFalse(tracker.isSlow("dn1"));
+    assertFalse(tracker.isSlow("unknown"));
+    assertTrue(tracker.compare("dn1", "slow") < 0);
+    assertTrue(tracker.compare("slow", "dn1") > 0);
+    // A node without history is expected to perform like the median.
+    assertTrue(tracker.compare("unknown", "slow") < 0);
+
+    tracker.setSlowNodes(Collections.singleton("dn1"));
+    assertTrue(tracker.isSlow("dn1"));
+    assertTrue(tracker.compare("dn1", "slow") > 0);
+    tracker.setSlowNodes(null);
+    assertTrue(tracker.getSlowNodes().isEmpty());
+    assertFalse(tracker.isSlow("dn1"));
+  }
+
+  @Test
+  public void testMovingAverage() {
+    StripedReadLatencyTracker tracker = new StripedReadLatencyTracker(95, 0);
+    tracker.addSample("dn1", 100, 100);
+    assertEquals(1.0, tracker.getAverageNanosPerByte("dn1"), 0.0001);
+    tracker.addSample("dn1", 100, 600);
+    assertEquals(1.0 + StripedReadLatencyTracker.EWMA_ALPHA * 5,
+        tracker.getAverageNanosPerByte("dn1"), 0.0001);
+  }
+}
@@ -123,6 +123,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT = 0;
   public static final String  DFS_DATANODE_FSDATASETCACHE_MAX_THREADS_PER_VOLUME_KEY = "dfs.datanode.fsdatasetcache.max.threads.per.volume";
   public static final int     DFS_DATANODE_FSDATASETCACHE_MAX_THREADS_PER_VOLUME_DEFAULT = 4;
+  public static final String  DFS_DATANODE_ASYNC_WRITER_ENABLED_KEY =
+      "dfs.datanode.async.writer.enabled";
+  public static final boolean DFS_DATANODE_ASYNC_WRITER_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_ASYNC_WRITER_QUEUE_SIZE_KEY =
+      "dfs.datanode.async.writer.queue.size";
+  public static final int     DFS_DATANODE_ASYNC_WRITER_QUEUE_SIZE_DEFAULT = 64;
   public static final String  DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC = "dfs.datanode.lazywriter.interval.sec";
   public static final int     DFS_DATANODE_LAZY_WRITER_INTERVAL_DEFAULT_SEC = 60;
   public static final String  DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_KEY = "dfs.datanode.ram.disk.replica.tracker";
@@ -233,6 +239,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.reconstruction.pending.timeout-sec";
   public static final int
       DFS_NAMENODE_RECONSTRUCTION_PENDING_TIMEOUT_SEC_DEFAULT = 300;
+  // Number of threads scheduling reconstruction under the namesystem read
+  // lock. With 0, reconstruction is scheduled under the write lock.
+  public static final String  DFS_NAMENODE_RECONSTRUCTION_SCHEDULE_THREADS_KEY =
+      "dfs.namenode.reconstruction.schedule.threads";
+  public static final int
+      DFS_NAMENODE_RECONSTRUCTION_SCHEDULE_THREADS_DEFAULT = 0;
 
   public static final String  DFS_NAMENODE_MAINTENANCE_REPLICATION_MIN_KEY =
       "dfs.namenode.maintenance.replication.min";
@@ -330,6 +342,15 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
       "dfs.namenode.edits.asynclogging";
   public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = true;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_WINDOW_KEY =
+      "dfs.namenode.edits.asynclogging.group-commit.window";
+  public static final long    DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_WINDOW_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_EDITS_KEY =
+      "dfs.namenode.edits.asynclogging.group-commit.max-edits";
+  public static final int     DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_EDITS_DEFAULT = 1000;
+  public static final String  DFS_NAMENODE_EDITS_MMAP_ENABLED_KEY =
+      "dfs.namenode.edits.mmap.enabled";
+  public static final boolean DFS_NAMENODE_EDITS_MMAP_ENABLED_DEFAULT = false;
 
   public static final String DFS_NAMENODE_PROVIDED_ENABLED = "dfs.namenode.provided.enabled";
   public static final boolean DFS_NAMENODE_PROVIDED_ENABLED_DEFAULT = false;
@@ -362,10 +383,26 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String
       DFS_DATANODE_VOLUMES_REPLICA_ADD_THREADPOOL_SIZE_KEY =
       "dfs.datanode.volumes.replica-add.threadpool.size";
+  public static final String  DFS_DATANODE_REPLICA_CACHE_JOURNAL_ENABLED_KEY =
+      "dfs.datanode.replica.cache.journal.enabled";
+  public static final boolean DFS_DATANODE_REPLICA_CACHE_JOURNAL_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_REPLICA_CACHE_CHECKPOINT_RECORDS_KEY =
+      "dfs.datanode.replica.cache.checkpoint.records";
+  public static final long    DFS_DATANODE_REPLICA_CACHE_CHECKPOINT_RECORDS_DEFAULT =
+      1000000;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
   public static final boolean DFS_DATANODE_SYNCONCLOSE_DEFAULT = false;
   public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY = "dfs.datanode.socket.reuse.keepalive";
   public static final int     DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT = 4000;
+  public static final String  DFS_DATANODE_SOCKET_REUSE_SELECTOR_ENABLED_KEY =
+      "dfs.datanode.socket.reuse.selector.enabled";
+  public static final boolean DFS_DATANODE_SOCKET_REUSE_SELECTOR_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY =
+      "dfs.datanode.data.transfer.multiplex.enabled";
+  public static final boolean DFS_DATANODE_DATA_TRANSFER_MULTIPLEX_ENABLED_DEFAULT =
+      false;
   public static final String  DFS_DATANODE_OOB_TIMEOUT_KEY = "dfs.datanode.oob.timeout-ms";
   public static final String  DFS_DATANODE_OOB_TIMEOUT_DEFAULT = "1500,0,0,0"; // OOB_TYPE1, OOB_TYPE2, OOB_TYPE3, OOB_TYPE4
 
@@ -642,12 +679,33 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.ec.system.default.policy";
   public static final String  DFS_NAMENODE_EC_SYSTEM_DEFAULT_POLICY_DEFAULT =
       "RS-6-3-1024k";
+  public static final String  DFS_NAMENODE_EC_RECONSTRUCTION_MAX_SOURCE_READ_BYTES_KEY =
+      "dfs.namenode.ec.reconstruction.max-inflight-source-read-bytes";
+  public static final long    DFS_NAMENODE_EC_RECONSTRUCTION_MAX_SOURCE_READ_BYTES_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_EC_RECONSTRUCTION_MAX_DECODE_BYTES_KEY =
+      "dfs.namenode.ec.reconstruction.max-inflight-decode-bytes";
+  public static final long    DFS_NAMENODE_EC_RECONSTRUCTION_MAX_DECODE_BYTES_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_EC_RECONSTRUCTION_MAX_TARGET_WRITE_BYTES_KEY =
+      "dfs.namenode.ec.reconstruction.max-inflight-target-write-bytes";
+  public static final long    DFS_NAMENODE_EC_RECONSTRUCTION_MAX_TARGET_WRITE_BYTES_DEFAULT = 0;
   public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_BUFFER_SIZE_KEY = "dfs.datanode.ec.reconstruction.stripedread.buffer.size";
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_BUFFER_SIZE_DEFAULT = 64 * 1024;
   public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_TIMEOUT_MILLIS_KEY = "dfs.datanode.ec.reconstruction.stripedread.timeout.millis";
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_TIMEOUT_MILLIS_DEFAULT = 5000; //5s
+  public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_ENABLED_KEY = "dfs.datanode.ec.reconstruction.stripedread.hedged.enabled";
+  public static final boolean DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_ENABLED_DEFAULT = false;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_PERCENTILE_KEY = "dfs.datanode.ec.reconstruction.stripedread.hedged.percentile";
+  public static final double  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_PERCENTILE_DEFAULT = 95;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_MIN_DELAY_MILLIS_KEY = "dfs.datanode.ec.reconstruction.stripedread.hedged.min.delay.millis";
+  public static final long    DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_MIN_DELAY_MILLIS_DEFAULT = 10;
   public static final String  DFS_DN_EC_RECONSTRUCTION_THREADS_KEY = "dfs.datanode.ec.reconstruction.threads";
   public static final int     DFS_DN_EC_RECONSTRUCTION_THREADS_DEFAULT = 8;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_DECODE_THREADS_KEY = "dfs.datanode.ec.reconstruction.decode.threads";
+  public static final int     DFS_DN_EC_RECONSTRUCTION_DECODE_THREADS_DEFAULT = 0;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_CAPACITY_KEY = "dfs.datanode.ec.reconstruction.socketcache.capacity";
+  public static final int     DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_CAPACITY_DEFAULT = 0;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_EXPIRY_MSEC_KEY = "dfs.datanode.ec.reconstruction.socketcache.expiryMsec";
+  public static final long    DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT = 3000;
   public static final String  DFS_DN_EC_RECONSTRUCTION_XMITS_WEIGHT_KEY =
       "dfs.datanode.ec.reconstruction.xmits.weight";
   public static final float   DFS_DN_EC_RECONSTRUCTION_XMITS_WEIGHT_DEFAULT =
@@ -658,6 +716,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
   public static final int
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY =
+      "dfs.datanode.directoryscan.incremental.enabled";
+  public static final boolean
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT = false;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SAMPLE_ROUNDS_KEY =
+      "dfs.datanode.directoryscan.incremental.sample.rounds";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SAMPLE_ROUNDS_DEFAULT = 24;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_FULL_SCAN_ROUNDS_KEY =
+      "dfs.datanode.directoryscan.incremental.full.scan.rounds";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_FULL_SCAN_ROUNDS_DEFAULT = 28;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -686,8 +758,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
   public static final long    DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND_DEFAULT = 1048576L;
+  public static final String  DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_KEY =
+      "dfs.datanode.volume.io.budget.bytes.per.second";
+  public static final long    DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_DEFAULT =
+      0;
+  public static final String  DFS_DATANODE_VOLUME_IO_BUDGET_SCAN_MIN_BYTES_PER_SECOND_KEY =
+      "dfs.datanode.volume.io.budget.scan.min.bytes.per.second";
+  public static final long    DFS_DATANODE_VOLUME_IO_BUDGET_SCAN_MIN_BYTES_PER_SECOND_DEFAULT =
+      64 * 1024;
+  public static final String  DFS_DATANODE_VOLUME_IO_BUDGET_RECOVERY_BUSY_MS_KEY =
+      "dfs.datanode.volume.io.budget.recovery.busy.ms";
+  public static final long    DFS_DATANODE_VOLUME_IO_BUDGET_RECOVERY_BUSY_MS_DEFAULT =
+      5000;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_TRANSFERTO_MAP_CHECKSUMS_MIN_BYTES_KEY =
+      "dfs.datanode.transferTo.map.checksums.min.bytes";
+  public static final long    DFS_DATANODE_TRANSFERTO_MAP_CHECKSUMS_MIN_BYTES_DEFAULT =
+      0;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY =
@@ -700,6 +788,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_INTERVAL_DEFAULT = 500000;
   public static final String  DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES = "dfs.namenode.decommission.max.concurrent.tracked.nodes";
   public static final int     DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES_DEFAULT = 100;
+  public static final String  DFS_NAMENODE_DECOMMISSION_EC_BALANCED_SCHEDULING_ENABLED_KEY = "dfs.namenode.decommission.ec.balanced-scheduling.enabled";
+  public static final boolean DFS_NAMENODE_DECOMMISSION_EC_BALANCED_SCHEDULING_ENABLED_DEFAULT = false;
   public static final String  DFS_NAMENODE_HANDLER_COUNT_KEY = "dfs.namenode.handler.count";
   public static final int     DFS_NAMENODE_HANDLER_COUNT_DEFAULT = 10;
   public static final String  DFS_NAMENODE_LIFELINE_HANDLER_RATIO_KEY =
@@ -762,6 +852,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES_DEFAULT = 6;
   public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS = "dfs.namenode.full.block.report.lease.length.ms";
   public static final long    DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS_DEFAULT = 5L * 60L * 1000L;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_SLICES_KEY = "dfs.namenode.blockreport.slices";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_SLICES_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_SLICES_MIN_BLOCKS_KEY = "dfs.namenode.blockreport.slices.min.blocks";
+  public static final long    DFS_NAMENODE_BLOCKREPORT_SLICES_MIN_BLOCKS_DEFAULT = 100000;
+  public static final String  DFS_NAMENODE_INCREMENTAL_BLOCKREPORT_COALESCE_MS_KEY = "dfs.namenode.blockreport.incremental.coalesce.ms";
+  public static final long    DFS_NAMENODE_INCREMENTAL_BLOCKREPORT_COALESCE_MS_DEFAULT = 0;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -785,6 +881,23 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // properties for parallel fsimage loading and saving
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_SAVE_KEY =
+      "dfs.image.parallel.save";
+  public static final boolean DFS_IMAGE_PARALLEL_SAVE_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+      "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final int DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT = 1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -837,6 +950,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
   public static final String  DFS_DATANODE_FSDATASET_FACTORY_KEY = "dfs.datanode.fsdataset.factory";
   public static final String  DFS_DATANODE_FSDATASET_VOLUME_CHOOSING_POLICY_KEY = "dfs.datanode.fsdataset.volume.choosing.policy";
+  public static final String  DFS_DATANODE_REPLICA_MAP_STRIPES_KEY =
+      "dfs.datanode.replica-map.stripes";
+  public static final int     DFS_DATANODE_REPLICA_MAP_STRIPES_DEFAULT = 0;
 
   public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-threshold";
   public static final long    DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT = 1024L * 1024L * 1024L * 10L; // 10 GB
@@ -880,6 +996,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_SECONDARY_NAMENODE_INTERNAL_SPNEGO_USER_NAME_KEY = DFS_SECONDARY_NAMENODE_KERBEROS_INTERNAL_SPNEGO_PRINCIPAL_KEY;
   public static final String  DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY = "dfs.namenode.name.cache.threshold";
   public static final int     DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_INODE_MAP_OPEN_ADDRESSING_KEY =
+      "dfs.namenode.inode-map.open-addressing.enabled";
+  public static final boolean DFS_NAMENODE_INODE_MAP_OPEN_ADDRESSING_DEFAULT =
+      false;
   public static final String  DFS_NAMENODE_LEGACY_OIV_IMAGE_DIR_KEY = "dfs.namenode.legacy-oiv-image.dir";
 
   public static final String  DFS_NAMESERVICES =
@@ -45,6 +45,7 @@ import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockIdComma
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockRecoveryCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeRegistrationProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ECReconstructionLoadProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.FinalizeCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.KeyUpdateCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReceivedDeletedBlockInfoProto;
@@ -105,6 +106,7 @@ import org.apache.hadoop.hdfs.server.protocol.CheckpointCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ECReconstructionLoadReport;
 import org.apache.hadoop.hdfs.server.protocol.FinalizeCommand;
 import org.apache.hadoop.hdfs.server.protocol.JournalInfo;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
@@ -841,6 +843,21 @@ public class PBHelper {
     return builder.build();
   }
 
+  public static ECReconstructionLoadProto convertECReconstructionLoad(
+      ECReconstructionLoadReport load) {
+    return ECReconstructionLoadProto.newBuilder()
+        .setSourceReadBytes(load.getSourceReadBytes())
+        .setDecodeBytes(load.getDecodeBytes())
+        .setTargetWriteBytes(load.getTargetWriteBytes())
+        .build();
+  }
+
+  public static ECReconstructionLoadReport convertECReconstructionLoad(
+      ECReconstructionLoadProto proto) {
+    return ECReconstructionLoadReport.create(proto.getSourceReadBytes(),
+        proto.getDecodeBytes(), proto.getTargetWriteBytes());
+  }
+
   public static List<SlowPeerReportProto> convertSlowPeerInfo(
       SlowPeerReports slowPeers) {
     if (slowPeers.getSlowPeers().size() == 0) {
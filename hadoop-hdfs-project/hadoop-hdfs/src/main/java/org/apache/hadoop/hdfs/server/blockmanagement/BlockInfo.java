@@ -58,8 +58,10 @@ public abstract class BlockInfo extends Block
   private LightWeightGSet.LinkedElement nextLinkedElement;
 
 
-  // Storages this block is replicated on
-  protected DatanodeStorageInfo[] storages;
+  // Storages this block is replicated on, by their DatanodeStorageIndex.
+  // An int takes half the space of a reference once the heap is too large
+  // for compressed references. 0 marks an empty slot.
+  protected int[] storages;
 
   private BlockUnderConstructionFeature uc;
 
@@ -69,14 +71,14 @@ public abstract class BlockInfo extends Block
    *             in the block group
    */
   public BlockInfo(short size) {
-    this.storages = new DatanodeStorageInfo[size];
+    this.storages = new int[size];
     this.bcId = INVALID_INODE_ID;
     this.replication = isStriped() ? 0 : size;
   }
 
   public BlockInfo(Block blk, short size) {
     super(blk);
-    this.storages = new DatanodeStorageInfo[size];
+    this.storages = new int[size];
     this.bcId = INVALID_INODE_ID;
     this.replication = isStriped() ? 0 : size;
   }
@@ -112,7 +114,7 @@ public abstract class BlockInfo extends Block
 
       @Override
       public boolean hasNext() {
-        while (index < storages.length && storages[index] == null) {
+        while (index < storages.length && storages[index] == 0) {
           index++;
         }
         return index < storages.length;
@@ -123,7 +125,7 @@ public abstract class BlockInfo extends Block
         if (!hasNext()) {
           throw new NoSuchElementException();
         }
-        return storages[index++];
+        return DatanodeStorageIndex.get(storages[index++]);
       }
 
       @Override
@@ -140,12 +142,12 @@ public abstract class BlockInfo extends Block
 
   DatanodeStorageInfo getStorageInfo(int index) {
     assert this.storages != null : "BlockInfo is not initialized";
-    return storages[index];
+    return DatanodeStorageIndex.get(storages[index]);
   }
 
   void setStorageInfo(int index, DatanodeStorageInfo storage) {
     assert this.storages != null : "BlockInfo is not initialized";
-    this.storages[index] = storage;
+    this.storages[index] = storage == null ? 0 : storage.getOrAssignIndex();
   }
 
   public int getCapacity() {
@@ -211,10 +213,14 @@ public abstract class BlockInfo extends Block
    * @return index or -1 if not found.
    */
   int findStorageInfo(DatanodeStorageInfo storageInfo) {
+    final int storageIndex = storageInfo.getIndex();
+    if (storageIndex == 0) {
+      // the storage does not store any block
+      return -1;
+    }
     int len = getCapacity();
     for(int idx = 0; idx < len; idx++) {
-      DatanodeStorageInfo cur = getStorageInfo(idx);
-      if (cur == storageInfo) {
+      if (storages[idx] == storageIndex) {
         return idx;
       }
     }
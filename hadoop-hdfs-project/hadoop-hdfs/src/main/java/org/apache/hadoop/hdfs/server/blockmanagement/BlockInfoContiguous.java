@@ -48,8 +48,8 @@ public class BlockInfoContiguous extends BlockInfo {
     }
     /* Not enough space left. Create a new array. Should normally
      * happen only when replication is manually increased by the user. */
-    DatanodeStorageInfo[] old = storages;
-    storages = new DatanodeStorageInfo[(last+num)];
+    int[] old = storages;
+    storages = new int[(last+num)];
     System.arraycopy(old, 0, storages, 0, last);
     return last;
   }
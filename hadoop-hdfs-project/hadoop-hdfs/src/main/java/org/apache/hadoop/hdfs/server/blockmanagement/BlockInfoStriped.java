@@ -189,9 +189,9 @@ public class BlockInfoStriped extends BlockInfo {
 
   private void ensureCapacity(int totalSize, boolean keepOld) {
     if (getCapacity() < totalSize) {
-      DatanodeStorageInfo[] old = storages;
+      int[] old = storages;
       byte[] oldIndices = indices;
-      storages = new DatanodeStorageInfo[totalSize];
+      storages = new int[totalSize];
       indices = new byte[totalSize];
       initIndices();
 
@@ -283,7 +283,7 @@ public class BlockInfoStriped extends BlockInfo {
               throw new NoSuchElementException();
             }
             int i = index++;
-            return new StorageAndBlockIndex(storages[i], indices[i]);
+            return new StorageAndBlockIndex(getStorageInfo(i), indices[i]);
           }
 
           @Override
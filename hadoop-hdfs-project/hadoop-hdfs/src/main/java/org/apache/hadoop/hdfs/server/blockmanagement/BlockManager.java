@@ -29,6 +29,9 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -111,6 +114,9 @@ import org.apache.hadoop.util.VersionInfo;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -377,6 +383,27 @@ public class BlockManager implements BlockStatsMXBean {
     private final BlockReportProcessingThread blockReportThread =
             new BlockReportProcessingThread();
 
+    /**
+     * Number of block id ranges a full block report is compared in, or 0 to
+     * process reports as a whole.
+     */
+    private final int blockReportSlices;
+    /** Minimum number of blocks of a storage to process its reports in slices. */
+    private final long blockReportSlicesMinBlocks;
+    /** Compares the slices of full block reports, null if not slicing. */
+    private final ExecutorService blockReportSliceExecutor;
+    /**
+     * Schedules reconstruction in parallel under the namesystem read lock,
+     * null if reconstruction is scheduled under the write lock.
+     */
+    private final ExecutorService reconstructionScheduleExecutor;
+    private final int reconstructionScheduleThreads;
+    /**
+     * Time to wait for incremental block reports to coalesce into a batch, or
+     * 0 to apply them one by one.
+     */
+    private final long incrementalBlockReportCoalesceMs;
+
     /**
      * Store blocks -> datanodedescriptor(s) map of corrupt replicas
      */
@@ -508,6 +535,12 @@ public class BlockManager implements BlockStatsMXBean {
      */
     private final short minReplicationToBeInMaintenance;
 
+    /**
+     * Whether to balance copying and reconstructing the striped blocks on
+     * DataNodes leaving service.
+     */
+    private final boolean balancedStripedDecommission;
+
     /**
      * Storages accessible from multiple DNs.
      */
@@ -547,6 +580,10 @@ public class BlockManager implements BlockStatsMXBean {
         blockTokenSecretManager = createBlockTokenSecretManager(conf);
 
         providedStorageMap = new ProvidedStorageMap(namesystem, this, conf);
+        if (providedStorageMap.getProvidedStorageInfo() != null) {
+            providedStorageMap.getProvidedStorageInfo().getDatanodeDescriptor()
+                    .setStorageIndex(datanodeManager.getStorageIndex());
+        }
 
         this.maxCorruptFilesReturned = conf.getInt(
                 DFSConfigKeys.DFS_DEFAULT_MAX_CORRUPT_FILES_RETURNED_KEY,
@@ -631,6 +668,9 @@ public class BlockManager implements BlockStatsMXBean {
                     + " = " + defaultReplication);
         }
         this.minReplicationToBeInMaintenance = (short) minMaintenanceR;
+        this.balancedStripedDecommission = conf.getBoolean(
+                DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_EC_BALANCED_SCHEDULING_ENABLED_KEY,
+                DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_EC_BALANCED_SCHEDULING_ENABLED_DEFAULT);
 
         long heartbeatIntervalSecs = conf.getTimeDuration(
                 DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY,
@@ -639,6 +679,30 @@ public class BlockManager implements BlockStatsMXBean {
         pendingRecoveryBlocks = new PendingRecoveryBlocks(blockRecoveryTimeout);
 
         this.blockReportLeaseManager = new BlockReportLeaseManager(conf);
+        this.blockReportSlices = conf.getInt(
+                DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_SLICES_KEY,
+                DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_SLICES_DEFAULT);
+        this.blockReportSlicesMinBlocks = conf.getLong(
+                DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_SLICES_MIN_BLOCKS_KEY,
+                DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_SLICES_MIN_BLOCKS_DEFAULT);
+        this.blockReportSliceExecutor = blockReportSlices > 0 ?
+                Executors.newFixedThreadPool(blockReportSlices,
+                        new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("Block report slice #%d").build()) :
+                null;
+        this.reconstructionScheduleThreads = Math.min(conf.getInt(
+                DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_SCHEDULE_THREADS_KEY,
+                DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_SCHEDULE_THREADS_DEFAULT),
+                Runtime.getRuntime().availableProcessors());
+        this.reconstructionScheduleExecutor = reconstructionScheduleThreads > 0 ?
+                Executors.newFixedThreadPool(reconstructionScheduleThreads,
+                        new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("Reconstruction schedule #%d")
+                                .build()) :
+                null;
+        this.incrementalBlockReportCoalesceMs = conf.getLong(
+                DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BLOCKREPORT_COALESCE_MS_KEY,
+                DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BLOCKREPORT_COALESCE_MS_DEFAULT);
 
         bmSafeMode = new BlockManagerSafeMode(this, namesystem, haEnabled, conf);
 
@@ -799,6 +863,12 @@ public class BlockManager implements BlockStatsMXBean {
             blockReportThread.join(3000);
         } catch (InterruptedException ie) {
         }
+        if (blockReportSliceExecutor != null) {
+            blockReportSliceExecutor.shutdownNow();
+        }
+        if (reconstructionScheduleExecutor != null) {
+            reconstructionScheduleExecutor.shutdownNow();
+        }
         datanodeManager.close();
         pendingReconstruction.stop();
         blocksMap.close();
@@ -1933,13 +2003,13 @@ public class BlockManager implements BlockStatsMXBean {
      */
     int computeBlockReconstructionWork(int blocksToProcess) {
         List<List<BlockInfo>> blocksToReconstruct = null;
-        namesystem.writeLock();
+        reconstructionLock();
         try {
             // Choose the blocks to be reconstructed
             blocksToReconstruct = neededReconstruction
                     .chooseLowRedundancyBlocks(blocksToProcess);
         } finally {
-            namesystem.writeUnlock();
+            reconstructionUnlock();
         }
         return computeReconstructionWorkForBlocks(blocksToReconstruct);
     }
@@ -1962,26 +2032,12 @@ public class BlockManager implements BlockStatsMXBean {
         List<BlockReconstructionWork> reconWork = new LinkedList<>();
 
         // Step 1: categorize at-risk blocks into replication and EC tasks
-        namesystem.writeLock();
-        try {
-            synchronized (neededReconstruction) {
-                for (int priority = 0; priority < blocksToReconstruct
-                        .size(); priority++) {
-                    for (BlockInfo block : blocksToReconstruct.get(priority)) {
-                        BlockReconstructionWork rw = scheduleReconstruction(block,
-                                priority);
-                        if (rw != null) {
-                            reconWork.add(rw);
-                        }
-                    }
-                }
-            }
-        } finally {
-            namesystem.writeUnlock();
-        }
+        scheduleReconstruction(blocksToReconstruct, reconWork);
 
         // Step 2: choose target nodes for each reconstruction task
         final Set<Node> excludedNodes = new HashSet<>();
+        final List<DatanodeDescriptor> ecOverloadedTargets =
+                datanodeManager.getECTargetOverloadedNodes();
         for (BlockReconstructionWork rw : reconWork) {
             // Exclude all of the containing nodes from being targets.
             // This list includes decommissioning or corrupt nodes.
@@ -1989,6 +2045,10 @@ public class BlockManager implements BlockStatsMXBean {
             for (DatanodeDescriptor dn : rw.getContainingNodes()) {
                 excludedNodes.add(dn);
             }
+            // Spread EC reconstruction writes over the nodes with capacity left
+            if (rw instanceof ErasureCodingWork) {
+                excludedNodes.addAll(ecOverloadedTargets);
+            }
 
             // choose replication targets: NOT HOLDING THE GLOBAL LOCK
             final BlockPlacementPolicy placementPolicy =
@@ -1996,7 +2056,12 @@ public class BlockManager implements BlockStatsMXBean {
             rw.chooseTargets(placementPolicy, storagePolicySuite, excludedNodes);
         }
 
+        planStripedDecommission(reconWork);
+
         // Step 3: add tasks to the DN
+        // EC tasks scheduled in this round are handed out to the DNs together
+        final ErasureCodingTaskQueue.Batch batch =
+                new ErasureCodingTaskQueue.Batch();
         namesystem.writeLock();
         try {
             for (BlockReconstructionWork rw : reconWork) {
@@ -2005,6 +2070,9 @@ public class BlockManager implements BlockStatsMXBean {
                     rw.resetTargets();
                     continue;
                 }
+                if (rw instanceof ErasureCodingWork) {
+                    ((ErasureCodingWork) rw).setBatch(batch);
+                }
 
                 synchronized (neededReconstruction) {
                     if (validateReconstructionWork(rw)) {
@@ -2039,6 +2107,30 @@ public class BlockManager implements BlockStatsMXBean {
         return scheduledWork;
     }
 
+    /**
+     * Decide for the striped blocks on DataNodes leaving service whether
+     * their internal blocks are copied from the leaving DataNodes or
+     * reconstructed, spreading the load of the round over the cluster.
+     */
+    private void planStripedDecommission(
+            List<BlockReconstructionWork> reconWork) {
+        if (!balancedStripedDecommission) {
+            return;
+        }
+        final StripedDecommissionPlanner planner =
+                new StripedDecommissionPlanner();
+        for (BlockReconstructionWork rw : reconWork) {
+            if (rw instanceof ErasureCodingWork) {
+                planner.plan((ErasureCodingWork) rw);
+            }
+        }
+        if (planner.getNumCopied() + planner.getNumReconstructed() > 0) {
+            LOG.debug("Striped blocks leaving service: {} copied, {}"
+                    + " reconstructed", planner.getNumCopied(),
+                    planner.getNumReconstructed());
+        }
+    }
+
     // Check if the number of live + pending replicas satisfies
     // the expected redundancy.
     boolean hasEnoughEffectiveReplicas(BlockInfo block,
@@ -2054,7 +2146,7 @@ public class BlockManager implements BlockStatsMXBean {
         // skip abandoned block or block reopened for append
         if (block.isDeleted() || !block.isCompleteOrCommitted()) {
             // remove from neededReconstruction
-            neededReconstruction.remove(block, priority);
+            removeFromNeededReconstruction(block, priority);
             return null;
         }
 
@@ -2087,7 +2179,7 @@ public class BlockManager implements BlockStatsMXBean {
 //        System.out.println("BlockManager-scheduleReconstruction-pendingNum:"+pendingNum);
 
         if (hasEnoughEffectiveReplicas(block, numReplicas, pendingNum)) {
-            neededReconstruction.remove(block, priority);
+            removeFromNeededReconstruction(block, priority);
             blockLog.debug("BLOCK* Removing {} from neededReconstruction as" +
                     " it has enough replicas", block);
             NameNode.getNameNodeMetrics().incNumTimesReReplicationNotScheduled();
@@ -2134,6 +2226,18 @@ public class BlockManager implements BlockStatsMXBean {
             for (int i = 0; i < liveBlockIndices.size(); i++) {
                 indices[i] = liveBlockIndices.get(i);
             }
+
+            // Read from the sources with EC read capacity left first. If too
+            // few of them have capacity left, wait for some to free up.
+            final int available = moveECOverloadedSourcesLast(srcNodes, indices);
+            if (available < srcNodes.length
+                    && available < ((BlockInfoStriped) block).getDataBlockNum()
+                    && priority != LowRedundancyBlocks.QUEUE_HIGHEST_PRIORITY) {
+                LOG.debug("Block {} has too few sources with EC read capacity"
+                        + " left, postponing its reconstruction", block);
+                NameNode.getNameNodeMetrics().incNumTimesReReplicationNotScheduled();
+                return null;
+            }
             return new ErasureCodingWork(getBlockPoolId(), block, bc, srcNodes,
                     containingNodes, liveReplicaNodes, additionalReplRequired,
                     priority, indices);
@@ -2144,6 +2248,43 @@ public class BlockManager implements BlockStatsMXBean {
         }
     }
 
+    /**
+     * Stable partition of the sources of a striped block, and of their block
+     * indices, so that the sources serving too many EC reconstruction reads
+     * come last and are only used as backups.
+     *
+     * @return the number of sources which are not overloaded.
+     */
+    private int moveECOverloadedSourcesLast(DatanodeDescriptor[] srcNodes,
+                                            byte[] indices) {
+        final List<Integer> overloaded = new ArrayList<>();
+        int available = 0;
+        for (int i = 0; i < srcNodes.length; i++) {
+            if (datanodeManager.isECSourceOverloaded(srcNodes[i])) {
+                overloaded.add(i);
+            }
+        }
+        if (overloaded.isEmpty()) {
+            return srcNodes.length;
+        }
+        final DatanodeDescriptor[] nodes = srcNodes.clone();
+        final byte[] blockIndices = indices.clone();
+        for (int i = 0; i < nodes.length; i++) {
+            if (!overloaded.contains(i)) {
+                srcNodes[available] = nodes[i];
+                indices[available] = blockIndices[i];
+                available++;
+            }
+        }
+        int pos = available;
+        for (int i : overloaded) {
+            srcNodes[pos] = nodes[i];
+            indices[pos] = blockIndices[i];
+            pos++;
+        }
+        return available;
+    }
+
     private boolean isInNewRack(DatanodeDescriptor[] srcs,
                                 DatanodeDescriptor target) {
         LOG.debug("check if target {} increases racks, srcs={}", target,
@@ -2158,6 +2299,125 @@ public class BlockManager implements BlockStatsMXBean {
         return true;
     }
 
+    /**
+     * Schedule the reconstruction of the given blocks.
+     *
+     * If reconstruction is scheduled in parallel, the blocks are split into
+     * runs, each scheduled on a thread of its own, while the namesystem read
+     * lock held here keeps out the writers of block state. The per-block
+     * scheduling only reads block state and updates queues which guard
+     * themselves. Otherwise the blocks are scheduled one by one under the
+     * write lock.
+     *
+     * @param blocksToReconstruct blocks to be reconstructed, for each priority
+     * @param reconWork receives the scheduled work, in the order of the blocks
+     */
+    private void scheduleReconstruction(
+            List<List<BlockInfo>> blocksToReconstruct,
+            List<BlockReconstructionWork> reconWork) {
+        if (reconstructionScheduleExecutor == null) {
+            namesystem.writeLock();
+            try {
+                synchronized (neededReconstruction) {
+                    for (int priority = 0; priority < blocksToReconstruct
+                            .size(); priority++) {
+                        for (BlockInfo block : blocksToReconstruct.get(priority)) {
+                            BlockReconstructionWork rw = scheduleReconstruction(
+                                    block, priority);
+                            if (rw != null) {
+                                reconWork.add(rw);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                namesystem.writeUnlock();
+            }
+            return;
+        }
+
+        final List<BlockInfo> blocks = new ArrayList<>();
+        final List<Integer> priorities = new ArrayList<>();
+        for (int priority = 0; priority < blocksToReconstruct.size();
+             priority++) {
+            for (BlockInfo block : blocksToReconstruct.get(priority)) {
+                blocks.add(block);
+                priorities.add(priority);
+            }
+        }
+        final int runLength = (blocks.size() + reconstructionScheduleThreads
+                - 1) / reconstructionScheduleThreads;
+
+        final BlockReconstructionWork[] scheduled =
+                new BlockReconstructionWork[blocks.size()];
+        namesystem.readLock();
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int start = 0; start < blocks.size(); start += runLength) {
+                final int from = start;
+                final int to = Math.min(start + runLength, blocks.size());
+                futures.add(reconstructionScheduleExecutor.submit(() -> {
+                    for (int i = from; i < to; i++) {
+                        scheduled[i] = scheduleReconstruction(blocks.get(i),
+                                priorities.get(i));
+                    }
+                }));
+            }
+            // Wait for every run, as none may go on after the lock is
+            // released.
+            Throwable failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    Uninterruptibles.getUninterruptibly(future);
+                } catch (ExecutionException e) {
+                    failure = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+            if (failure != null) {
+                Throwables.propagate(failure);
+            }
+        } finally {
+            namesystem.readUnlock();
+        }
+        for (BlockReconstructionWork rw : scheduled) {
+            if (rw != null) {
+                reconWork.add(rw);
+            }
+        }
+    }
+
+    /**
+     * Blocks may be scheduled in parallel, and the queue of low redundancy
+     * blocks only synchronizes some of its methods itself.
+     */
+    private void removeFromNeededReconstruction(BlockInfo block, int priority) {
+        synchronized (neededReconstruction) {
+            neededReconstruction.remove(block, priority);
+        }
+    }
+
+    /**
+     * Take the namesystem lock to choose the blocks to reconstruct. The
+     * queue of low redundancy blocks guards itself, so if reconstruction is
+     * scheduled in parallel, the read lock is enough and choosing does not
+     * block readers.
+     */
+    private void reconstructionLock() {
+        if (reconstructionScheduleExecutor != null) {
+            namesystem.readLock();
+        } else {
+            namesystem.writeLock();
+        }
+    }
+
+    private void reconstructionUnlock() {
+        if (reconstructionScheduleExecutor != null) {
+            namesystem.readUnlock();
+        } else {
+            namesystem.writeUnlock();
+        }
+    }
+
     private boolean validateReconstructionWork(BlockReconstructionWork rw) {
         BlockInfo block = rw.getBlock();
         int priority = rw.getPriority();
@@ -2639,6 +2899,207 @@ public class BlockManager implements BlockStatsMXBean {
         }
     }
 
+    /**
+     * The changes a full block report makes to the replicas of its storage.
+     */
+    private static class ReportDiff {
+        final Collection<BlockInfoToAdd> toAdd = new LinkedList<>();
+        final Collection<BlockInfo> toRemove = new TreeSet<>();
+        final Collection<Block> toInvalidate = new LinkedList<>();
+        final Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<>();
+        final Collection<StatefulBlockInfo> toUC = new LinkedList<>();
+        // The reported replicas which led to the changes above, if kept to
+        // recheck the changes before they are applied.
+        final List<BlockReportReplica> changed;
+
+        ReportDiff() {
+            this(false);
+        }
+
+        ReportDiff(boolean keepChanged) {
+            changed = keepChanged ? new ArrayList<>() : null;
+        }
+
+        int numReplicaChanges() {
+            return toAdd.size() + toInvalidate.size() + toCorrupt.size()
+                    + toUC.size();
+        }
+    }
+
+    /**
+     * Process a full block report of a storage on the block report processing
+     * thread. If {@link DFSConfigKeys#DFS_NAMENODE_BLOCKREPORT_SLICES_KEY} is
+     * set, a large report is compared with the stored blocks in slices under
+     * the read lock, see {@link #processReportInSlices}.
+     *
+     * @return true if all known storages of the given DN have finished reporting.
+     */
+    public boolean runBlockReport(final DatanodeID nodeID,
+                                  final DatanodeStorage storage,
+                                  final BlockListAsLongs newReport,
+                                  final BlockReportContext context) throws IOException {
+        if (blockReportSlices <= 0) {
+            return runBlockOp(() -> processReport(nodeID, storage, newReport, context));
+        }
+        final DatanodeStorageInfo[] toSlice = new DatanodeStorageInfo[1];
+        final boolean noStaleStorages = runBlockOp(() -> {
+            DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+            DatanodeStorageInfo storageInfo = node == null || !node.isRegistered() ?
+                    null : providedStorageMap.getStorage(node, storage);
+            if (!canProcessReportInSlices(storageInfo)) {
+                return processReport(nodeID, storage, newReport, context);
+            }
+            if (context != null && !blockReportLeaseManager.checkLease(node,
+                    Time.monotonicNow(), context.getLeaseId())) {
+                return false;
+            }
+            toSlice[0] = storageInfo;
+            return false;
+        });
+        if (toSlice[0] == null) {
+            return noStaleStorages;
+        }
+        return processReportInSlices(toSlice[0], newReport, context);
+    }
+
+    private boolean canProcessReportInSlices(DatanodeStorageInfo storageInfo) {
+        assert namesystem.hasWriteLock();
+        // Queueing postponed blocks and looking up blocks using striped ids
+        // are left to the whole report.
+        return storageInfo != null
+                && storageInfo.getBlockReportCount() > 0
+                && storageInfo.numBlocks() >= blockReportSlicesMinBlocks
+                && !StorageType.PROVIDED.equals(storageInfo.getStorageType())
+                && !namesystem.isInStartupSafeMode()
+                && !shouldPostponeBlocksFromFuture
+                && !hasNonEcBlockUsingStripedID;
+    }
+
+    /**
+     * Process a full block report in block id ranges. The ranges are compared
+     * with the stored blocks of the storage in parallel, holding the read lock
+     * so that the blocks do not change meanwhile. The changes of each range
+     * are then applied on the block report processing thread, which releases
+     * the write lock in between, so that the report does not hold off other
+     * operations for its whole length. Each change is checked again against
+     * the blocks under the write lock before it is applied, see
+     * {@link #recheckReportDiff}.
+     *
+     * @return true if all known storages of the DN have finished reporting.
+     */
+    private boolean processReportInSlices(final DatanodeStorageInfo storageInfo,
+                                          final BlockListAsLongs newReport,
+                                          final BlockReportContext context) throws IOException {
+        final long startTime = Time.monotonicNow();
+        final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+        final String strBlockReportId =
+                context != null ? Long.toHexString(context.getReportId()) : "";
+
+        // Copy the replicas, as the report iterator reuses the one it returns.
+        final List<BlockReportReplica> replicas =
+                new ArrayList<>(newReport.getNumberOfBlocks());
+        for (BlockReportReplica replica : newReport) {
+            replicas.add(new BlockReportReplica(replica));
+        }
+        final BlockReportReplica[] reported =
+                replicas.toArray(new BlockReportReplica[replicas.size()]);
+        if (context == null || !context.isSorted()) {
+            Arrays.parallelSort(reported);
+        }
+
+        final List<ReportDiff> diffs = new ArrayList<>();
+        final BlockReportSlices slices;
+        namesystem.readLock();
+        try {
+            checkStillReporting(storageInfo);
+            final List<BlockInfo> storedBlocks =
+                    new ArrayList<>(storageInfo.numBlocks());
+            for (Iterator<BlockInfo> it = storageInfo.getBlockIterator(); it.hasNext(); ) {
+                storedBlocks.add(it.next());
+            }
+            slices = new BlockReportSlices(reported,
+                    storedBlocks.toArray(new BlockInfo[storedBlocks.size()]),
+                    blockReportSlices);
+
+            final List<Future<ReportDiff>> futures = new ArrayList<>();
+            for (int i = 0; i < slices.getNumSlices(); i++) {
+                final int slice = i;
+                futures.add(blockReportSliceExecutor.submit(() -> {
+                    ReportDiff diff = new ReportDiff(true);
+                    reportDiffSorted(storageInfo,
+                            slices.getStored(slice).iterator(),
+                            slices.getReported(slice), diff);
+                    return diff;
+                }));
+            }
+            // Wait for every slice, as none may go on after the lock is released.
+            Throwable failure = null;
+            for (Future<ReportDiff> future : futures) {
+                try {
+                    diffs.add(Uninterruptibles.getUninterruptibly(future));
+                } catch (ExecutionException e) {
+                    failure = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Failed to process block report 0x"
+                        + strBlockReportId + " in slices", failure);
+            }
+        } finally {
+            namesystem.readUnlock();
+        }
+
+        final List<Block> invalidatedBlocks = new ArrayList<>();
+        boolean noStaleStorages = false;
+        for (int i = 0; i < diffs.size(); i++) {
+            final ReportDiff diff = diffs.get(i);
+            final boolean last = i == diffs.size() - 1;
+            final ReportDiff[] applied = new ReportDiff[1];
+            noStaleStorages = runBlockOp(() -> {
+                // The DataNode may have been removed since the diff was computed.
+                checkStillReporting(storageInfo);
+                applied[0] = recheckReportDiff(storageInfo, diff);
+                applyReportDiff(storageInfo, applied[0], strBlockReportId);
+                if (!last) {
+                    return false;
+                }
+                storageInfo.receivedBlockReport();
+                return !node.hasStaleStorages();
+            });
+            invalidatedBlocks.addAll(applied[0].toInvalidate);
+        }
+        final long endTime = Time.monotonicNow();
+
+        for (Block b : invalidatedBlocks) {
+            blockLog.debug("BLOCK* processReport 0x{}: {} on node {} size {} does not"
+                    + " belong to any file", strBlockReportId, b, node, b.getNumBytes());
+        }
+        final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+        if (metrics != null) {
+            metrics.addStorageBlockReport((int) (endTime - startTime));
+        }
+        blockLog.info("BLOCK* processReport 0x{}: from storage {} node {}, " +
+                        "blocks: {}, slices: {}, hasStaleStorage: {}, processing time: {} msecs, " +
+                        "invalidatedBlocks: {}", strBlockReportId, storageInfo.getStorageID(),
+                node, reported.length, slices.getNumSlices(), !noStaleStorages,
+                (endTime - startTime), invalidatedBlocks.size());
+        return noStaleStorages;
+    }
+
+    /**
+     * @throws IOException if the DataNode of the storage has been removed or
+     * no longer has the storage.
+     */
+    private void checkStillReporting(DatanodeStorageInfo storageInfo)
+            throws IOException {
+        final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+        if (!node.isRegistered() || datanodeManager.getDatanode(node) != node
+                || node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+            throw new IOException(
+                    "ProcessReport from dead or unregistered node: " + node);
+        }
+    }
+
     /**
      * The given storage is reporting all its blocks.
      * Update the (storage-->block list) and (block-->storage list) maps.
@@ -2805,11 +3266,7 @@ public class BlockManager implements BlockStatsMXBean {
         // Modify the (block-->datanode) map, according to the difference
         // between the old and new block report.
         //
-        Collection<BlockInfoToAdd> toAdd = new LinkedList<>();
-        Collection<BlockInfo> toRemove = new TreeSet<>();
-        Collection<Block> toInvalidate = new LinkedList<>();
-        Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<>();
-        Collection<StatefulBlockInfo> toUC = new LinkedList<>();
+        ReportDiff diff = new ReportDiff();
 
         boolean sorted = false;
         String strBlockReportId = "";
@@ -2837,20 +3294,64 @@ public class BlockManager implements BlockStatsMXBean {
             sortedReport = report;
         }
 
-        reportDiffSorted(storageInfo, sortedReport,
-                toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+        reportDiffSorted(storageInfo, storageInfo.getBlockIterator(),
+                sortedReport, diff);
+        applyReportDiff(storageInfo, diff, strBlockReportId);
+        return diff.toInvalidate;
+    }
 
+    /**
+     * Recompute the changes of a report slice against the stored blocks as
+     * they are now. The diff is computed under the read lock, so the blocks
+     * and the storage may have changed by the time the write lock is taken
+     * to apply it: a block may have been deleted, completed or added to the
+     * storage by an incremental report meanwhile.
+     *
+     * @return the changes which still apply.
+     */
+    private ReportDiff recheckReportDiff(final DatanodeStorageInfo storageInfo,
+                                         final ReportDiff diff) {
+        assert namesystem.hasWriteLock();
+        final ReportDiff rechecked = new ReportDiff();
+        for (BlockInfo b : diff.toRemove) {
+            // Only remove the replicas which are still stored on the storage.
+            if (blocksMap.getStoredBlock(b) == b
+                    && b.findStorageInfo(storageInfo) >= 0) {
+                rechecked.toRemove.add(b);
+            }
+        }
+        for (BlockReportReplica replica : diff.changed) {
+            long replicaID = replica.getBlockId();
+            if (BlockIdManager.isStripedBlockID(replicaID)
+                    && (!hasNonEcBlockUsingStripedID ||
+                    !blocksMap.containsBlock(replica))) {
+                replicaID = BlockIdManager.convertToStripedID(replicaID);
+            }
+            final BlockInfo stored = blocksMap.getStoredBlock(new Block(replicaID));
+            if (stored == null) {
+                rechecked.toInvalidate.add(new Block(replica));
+            } else {
+                reportDiffSortedInner(storageInfo, replica, replica.getState(),
+                        stored, rechecked.toAdd, rechecked.toCorrupt,
+                        rechecked.toUC);
+            }
+        }
+        return rechecked;
+    }
 
+    private void applyReportDiff(final DatanodeStorageInfo storageInfo,
+                                 final ReportDiff diff,
+                                 final String strBlockReportId) throws IOException {
         DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
         // Process the blocks on each queue
-        for (StatefulBlockInfo b : toUC) {
+        for (StatefulBlockInfo b : diff.toUC) {
             addStoredBlockUnderConstruction(b, storageInfo);
         }
-        for (BlockInfo b : toRemove) {
+        for (BlockInfo b : diff.toRemove) {
             removeStoredBlock(b, node);
         }
         int numBlocksLogged = 0;
-        for (BlockInfoToAdd b : toAdd) {
+        for (BlockInfoToAdd b : diff.toAdd) {
             addStoredBlock(b.stored, b.reported, storageInfo, null,
                     numBlocksLogged < maxNumBlocksToLog);
             numBlocksLogged++;
@@ -2859,14 +3360,12 @@ public class BlockManager implements BlockStatsMXBean {
             blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
                     "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
         }
-        for (Block b : toInvalidate) {
+        for (Block b : diff.toInvalidate) {
             addToInvalidates(b, node);
         }
-        for (BlockToMarkCorrupt b : toCorrupt) {
+        for (BlockToMarkCorrupt b : diff.toCorrupt) {
             markBlockAsCorrupt(b, storageInfo, node);
         }
-
-        return toInvalidate;
     }
 
     /**
@@ -2991,15 +3490,16 @@ public class BlockManager implements BlockStatsMXBean {
     }
 
     private void reportDiffSorted(DatanodeStorageInfo storageInfo,
+                                  Iterator<BlockInfo> storageBlocksIterator,
                                   Iterable<BlockReportReplica> newReport,
-                                  Collection<BlockInfoToAdd> toAdd,     // add to DatanodeDescriptor
-                                  Collection<BlockInfo> toRemove,       // remove from DatanodeDescriptor
-                                  Collection<Block> toInvalidate,       // should be removed from DN
-                                  Collection<BlockToMarkCorrupt> toCorrupt, // add to corrupt replicas list
-                                  Collection<StatefulBlockInfo> toUC) { // add to under-construction list
+                                  ReportDiff diff) {
+        final Collection<BlockInfoToAdd> toAdd = diff.toAdd;         // add to DatanodeDescriptor
+        final Collection<BlockInfo> toRemove = diff.toRemove;        // remove from DatanodeDescriptor
+        final Collection<Block> toInvalidate = diff.toInvalidate;    // should be removed from DN
+        final Collection<BlockToMarkCorrupt> toCorrupt = diff.toCorrupt; // add to corrupt replicas list
+        final Collection<StatefulBlockInfo> toUC = diff.toUC;        // add to under-construction list
 
         // The blocks must be sorted and the storagenodes blocks must be sorted
-        Iterator<BlockInfo> storageBlocksIterator = storageInfo.getBlockIterator();
         DatanodeDescriptor dn = storageInfo.getDatanodeDescriptor();
         BlockInfo storageBlock = null;
 
@@ -3028,6 +3528,8 @@ public class BlockManager implements BlockStatsMXBean {
                 storageBlock = storageBlocksIterator.next();
             }
 
+            final int numChanges = diff.changed == null ? 0
+                    : diff.numReplicaChanges();
             do {
                 int cmp;
                 if (storageBlock == null ||
@@ -3058,6 +3560,9 @@ public class BlockManager implements BlockStatsMXBean {
                             Long.compare(replicaID, storageBlock.getBlockId()) > 0);
                 }
             } while (storageBlock != null);
+            if (diff.changed != null && diff.numReplicaChanges() > numChanges) {
+                diff.changed.add(replica);
+            }
         }
 
         // Iterate any remaining blocks that have not been reported and remove them
@@ -4185,34 +4690,120 @@ public class BlockManager implements BlockStatsMXBean {
         for (ReceivedDeletedBlockInfo rdbi : srdb.getBlocks()) {
             switch (rdbi.getStatus()) {
                 case DELETED_BLOCK:
-                    removeStoredBlock(storageInfo, rdbi.getBlock(), node);
                     deleted++;
                     break;
                 case RECEIVED_BLOCK:
-                    addBlock(storageInfo, rdbi.getBlock(), rdbi.getDelHints());
                     received++;
                     break;
                 case RECEIVING_BLOCK:
                     receiving++;
-                    processAndHandleReportedBlock(storageInfo, rdbi.getBlock(),
-                            ReplicaState.RBW, null);
                     break;
                 default:
-                    String msg =
-                            "Unknown block status code reported by " + node +
-                                    ": " + rdbi;
-                    blockLog.warn(msg);
-                    assert false : msg; // if assertions are enabled, throw.
                     break;
             }
-            blockLog.debug("BLOCK* block {}: {} is received from {}",
-                    rdbi.getStatus(), rdbi.getBlock(), node);
+            processReceivedDeletedBlock(node, storageInfo, rdbi);
         }
         blockLog.debug("*BLOCK* NameNode.processIncrementalBlockReport: from "
                         + "{} receiving: {}, received: {}, deleted: {}", node, receiving,
                 received, deleted);
     }
 
+    private void processReceivedDeletedBlock(final DatanodeDescriptor node,
+                                             final DatanodeStorageInfo storageInfo,
+                                             final ReceivedDeletedBlockInfo rdbi) throws IOException {
+        switch (rdbi.getStatus()) {
+            case DELETED_BLOCK:
+                removeStoredBlock(storageInfo, rdbi.getBlock(), node);
+                break;
+            case RECEIVED_BLOCK:
+                addBlock(storageInfo, rdbi.getBlock(), rdbi.getDelHints());
+                break;
+            case RECEIVING_BLOCK:
+                processAndHandleReportedBlock(storageInfo, rdbi.getBlock(),
+                        ReplicaState.RBW, null);
+                break;
+            default:
+                String msg =
+                        "Unknown block status code reported by " + node +
+                                ": " + rdbi;
+                blockLog.warn(msg);
+                assert false : msg; // if assertions are enabled, throw.
+                break;
+        }
+        blockLog.debug("BLOCK* block {}: {} is received from {}",
+                rdbi.getStatus(), rdbi.getBlock(), node);
+    }
+
+    /**
+     * Apply a batch of incremental block reports, possibly from different
+     * DataNodes. The blocks of all the reports are applied in block id order;
+     * the order of the updates to one block is kept. A report that fails
+     * makes its DataNode register again, as a single report does.
+     */
+    private void processIncrementalBlockReports(
+            final List<IncrementalBlockReportOp> reports) {
+        assert namesystem.hasWriteLock();
+        final List<ReportedBlockUpdate> updates = new ArrayList<>();
+        for (IncrementalBlockReportOp report : reports) {
+            DatanodeDescriptor node;
+            try {
+                node = datanodeManager.getDatanode(report.nodeID);
+            } catch (UnregisteredNodeException e) {
+                node = null;
+            }
+            if (node == null || !node.isRegistered()) {
+                blockLog.warn("BLOCK* processIncrementalBlockReport"
+                        + " is received from dead or unregistered node {}", report.nodeID);
+                continue;
+            }
+            DatanodeStorageInfo storageInfo =
+                    node.getStorageInfo(report.srdb.getStorage().getStorageID());
+            if (storageInfo == null) {
+                // See processIncrementalBlockReport(DatanodeDescriptor, ...).
+                storageInfo = node.updateStorage(report.srdb.getStorage());
+            }
+            for (ReceivedDeletedBlockInfo rdbi : report.srdb.getBlocks()) {
+                updates.add(new ReportedBlockUpdate(node, storageInfo, rdbi));
+            }
+        }
+        // A stable sort, so the updates to a block keep their order.
+        updates.sort(Comparator.comparingLong(u -> u.rdbi.getBlock().getBlockId()));
+
+        final Set<DatanodeDescriptor> failed = new HashSet<>();
+        for (ReportedBlockUpdate update : updates) {
+            if (failed.contains(update.node)) {
+                continue;
+            }
+            try {
+                processReceivedDeletedBlock(update.node, update.storageInfo,
+                        update.rdbi);
+            } catch (Exception ex) {
+                // usually because the node is unregistered/dead.  next heartbeat
+                // will correct the problem
+                failed.add(update.node);
+                update.node.setForceRegistration(true);
+                blockLog.error("*BLOCK* NameNode.blockReceivedAndDeleted: "
+                        + "failed from " + update.node + ": " + ex.getMessage());
+            }
+        }
+        blockLog.debug("*BLOCK* processIncrementalBlockReports: {} reports, "
+                + "{} blocks", reports.size(), updates.size());
+    }
+
+    /** A block of an incremental block report, with its resolved storage. */
+    private static class ReportedBlockUpdate {
+        final DatanodeDescriptor node;
+        final DatanodeStorageInfo storageInfo;
+        final ReceivedDeletedBlockInfo rdbi;
+
+        ReportedBlockUpdate(DatanodeDescriptor node,
+                            DatanodeStorageInfo storageInfo, ReceivedDeletedBlockInfo rdbi) {
+            this.node = node;
+            this.storageInfo = storageInfo;
+            this.rdbi = rdbi;
+        }
+    }
+
     /**
      * Return the number of nodes hosting a given block, grouped
      * by the state of those replicas.
@@ -4827,35 +5418,17 @@ public class BlockManager implements BlockStatsMXBean {
         }
 
         List<List<BlockInfo>> blksToReconstruct = null;
-        namesystem.writeLock();
+        reconstructionLock();
         try {
             // Choose the blocks to be reconstructed
             blksToReconstruct = neededReconstruction
                     .chooseLowRedundancyBlocks(lowRedundancyBlockCount);
         } finally {
-            namesystem.writeUnlock();
+            reconstructionUnlock();
         }
 
         List<BlockReconstructionWork> reconWork = new ArrayList<>();
-
-        namesystem.writeLock();
-        try {
-            synchronized (neededReconstruction) {
-                for (int priority = 0; priority < blksToReconstruct
-                        .size(); priority++) {
-                    for (BlockInfo block : blksToReconstruct.get(priority)) {
-                        BlockReconstructionWork rw = scheduleReconstruction(block,
-                                priority);
-                        if (rw != null) {
-                            reconWork.add(rw);
-                        }
-                    }
-                }
-            }
-        } finally {
-            namesystem.writeUnlock();
-        }
-
+        scheduleReconstruction(blksToReconstruct, reconWork);
         return reconWork;
     }
 
@@ -5331,6 +5904,9 @@ public class BlockManager implements BlockStatsMXBean {
     }
 
     public void addTaskToDataNode(List<BlockReconstructionWork> batchReconWork) {
+        planStripedDecommission(batchReconWork);
+        final ErasureCodingTaskQueue.Batch batch =
+                new ErasureCodingTaskQueue.Batch();
         namesystem.writeLock();
         try {
             for (BlockReconstructionWork rw : batchReconWork) {
@@ -5339,6 +5915,9 @@ public class BlockManager implements BlockStatsMXBean {
                     rw.resetTargets();
                     continue;
                 }
+                if (rw instanceof ErasureCodingWork) {
+                    ((ErasureCodingWork) rw).setBatch(batch);
+                }
 
                 synchronized (neededReconstruction) {
                     validateReconstructionWork(rw);
@@ -5707,34 +6286,18 @@ public class BlockManager implements BlockStatsMXBean {
     public List<BlockReconstructionWork> getPPRReconWork() {
         final int numlive = heartbeatManager.getLiveDatanodeCount();
         List<List<BlockInfo>> blocksToReconstruct = null;
-        namesystem.writeLock();
+        reconstructionLock();
         try {
             // Choose the blocks to be reconstructed
             blocksToReconstruct = neededReconstruction
                     .chooseLowRedundancyBlocks(numlive);
         } finally {
-            namesystem.writeUnlock();
+            reconstructionUnlock();
         }
 
         List<BlockReconstructionWork> reconWork = new LinkedList<>();
 
-        namesystem.writeLock();
-        try {
-            synchronized (neededReconstruction) {
-                for (int priority = 0; priority < blocksToReconstruct
-                        .size(); priority++) {
-                    for (BlockInfo block : blocksToReconstruct.get(priority)) {
-                        BlockReconstructionWork rw = scheduleReconstruction(block,
-                                priority);
-                        if (rw != null) {
-                            reconWork.add(rw);
-                        }
-                    }
-                }
-            }
-        } finally {
-            namesystem.writeUnlock();
-        }
+        scheduleReconstruction(blocksToReconstruct, reconWork);
 
         return reconWork;
     }
@@ -5773,34 +6336,18 @@ public class BlockManager implements BlockStatsMXBean {
         final int numlive = heartbeatManager.getLiveDatanodeCount();
         List<List<BlockInfo>> blocksToReconstruct = null;
 
-        namesystem.writeLock();
+        reconstructionLock();
         try {
             // Choose the blocks to be reconstructed
             blocksToReconstruct = neededReconstruction
                     .chooseLowRedundancyBlocks(numlive);
         } finally {
-            namesystem.writeUnlock();
+            reconstructionUnlock();
         }
 
         List<BlockReconstructionWork> reconWork = new LinkedList<>();
 
-        namesystem.writeLock();
-        try {
-            synchronized (neededReconstruction) {
-                for (int priority = 0; priority < blocksToReconstruct
-                        .size(); priority++) {
-                    for (BlockInfo block : blocksToReconstruct.get(priority)) {
-                        BlockReconstructionWork rw = scheduleReconstruction(block,
-                                priority);
-                        if (rw != null) {
-                            reconWork.add(rw);
-                        }
-                    }
-                }
-            }
-        } finally {
-            namesystem.writeUnlock();
-        }
+        scheduleReconstruction(blocksToReconstruct, reconWork);
 
         final Set<Node> excludedNodes = new HashSet<>();
         for (BlockReconstructionWork rw : reconWork) {
@@ -7222,6 +7769,40 @@ public class BlockManager implements BlockStatsMXBean {
         return shouldPostponeBlocksFromFuture;
     }
 
+    /**
+     * Queue an incremental block report of a storage for processing on the
+     * block report processing thread.
+     */
+    public void enqueueIncrementalBlockReport(final DatanodeID nodeID,
+                                              final StorageReceivedDeletedBlocks srdb) throws IOException {
+        enqueueBlockOp(new IncrementalBlockReportOp(nodeID, srdb));
+    }
+
+    /** A queued incremental block report of a storage. */
+    private class IncrementalBlockReportOp implements Runnable {
+        private final DatanodeID nodeID;
+        private final StorageReceivedDeletedBlocks srdb;
+        private final long queuedTime = Time.monotonicNow();
+
+        IncrementalBlockReportOp(DatanodeID nodeID,
+                                 StorageReceivedDeletedBlocks srdb) {
+            this.nodeID = nodeID;
+            this.srdb = srdb;
+        }
+
+        @Override
+        public void run() {
+            try {
+                processIncrementalBlockReport(nodeID, srdb);
+            } catch (Exception ex) {
+                // usually because the node is unregistered/dead.  next heartbeat
+                // will correct the problem
+                blockLog.error("*BLOCK* NameNode.blockReceivedAndDeleted: "
+                        + "failed from " + nodeID + ": " + ex.getMessage());
+            }
+        }
+    }
+
     // async processing of an action, used for IBRs.
     public void enqueueBlockOp(final Runnable action) throws IOException {
         try {
@@ -7294,6 +7875,8 @@ public class BlockManager implements BlockStatsMXBean {
 
         private final BlockingQueue<Runnable> queue =
                 new ArrayBlockingQueue<Runnable>(1024);
+        /** Ops taken off the queue while coalescing, not processed yet. */
+        private final Deque<Runnable> taken = new ArrayDeque<>();
 
         BlockReportProcessingThread() {
             super("Block report processor");
@@ -7314,21 +7897,20 @@ public class BlockManager implements BlockStatsMXBean {
             while (namesystem.isRunning()) {
                 NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
                 try {
-                    Runnable action = queue.take();
+                    Runnable action = taken.isEmpty() ? takeAndCoalesce() : taken.poll();
                     // batch as many operations in the write lock until the queue
                     // runs dry, or the max lock hold is reached.
                     int processed = 0;
                     namesystem.writeLock();
-                    metrics.setBlockOpsQueued(queue.size() + 1);
+                    metrics.setBlockOpsQueued(queue.size() + taken.size() + 1);
                     try {
                         long start = Time.monotonicNow();
                         do {
-                            processed++;
-                            action.run();
+                            processed += process(action, metrics);
                             if (Time.monotonicNow() - start > MAX_LOCK_HOLD_MS) {
                                 break;
                             }
-                            action = queue.poll();
+                            action = taken.isEmpty() ? queue.poll() : taken.poll();
                         } while (action != null);
                     } finally {
                         namesystem.writeUnlock();
@@ -7342,6 +7924,56 @@ public class BlockManager implements BlockStatsMXBean {
                 }
             }
             queue.clear();
+            taken.clear();
+        }
+
+        /**
+         * Take the next op. If it is an incremental block report, wait for more
+         * ops to queue up and take them too, so they can be batched.
+         */
+        private Runnable takeAndCoalesce() throws InterruptedException {
+            final Runnable action = queue.take();
+            if (incrementalBlockReportCoalesceMs > 0
+                    && action instanceof IncrementalBlockReportOp) {
+                final long wait = ((IncrementalBlockReportOp) action).queuedTime
+                        + incrementalBlockReportCoalesceMs - Time.monotonicNow();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                queue.drainTo(taken);
+            }
+            return action;
+        }
+
+        /**
+         * Process the op, together with the incremental block reports taken
+         * right after it if it is one and reports are coalesced.
+         *
+         * @return the number of ops processed.
+         */
+        private int process(Runnable action, NameNodeMetrics metrics) {
+            if (!(action instanceof IncrementalBlockReportOp)) {
+                action.run();
+                return 1;
+            }
+            final long now = Time.monotonicNow();
+            IncrementalBlockReportOp report = (IncrementalBlockReportOp) action;
+            metrics.addIncrementalBlockReportQueueTime(now - report.queuedTime);
+            if (incrementalBlockReportCoalesceMs <= 0) {
+                report.run();
+                return 1;
+            }
+            final List<IncrementalBlockReportOp> batch = new ArrayList<>();
+            batch.add(report);
+            // Other ops, such as full block reports, are not reordered.
+            while (taken.peek() instanceof IncrementalBlockReportOp) {
+                report = (IncrementalBlockReportOp) taken.poll();
+                metrics.addIncrementalBlockReportQueueTime(now - report.queuedTime);
+                batch.add(report);
+            }
+            processIncrementalBlockReports(batch);
+            metrics.addIncrementalBlockReportBatchSize(batch.size());
+            return batch.size();
         }
 
         void enqueue(Runnable action) throws InterruptedException {
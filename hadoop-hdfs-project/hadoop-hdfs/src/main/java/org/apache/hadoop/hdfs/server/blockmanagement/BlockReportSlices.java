@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Splits a full block report and the blocks of the reporting storage into
+ * the same block id ranges, so that the ranges can be compared with each
+ * other independently.
+ * <p>
+ * Both the report and the stored blocks must be sorted by block id. The
+ * internal blocks of a striped block group are compared with their group,
+ * so a group is never split across two slices.
+ */
+class BlockReportSlices {
+  private final BlockReportReplica[] reported;
+  private final BlockInfo[] stored;
+  /** The first index of each slice in {@link #reported}, and the end. */
+  private final int[] reportedStarts;
+  /** The first index of each slice in {@link #stored}, and the end. */
+  private final int[] storedStarts;
+
+  /**
+   * @param reported the reported replicas, sorted by block id.
+   * @param stored the blocks of the storage, sorted by block id.
+   * @param maxSlices the maximum number of slices.
+   */
+  BlockReportSlices(BlockReportReplica[] reported, BlockInfo[] stored,
+      int maxSlices) {
+    Preconditions.checkArgument(maxSlices > 0,
+        "Illegal number of slices %s", maxSlices);
+    this.reported = reported;
+    this.stored = stored;
+
+    // Split the report evenly, moving each start past the replicas of the
+    // block (group) the previous slice ends with.
+    final int[] starts = new int[maxSlices + 1];
+    int n = 1;
+    for (int i = 1; i < maxSlices; i++) {
+      int start = Math.max(starts[n - 1] + 1,
+          (int) ((long) reported.length * i / maxSlices));
+      while (start < reported.length
+          && groupId(reported[start]) == groupId(reported[start - 1])) {
+        start++;
+      }
+      if (start >= reported.length) {
+        break;
+      }
+      starts[n++] = start;
+    }
+    starts[n] = reported.length;
+    this.reportedStarts = Arrays.copyOf(starts, n + 1);
+
+    // The stored blocks of a slice are those from the first group id of the
+    // slice up to the first group id of the next one.
+    this.storedStarts = new int[n + 1];
+    for (int i = 1; i < n; i++) {
+      storedStarts[i] = findFirstStored(groupId(reported[reportedStarts[i]]),
+          storedStarts[i - 1]);
+    }
+    storedStarts[n] = stored.length;
+  }
+
+  /**
+   * @return the id the given replica is compared with the stored blocks by,
+   * which is the block group id for the internal block of a striped group.
+   */
+  static long groupId(BlockReportReplica replica) {
+    final long id = replica.getBlockId();
+    return BlockIdManager.isStripedBlockID(id) ?
+        BlockIdManager.convertToStripedID(id) : id;
+  }
+
+  /** @return the index of the first stored block not lower than the id. */
+  private int findFirstStored(long id, int from) {
+    int low = from;
+    int high = stored.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (stored[mid].getBlockId() < id) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  int getNumSlices() {
+    return reportedStarts.length - 1;
+  }
+
+  /** @return the reported replicas of the slice. */
+  List<BlockReportReplica> getReported(int slice) {
+    return Arrays.asList(reported).subList(reportedStarts[slice],
+        reportedStarts[slice + 1]);
+  }
+
+  /** @return the stored blocks of the slice. */
+  List<BlockInfo> getStored(int slice) {
+    return Arrays.asList(stored).subList(storedStarts[slice],
+        storedStarts[slice + 1]);
+  }
+}
@@ -45,6 +45,7 @@ import org.apache.hadoop.hdfs.server.namenode.CachedBlock;
 import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
+import org.apache.hadoop.hdfs.server.protocol.ECReconstructionLoadReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.hdfs.util.EnumCounters;
@@ -198,8 +199,8 @@ public class DatanodeDescriptor extends DatanodeInfo {
   private final BlockQueue<BlockTargetPair> replicateBlocks =
       new BlockQueue<>();
   /** A queue of blocks to be erasure coded by this datanode */
-  private final BlockQueue<BlockECReconstructionInfo> erasurecodeBlocks =
-      new BlockQueue<>();
+  private final ErasureCodingTaskQueue erasurecodeBlocks =
+      new ErasureCodingTaskQueue();
   /** A queue of blocks to be recovered by this datanode */
   private final BlockQueue<BlockInfo> recoverBlocks = new BlockQueue<>();
   /** A set of blocks to be invalidated by this datanode */
@@ -231,6 +232,14 @@ public class DatanodeDescriptor extends DatanodeInfo {
   // HB processing can use it to tell if it is the first HB since DN restarted
   private boolean heartbeatedSinceRegistration = false;
 
+  // EC reconstruction work in flight on the datanode, as of the last HB
+  private volatile ECReconstructionLoadReport ecReconstructionLoad =
+      ECReconstructionLoadReport.EMPTY_REPORT;
+
+  // Indexes the storages of this datanode which store blocks
+  private volatile DatanodeStorageIndex storageIndex =
+      DatanodeStorageIndex.UNOWNED;
+
   /**
    * DatanodeDescriptor constructor
    * @param nodeID id of the data node
@@ -537,6 +546,7 @@ public class DatanodeDescriptor extends DatanodeInfo {
         if (storageInfo.numBlocks() == 0) {
           DatanodeStorageInfo info =
               storageMap.remove(storageInfo.getStorageID());
+          info.releaseIndex();
           if (!hasStorageType(info.getStorageType())) {
             // we removed a storage, and as result there is no more such storage
             // type, inform the parent about this.
@@ -651,10 +661,26 @@ public class DatanodeDescriptor extends DatanodeInfo {
   void addBlockToBeErasureCoded(ExtendedBlock block,
       DatanodeDescriptor[] sources, DatanodeStorageInfo[] targets,
       byte[] liveBlockIndices, ErasureCodingPolicy ecPolicy) {
+    addBlockToBeErasureCoded(block, sources, targets, liveBlockIndices,
+        ecPolicy, null, LowRedundancyBlocks.LEVEL);
+  }
+
+  /**
+   * Store block erasure coding work scheduled as part of a batch.
+   *
+   * @param batch the batch the work was scheduled in, or null if the work
+   *              was scheduled on its own.
+   * @param priority the reconstruction priority of the block.
+   */
+  void addBlockToBeErasureCoded(ExtendedBlock block,
+      DatanodeDescriptor[] sources, DatanodeStorageInfo[] targets,
+      byte[] liveBlockIndices, ErasureCodingPolicy ecPolicy,
+      ErasureCodingTaskQueue.Batch batch, int priority) {
     assert (block != null && sources != null && sources.length > 0);
     BlockECReconstructionInfo task = new BlockECReconstructionInfo(block,
         sources, targets, liveBlockIndices, ecPolicy);
-    erasurecodeBlocks.offer(task);
+    erasurecodeBlocks.offer(task,
+        batch != null ? batch : new ErasureCodingTaskQueue.Batch(), priority);
     BlockManager.LOG.debug("Adding block reconstruction task " + task + "to "
         + getName() + ", current queue size is " + erasurecodeBlocks.size());
   }
@@ -906,6 +932,27 @@ public class DatanodeDescriptor extends DatanodeInfo {
     return disallowed;
   }
 
+  /** @return the index of the storages of this datanode. */
+  DatanodeStorageIndex getStorageIndex() {
+    return storageIndex;
+  }
+
+  void setStorageIndex(DatanodeStorageIndex storageIndex) {
+    this.storageIndex = storageIndex;
+  }
+
+  /**
+   * @return the erasure coding reconstruction work the datanode reported to
+   * have in flight in its last heartbeat.
+   */
+  public ECReconstructionLoadReport getECReconstructionLoad() {
+    return ecReconstructionLoad;
+  }
+
+  void setECReconstructionLoad(ECReconstructionLoadReport load) {
+    this.ecReconstructionLoad = load;
+  }
+
   /**
    * @return number of failed volumes in the datanode.
    */
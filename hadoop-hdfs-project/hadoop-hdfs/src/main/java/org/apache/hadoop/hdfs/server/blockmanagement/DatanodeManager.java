@@ -77,6 +77,8 @@ public class DatanodeManager {
   private final BlockManager blockManager;
   private final DatanodeAdminManager datanodeAdminManager;
   private final HeartbeatManager heartbeatManager;
+  private final DatanodeStorageIndex storageIndex =
+      DatanodeStorageIndex.newIndex();
   private final FSClusterStats fsClusterStats;
 
   private volatile long heartbeatIntervalSeconds;
@@ -196,6 +198,15 @@ public class DatanodeManager {
   private final SlowPeerTracker slowPeerTracker;
   @Nullable
   private final SlowDiskTracker slowDiskTracker;
+
+  /**
+   * Caps of the EC reconstruction work, in bytes, a datanode may have in
+   * flight as a source, as the decoding node and as a target before it is
+   * given more. Zero means unlimited.
+   */
+  private final long maxECSourceReadBytes;
+  private final long maxECDecodeBytes;
+  private final long maxECTargetWriteBytes;
   
   /**
    * The minimum time between resending caching directives to Datanodes,
@@ -303,6 +314,16 @@ public class DatanodeManager {
         + ", counted=" + countedBlockInvalidateLimit
         + ", effected=" + blockInvalidateLimit);
 
+    this.maxECSourceReadBytes = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_SOURCE_READ_BYTES_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_SOURCE_READ_BYTES_DEFAULT);
+    this.maxECDecodeBytes = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_DECODE_BYTES_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_DECODE_BYTES_DEFAULT);
+    this.maxECTargetWriteBytes = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_TARGET_WRITE_BYTES_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_TARGET_WRITE_BYTES_DEFAULT);
+
     this.checkIpHostnameInRegistration = conf.getBoolean(
         DFSConfigKeys.DFS_NAMENODE_DATANODE_REGISTRATION_IP_HOSTNAME_CHECK_KEY,
         DFSConfigKeys.DFS_NAMENODE_DATANODE_REGISTRATION_IP_HOSTNAME_CHECK_DEFAULT);
@@ -378,6 +399,7 @@ public class DatanodeManager {
   void close() {
     datanodeAdminManager.close();
     heartbeatManager.close();
+    storageIndex.close();
   }
 
   /** @return the network topology. */
@@ -385,6 +407,11 @@ public class DatanodeManager {
     return networktopology;
   }
 
+  /** @return the index of the storages of the datanodes. */
+  DatanodeStorageIndex getStorageIndex() {
+    return storageIndex;
+  }
+
   /** @return the heartbeat manager. */
   HeartbeatManager getHeartbeatManager() {
     return heartbeatManager;
@@ -708,6 +735,9 @@ public class DatanodeManager {
     heartbeatManager.removeDatanode(nodeInfo);
     if (removeBlocksFromBlocksMap) {
       blockManager.removeBlocksAssociatedTo(nodeInfo);
+      for (DatanodeStorageInfo storage : nodeInfo.getStorageInfos()) {
+        storage.releaseIndex();
+      }
     }
     networktopology.remove(nodeInfo);
     decrementVersionCount(nodeInfo.getSoftwareVersion());
@@ -770,6 +800,7 @@ public class DatanodeManager {
     synchronized(this) {
       host2DatanodeMap.remove(datanodeMap.put(node.getDatanodeUuid(), node));
     }
+    node.setStorageIndex(storageIndex);
 
     networktopology.add(node); // may throw InvalidTopologyException
     host2DatanodeMap.add(node);
@@ -1634,7 +1665,9 @@ public class DatanodeManager {
       int maxTransfers, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary,
       @Nonnull SlowPeerReports slowPeers,
-      @Nonnull SlowDiskReports slowDisks) throws IOException {
+      @Nonnull SlowDiskReports slowDisks,
+      @Nonnull ECReconstructionLoadReport ecReconstructionLoad)
+      throws IOException {
     final DatanodeDescriptor nodeinfo;
     try {
       nodeinfo = getDatanode(nodeReg);
@@ -1653,6 +1686,7 @@ public class DatanodeManager {
     }
     heartbeatManager.updateHeartbeat(nodeinfo, reports, cacheCapacity,
         cacheUsed, xceiverCount, failedVolumes, volumeFailureSummary);
+    nodeinfo.setECReconstructionLoad(ecReconstructionLoad);
 
     // If we are in safemode, do not send back any recovery / replication
     // requests. Don't even drain the existing queue of work.
@@ -1679,6 +1713,18 @@ public class DatanodeManager {
           (double) (totalReplicateBlocks * maxTransfers) / totalBlocks);
       int numECTasks = (int) Math.ceil(
           (double) (totalECBlocks * maxTransfers) / totalBlocks);
+      // The node decodes and receives the blocks of the EC tasks sent to it.
+      // Hold them back while its reported work in flight is over the caps.
+      // Batches other nodes already work on are still sent, see
+      // ErasureCodingTaskQueue.
+      if (numECTasks > 0 && (isECDecoderOverloaded(nodeinfo)
+          || isECTargetOverloaded(nodeinfo))) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Holding back EC tasks of " + nodeinfo + " with load "
+              + nodeinfo.getECReconstructionLoad());
+        }
+        numECTasks = 0;
+      }
 
       if (LOG.isDebugEnabled()) {
         LOG.debug("Pending replication tasks: " + numReplicationTasks
@@ -1953,6 +1999,50 @@ public class DatanodeManager {
     return slowPeerTracker != null ? slowPeerTracker.getJson() : null;
   }
 
+  /**
+   * @return true if the datanode serves too many bytes to EC reconstruction
+   * to be picked as a source of more.
+   */
+  boolean isECSourceOverloaded(DatanodeDescriptor node) {
+    return maxECSourceReadBytes > 0 && node.getECReconstructionLoad()
+        .getSourceReadBytes() >= maxECSourceReadBytes;
+  }
+
+  /**
+   * @return true if the datanode has too many bytes to decode to be given
+   * more EC reconstruction tasks.
+   */
+  boolean isECDecoderOverloaded(DatanodeDescriptor node) {
+    return maxECDecodeBytes > 0 && node.getECReconstructionLoad()
+        .getDecodeBytes() >= maxECDecodeBytes;
+  }
+
+  /**
+   * @return true if the datanode receives too many reconstructed bytes to be
+   * picked as the target of more.
+   */
+  boolean isECTargetOverloaded(DatanodeDescriptor node) {
+    return maxECTargetWriteBytes > 0 && node.getECReconstructionLoad()
+        .getTargetWriteBytes() >= maxECTargetWriteBytes;
+  }
+
+  /**
+   * @return the live datanodes which should not be picked as the target of
+   * more EC reconstruction work, see {@link #isECTargetOverloaded}.
+   */
+  List<DatanodeDescriptor> getECTargetOverloadedNodes() {
+    if (maxECTargetWriteBytes <= 0) {
+      return Collections.emptyList();
+    }
+    final List<DatanodeDescriptor> nodes = new ArrayList<>();
+    for (DatanodeDescriptor node : heartbeatManager.getDatanodes()) {
+      if (isECTargetOverloaded(node)) {
+        nodes.add(node);
+      }
+    }
+    return nodes;
+  }
+
   /**
    * Use only for testing.
    */
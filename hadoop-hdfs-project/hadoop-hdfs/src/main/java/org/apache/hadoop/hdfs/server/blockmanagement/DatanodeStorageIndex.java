@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gives every {@link DatanodeStorageInfo} that stores blocks a positive int
+ * index, so that {@link BlockInfo} can refer to its storages through an int
+ * array instead of an array of references. Index 0 is never given out and
+ * marks an empty slot.
+ * <p>
+ * Every {@link DatanodeManager} owns an index for the storages of its
+ * DataNodes. As a {@link BlockInfo} does not know its owner, the high bits
+ * of every index hold the id of the owner and the low bits a slot of it, and
+ * the open owners are looked up by id. An owner gives back its id when it is
+ * closed, so nothing it indexed stays reachable once its NameNode is gone.
+ * <p>
+ * A storage takes a slot the first time a block is added to it, and gives
+ * it back once it is removed from its DataNode without blocks. As no block
+ * refers to a storage without blocks, freed slots are reused.
+ * <p>
+ * Indices are taken and resolved under the namesystem lock, like the block
+ * to storage mapping itself; taking and freeing slots is synchronized as
+ * temporary storages may ask for one concurrently.
+ */
+final class DatanodeStorageIndex {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(DatanodeStorageIndex.class);
+
+  private static final int SLOT_BITS = 23;
+  private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+  /** Owner ids use the bits between the slot and the sign bit. */
+  private static final int MAX_OWNER_ID =
+      (1 << (Integer.SIZE - 1 - SLOT_BITS)) - 1;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /** The open indices, by owner id. Id 0 is never used. */
+  private static final AtomicReferenceArray<DatanodeStorageIndex> OWNERS =
+      new AtomicReferenceArray<>(MAX_OWNER_ID + 1);
+  /** The owner id tried first by the next {@link #newIndex()}. */
+  private static int nextOwnerId = 2;
+
+  /**
+   * The index of the storages of DataNodes that do not belong to a
+   * {@link DatanodeManager}, as in tests. It is never closed.
+   */
+  static final DatanodeStorageIndex UNOWNED = new DatanodeStorageIndex(1);
+
+  static {
+    OWNERS.set(UNOWNED.ownerId, UNOWNED);
+  }
+
+  private final int ownerId;
+  private volatile DatanodeStorageInfo[] storages =
+      new DatanodeStorageInfo[INITIAL_CAPACITY];
+  /** The number of slots given out at least once. */
+  private int numSlots = 0;
+  /** The freed slots, the most recently freed last. */
+  private int[] freeSlots = new int[16];
+  private int numFreeSlots = 0;
+  private boolean closed = false;
+
+  private DatanodeStorageIndex(int ownerId) {
+    this.ownerId = ownerId;
+  }
+
+  /**
+   * @return a new index, to be closed once its storages are gone. If all
+   * owner ids are taken, the storages share {@link #UNOWNED} instead.
+   */
+  static synchronized DatanodeStorageIndex newIndex() {
+    for (int i = 0; i < MAX_OWNER_ID - 1; i++) {
+      final int id = nextOwnerId;
+      nextOwnerId = id == MAX_OWNER_ID ? 2 : id + 1;
+      if (OWNERS.get(id) == null) {
+        final DatanodeStorageIndex index = new DatanodeStorageIndex(id);
+        OWNERS.set(id, index);
+        return index;
+      }
+    }
+    LOG.warn("All {} storage indices are open, sharing the unowned index.",
+        MAX_OWNER_ID - 1);
+    return UNOWNED;
+  }
+
+  /**
+   * @return the storage of the given index, or null for 0, for the index of
+   * a storage that has been removed and for an index that has been closed.
+   */
+  static DatanodeStorageInfo get(int index) {
+    final DatanodeStorageIndex owner = OWNERS.get(index >>> SLOT_BITS);
+    if (owner == null) {
+      return null;
+    }
+    final int slot = index & SLOT_MASK;
+    final DatanodeStorageInfo[] current = owner.storages;
+    return slot < current.length ? current[slot] : null;
+  }
+
+  /**
+   * Give the storage a slot of this index.
+   * @return the index of the storage.
+   */
+  synchronized int register(DatanodeStorageInfo storage) {
+    if (closed) {
+      throw new IllegalStateException("The storage index is closed");
+    }
+    final int slot;
+    if (numFreeSlots > 0) {
+      slot = freeSlots[--numFreeSlots];
+    } else if (numSlots <= SLOT_MASK) {
+      slot = numSlots++;
+    } else {
+      throw new IllegalStateException("Cannot index more than "
+          + (SLOT_MASK + 1) + " storages");
+    }
+    DatanodeStorageInfo[] current = storages;
+    if (slot >= current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    current[slot] = storage;
+    storages = current;
+    return ownerId << SLOT_BITS | slot;
+  }
+
+  /**
+   * Take back the index of the storage, to be reused. It must not store any
+   * block.
+   */
+  static void unregister(int index, DatanodeStorageInfo storage) {
+    final DatanodeStorageIndex owner = OWNERS.get(index >>> SLOT_BITS);
+    if (owner != null) {
+      owner.free(index & SLOT_MASK, storage);
+    }
+  }
+
+  private synchronized void free(int slot, DatanodeStorageInfo storage) {
+    final DatanodeStorageInfo[] current = storages;
+    // The owner id may have been reused since the storage was indexed.
+    if (slot < current.length && current[slot] == storage) {
+      current[slot] = null;
+      if (numFreeSlots == freeSlots.length) {
+        freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+      }
+      freeSlots[numFreeSlots++] = slot;
+    }
+  }
+
+  /**
+   * Drop all the storages of this index and give back its owner id. The
+   * indices it gave out resolve to null from now on.
+   */
+  void close() {
+    if (this == UNOWNED) {
+      return;
+    }
+    synchronized (DatanodeStorageIndex.class) {
+      OWNERS.compareAndSet(ownerId, this, null);
+    }
+    synchronized (this) {
+      closed = true;
+      storages = new DatanodeStorageInfo[0];
+      numSlots = 0;
+      numFreeSlots = 0;
+    }
+  }
+}
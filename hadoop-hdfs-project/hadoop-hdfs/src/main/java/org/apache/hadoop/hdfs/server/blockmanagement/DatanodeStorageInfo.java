@@ -119,6 +119,9 @@ public class DatanodeStorageInfo {
    */
   private boolean blockContentsStale = true;
 
+  /** The index of this storage in {@link DatanodeStorageIndex}, or 0. */
+  private int index = 0;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this(dn, s.getStorageID(), s.getStorageType(), s.getState());
   }
@@ -279,6 +282,38 @@ public class DatanodeStorageInfo {
   int numBlocks() {
     return blocks.size();
   }
+
+  /**
+   * @return the index of this storage in {@link DatanodeStorageIndex}, or 0
+   * if no block has been added to it.
+   */
+  int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the index of this storage, assigning one if it has none yet.
+   */
+  int getOrAssignIndex() {
+    if (index == 0) {
+      final DatanodeStorageIndex owner =
+          dn == null ? null : dn.getStorageIndex();
+      index = (owner == null ? DatanodeStorageIndex.UNOWNED : owner)
+          .register(this);
+    }
+    return index;
+  }
+
+  /**
+   * Give back the index of this storage once it is removed from its
+   * DataNode. Does nothing while it still stores blocks.
+   */
+  void releaseIndex() {
+    if (index != 0 && numBlocks() == 0) {
+      DatanodeStorageIndex.unregister(index, this);
+      index = 0;
+    }
+  }
   
   /**
    * @return iterator to an unmodifiable set of blocks
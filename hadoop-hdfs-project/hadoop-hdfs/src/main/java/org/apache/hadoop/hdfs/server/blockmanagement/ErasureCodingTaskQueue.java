@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
+import org.apache.hadoop.util.Time;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of erasure coding reconstruction tasks pending on a DataNode.
+ * <p>
+ * Tasks are grouped by the {@link Batch} they were scheduled in, so that the
+ * balanced batches built by the reconstruction scheduler are not mixed with
+ * work scheduled later. Batches are handed out in the order of their most
+ * urgent reconstruction priority, then in the order they were created. The
+ * tasks a batch has on one DataNode are always handed out together, and a
+ * batch whose tasks have already been handed out to another participant is
+ * handed out even if it does not fit in the DataNode's transfer slots, so
+ * that all the participants of a batch work on it within the same heartbeat
+ * round. Such batches may take a DataNode past its transfer slots by at most
+ * as many tasks again; a batch which does not fit in that is handed out first
+ * in the next heartbeat.
+ * <p>
+ * The time every task spent in the queue and the spread between the first
+ * and the last participant of a batch receiving its tasks are reported to
+ * {@link NameNodeMetrics}.
+ */
+class ErasureCodingTaskQueue {
+
+  /**
+   * A group of reconstruction tasks scheduled together, possibly on several
+   * DataNodes.
+   */
+  static class Batch {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id;
+    private int participants = 0;
+    private int dispatched = 0;
+    private long firstDispatchTime = -1;
+
+    Batch() {
+      this.id = NEXT_ID.incrementAndGet();
+    }
+
+    long getId() {
+      return id;
+    }
+
+    synchronized void addParticipant() {
+      participants++;
+    }
+
+    /**
+     * A participant dropped its tasks of this batch without running them.
+     */
+    synchronized void removeParticipant() {
+      participants--;
+    }
+
+    synchronized boolean isDispatchStarted() {
+      return dispatched > 0;
+    }
+
+    /**
+     * A participant has received its tasks of this batch.
+     *
+     * @return the time between the first and the last participant receiving
+     * their tasks if this was the last participant, -1 otherwise.
+     */
+    synchronized long dispatch(long now) {
+      if (dispatched++ == 0) {
+        firstDispatchTime = now;
+      }
+      return dispatched == participants ? now - firstDispatchTime : -1;
+    }
+
+    @Override
+    public String toString() {
+      return "batch-" + id;
+    }
+  }
+
+  /** The tasks of one batch pending on this DataNode. */
+  private static class Entry {
+    private final Batch batch;
+    private int priority;
+    private final List<BlockECReconstructionInfo> tasks = new ArrayList<>();
+    private final List<Long> enqueueTimes = new ArrayList<>();
+
+    Entry(Batch batch, int priority) {
+      this.batch = batch;
+      this.priority = priority;
+    }
+  }
+
+  private static final Comparator<Entry> ENTRY_ORDER =
+      Comparator.<Entry>comparingInt(e -> e.priority)
+          .thenComparingLong(e -> e.batch.getId());
+
+  private final TreeSet<Entry> entries = new TreeSet<>(ENTRY_ORDER);
+  private final Map<Batch, Entry> entriesByBatch = new HashMap<>();
+  private int size = 0;
+
+  /** Number of tasks in the queue. */
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Enqueue a task.
+   *
+   * @param task the reconstruction task.
+   * @param batch the batch the task was scheduled in.
+   * @param priority the reconstruction priority of the block, lower values
+   *                 are more urgent.
+   */
+  synchronized void offer(BlockECReconstructionInfo task, Batch batch,
+      int priority) {
+    Entry entry = entriesByBatch.get(batch);
+    if (entry == null) {
+      entry = new Entry(batch, priority);
+      entriesByBatch.put(batch, entry);
+      batch.addParticipant();
+    } else {
+      // Re-insert since the priority is part of the ordering.
+      entries.remove(entry);
+      entry.priority = Math.min(entry.priority, priority);
+    }
+    entry.tasks.add(task);
+    entry.enqueueTimes.add(Time.monotonicNow());
+    entries.add(entry);
+    size++;
+  }
+
+  /**
+   * Dequeue the tasks to send to the DataNode.
+   *
+   * @param maxTasks the number of tasks the DataNode has room for. Batches
+   *                 already handed out to other participants may add up to
+   *                 as many tasks again.
+   * @return the tasks, or null if there is none to send.
+   */
+  synchronized List<BlockECReconstructionInfo> poll(int maxTasks) {
+    if (entries.isEmpty()) {
+      return null;
+    }
+    final long now = Time.monotonicNow();
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    final List<BlockECReconstructionInfo> results = new ArrayList<>();
+    final long maxStartedTasks = 2L * maxTasks;
+    for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+      final Entry e = it.next();
+      final int total = results.size() + e.tasks.size();
+      final boolean fits = results.isEmpty() ? maxTasks > 0 :
+          total <= maxTasks;
+      if (!fits && !(e.batch.isDispatchStarted() && total <= maxStartedTasks)) {
+        // Batches other participants already work on can go over the
+        // budget, but only by a bounded number of tasks.
+        continue;
+      }
+      it.remove();
+      entriesByBatch.remove(e.batch);
+      size -= e.tasks.size();
+      results.addAll(e.tasks);
+      if (metrics != null) {
+        for (long enqueueTime : e.enqueueTimes) {
+          metrics.addECReconstructionQueueTime(now - enqueueTime);
+        }
+      }
+      final long spread = e.batch.dispatch(now);
+      if (spread >= 0 && metrics != null) {
+        metrics.addECReconstructionBatchDispatchSpread(spread);
+      }
+      BlockManager.LOG.debug("Dispatching {} tasks of {} with priority {}",
+          e.tasks.size(), e.batch, e.priority);
+    }
+    return results.isEmpty() ? null : results;
+  }
+
+  synchronized void clear() {
+    for (Entry e : entries) {
+      e.batch.removeParticipant();
+    }
+    entries.clear();
+    entriesByBatch.clear();
+    size = 0;
+  }
+
+  @VisibleForTesting
+  synchronized int getNumBatches() {
+    return entries.size();
+  }
+}
@@ -32,6 +32,12 @@ import java.util.Set;
 class ErasureCodingWork extends BlockReconstructionWork {
   private byte[] liveBlockIndicies;
   private final String blockPoolId;
+  private ErasureCodingTaskQueue.Batch batch;
+  // sources to reconstruct the internal blocks on leaving DataNodes from,
+  // null if they are copied from the leaving DataNodes
+  private DatanodeDescriptor[] leavingServiceReconSrcNodes;
+  private byte[] leavingServiceReconIndices;
+  private DatanodeStorageInfo[] leavingServiceReconTargets;
 
   public ErasureCodingWork(String blockPoolId, BlockInfo block,
       BlockCollection bc,
@@ -56,6 +62,30 @@ class ErasureCodingWork extends BlockReconstructionWork {
     this.liveBlockIndicies=liveBlockIndicies;
   }
 
+  /**
+   * Set the batch this work is scheduled in. The reconstruction tasks of a
+   * batch are handed out to the DataNodes together.
+   */
+  void setBatch(ErasureCodingTaskQueue.Batch batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * Reconstruct the internal blocks on DataNodes leaving service from the
+   * given sources instead of copying them from the leaving DataNodes.
+   *
+   * @param srcNodes the sources staying in service.
+   * @param indices the block indices of the sources.
+   * @param targets one target for every internal block on a leaving
+   *                DataNode, in the order of the block indices.
+   */
+  void setLeavingServiceReconstruction(DatanodeDescriptor[] srcNodes,
+      byte[] indices, DatanodeStorageInfo[] targets) {
+    this.leavingServiceReconSrcNodes = srcNodes;
+    this.leavingServiceReconIndices = indices;
+    this.leavingServiceReconTargets = targets;
+  }
+
   @Override
   void chooseTargets(BlockPlacementPolicy blockplacement,
       BlockStoragePolicySuite storagePolicySuite,
@@ -75,7 +105,7 @@ class ErasureCodingWork extends BlockReconstructionWork {
    * @return true if the current source nodes cover all the internal blocks.
    * I.e., we only need to have more racks.
    */
-  private boolean hasAllInternalBlocks() {
+  boolean hasAllInternalBlocks() {
     final BlockInfoStriped block = (BlockInfoStriped) getBlock();
     if (getSrcNodes().length < block.getRealTotalBlockNum()) {
       return false;
@@ -139,6 +169,16 @@ class ErasureCodingWork extends BlockReconstructionWork {
     } else if ((numberReplicas.decommissioning() > 0 ||
         numberReplicas.liveEnteringMaintenanceReplicas() > 0) &&
         hasAllInternalBlocks()) {
+      if (leavingServiceReconSrcNodes != null) {
+        // Without the leaving sources, the internal blocks they hold are the
+        // missing ones the target reconstructs.
+        targets[0].getDatanodeDescriptor().addBlockToBeErasureCoded(
+            new ExtendedBlock(blockPoolId, stripedBlk),
+            leavingServiceReconSrcNodes, leavingServiceReconTargets,
+            leavingServiceReconIndices,
+            stripedBlk.getErasureCodingPolicy(), batch, getPriority());
+        return;
+      }
       List<Integer> leavingServiceSources = findLeavingServiceSources();
       // decommissioningSources.size() should be >= targets.length
       final int num = Math.min(leavingServiceSources.size(), targets.length);
@@ -148,7 +188,8 @@ class ErasureCodingWork extends BlockReconstructionWork {
     } else {
       targets[0].getDatanodeDescriptor().addBlockToBeErasureCoded(
           new ExtendedBlock(blockPoolId, stripedBlk), getSrcNodes(), targets,
-          getLiveBlockIndicies(), stripedBlk.getErasureCodingPolicy());
+          getLiveBlockIndicies(), stripedBlk.getErasureCodingPolicy(),
+          batch, getPriority());
     }
   }
 
@@ -170,7 +211,7 @@ class ErasureCodingWork extends BlockReconstructionWork {
     }
   }
 
-  private List<Integer> findLeavingServiceSources() {
+  List<Integer> findLeavingServiceSources() {
     List<Integer> srcIndices = new ArrayList<>();
     for (int i = 0; i < getSrcNodes().length; i++) {
       if (getSrcNodes()[i].isDecommissionInProgress() ||
@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.hdfs.server.protocol.ECReconstructionLoadReport;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans how the internal blocks of striped blocks stored on DataNodes
+ * leaving service are moved away within one scheduling round.
+ * <p>
+ * Such an internal block can either be copied from the leaving DataNode, or
+ * be reconstructed from data block number other internal blocks. Copying
+ * moves the least data, but makes the NIC of the leaving DataNode the
+ * bottleneck of the whole decommission. The planner sees the round as a
+ * bipartite graph of sending and receiving DataNodes, and chooses for every
+ * block the option with the lowest resulting maximum load on the DataNodes
+ * it involves. Loads are in bytes, sent and received bytes are counted
+ * separately, and start from the reconstruction load the DataNodes last
+ * reported in their heartbeats.
+ * <p>
+ * Reconstruction is only considered if there is a target for every internal
+ * block on a leaving DataNode. The reconstructing DataNode rebuilds the
+ * missing internal blocks in the order of their indices onto its targets,
+ * so with fewer targets it would not rebuild the blocks planned for.
+ */
+class StripedDecommissionPlanner {
+
+  private final Map<DatanodeDescriptor, Long> sendLoad = new HashMap<>();
+  private final Map<DatanodeDescriptor, Long> receiveLoad = new HashMap<>();
+  private int numCopied = 0;
+  private int numReconstructed = 0;
+
+  /**
+   * Plan the given work if it is for a striped block whose internal blocks
+   * are all live, some of them on DataNodes leaving service only. The work
+   * must already have its targets.
+   */
+  void plan(ErasureCodingWork work) {
+    final DatanodeStorageInfo[] targets = work.getTargets();
+    if (targets == null || targets.length == 0
+        || !work.hasAllInternalBlocks()) {
+      return;
+    }
+    final List<Integer> leaving = work.findLeavingServiceSources();
+    if (leaving.isEmpty()) {
+      return;
+    }
+    final BlockInfoStriped block = (BlockInfoStriped) work.getBlock();
+    final DatanodeDescriptor[] srcNodes = work.getSrcNodes();
+    final byte[] indices = work.getLiveBlockIndicies();
+    final int numToMove = Math.min(leaving.size(), targets.length);
+
+    // Option 1: copy from the leaving DataNodes.
+    final Map<DatanodeDescriptor, Long> copySend = new HashMap<>();
+    final Map<DatanodeDescriptor, Long> copyReceive = new HashMap<>();
+    for (int i = 0; i < numToMove; i++) {
+      final long len = getInternalBlockLength(block,
+          indices[leaving.get(i)]);
+      add(copySend, srcNodes[leaving.get(i)], len);
+      add(copyReceive, targets[i].getDatanodeDescriptor(), len);
+    }
+
+    // Option 2: reconstruct on the first target from the least loaded
+    // sources staying in service.
+    final List<Integer> staying = new ArrayList<>();
+    for (int i = 0; i < srcNodes.length; i++) {
+      if (!leaving.contains(i)) {
+        staying.add(i);
+      }
+    }
+    final int dataBlkNum = block.getRealDataBlockNum();
+    if (staying.size() < dataBlkNum || leaving.size() > targets.length) {
+      commit(copySend, copyReceive);
+      numCopied++;
+      return;
+    }
+    staying.sort(Comparator.comparingLong(i -> getSendLoad(srcNodes[i])));
+    final Map<DatanodeDescriptor, Long> reconSend = new HashMap<>();
+    final Map<DatanodeDescriptor, Long> reconReceive = new HashMap<>();
+    final DatanodeDescriptor reconstructor = targets[0].getDatanodeDescriptor();
+    for (int i = 0; i < dataBlkNum; i++) {
+      final int src = staying.get(i);
+      final long len = getInternalBlockLength(block, indices[src]);
+      add(reconSend, srcNodes[src], len);
+      add(reconReceive, reconstructor, len);
+    }
+    // The reconstructing DataNode assigns the targets in the order of the
+    // block indices.
+    final List<Integer> rebuilt = new ArrayList<>(leaving);
+    rebuilt.sort(Comparator.comparingInt(i -> indices[i]));
+    for (int i = 1; i < numToMove; i++) {
+      final long len = getInternalBlockLength(block,
+          indices[rebuilt.get(i)]);
+      add(reconSend, reconstructor, len);
+      add(reconReceive, targets[i].getDatanodeDescriptor(), len);
+    }
+
+    if (getMaxLoad(reconSend, reconReceive)
+        < getMaxLoad(copySend, copyReceive)) {
+      final DatanodeDescriptor[] reconSrcNodes =
+          new DatanodeDescriptor[staying.size()];
+      final byte[] reconIndices = new byte[staying.size()];
+      for (int i = 0; i < staying.size(); i++) {
+        reconSrcNodes[i] = srcNodes[staying.get(i)];
+        reconIndices[i] = indices[staying.get(i)];
+      }
+      work.setLeavingServiceReconstruction(reconSrcNodes, reconIndices,
+          Arrays.copyOf(targets, numToMove));
+      commit(reconSend, reconReceive);
+      numReconstructed++;
+    } else {
+      commit(copySend, copyReceive);
+      numCopied++;
+    }
+  }
+
+  int getNumCopied() {
+    return numCopied;
+  }
+
+  int getNumReconstructed() {
+    return numReconstructed;
+  }
+
+  @VisibleForTesting
+  long getSendLoad(DatanodeDescriptor node) {
+    final Long load = sendLoad.get(node);
+    if (load != null) {
+      return load;
+    }
+    final ECReconstructionLoadReport report = node.getECReconstructionLoad();
+    return report == null ? 0 : report.getSourceReadBytes();
+  }
+
+  @VisibleForTesting
+  long getReceiveLoad(DatanodeDescriptor node) {
+    final Long load = receiveLoad.get(node);
+    if (load != null) {
+      return load;
+    }
+    final ECReconstructionLoadReport report = node.getECReconstructionLoad();
+    return report == null ? 0 : report.getTargetWriteBytes();
+  }
+
+  /**
+   * @return the highest load the given additional loads would result in.
+   */
+  private long getMaxLoad(Map<DatanodeDescriptor, Long> send,
+      Map<DatanodeDescriptor, Long> receive) {
+    long max = 0;
+    for (Map.Entry<DatanodeDescriptor, Long> e : send.entrySet()) {
+      max = Math.max(max, getSendLoad(e.getKey()) + e.getValue());
+    }
+    for (Map.Entry<DatanodeDescriptor, Long> e : receive.entrySet()) {
+      max = Math.max(max, getReceiveLoad(e.getKey()) + e.getValue());
+    }
+    return max;
+  }
+
+  private void commit(Map<DatanodeDescriptor, Long> send,
+      Map<DatanodeDescriptor, Long> receive) {
+    for (Map.Entry<DatanodeDescriptor, Long> e : send.entrySet()) {
+      sendLoad.put(e.getKey(), getSendLoad(e.getKey()) + e.getValue());
+    }
+    for (Map.Entry<DatanodeDescriptor, Long> e : receive.entrySet()) {
+      receiveLoad.put(e.getKey(), getReceiveLoad(e.getKey()) + e.getValue());
+    }
+  }
+
+  private static void add(Map<DatanodeDescriptor, Long> loads,
+      DatanodeDescriptor node, long bytes) {
+    loads.merge(node, bytes, Long::sum);
+  }
+
+  private static long getInternalBlockLength(BlockInfoStriped block,
+      byte index) {
+    return StripedBlockUtil.getInternalBlockLength(block.getNumBytes(),
+        block.getCellSize(), block.getDataBlockNum(), index);
+  }
+}
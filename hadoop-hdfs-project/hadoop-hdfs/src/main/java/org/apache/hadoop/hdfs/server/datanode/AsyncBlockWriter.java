@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes the packets of the blocks being received on a volume from a single
+ * thread, so that the number of writes queued on the disk is bounded per
+ * volume instead of growing with the number of writers.
+ * <p>
+ * Receivers submit packets and go on receiving the next one. The thread
+ * takes all queued packets at once, writes them in order, flushes every
+ * block written to once, and then completes the packets in order, e.g. to
+ * acknowledge them. When the queue is full, receivers wait for it.
+ */
+@InterfaceAudience.Private
+public class AsyncBlockWriter {
+  static final Logger LOG = LoggerFactory.getLogger(AsyncBlockWriter.class);
+
+  /**
+   * The packets of one block. The packets are written in the order they
+   * are submitted in.
+   */
+  public abstract static class BlockWrites {
+    /** The number of packets submitted and not completed yet. */
+    private int pending = 0;
+    /** The first error of writing the block, if any. */
+    private IOException error;
+
+    /** Flush the packets written since the last flush. */
+    protected abstract void flush() throws IOException;
+
+    private synchronized void add() {
+      pending++;
+    }
+
+    private synchronized void done() {
+      pending--;
+      if (pending == 0) {
+        notifyAll();
+      }
+    }
+
+    private synchronized void fail(IOException e) {
+      if (error == null) {
+        error = e;
+      }
+    }
+
+    private synchronized boolean hasFailed() {
+      return error != null;
+    }
+
+    /** @return whether packets are still to be written. */
+    public synchronized boolean hasPending() {
+      return pending > 0;
+    }
+
+    /**
+     * Throw the error of an earlier packet, if any.
+     * @throws IOException the error of writing an earlier packet.
+     */
+    public synchronized void checkError() throws IOException {
+      if (error != null) {
+        throw new IOException("Failed to write an earlier packet", error);
+      }
+    }
+
+    /**
+     * Wait for all submitted packets to be written and completed.
+     * @throws IOException if a packet could not be written.
+     */
+    public synchronized void await() throws IOException {
+      while (pending > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted waiting for " + pending + " packets to be written");
+        }
+      }
+      checkError();
+    }
+
+    /**
+     * Wait for all submitted packets to be written, even if interrupted,
+     * before the block files are closed.
+     */
+    public synchronized void awaitUninterruptibly() {
+      boolean interrupted = false;
+      while (pending > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** A packet to write to a block. */
+  public abstract static class Packet {
+    private final BlockWrites block;
+
+    protected Packet(BlockWrites block) {
+      this.block = block;
+    }
+
+    /** Write the packet without flushing it. */
+    protected abstract void write() throws IOException;
+
+    /** Called once the packet has been written and flushed. */
+    protected abstract void complete();
+  }
+
+  private final String name;
+  private final int maxQueuedPackets;
+  private final BlockingQueue<Packet> queue;
+  private final Daemon thread;
+  private volatile boolean running = true;
+
+  /**
+   * @param name the name of the volume.
+   * @param maxQueuedPackets the maximum number of packets queued.
+   */
+  public AsyncBlockWriter(String name, int maxQueuedPackets) {
+    Preconditions.checkArgument(maxQueuedPackets > 0,
+        "Illegal maximum number of queued packets %s", maxQueuedPackets);
+    this.name = name;
+    this.maxQueuedPackets = maxQueuedPackets;
+    this.queue = new ArrayBlockingQueue<>(maxQueuedPackets);
+    this.thread = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        AsyncBlockWriter.this.run();
+      }
+    });
+    thread.setName("AsyncBlockWriter-" + name);
+    thread.start();
+  }
+
+  /**
+   * Queue a packet to write, waiting while the queue is full.
+   * @throws IOException if an earlier packet of the block failed, or the
+   *                     writer is shut down.
+   */
+  public void submit(Packet packet) throws IOException {
+    packet.block.checkError();
+    if (!running) {
+      throw new IOException(this + " is shut down");
+    }
+    packet.block.add();
+    try {
+      while (!queue.offer(packet, 1, TimeUnit.SECONDS)) {
+        if (!running) {
+          packet.block.done();
+          throw new IOException(this + " is shut down");
+        }
+      }
+    } catch (InterruptedException e) {
+      packet.block.done();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted submitting a packet to "
+          + this);
+    }
+    // The thread may have stopped while the packet was queued. Unless the
+    // packet was taken already, take it back rather than leaving it unwritten.
+    if (!running && queue.remove(packet)) {
+      packet.block.done();
+      throw new IOException(this + " is shut down");
+    }
+  }
+
+  private void run() {
+    final List<Packet> batch = new ArrayList<>(maxQueuedPackets);
+    final Set<BlockWrites> blocks =
+        Collections.newSetFromMap(new IdentityHashMap<BlockWrites, Boolean>());
+    while (running || !queue.isEmpty()) {
+      try {
+        // Poll rather than being interrupted on shutdown, since an interrupt
+        // would close the channel of a block file being written.
+        final Packet packet = queue.poll(1, TimeUnit.SECONDS);
+        if (packet == null) {
+          continue;
+        }
+        batch.add(packet);
+      } catch (InterruptedException e) {
+        continue;
+      }
+      queue.drainTo(batch);
+      writeBatch(batch, blocks);
+      batch.clear();
+      blocks.clear();
+    }
+  }
+
+  @VisibleForTesting
+  static void writeBatch(List<Packet> batch, Set<BlockWrites> blocks) {
+    for (Packet packet : batch) {
+      if (packet.block.hasFailed()) {
+        continue;
+      }
+      try {
+        packet.write();
+        blocks.add(packet.block);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Failed to write a packet", e);
+        packet.block.fail(e instanceof IOException ?
+            (IOException) e : new IOException(e));
+      }
+    }
+    for (BlockWrites block : blocks) {
+      try {
+        block.flush();
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Failed to flush a block", e);
+        block.fail(e instanceof IOException ?
+            (IOException) e : new IOException(e));
+      }
+    }
+    for (Packet packet : batch) {
+      try {
+        if (!packet.block.hasFailed()) {
+          packet.complete();
+        }
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to complete a packet", e);
+      } finally {
+        packet.block.done();
+      }
+    }
+  }
+
+  /**
+   * Write the queued packets and stop the thread. Packets queued while the
+   * thread was stopping fail.
+   */
+  public void shutdown() {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    final List<Packet> left = new ArrayList<>();
+    queue.drainTo(left);
+    for (Packet packet : left) {
+      packet.block.fail(new IOException(this + " is shut down"));
+      packet.block.done();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "-" + name;
+  }
+}
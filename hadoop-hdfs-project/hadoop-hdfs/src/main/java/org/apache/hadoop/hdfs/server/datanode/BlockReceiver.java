@@ -139,6 +139,18 @@ class BlockReceiver implements Closeable {
   private boolean isReplaceBlock = false;
   private DataOutputStream replyOut = null;
   private long maxWriteToDiskMs = 0;
+  /** The writer of the volume writing packets in the background, or null. */
+  private AsyncBlockWriter asyncWriter;
+  /** The packets submitted to asyncWriter. */
+  private final AsyncBlockWriter.BlockWrites asyncWrites =
+      new AsyncBlockWriter.BlockWrites() {
+        @Override
+        protected void flush() throws IOException {
+          flushOrSync(false);
+        }
+      };
+  /** The end of the last packet submitted to asyncWriter. */
+  private long asyncWrittenEnd = 0;
   
   private boolean pinning;
   private long lastSentTime;
@@ -272,6 +284,9 @@ class BlockReceiver implements Closeable {
       if (isCreate) {
         BlockMetadataHeader.writeHeader(checksumOut, diskChecksum);
       } 
+      if (!streams.isTransientStorage()) {
+        asyncWriter = replicaInfo.getReplicaInfo().getVolume().getAsyncWriter();
+      }
     } catch (ReplicaAlreadyExistsException bae) {
       throw bae;
     } catch (ReplicaNotFoundException bne) {
@@ -309,6 +324,8 @@ class BlockReceiver implements Closeable {
    */
   @Override
   public void close() throws IOException {
+    // the files must not be closed under the packets still being written
+    asyncWrites.awaitUninterruptibly();
     Span span = Tracer.getCurrentSpan();
     if (span != null) {
       span.addKVAnnotation("maxWriteToDiskMs",
@@ -566,6 +583,18 @@ class BlockReceiver implements Closeable {
     if (replicaInfo.getNumBytes() < offsetInBlock) {
       replicaInfo.setNumBytes(offsetInBlock);
     }
+
+    // Write the packet in the background if it continues the data written
+    // so far at a chunk boundary and no sync is requested. Any other packet
+    // is written here once the packets before it have been written.
+    final boolean writeAsync = asyncWriter != null && !syncBlock
+        && !lastPacketInBlock && len > 0 && seqno >= 0
+        && firstByteInBlock % bytesPerChecksum == 0
+        && firstByteInBlock == (asyncWrites.hasPending() ?
+            asyncWrittenEnd : replicaInfo.getBytesOnDisk());
+    if (!writeAsync) {
+      asyncWrites.await();
+    }
     
     // put in queue for pending acks, unless sync was requested
     if (responder != null && !syncBlock && !shouldVerifyChecksum()) {
@@ -662,7 +691,10 @@ class BlockReceiver implements Closeable {
           && streams.isTransientStorage();
       try {
         long onDiskLen = replicaInfo.getBytesOnDisk();
-        if (onDiskLen<offsetInBlock) {
+        if (writeAsync) {
+          writePacketAsync(seqno, offsetInBlock, dataBuf, checksumBuf,
+              checksumLen);
+        } else if (onDiskLen<offsetInBlock) {
           // Normally the beginning of an incoming packet is aligned with the
           // existing data on disk. If the beginning packet data offset is not
           // checksum chunk aligned, the end of packet will not go beyond the
@@ -822,8 +854,10 @@ class BlockReceiver implements Closeable {
     }
 
     // if sync was requested, put in queue for pending acks here
-    // (after the fsync finished)
-    if (responder != null && (syncBlock || shouldVerifyChecksum())) {
+    // (after the fsync finished). Packets written in the background are
+    // acknowledged by the writer.
+    if (responder != null && !writeAsync
+        && (syncBlock || shouldVerifyChecksum())) {
       ((PacketResponder) responder.getRunnable()).enqueue(seqno,
           lastPacketInBlock, offsetInBlock, Status.SUCCESS);
     }
@@ -849,6 +883,62 @@ class BlockReceiver implements Closeable {
     return lastPacketInBlock?-1:len;
   }
 
+  /**
+   * Submit a packet to the writer of the volume. The packet must start at
+   * the end of the data written so far, at a chunk boundary. Unless it has
+   * been acknowledged on receipt, the packet is acknowledged once written.
+   */
+  private void writePacketAsync(final long seqno, final long offsetInBlock,
+      ByteBuffer dataBuf, ByteBuffer checksumBuf, int checksumLen)
+      throws IOException {
+    // copy the packet, since its buffer is reused for the next one
+    final int dataStart = dataBuf.arrayOffset() + dataBuf.position();
+    final byte[] data = Arrays.copyOfRange(dataBuf.array(), dataStart,
+        dataStart + dataBuf.remaining());
+    final int checksumStart =
+        checksumBuf.arrayOffset() + checksumBuf.position();
+    final byte[] checksums = Arrays.copyOfRange(checksumBuf.array(),
+        checksumStart, checksumStart + checksumLen);
+    final byte[] lastCrc = copyLastChunkChecksum(checksums, checksumSize,
+        checksums.length);
+    final PacketResponder ackResponder =
+        responder != null && shouldVerifyChecksum() ?
+            (PacketResponder) responder.getRunnable() : null;
+
+    asyncWrittenEnd = offsetInBlock;
+    asyncWriter.submit(new AsyncBlockWriter.Packet(asyncWrites) {
+      private long duration;
+
+      @Override
+      protected void write() throws IOException {
+        long begin = Time.monotonicNow();
+        streams.writeDataToDisk(data, 0, data.length);
+        duration = Time.monotonicNow() - begin;
+        if (duration > datanodeSlowLogThresholdMs && LOG.isWarnEnabled()) {
+          LOG.warn("Slow BlockReceiver write data to disk cost:" + duration
+              + "ms (threshold=" + datanodeSlowLogThresholdMs + "ms), "
+              + "volume=" + getVolumeBaseUri()
+              + ", blockId=" + replicaInfo.getBlockId());
+        }
+        if (duration > maxWriteToDiskMs) {
+          maxWriteToDiskMs = duration;
+        }
+        checksumOut.write(checksums);
+      }
+
+      @Override
+      protected void complete() {
+        replicaInfo.setLastChecksumAndDataLen(offsetInBlock, lastCrc);
+        datanode.metrics.incrBytesWritten(data.length);
+        datanode.metrics.incrTotalWriteTime(duration);
+        manageWriterOsCache(offsetInBlock);
+        if (ackResponder != null) {
+          ackResponder.enqueue(seqno, false, offsetInBlock, Status.SUCCESS);
+        }
+      }
+    });
+  }
+
   /**
    * Only tracks the latency of sending packet to the last node in pipeline.
    * This is a conscious design choice.
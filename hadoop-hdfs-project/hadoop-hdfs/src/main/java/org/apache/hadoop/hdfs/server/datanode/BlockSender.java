@@ -27,7 +27,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
@@ -36,6 +38,7 @@ import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockType;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
@@ -46,6 +49,7 @@ import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.ReadaheadPool.ReadaheadRequest;
+import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.net.SocketOutputStream;
 import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
@@ -142,6 +146,18 @@ class BlockSender implements java.io.Closeable {
   private long seqno;
   /** Set to true if transferTo is allowed for sending data to the client */
   private final boolean transferToAllowed;
+  /**
+   * Set to true if packets should end on multiples of the packet size in the
+   * block. This is done for internal blocks of striped groups, so that the
+   * packets do not span the cells the readers ask for.
+   */
+  private final boolean alignPackets;
+  /** The channel of the meta file, if it is a local file */
+  private FileChannel checksumChannel;
+  /** Checksums of the range being sent, mapped when using transferTo() */
+  private MappedByteBuffer mappedChecksums;
+  /** The bytes to send from which to map the checksums, 0 to never map */
+  private final long mapChecksumsMinBytes;
   /** Set to true once entire requested byte range has been sent to the client */
   private boolean sentEntireByteRange;
   /** When true, verify checksum while reading from checksum file */
@@ -167,6 +183,10 @@ class BlockSender implements java.io.Closeable {
   
   private long lastCacheDropOffset;
   private final FileIoProvider fileIoProvider;
+  /** The I/O budget of the volume, or null if its reads are not budgeted */
+  private VolumeIoBudget ioBudget;
+  /** The priority at which the reads are charged to the budget */
+  private VolumeIoBudget.Priority ioPriority = VolumeIoBudget.Priority.CLIENT;
   
   @VisibleForTesting
   static long CACHE_DROP_INTERVAL_BYTES = 1024 * 1024; // 1MB
@@ -289,6 +309,10 @@ class BlockSender implements java.io.Closeable {
       // use normal transfer in those cases
       this.transferToAllowed = datanode.getDnConf().transferToAllowed &&
         (!is32Bit || length <= Integer.MAX_VALUE);
+      this.alignPackets =
+          BlockType.fromBlockId(block.getBlockId()) == BlockType.STRIPED;
+      this.mapChecksumsMinBytes =
+          datanode.getDnConf().transferToMapChecksumsMinBytes;
 
       // Obtain a reference before reading data
       volumeRef = datanode.data.getVolume(block).obtainReference();
@@ -330,6 +354,10 @@ class BlockSender implements java.io.Closeable {
   
               csum = BlockMetadataHeader.readDataChecksum(checksumIn, block);
               keepMetaInOpen = true;
+              if (metaIn.getWrappedStream() instanceof FileInputStream) {
+                checksumChannel =
+                    ((FileInputStream) metaIn.getWrappedStream()).getChannel();
+              }
             }
           } else {
             LOG.warn("Could not find metadata file for " + block);
@@ -418,6 +446,10 @@ class BlockSender implements java.io.Closeable {
       blockIn = datanode.data.getBlockInputStream(block, offset); // seek to offset
       ris = new ReplicaInputStreams(
           blockIn, checksumIn, volumeRef, fileIoProvider);
+      if (datanode.getVolumeIoBudgets() != null) {
+        ioBudget = datanode.getVolumeIoBudgets().getBudget(
+            volumeRef.getVolume());
+      }
     } catch (IOException ioe) {
       IOUtils.closeStream(this);
       org.apache.commons.io.IOUtils.closeQuietly(blockIn);
@@ -475,6 +507,7 @@ class BlockSender implements java.io.Closeable {
     if (curReadahead != null) {
       curReadahead.cancel();
     }
+    unmapChecksums();
 
     try {
       ris.closeStreams();
@@ -538,6 +571,14 @@ class BlockSender implements java.io.Closeable {
     return ioe;
   }
 
+  /**
+   * Set the priority at which the reads are charged to the I/O budget of the
+   * volume, which is {@link VolumeIoBudget.Priority#CLIENT} by default.
+   */
+  void setIoPriority(VolumeIoBudget.Priority priority) {
+    this.ioPriority = priority;
+  }
+
   /**
    * @param datalen Length of data 
    * @return number of chunks for data of given size
@@ -557,9 +598,12 @@ class BlockSender implements java.io.Closeable {
    */
   private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
       boolean transferTo, DataTransferThrottler throttler) throws IOException {
-    int dataLen = (int) Math.min(endOffset - offset,
-                             (chunkSize * (long) maxChunks));
+    int dataLen = packetDataLength(offset, endOffset,
+        chunkSize * (long) maxChunks, alignPackets);
     
+    if (ioBudget != null && dataLen > 0) {
+      ioBudget.acquire(ioPriority, dataLen);
+    }
     int numChunks = numberOfChunks(dataLen); // Number of chunks be sent in the packet
     int checksumDataLen = numChunks * checksumSize;
     int packetLen = dataLen + checksumDataLen + 4;
@@ -663,6 +707,70 @@ class BlockSender implements java.io.Closeable {
     return dataLen;
   }
   
+  /**
+   * @param offset the offset in the block of the packet, at a chunk
+   *               boundary.
+   * @param endOffset the offset in the block to send up to.
+   * @param maxDataLen the maximum length of the data of a packet, a
+   *                   multiple of the chunk size.
+   * @param alignPackets whether the packet should end on a multiple of
+   *                     maxDataLen in the block.
+   * @return the length of the data of the packet.
+   */
+  @VisibleForTesting
+  static int packetDataLength(long offset, long endOffset, long maxDataLen,
+      boolean alignPackets) {
+    // offset is at a chunk boundary, and so the packet still ends at one.
+    return (int) Math.min(endOffset - offset,
+        alignPackets ? maxDataLen - offset % maxDataLen : maxDataLen);
+  }
+
+  /**
+   * Map the checksums of the range to send from the meta file, if it is
+   * large enough, so that they are copied to the packets without reading
+   * them through the checksum stream. The checksum stream is used if the
+   * meta file cannot be mapped.
+   */
+  private void mapChecksums() {
+    if (mapChecksumsMinBytes <= 0 || endOffset - offset < mapChecksumsMinBytes
+        || checksumChannel == null || checksumSize <= 0
+        || ris.getChecksumIn() == null) {
+      return;
+    }
+    try {
+      mappedChecksums = mapChecksums(checksumChannel, offset, endOffset,
+          chunkSize, checksumSize);
+    } catch (IOException e) {
+      LOG.debug("Could not map the checksums of {}, reading them instead",
+          block, e);
+    }
+  }
+
+  /**
+   * Map the checksums of the chunks of a range of a block from its meta
+   * file.
+   *
+   * @param offset the offset in the block of the range, at a chunk
+   *               boundary.
+   * @param endOffset the offset in the block of the end of the range.
+   */
+  @VisibleForTesting
+  static MappedByteBuffer mapChecksums(FileChannel metaChannel, long offset,
+      long endOffset, int chunkSize, int checksumSize) throws IOException {
+    final long position = BlockMetadataHeader.getHeaderSize()
+        + (offset / chunkSize) * checksumSize;
+    final long numChunks = (endOffset - offset + chunkSize - 1) / chunkSize;
+    return metaChannel.map(FileChannel.MapMode.READ_ONLY, position,
+        numChunks * checksumSize);
+  }
+
+  private void unmapChecksums() {
+    if (mappedChecksums != null) {
+      NativeIO.POSIX.munmap(mappedChecksums);
+      mappedChecksums = null;
+    }
+  }
+
   /**
    * Read checksum into given buffer
    * @param buf buffer to read the checksum into
@@ -676,11 +784,20 @@ class BlockSender implements java.io.Closeable {
       return;
     }
     try {
-      ris.readChecksumFully(buf, checksumOffset, checksumLen);
+      if (mappedChecksums != null) {
+        try {
+          mappedChecksums.get(buf, checksumOffset, checksumLen);
+        } catch (BufferUnderflowException e) {
+          throw new IOException("Checksums of the range are not mapped", e);
+        }
+      } else {
+        ris.readChecksumFully(buf, checksumOffset, checksumLen);
+      }
     } catch (IOException e) {
       LOG.warn(" Could not read or failed to verify checksum for data"
           + " at offset " + offset + " for block " + block, e);
       ris.closeChecksumStream();
+      unmapChecksums();
       if (corruptChecksumOk) {
         if (checksumLen > 0) {
           // Just fill the array with zeros.
@@ -790,6 +907,9 @@ class BlockSender implements java.io.Closeable {
         
         // Smaller packet size to only hold checksum when doing transferTo
         pktBufSize += checksumSize * maxChunksPerPacket;
+        if (alignPackets) {
+          mapChecksums();
+        }
       } else {
         maxChunksPerPacket = Math.max(1,
             numberOfChunks(IO_FILE_BUFFER_SIZE));
@@ -358,6 +358,7 @@ public class DataNode extends ReconfigurableBase
   private boolean hasAnyBlockPoolRegistered = false;
   
   private  BlockScanner blockScanner;
+  private VolumeIoBudgetManager volumeIoBudgets;
   private DirectoryScanner directoryScanner = null;
   
   /** Activated plug-ins. */
@@ -876,6 +877,13 @@ public class DataNode extends ReconfigurableBase
     // Remove volumes and block infos from FsDataset.
     data.removeVolumes(storageLocations, clearFailure);
 
+    // Drop the read budgets of the volumes.
+    for (Storage.StorageDirectory sd : storage.getStorageDirs()) {
+      if (storageLocations.contains(sd.getStorageLocation())) {
+        volumeIoBudgets.removeBudget(sd.getStorageUuid());
+      }
+    }
+
     // Remove volumes from DataStorage.
     try {
       storage.removeVolumes(storageLocations);
@@ -1374,6 +1382,7 @@ public class DataNode extends ReconfigurableBase
     }
     this.dnConf = new DNConf(this);
     checkSecureConfig(dnConf, getConf(), resources);
+    this.volumeIoBudgets = new VolumeIoBudgetManager(getConf());
 
     if (dnConf.maxLockedMemory > 0) {
       if (!NativeIO.POSIX.getCacheManipulator().verifyCanMlock()) {
@@ -2524,6 +2533,7 @@ public class DataNode extends ReconfigurableBase
         in = new DataInputStream(unbufIn);
         blockSender = new BlockSender(b, 0, b.getNumBytes(), 
             false, false, true, DataNode.this, null, cachingStrategy);
+        blockSender.setIoPriority(VolumeIoBudget.Priority.RECOVERY);
         DatanodeInfo srcNode = new DatanodeInfoBuilder().setNodeID(bpReg)
             .build();
 
@@ -2860,6 +2870,11 @@ public class DataNode extends ReconfigurableBase
     return blockScanner;
   }
 
+  /** @return the I/O budgets of the volumes. */
+  VolumeIoBudgetManager getVolumeIoBudgets() {
+    return volumeIoBudgets;
+  }
+
   @VisibleForTesting
   DirectoryScanner getDirectoryScanner() {
     return directoryScanner;
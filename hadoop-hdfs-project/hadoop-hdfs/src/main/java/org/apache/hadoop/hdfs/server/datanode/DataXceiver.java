@@ -24,6 +24,8 @@ import org.apache.commons.logging.Log;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.ExtendedBlockId;
+import org.apache.hadoop.hdfs.net.MultiplexedConnection;
+import org.apache.hadoop.hdfs.net.MultiplexedPeer;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.BlockChecksumOptions;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -55,10 +57,12 @@ import org.apache.hadoop.hdfs.server.datanode.BlockChecksumHelper.BlockGroupNonS
 import org.apache.hadoop.hdfs.server.datanode.DataNode.ShortCircuitFdsUnsupportedException;
 import org.apache.hadoop.hdfs.server.datanode.DataNode.ShortCircuitFdsVersionException;
 import org.apache.hadoop.hdfs.server.datanode.ShortCircuitRegistry.NewShmInfo;
+import org.apache.hadoop.hdfs.server.datanode.erasurecode.ErasureCodingWorker;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.net.SocketInputStream;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
@@ -83,6 +87,8 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
@@ -119,6 +125,14 @@ class DataXceiver extends Receiver implements Runnable {
   private final int ioFileBufferSize;
   private final int smallBufferSize;
   private Thread xceiver = null;
+  /** The number of operations processed on the connection. */
+  private int opsProcessed = 0;
+  /**
+   * Whether the connection can wait for its next operation in the idle peer
+   * selector of the server, i.e. whether no data is buffered above the
+   * socket.
+   */
+  private boolean canPark = false;
 
   /**
    * Client Name used in previous operation. Not available on first request
@@ -218,41 +232,22 @@ class DataXceiver extends Receiver implements Runnable {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    boolean parked = false;
 
     try {
       synchronized(this) {
         xceiver = Thread.currentThread();
       }
       dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at {}. Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption", peer.getRemoteAddressString(), imne);
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at {}" +
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection",
-              peer.getRemoteAddressString(), imne);
+      if (opsProcessed == 0) {
+        if (!initializeConnection()) {
+          return;
         }
-        return;
+      } else {
+        LOG.trace("Resuming {} for operation #{}", peer, opsProcessed + 1);
       }
-      
-      super.initialize(new DataInputStream(input));
-      
+
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
@@ -290,7 +285,8 @@ class DataXceiver extends Receiver implements Runnable {
         processOp(op);
         ++opsProcessed;
       } while ((peer != null) &&
-          (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
+          (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0) &&
+          !(parked = parkUntilNextOp()));
     } catch (Throwable t) {
       String s = datanode.getDisplayName() + ":DataXceiver error processing "
           + ((op == null) ? "unknown" : op.name()) + " operation "
@@ -324,12 +320,99 @@ class DataXceiver extends Receiver implements Runnable {
       collectThreadLocalStates();
       LOG.debug("{}:Number of active connections is: {}",
           datanode.getDisplayName(), datanode.getXceiverCount());
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
+      if (parked) {
+        updateCurrentThreadName("Parked");
+      } else {
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          dataXceiverServer.closePeer(peer);
+          IOUtils.closeStream(in);
+        }
+      }
+    }
+  }
+
+  /**
+   * Set up the streams of a new connection.
+   * @return false if the connection is to be closed.
+   */
+  private boolean initializeConnection() throws IOException {
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    if (peer instanceof MultiplexedPeer) {
+      // The multiplexed connection has been through SASL already.
+      super.initialize(new DataInputStream(
+          new BufferedInputStream(socketIn, smallBufferSize)));
+      return true;
+    }
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+      canPark = saslStreams.in == socketIn;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at {}. Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption", peer.getRemoteAddressString(), imne);
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at {}" +
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection",
+            peer.getRemoteAddressString(), imne);
+      }
+      return false;
+    }
+
+    super.initialize(new DataInputStream(input));
+    return true;
+  }
+
+  /**
+   * Hand the connection over to the idle peer selector of the server until
+   * the next operation arrives, instead of waiting for it on this thread.
+   * @return whether the connection has been handed over. If so, it may
+   *         already be served by another thread.
+   */
+  private boolean parkUntilNextOp() throws IOException {
+    final IdlePeerSelector selector = dataXceiverServer.getIdlePeerSelector();
+    if (selector == null || !canPark || in.available() > 0) {
+      return false;
+    }
+    final ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (!(channel instanceof SocketInputStream) ||
+        !(((SocketInputStream) channel).getChannel()
+            instanceof SelectableChannel)) {
+      return false;
+    }
+
+    final Peer idlePeer = peer;
+    dataXceiverServer.releasePeer(idlePeer);
+    final boolean parked = selector.park(new IdlePeerSelector.IdlePeer(
+        (SelectableChannel) ((SocketInputStream) channel).getChannel(),
+        dnConf.socketKeepaliveTimeout) {
+      @Override
+      protected void resume() {
+        dataXceiverServer.resumeXceiver(idlePeer, DataXceiver.this);
+      }
+
+      @Override
+      protected void close() {
+        LOG.debug("Cached {} closing after {} ops.  " +
+            "This message is usually benign.", idlePeer, opsProcessed);
+        IOUtils.cleanup(null, idlePeer);
         IOUtils.closeStream(in);
       }
+    });
+    if (!parked) {
+      dataXceiverServer.addPeer(idlePeer, Thread.currentThread(), this);
     }
+    return parked;
   }
 
   /**
@@ -555,6 +638,38 @@ class DataXceiver extends Receiver implements Runnable {
     }
   }
 
+  @Override
+  public void multiplex(final String clientName, final int streamWindow)
+      throws IOException {
+    updateCurrentThreadName("Multiplexing for " + clientName);
+    if (!dnConf.multiplexEnabled || peer instanceof MultiplexedPeer) {
+      sendResponse(ERROR_UNSUPPORTED, "This datanode does not support " +
+          "multiplexing on " + peer);
+      return;
+    }
+    if (streamWindow <= 0) {
+      sendResponse(ERROR_INVALID, "Invalid stream window " + streamWindow);
+      return;
+    }
+    sendResponse(SUCCESS, null);
+    LOG.debug("Multiplexing streams for {} on {}", clientName, peer);
+
+    // Each stream is served by its own xceiver, which waits for the next
+    // operation on its stream, so the connection only times out once all of
+    // them have been closed.
+    peer.setReadTimeout(dnConf.socketKeepaliveTimeout > 0 ?
+        dnConf.socketKeepaliveTimeout : dnConf.socketTimeout);
+    final MultiplexedConnection connection = new MultiplexedConnection(peer,
+        in, socketOut, streamWindow,
+        new MultiplexedConnection.StreamListener() {
+          @Override
+          public void onOpen(MultiplexedConnection.Stream stream) {
+            dataXceiverServer.startStreamXceiver(new MultiplexedPeer(stream));
+          }
+        });
+    connection.run();
+  }
+
   void releaseSocket() {
     dataXceiverServer.releasePeer(peer);
     peer = null;
@@ -578,6 +693,9 @@ class DataXceiver extends Receiver implements Runnable {
 
     // send the block
     BlockSender blockSender = null;
+    // set if the reader is an EC reconstruction task
+    ErasureCodingWorker ecWorker = null;
+    long ecSourceBytes = 0;
     DatanodeRegistration dnR = 
       datanode.getDNRegistrationForBP(block.getBlockPoolId());
     final String clientTraceFmt =
@@ -603,6 +721,15 @@ class DataXceiver extends Receiver implements Runnable {
       // send op status
       writeSuccessWithChecksumInfo(blockSender, new DataOutputStream(getOutputStream()));
 
+      if (ErasureCodingWorker.RECONSTRUCTION_CLIENT_NAME.equals(clientName)) {
+        ecWorker = datanode.getErasureCodingWorker();
+        blockSender.setIoPriority(VolumeIoBudget.Priority.RECOVERY);
+      }
+      if (ecWorker != null) {
+        ecSourceBytes = Math.max(0, length);
+        ecWorker.addInFlightSourceReadBytes(ecSourceBytes);
+      }
+
       long beginRead = Time.monotonicNow();
       read = blockSender.sendBlock(out, baseStream, null); // send data
       long duration = Time.monotonicNow() - beginRead;
@@ -647,6 +774,9 @@ class DataXceiver extends Receiver implements Runnable {
       throw ioe;
     } finally {
       IOUtils.closeStream(blockSender);
+      if (ecWorker != null) {
+        ecWorker.addInFlightSourceReadBytes(-ecSourceBytes);
+      }
     }
 
     //update metrics
@@ -732,6 +862,15 @@ class DataXceiver extends Receiver implements Runnable {
     // forward the original version of the block to downstream mirrors, so
     // make a copy here.
     final ExtendedBlock originalBlock = new ExtendedBlock(block);
+    // A datanode creating a block on this one is reconstructing or
+    // replicating it, account for the bytes this node is going to receive.
+    final ErasureCodingWorker ecWorker = isDatanode && !isTransfer
+        && stage == BlockConstructionStage.PIPELINE_SETUP_CREATE ?
+        datanode.getErasureCodingWorker() : null;
+    final long targetWriteBytes = block.getNumBytes();
+    if (ecWorker != null) {
+      ecWorker.addInFlightTargetWriteBytes(targetWriteBytes);
+    }
     if (block.getNumBytes() == 0) {
       block.setNumBytes(dataXceiverServer.estimateBlockSize);
     }
@@ -931,6 +1070,9 @@ class DataXceiver extends Receiver implements Runnable {
       IOUtils.closeSocket(mirrorSock);
       IOUtils.closeStream(blockReceiver);
       setCurrentBlockReceiver(null);
+      if (ecWorker != null) {
+        ecWorker.addInFlightTargetWriteBytes(-targetWriteBytes);
+      }
     }
 
     //update metrics
@@ -27,6 +27,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -49,6 +50,8 @@ class DataXceiverServer implements Runnable {
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
+  /** Waits for the next request of idle connections, or null. */
+  private final IdlePeerSelector idlePeerSelector;
   
   /**
    * Maximal number of concurrent xceivers per node.
@@ -118,7 +121,7 @@ class DataXceiverServer implements Runnable {
   
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
-      DataNode datanode) {
+      DataNode datanode) throws IOException {
     this.peerServer = peerServer;
     this.datanode = datanode;
     
@@ -135,6 +138,16 @@ class DataXceiverServer implements Runnable {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    if (peerServer instanceof TcpPeerServer && conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_SELECTOR_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_SELECTOR_ENABLED_DEFAULT)) {
+      // Not in the thread group of the xceivers, so that it is not counted
+      // as one.
+      this.idlePeerSelector = new IdlePeerSelector(peerServer.toString());
+    } else {
+      this.idlePeerSelector = null;
+    }
   }
 
   @Override
@@ -192,6 +205,9 @@ class DataXceiverServer implements Runnable {
       LOG.warn(datanode.getDisplayName()
           + " :DataXceiverServer: close exception", ie);
     }
+    if (idlePeerSelector != null) {
+      idlePeerSelector.close();
+    }
 
     // if in restart prep stage, notify peers before closing them.
     if (datanode.shutdownForUpgrade) {
@@ -225,6 +241,51 @@ class DataXceiverServer implements Runnable {
     }
   }
   
+  IdlePeerSelector getIdlePeerSelector() {
+    return idlePeerSelector;
+  }
+
+  /**
+   * Serve the next request of a connection that waited for it in the idle
+   * peer selector on a new thread, like a newly accepted connection.
+   */
+  void resumeXceiver(Peer peer, DataXceiver xceiver) {
+    try {
+      int curXceiverCount = datanode.getXceiverCount();
+      if (curXceiverCount > maxXceiverCount) {
+        throw new IOException("Xceiver count " + curXceiverCount
+            + " exceeds the limit of concurrent xcievers: "
+            + maxXceiverCount);
+      }
+      new Daemon(datanode.threadGroup, xceiver).start();
+    } catch (IOException | OutOfMemoryError e) {
+      LOG.warn(datanode.getDisplayName() + ":DataXceiverServer: "
+          + "closing idle connection " + peer, e);
+      IOUtils.cleanup(null, peer);
+    }
+  }
+
+  /**
+   * Serve a stream opened on a multiplexed connection on a new thread, like
+   * a newly accepted connection.
+   */
+  void startStreamXceiver(Peer peer) {
+    try {
+      int curXceiverCount = datanode.getXceiverCount();
+      if (curXceiverCount > maxXceiverCount) {
+        throw new IOException("Xceiver count " + curXceiverCount
+            + " exceeds the limit of concurrent xcievers: "
+            + maxXceiverCount);
+      }
+      new Daemon(datanode.threadGroup,
+          DataXceiver.create(peer, datanode, this)).start();
+    } catch (IOException | OutOfMemoryError e) {
+      LOG.warn(datanode.getDisplayName() + ":DataXceiverServer: "
+          + "closing multiplexed stream " + peer, e);
+      IOUtils.cleanup(null, peer);
+    }
+  }
+
   synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
       throws IOException {
     if (closed) {
@@ -127,6 +127,29 @@ public class DatanodeUtil {
     return new File(root, path);
   }
 
+  /** The number of directories finalized blocks are stored in. */
+  public static final int NUM_BLOCK_DIRS = 32 * 32;
+
+  /**
+   * Get the index of the directory where a finalized block with this ID
+   * should be stored, between 0 and {@link #NUM_BLOCK_DIRS}.
+   */
+  public static int idToBlockDirIndex(long blockId) {
+    int d1 = (int) ((blockId >> 16) & 0x1F);
+    int d2 = (int) ((blockId >> 8) & 0x1F);
+    return d1 * 32 + d2;
+  }
+
+  /**
+   * Get the directory of the given index where finalized blocks are stored.
+   * @see #idToBlockDirIndex(long)
+   */
+  public static File blockDirIndexToDir(File root, int index) {
+    String path = DataStorage.BLOCK_SUBDIR_PREFIX + (index / 32) + SEP +
+        DataStorage.BLOCK_SUBDIR_PREFIX + (index % 32);
+    return new File(root, path);
+  }
+
   /**
    * @return the FileInputStream for the meta data of the given block.
    * @throws FileNotFoundException
@@ -21,7 +21,9 @@ import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -73,6 +75,16 @@ public class DirectoryScanner implements Runnable {
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
   private final int throttleLimitMsPerSec;
+  /** Whether to scan only the block directories changed on the volumes. */
+  private final boolean incremental;
+  /** The number of scans over which the rolling sample covers all dirs. */
+  private final int sampleRounds;
+  /** Every scan of this many is a full scan. */
+  private final int fullScanRounds;
+  /** The number of scans until the next full scan. */
+  private int scansUntilFull = 0;
+  /** The part of the block directories in the next sample. */
+  private int sampleRound = 0;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -100,6 +112,9 @@ public class DirectoryScanner implements Runnable {
    */
   @VisibleForTesting
   final Map<String, Stats> stats = new HashMap<String, Stats>();
+  /** Whether the last scan only scanned some of the block directories. */
+  @VisibleForTesting
+  volatile boolean lastScanIncremental = false;
   
   /**
    * Allow retaining diffs for unit test and analysis. Defaults to false (off)
@@ -254,6 +269,18 @@ public class DirectoryScanner implements Runnable {
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
 
+    incremental = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT);
+    sampleRounds = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SAMPLE_ROUNDS_KEY,
+        DFSConfigKeys
+            .DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SAMPLE_ROUNDS_DEFAULT));
+    fullScanRounds = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_FULL_SCAN_ROUNDS_KEY,
+        DFSConfigKeys
+            .DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_FULL_SCAN_ROUNDS_DEFAULT);
+
     reportCompileThreadPool = Executors.newFixedThreadPool(threads, 
         new Daemon.DaemonFactory());
     masterThread = new ScheduledThreadPoolExecutor(1,
@@ -390,7 +417,11 @@ public class DirectoryScanner implements Runnable {
    */
   private void scan() {
     clear();
-    Map<String, ScanInfo[]> diskReport = getDiskReport();
+    final BitSet sample = nextSample();
+    lastScanIncremental = sample != null;
+    final Map<String, Map<FsVolumeSpi, BitSet>> scannedDirs = new HashMap<>();
+    Map<String, ScanInfo[]> diskReport =
+        getDiskReport(incremental, sample, scannedDirs);
 
     // Hold FSDataset lock to prevent further changes to the block map
     try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
@@ -404,7 +435,8 @@ public class DirectoryScanner implements Runnable {
         diffs.put(bpid, diffRecord);
         
         statsRecord.totalBlocks = blockpoolReport.length;
-        final List<ReplicaInfo> bl = dataset.getFinalizedBlocks(bpid);
+        final List<ReplicaInfo> bl = retainScanned(
+            dataset.getFinalizedBlocks(bpid), scannedDirs.get(bpid));
         Collections.sort(bl); // Sort based on blockId
   
         int d = 0; // index for blockpoolReport
@@ -475,6 +507,52 @@ public class DirectoryScanner implements Runnable {
     } //end synchronized
   }
 
+  /**
+   * Decide whether the next scan is a full scan.
+   *
+   * @return the block directories to sample in the next scan, or null for a
+   *         full scan
+   */
+  private BitSet nextSample() {
+    if (!incremental || scansUntilFull <= 0) {
+      scansUntilFull = fullScanRounds - 1;
+      return null;
+    }
+    scansUntilFull--;
+    final BitSet sample = new BitSet(DatanodeUtil.NUM_BLOCK_DIRS);
+    for (int i = sampleRound; i < DatanodeUtil.NUM_BLOCK_DIRS;
+        i += sampleRounds) {
+      sample.set(i);
+    }
+    sampleRound = (sampleRound + 1) % sampleRounds;
+    return sample;
+  }
+
+  /**
+   * Keep only the in-memory blocks in the block directories that have been
+   * scanned on their volumes.
+   *
+   * @param blocks the in-memory blocks of a block pool
+   * @param scannedDirs the block directories scanned per volume, where all
+   *                    of them were scanned on the volumes not included
+   * @return the blocks to compare with the disk report
+   */
+  private static List<ReplicaInfo> retainScanned(List<ReplicaInfo> blocks,
+      Map<FsVolumeSpi, BitSet> scannedDirs) {
+    if (scannedDirs == null || scannedDirs.isEmpty()) {
+      return blocks;
+    }
+    final List<ReplicaInfo> retained = new ArrayList<>();
+    for (ReplicaInfo block : blocks) {
+      final BitSet dirs = scannedDirs.get(block.getVolume());
+      if (dirs == null ||
+          dirs.get(DatanodeUtil.idToBlockDirIndex(block.getBlockId()))) {
+        retained.add(block);
+      }
+    }
+    return retained;
+  }
+
   /**
    * Add the ScanInfo object to the list of differences and adjust the stats
    * accordingly.  This method is called when a block is found on the disk,
@@ -517,6 +595,22 @@ public class DirectoryScanner implements Runnable {
    */
   @VisibleForTesting
   public Map<String, ScanInfo[]> getDiskReport() {
+    return getDiskReport(false, null, null);
+  }
+
+  /**
+   * Get the lists of blocks on the disks in the dataset, sorted by blockId.
+   *
+   * @param incrementalReport whether to report the block directories changed
+   *                          on the volumes, rather than all of them
+   * @param sample the block directories to report in addition to the
+   *               changed ones, or null to report all of them
+   * @param scannedDirs the block directories reported per block pool and
+   *                    volume, where not all of them were
+   * @return a map of sorted arrays of block information
+   */
+  private Map<String, ScanInfo[]> getDiskReport(boolean incrementalReport,
+      BitSet sample, Map<String, Map<FsVolumeSpi, BitSet>> scannedDirs) {
     ScanInfoPerBlockPool list = new ScanInfoPerBlockPool();
     ScanInfoPerBlockPool[] dirReports = null;
     // First get list of data directories
@@ -529,17 +623,21 @@ public class DirectoryScanner implements Runnable {
 
       Map<Integer, Future<ScanInfoPerBlockPool>> compilersInProgress =
           new HashMap<Integer, Future<ScanInfoPerBlockPool>>();
+      Map<Integer, ReportCompiler> compilers =
+          new HashMap<Integer, ReportCompiler>();
 
       for (int i = 0; i < volumes.size(); i++) {
         if (volumes.get(i).getStorageType() == StorageType.PROVIDED) {
           // Disable scanning PROVIDED volumes to keep overhead low
           continue;
         }
-        ReportCompiler reportCompiler =
+        ReportCompiler reportCompiler = incrementalReport ?
+            new ReportCompiler(datanode, volumes.get(i), sample) :
             new ReportCompiler(datanode, volumes.get(i));
         Future<ScanInfoPerBlockPool> result =
             reportCompileThreadPool.submit(reportCompiler);
         compilersInProgress.put(i, result);
+        compilers.put(i, reportCompiler);
       }
 
       for (Entry<Integer, Future<ScanInfoPerBlockPool>> report :
@@ -553,6 +651,18 @@ public class DirectoryScanner implements Runnable {
             dirReports = null;
             break;
           }
+          if (scannedDirs != null) {
+            for (Entry<String, BitSet> dirs :
+                compilers.get(index).scannedDirs.entrySet()) {
+              Map<FsVolumeSpi, BitSet> perVolume =
+                  scannedDirs.get(dirs.getKey());
+              if (perVolume == null) {
+                perVolume = new HashMap<>();
+                scannedDirs.put(dirs.getKey(), perVolume);
+              }
+              perVolume.put(volumes.get(index), dirs.getValue());
+            }
+          }
         } catch (Exception ex) {
           FsVolumeSpi fsVolumeSpi = volumes.get(index);
           LOG.error("Error compiling report for the volume, StorageId: "
@@ -586,6 +696,12 @@ public class DirectoryScanner implements Runnable {
   public class ReportCompiler implements Callable<ScanInfoPerBlockPool> {
     private final FsVolumeSpi volume;
     private final DataNode datanode;
+    /** Whether to report only the changed and sampled block directories. */
+    private final boolean incrementalReport;
+    /** The block directories to report in any case, or null for all. */
+    private final BitSet sample;
+    /** The block directories reported per block pool, if not all. */
+    private final Map<String, BitSet> scannedDirs = new HashMap<>();
     // Variable for tracking time spent running for throttling purposes
     private final StopWatch throttleTimer = new StopWatch();
     // Variable for tracking time spent running and waiting for testing
@@ -601,6 +717,25 @@ public class DirectoryScanner implements Runnable {
     public ReportCompiler(DataNode datanode, FsVolumeSpi volume) {
       this.datanode = datanode;
       this.volume = volume;
+      this.incrementalReport = false;
+      this.sample = null;
+    }
+
+    /**
+     * Create a report compiler for the block directories of the given volume
+     * changed since its last report, and for a sample of the other ones.
+     *
+     * @param datanode the target datanode
+     * @param volume the target volume
+     * @param sample the block directories to report in any case, or null to
+     *               report all of them
+     */
+    public ReportCompiler(DataNode datanode, FsVolumeSpi volume,
+        BitSet sample) {
+      this.datanode = datanode;
+      this.volume = volume;
+      this.incrementalReport = true;
+      this.sample = sample;
     }
 
     /**
@@ -622,7 +757,16 @@ public class DirectoryScanner implements Runnable {
         throttleTimer.reset().start();
 
         try {
-          result.put(bpid, volume.compileReport(bpid, report, this));
+          if (incrementalReport) {
+            BitSet dirs = volume.compileIncrementalReport(bpid, report, this,
+                sample);
+            if (dirs != null) {
+              scannedDirs.put(bpid, dirs);
+            }
+            result.put(bpid, report);
+          } else {
+            result.put(bpid, volume.compileReport(bpid, report, this));
+          }
         } catch (InterruptedException ex) {
           // Exit quickly and flag the scanner to do the same
           result = null;
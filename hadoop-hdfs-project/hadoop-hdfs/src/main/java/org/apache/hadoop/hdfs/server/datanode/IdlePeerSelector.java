@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Waits for the next request of idle connections on a single thread.
+ * <p>
+ * A DataXceiver keeps a connection open for a while after an operation, so
+ * that clients can reuse it. Rather than each of them blocking a thread for
+ * that, idle connections are parked here. Once a connection is readable, it
+ * is handed back to be served by a thread again. A connection that stays
+ * idle for longer than its timeout is closed.
+ */
+class IdlePeerSelector implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(IdlePeerSelector.class);
+
+  /** A connection waiting for its next request. */
+  abstract static class IdlePeer {
+    private final SelectableChannel channel;
+    private final long deadline;
+
+    /**
+     * @param channel the non-blocking channel of the connection.
+     * @param timeoutMs how long to wait for the next request.
+     */
+    IdlePeer(SelectableChannel channel, long timeoutMs) {
+      this.channel = channel;
+      this.deadline = Time.monotonicNow() + timeoutMs;
+    }
+
+    /** Called when the next request arrives, to serve it. */
+    protected abstract void resume();
+
+    /** Called when no request arrived in time or on shutdown. */
+    protected abstract void close();
+  }
+
+  private final Selector selector;
+  private final Daemon thread;
+  /** Connections to register with the selector. */
+  private final Queue<IdlePeer> pending = new LinkedList<>();
+  private volatile boolean running = true;
+  private final AtomicInteger numParked = new AtomicInteger();
+  /** The earliest deadline of the parked connections. */
+  private long nextDeadline = Long.MAX_VALUE;
+
+  IdlePeerSelector(String name) throws IOException {
+    this.selector = Selector.open();
+    this.thread = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        IdlePeerSelector.this.run();
+      }
+    });
+    thread.setName("IdlePeerSelector-" + name);
+    thread.start();
+  }
+
+  /**
+   * Park an idle connection until it is readable.
+   * @return false if the selector is closed, and the connection is not
+   *         parked.
+   */
+  boolean park(IdlePeer peer) {
+    synchronized (pending) {
+      if (!running) {
+        return false;
+      }
+      pending.add(peer);
+      numParked.incrementAndGet();
+    }
+    selector.wakeup();
+    return true;
+  }
+
+  /** @return the number of parked connections. */
+  @VisibleForTesting
+  int getNumParked() {
+    return numParked.get();
+  }
+
+  private void run() {
+    final List<IdlePeer> ready = new ArrayList<>();
+    try {
+      while (running) {
+        registerPending();
+        final long now = Time.monotonicNow();
+        if (nextDeadline <= now) {
+          closeExpired(now);
+        }
+        final long wait = nextDeadline == Long.MAX_VALUE ?
+            0 : Math.max(1, nextDeadline - now);
+        selector.select(wait);
+
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          key.cancel();
+          ready.add((IdlePeer) key.attachment());
+        }
+        if (!ready.isEmpty()) {
+          // Deregister the channels before they are handed back, since they
+          // may be parked again right away.
+          selector.selectNow();
+          for (IdlePeer peer : ready) {
+            resume(peer);
+          }
+          ready.clear();
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.error(thread.getName() + " exiting due to", e);
+    } finally {
+      closeAll();
+    }
+  }
+
+  private void registerPending() {
+    while (true) {
+      final IdlePeer peer;
+      synchronized (pending) {
+        peer = pending.poll();
+      }
+      if (peer == null) {
+        return;
+      }
+      try {
+        peer.channel.register(selector, SelectionKey.OP_READ, peer);
+        nextDeadline = Math.min(nextDeadline, peer.deadline);
+      } catch (ClosedChannelException | RuntimeException e) {
+        LOG.debug("Failed to park {}", peer.channel, e);
+        close(peer);
+      }
+    }
+  }
+
+  /** Close the connections past their deadline. */
+  private void closeExpired(long now) {
+    long next = Long.MAX_VALUE;
+    for (SelectionKey key : selector.keys()) {
+      final IdlePeer peer = (IdlePeer) key.attachment();
+      if (!key.isValid()) {
+        continue;
+      } else if (peer.deadline <= now) {
+        key.cancel();
+        close(peer);
+      } else {
+        next = Math.min(next, peer.deadline);
+      }
+    }
+    nextDeadline = next;
+  }
+
+  private void closeAll() {
+    synchronized (pending) {
+      running = false;
+    }
+    for (SelectionKey key : selector.keys()) {
+      if (key.isValid()) {
+        close((IdlePeer) key.attachment());
+      }
+    }
+    while (true) {
+      final IdlePeer peer;
+      synchronized (pending) {
+        peer = pending.poll();
+      }
+      if (peer == null) {
+        break;
+      }
+      close(peer);
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close the selector of " + thread.getName(), e);
+    }
+  }
+
+  private void resume(IdlePeer peer) {
+    numParked.decrementAndGet();
+    try {
+      peer.resume();
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to resume an idle connection", e);
+      closeQuietly(peer);
+    }
+  }
+
+  private void close(IdlePeer peer) {
+    numParked.decrementAndGet();
+    try {
+      peer.close();
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to close an idle connection", e);
+    }
+  }
+
+  private static void closeQuietly(IdlePeer peer) {
+    try {
+      peer.close();
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to close an idle connection", e);
+    }
+  }
+
+  /** Close all parked connections and stop the thread. */
+  @Override
+  public void close() {
+    synchronized (pending) {
+      running = false;
+    }
+    selector.wakeup();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
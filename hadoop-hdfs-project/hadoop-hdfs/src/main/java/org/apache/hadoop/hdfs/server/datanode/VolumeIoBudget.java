@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.InterruptedIOException;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.util.Timer;
+
+/**
+ * The bytes per second which may be read from one volume, shared by the
+ * readers of its blocks in order of priority.
+ *
+ * The budget is a bucket of up to one second of bytes, which refills at the
+ * budgeted rate:
+ * <ul>
+ *   <li>Client reads never wait. They take what they read from the bucket,
+ *   overdrawing it by up to one second of bytes.</li>
+ *   <li>Recovery reads wait while client reads have overdrawn the bucket.
+ *   </li>
+ *   <li>Scans only read while the bucket is at least half full, so they use
+ *   the bytes the other readers leave. While recovery has read the volume
+ *   recently, scans are also held to a small floor rate.</li>
+ * </ul>
+ *
+ * This class is thread-safe.
+ */
+class VolumeIoBudget {
+  /** The readers of a volume, in order of priority. */
+  enum Priority {
+    CLIENT,
+    RECOVERY,
+    SCAN
+  }
+
+  private final Timer timer;
+  private final long bytesPerSec;
+  private final long scanFloorBytesPerSec;
+  private final long recoveryBusyMs;
+
+  /** The bytes which may be read. Negative when overdrawn. */
+  private double tokens;
+  /** The bytes which may be scanned while recovery is busy. */
+  private double scanFloorTokens;
+  private long lastRefillMs;
+  private long lastRecoveryMs;
+
+  /**
+   * @param bytesPerSec the bytes per second which may be read.
+   * @param scanFloorBytesPerSec the bytes per second which may be scanned
+   *                             while recovery is reading the volume.
+   * @param recoveryBusyMs how long after a recovery read the volume counts
+   *                       as busy with recovery.
+   */
+  VolumeIoBudget(long bytesPerSec, long scanFloorBytesPerSec,
+      long recoveryBusyMs, Timer timer) {
+    Preconditions.checkArgument(bytesPerSec > 0,
+        "Invalid budget %s", bytesPerSec);
+    Preconditions.checkArgument(scanFloorBytesPerSec >= 0,
+        "Invalid scan floor %s", scanFloorBytesPerSec);
+    this.timer = timer;
+    this.bytesPerSec = bytesPerSec;
+    this.scanFloorBytesPerSec = scanFloorBytesPerSec;
+    this.recoveryBusyMs = recoveryBusyMs;
+    this.tokens = bytesPerSec;
+    this.scanFloorTokens = scanFloorBytesPerSec;
+    this.lastRefillMs = timer.monotonicNow();
+    this.lastRecoveryMs = lastRefillMs - recoveryBusyMs;
+  }
+
+  /**
+   * Wait until the bytes may be read at the priority, and take them from
+   * the budget.
+   */
+  void acquire(Priority priority, long bytes) throws InterruptedIOException {
+    long waitMs;
+    while ((waitMs = tryAcquire(priority, bytes)) > 0) {
+      try {
+        Thread.sleep(waitMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting to read " + bytes + " bytes");
+      }
+    }
+  }
+
+  /**
+   * Take the bytes from the budget, if they may be read at the priority now.
+   *
+   * @return 0 if the bytes were taken, or else how long to wait before
+   *         trying again, in milliseconds.
+   */
+  @VisibleForTesting
+  synchronized long tryAcquire(Priority priority, long bytes) {
+    final long now = timer.monotonicNow();
+    refill(now);
+    switch (priority) {
+    case CLIENT:
+      tokens = Math.max(tokens - bytes, -bytesPerSec);
+      return 0;
+    case RECOVERY:
+      lastRecoveryMs = now;
+      if (tokens > 0) {
+        tokens -= bytes;
+        return 0;
+      }
+      return millisToRefill(-tokens, bytesPerSec);
+    case SCAN:
+      final long busyMs = lastRecoveryMs + recoveryBusyMs - now;
+      if (busyMs > 0) {
+        if (tokens <= 0) {
+          return Math.min(busyMs, millisToRefill(-tokens, bytesPerSec));
+        }
+        if (scanFloorTokens > 0) {
+          scanFloorTokens -= bytes;
+          tokens -= bytes;
+          return 0;
+        }
+        if (scanFloorBytesPerSec == 0) {
+          return busyMs;
+        }
+        return Math.min(busyMs,
+            millisToRefill(-scanFloorTokens, scanFloorBytesPerSec));
+      }
+      final double spare = tokens - bytesPerSec / 2.0;
+      if (spare >= 0) {
+        tokens -= bytes;
+        return 0;
+      }
+      return millisToRefill(-spare, bytesPerSec);
+    default:
+      throw new IllegalArgumentException("Unknown priority " + priority);
+    }
+  }
+
+  private void refill(long now) {
+    final long elapsed = now - lastRefillMs;
+    if (elapsed <= 0) {
+      return;
+    }
+    lastRefillMs = now;
+    tokens = Math.min(bytesPerSec, tokens + elapsed * bytesPerSec / 1000.0);
+    scanFloorTokens = Math.min(scanFloorBytesPerSec,
+        scanFloorTokens + elapsed * scanFloorBytesPerSec / 1000.0);
+  }
+
+  private static long millisToRefill(double bytes, long bytesPerSec) {
+    return Math.max(1, (long) Math.ceil(bytes * 1000 / bytesPerSec));
+  }
+
+  @VisibleForTesting
+  synchronized long getAvailableBytes() {
+    refill(timer.monotonicNow());
+    return (long) tokens;
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_RECOVERY_BUSY_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_RECOVERY_BUSY_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_SCAN_MIN_BYTES_PER_SECOND_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_SCAN_MIN_BYTES_PER_SECOND_KEY;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.util.Timer;
+
+/**
+ * Holds the {@link VolumeIoBudget} of each volume of a DataNode.
+ */
+class VolumeIoBudgetManager {
+  private final long bytesPerSec;
+  private final long scanFloorBytesPerSec;
+  private final long recoveryBusyMs;
+  private final Timer timer = new Timer();
+  private final ConcurrentMap<String, VolumeIoBudget> budgets =
+      new ConcurrentHashMap<>();
+
+  VolumeIoBudgetManager(Configuration conf) {
+    this.bytesPerSec = conf.getLongBytes(
+        DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_KEY,
+        DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_DEFAULT);
+    this.scanFloorBytesPerSec = conf.getLongBytes(
+        DFS_DATANODE_VOLUME_IO_BUDGET_SCAN_MIN_BYTES_PER_SECOND_KEY,
+        DFS_DATANODE_VOLUME_IO_BUDGET_SCAN_MIN_BYTES_PER_SECOND_DEFAULT);
+    this.recoveryBusyMs = conf.getLong(
+        DFS_DATANODE_VOLUME_IO_BUDGET_RECOVERY_BUSY_MS_KEY,
+        DFS_DATANODE_VOLUME_IO_BUDGET_RECOVERY_BUSY_MS_DEFAULT);
+  }
+
+  /**
+   * @return the budget of the volume, or null if reads are not budgeted.
+   */
+  VolumeIoBudget getBudget(FsVolumeSpi volume) {
+    if (bytesPerSec <= 0) {
+      return null;
+    }
+    final String storageId = volume.getStorageID();
+    VolumeIoBudget budget = budgets.get(storageId);
+    if (budget == null) {
+      budget = new VolumeIoBudget(bytesPerSec, scanFloorBytesPerSec,
+          recoveryBusyMs, timer);
+      final VolumeIoBudget existing = budgets.putIfAbsent(storageId, budget);
+      if (existing != null) {
+        budget = existing;
+      }
+    }
+    return budget;
+  }
+
+  /** Forget the budget of a removed volume. */
+  void removeBudget(String storageId) {
+    budgets.remove(storageId);
+  }
+
+  @VisibleForTesting
+  int getNumBudgets() {
+    return budgets.size();
+  }
+}
@@ -21,6 +21,7 @@ package org.apache.hadoop.hdfs.server.datanode;
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -444,11 +445,17 @@ public class VolumeScanner extends Thread {
       blockSender = new BlockSender(block, 0, -1,
           false, true, true, datanode, null,
           CachingStrategy.newDropBehind());
+      blockSender.setIoPriority(VolumeIoBudget.Priority.SCAN);
       throttler.setBandwidth(bytesPerSec);
       long bytesRead = blockSender.sendBlock(nullStream, null, throttler);
       resultHandler.handle(block, null);
       metrics.incrBlocksVerified();
       return bytesRead;
+    } catch (InterruptedIOException e) {
+      // The scanner was stopped while waiting for the I/O budget of the
+      // volume; the block was not found to be bad.
+      LOG.debug("Interrupted while scanning block {}", block);
+      return 0;
     } catch (IOException e) {
       resultHandler.handle(block, e);
     } finally {
@@ -17,25 +17,33 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.erasurecode;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.PeerCache;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodePeerMetrics;
 import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
+import org.apache.hadoop.hdfs.server.protocol.ECReconstructionLoadReport;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.BlockReadStats;
+import org.apache.hadoop.hdfs.util.StripedReadLatencyTracker;
 import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 
 import java.util.Collection;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ErasureCodingWorker handles the erasure coding reconstruction work commands.
@@ -47,12 +55,34 @@ import java.util.concurrent.atomic.AtomicInteger;
 public final class ErasureCodingWorker {
   private static final Logger LOG = DataNode.LOG;
 
+  /**
+   * The client name of the reads reconstruction issues to its sources, which
+   * lets the sources account for them.
+   */
+  public static final String RECONSTRUCTION_CLIENT_NAME = "ec-reconstruction";
+
   private final DataNode datanode;
   private final Configuration conf;
   private final float xmitWeight;
 
   private ThreadPoolExecutor stripedReconstructionPool;
   private ThreadPoolExecutor stripedReadPool;
+  // null if every task decodes in its own thread
+  private ThreadPoolExecutor stripedDecodePool;
+  // null if connections to sources are not reused
+  private final PeerCache sourcePeerCache;
+
+  /** Interval at which slow peers are refreshed from the peer metrics. */
+  private static final long SLOW_PEERS_REFRESH_INTERVAL_MS = 30 * 1000;
+
+  // null if hedged striped reads are disabled
+  private final StripedReadLatencyTracker readLatencyTracker;
+  private volatile long lastSlowPeersRefreshMs = 0;
+
+  // Reconstruction work in flight on this DataNode, in bytes, by role.
+  private final AtomicLong inFlightSourceReadBytes = new AtomicLong();
+  private final AtomicLong inFlightDecodeBytes = new AtomicLong();
+  private final AtomicLong inFlightTargetWriteBytes = new AtomicLong();
 
   public ErasureCodingWorker(Configuration conf, DataNode datanode) {
     this.datanode = datanode;
@@ -66,10 +96,42 @@ public final class ErasureCodingWorker {
             DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_XMITS_WEIGHT_KEY +
             ", it can not be negative value (" + this.xmitWeight + ").");
 
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_ENABLED_KEY,
+        DFSConfigKeys.
+            DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_ENABLED_DEFAULT)) {
+      this.readLatencyTracker = new StripedReadLatencyTracker(
+          conf.getDouble(DFSConfigKeys.
+                  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_PERCENTILE_KEY,
+              DFSConfigKeys.
+                  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_PERCENTILE_DEFAULT),
+          conf.getLong(DFSConfigKeys.
+                  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_MIN_DELAY_MILLIS_KEY,
+              DFSConfigKeys.
+                  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_HEDGED_MIN_DELAY_MILLIS_DEFAULT));
+    } else {
+      this.readLatencyTracker = null;
+    }
+
+    final int peerCacheCapacity = conf.getInt(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_CAPACITY_KEY,
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_CAPACITY_DEFAULT);
+    if (peerCacheCapacity > 0) {
+      this.sourcePeerCache = new PeerCache(peerCacheCapacity, conf.getLong(
+          DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_EXPIRY_MSEC_KEY,
+          DFSConfigKeys.
+              DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT));
+    } else {
+      this.sourcePeerCache = null;
+    }
+
     initializeStripedReadThreadPool();
     initializeStripedBlkReconstructionThreadPool(conf.getInt(
         DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_THREADS_KEY,
         DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_THREADS_DEFAULT));
+    initializeStripedDecodeThreadPool(conf.getInt(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_DECODE_THREADS_KEY,
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_DECODE_THREADS_DEFAULT));
   }
 
   private void initializeStripedReadThreadPool() {
@@ -112,6 +174,17 @@ public final class ErasureCodingWorker {
     stripedReconstructionPool.allowCoreThreadTimeOut(true);
   }
 
+  private void initializeStripedDecodeThreadPool(int numThreads) {
+    if (numThreads <= 0) {
+      return;
+    }
+    LOG.debug("Using shared striped decoding; pool threads={}", numThreads);
+    stripedDecodePool = DFSUtilClient.getThreadPoolExecutor(numThreads,
+        numThreads, 60, new LinkedBlockingQueue<>(), "StripedBlockDecode-",
+        false);
+    stripedDecodePool.allowCoreThreadTimeOut(true);
+  }
+
   /**
    * Handles the Erasure Coding reconstruction work commands.
    *
@@ -141,6 +214,7 @@ public final class ErasureCodingWorker {
           //      an unbounded number of tasks in the executor's task queue.
           xmitsSubmitted = Math.max((int)(task.getXmits() * xmitWeight), 1);
           getDatanode().incrementXmitsInProcess(xmitsSubmitted);
+          addInFlightDecodeBytes(task.getDecodeBytesPending());
           stripedReconstructionPool.submit(task);
         } else {
           LOG.warn("No missing internal block. Skip reconstruction for task:{}",
@@ -166,8 +240,84 @@ public final class ErasureCodingWorker {
     return new ExecutorCompletionService<>(stripedReadPool);
   }
 
+  /**
+   * @return the pool all reconstruction tasks decode in, or null if every
+   * task decodes in its own thread.
+   */
+  @VisibleForTesting
+  public ExecutorService getStripedDecodePool() {
+    return stripedDecodePool;
+  }
+
+  /**
+   * @return the cache of connections to source DataNodes shared by all
+   * reconstruction tasks, or null if connections are not reused.
+   */
+  @VisibleForTesting
+  public PeerCache getSourcePeerCache() {
+    return sourcePeerCache;
+  }
+
+  /**
+   * Get the tracker of striped read latencies per source DataNode. The slow
+   * peers detected by {@link DataNodePeerMetrics} are refreshed periodically.
+   *
+   * @return the tracker, or null if hedged striped reads are disabled.
+   */
+  StripedReadLatencyTracker getReadLatencyTracker() {
+    if (readLatencyTracker == null) {
+      return null;
+    }
+    final DataNodePeerMetrics peerMetrics = datanode.getPeerMetrics();
+    final long now = Time.monotonicNow();
+    if (peerMetrics != null &&
+        now - lastSlowPeersRefreshMs > SLOW_PEERS_REFRESH_INTERVAL_MS) {
+      lastSlowPeersRefreshMs = now;
+      readLatencyTracker.setSlowNodes(peerMetrics.getOutliers().keySet());
+    }
+    return readLatencyTracker;
+  }
+
+  /**
+   * Account for bytes this DataNode serves to, or stops serving to, a
+   * reconstructing DataNode.
+   */
+  public void addInFlightSourceReadBytes(long delta) {
+    inFlightSourceReadBytes.addAndGet(delta);
+  }
+
+  /**
+   * Account for bytes this DataNode has to decode, or has decoded.
+   */
+  void addInFlightDecodeBytes(long delta) {
+    inFlightDecodeBytes.addAndGet(delta);
+  }
+
+  /**
+   * Account for bytes of a reconstructed or replicated block this DataNode
+   * starts or stops receiving.
+   */
+  public void addInFlightTargetWriteBytes(long delta) {
+    inFlightTargetWriteBytes.addAndGet(delta);
+  }
+
+  /**
+   * @return the reconstruction work in flight, reported to the NameNode in
+   * heartbeats.
+   */
+  public ECReconstructionLoadReport getLoadReport() {
+    return ECReconstructionLoadReport.create(inFlightSourceReadBytes.get(),
+        inFlightDecodeBytes.get(), inFlightTargetWriteBytes.get());
+  }
+
   public void shutDown() {
     stripedReconstructionPool.shutdown();
     stripedReadPool.shutdown();
+    if (stripedDecodePool != null) {
+      stripedDecodePool.shutdown();
+    }
+    if (sourcePeerCache != null) {
+      sourcePeerCache.close();
+    }
   }
 }
@@ -24,6 +24,7 @@ import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.BlockReader;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
+import org.apache.hadoop.hdfs.PeerCache;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderRemote;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
@@ -35,6 +36,7 @@ import org.apache.hadoop.hdfs.util.StripedBlockUtil.BlockReadStats;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 
 import java.io.IOException;
@@ -122,14 +124,24 @@ class StripedBlockReader {
          *
          * TODO: add proper tracer
          */
-      peer = newConnectedPeer(block, dnAddr, blockToken, source);
-      if (peer.isLocal()) {
-        this.isLocal = true;
+      final PeerCache peerCache = stripedReader.getReconstructor()
+          .getErasureCodingWorker().getSourcePeerCache();
+      if (peerCache != null) {
+        // A connection left by a previous reconstruction task may have been
+        // closed by the source meanwhile, fall back to a new one.
+        peer = peerCache.get(source, false);
+        if (peer != null) {
+          try {
+            return newBlockReader(peer, peerCache, blockToken, offsetInBlock);
+          } catch (IOException e) {
+            LOG.debug("Cached connection to {} failed, reconnecting", source,
+                e);
+            IOUtils.closeStream(peer);
+          }
+        }
       }
-      return BlockReaderRemote.newBlockReader(
-          "dummy", block, blockToken, offsetInBlock,
-          block.getNumBytes() - offsetInBlock, true, "", peer, source,
-          null, stripedReader.getCachingStrategy(), -1);
+      peer = newConnectedPeer(block, dnAddr, blockToken, source);
+      return newBlockReader(peer, peerCache, blockToken, offsetInBlock);
     } catch (IOException e) {
       LOG.info("Exception while creating remote block reader, datanode {}",
           source, e);
@@ -138,6 +150,20 @@ class StripedBlockReader {
     }
   }
 
+  /**
+   * Create a reader on the given peer. If peerCache is not null, the peer is
+   * returned to it once the reader has read up to the end of the block.
+   */
+  private BlockReader newBlockReader(Peer peer, PeerCache peerCache,
+      Token<BlockTokenIdentifier> blockToken, long offsetInBlock)
+      throws IOException {
+    this.isLocal = peer.isLocal();
+    return BlockReaderRemote.newBlockReader(
+        ErasureCodingWorker.RECONSTRUCTION_CLIENT_NAME, block, blockToken,
+        offsetInBlock, block.getNumBytes() - offsetInBlock, true, "", peer,
+        source, peerCache, stripedReader.getCachingStrategy(), -1);
+  }
+
   private Peer newConnectedPeer(ExtendedBlock b, InetSocketAddress addr,
                                 Token<BlockTokenIdentifier> blockToken,
                                 DatanodeID datanodeId)
@@ -188,6 +214,7 @@ class StripedBlockReader {
    * Perform actual reading of bytes from block.
    */
   private BlockReadStats actualReadFromBlock() throws IOException {
+    final long startNanos = Time.monotonicNowNanos();
     int len = buffer.remaining();
     int n = 0;
     while (n < len) {
@@ -199,7 +226,8 @@ class StripedBlockReader {
       stripedReader.getReconstructor().incrBytesRead(isLocal, nread);
     }
     return new BlockReadStats(n, blockReader.isShortCircuit(),
-        blockReader.getNetworkDistance());
+        blockReader.getNetworkDistance(),
+        Time.monotonicNowNanos() - startNanos);
   }
 
   // close block reader
@@ -18,8 +18,13 @@
 package org.apache.hadoop.hdfs.server.datanode.erasurecode;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeFaultInjector;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
@@ -35,6 +40,8 @@ class StripedBlockReconstructor extends StripedReconstructor
     implements Runnable {
 
   private StripedWriter stripedWriter;
+  // accounted in ErasureCodingWorker until decoded
+  private volatile long decodeBytesPending;
 
   StripedBlockReconstructor(ErasureCodingWorker worker,
       StripedReconstructionInfo stripedReconInfo) {
@@ -42,6 +49,20 @@ class StripedBlockReconstructor extends StripedReconstructor
 
     stripedWriter = new StripedWriter(this, getDatanode(),
         getConf(), stripedReconInfo);
+    decodeBytesPending = getMaxTargetLength() * stripedWriter.getTargets();
+  }
+
+  /**
+   * @return the number of bytes this task still has to decode.
+   */
+  long getDecodeBytesPending() {
+    return decodeBytesPending;
+  }
+
+  private void releaseDecodeBytes(long bytes) {
+    final long released = Math.min(bytes, decodeBytesPending);
+    decodeBytesPending -= released;
+    getErasureCodingWorker().addInFlightDecodeBytes(-released);
   }
 
   boolean hasValidTargets() {
@@ -68,6 +89,7 @@ class StripedBlockReconstructor extends StripedReconstructor
       getDatanode().getMetrics().incrECFailedReconstructionTasks();
     } finally {
       getDatanode().decrementXmitsInProgress(getXmits());
+      releaseDecodeBytes(decodeBytesPending);
       final DataNodeMetrics metrics = getDatanode().getMetrics();
       metrics.incrECReconstructionTasks();
       metrics.incrECReconstructionBytesRead(getBytesRead());
@@ -94,8 +116,9 @@ class StripedBlockReconstructor extends StripedReconstructor
       long readEnd = Time.monotonicNow();
 
       // step2: decode to reconstruct targets
-      reconstructTargets(toReconstructLen);
+      decodeTargets(toReconstructLen);
       long decodeEnd = Time.monotonicNow();
+      releaseDecodeBytes((long) toReconstructLen * stripedWriter.getTargets());
 
       // step3: transfer data
       if (stripedWriter.transferData2Targets() == 0) {
@@ -116,6 +139,44 @@ class StripedBlockReconstructor extends StripedReconstructor
     }
   }
 
+  /**
+   * Decode in the decode pool shared by all the reconstruction tasks if
+   * there is one, so that the tasks waiting on sources or targets do not
+   * compete with the decoding ones for the CPU.
+   */
+  private void decodeTargets(final int toReconstructLen) throws IOException {
+    final ExecutorService decodePool =
+        getErasureCodingWorker().getStripedDecodePool();
+    if (decodePool == null) {
+      reconstructTargets(toReconstructLen);
+      return;
+    }
+    final Future<Void> future = decodePool.submit(() -> {
+      reconstructTargets(toReconstructLen);
+      return null;
+    });
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      // The decode writes into the buffers of this task, which are freed as
+      // soon as it fails, so it has to finish before the task gives up. The
+      // decoders are not interruptible, hence it is not cancelled either.
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException ignored) {
+      }
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decoding "
+          + getBlockGroup());
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to decode " + getBlockGroup(), cause);
+    }
+  }
+
   private void reconstructTargets(int toReconstructLen) throws IOException {
     ByteBuffer[] inputs = getStripedReader().getInputBuffers(toReconstructLen);
 
@@ -28,7 +28,9 @@ import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.BlockReadStats;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.StripingChunkReadResult;
+import org.apache.hadoop.hdfs.util.StripedReadLatencyTracker;
 import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 
 import java.io.IOException;
@@ -81,6 +83,9 @@ class StripedReader {
 
   private final List<StripedBlockReader> readers;
 
+  // null if hedged reads are disabled
+  private final StripedReadLatencyTracker latencyTracker;
+
   private final Map<Future<BlockReadStats>, Integer> futures = new HashMap<>();
   private final CompletionService<BlockReadStats> readService;
 
@@ -116,18 +121,61 @@ class StripedReader {
         stripedReconInfo.getTargets() != null ?
         stripedReconInfo.getTargets().length : 0);
 
-    this.liveIndices = stripedReconInfo.getLiveIndices();
-    assert liveIndices != null;
-    this.sources = stripedReconInfo.getSources();
-    assert sources != null;
+    assert stripedReconInfo.getLiveIndices() != null;
+    this.liveIndices = stripedReconInfo.getLiveIndices().clone();
+    assert stripedReconInfo.getSources() != null;
+    this.sources = stripedReconInfo.getSources().clone();
 
     readers = new ArrayList<>(sources.length);
     readService = reconstructor.createReadService();
+    latencyTracker = reconstructor.getReadLatencyTracker();
 
     Preconditions.checkArgument(liveIndices.length >= minRequiredSources,
         "No enough live striped blocks.");
     Preconditions.checkArgument(liveIndices.length == sources.length,
         "liveBlockIndices and source datanodes should match");
+
+    if (latencyTracker != null) {
+      deprioritizeSlowSources();
+    }
+  }
+
+  /**
+   * Move the sources known to be slow behind the other sources, so that they
+   * are only read if the others are not enough. Otherwise the order chosen by
+   * the NameNode is kept, as it balances the read load across the cluster.
+   */
+  private void deprioritizeSlowSources() {
+    final boolean[] slow = new boolean[sources.length];
+    int numSlow = 0;
+    for (int i = 0; i < sources.length; i++) {
+      slow[i] = latencyTracker.isSlow(getPeerName(sources[i]));
+      if (slow[i]) {
+        numSlow++;
+      }
+    }
+    if (numSlow == 0 || numSlow == sources.length) {
+      return;
+    }
+    final byte[] indices = liveIndices.clone();
+    final DatanodeInfo[] nodes = sources.clone();
+    int fast = 0;
+    int last = sources.length - numSlow;
+    for (int i = 0; i < nodes.length; i++) {
+      final int pos = slow[i] ? last++ : fast++;
+      liveIndices[pos] = indices[i];
+      sources[pos] = nodes[i];
+    }
+    LOG.debug("Deprioritized {} slow sources for reconstruction of {}",
+        numSlow, reconstructor.getBlockGroup());
+  }
+
+  /**
+   * @return the name of the DataNode as used by the DataNode peer metrics.
+   */
+  private static String getPeerName(DatanodeInfo dn) {
+    return dn.getInfoSecurePort() != 0 ?
+        dn.getInfoSecureAddr() : dn.getInfoAddr();
   }
 
   void init() throws IOException {
@@ -281,6 +329,13 @@ class StripedReader {
     int nSuccess = 0;
     int[] newSuccess = new int[minRequiredSources];
     BitSet usedFlag = new BitSet(sources.length);
+    // Once a read lags behind the recent latency percentile, read from an
+    // additional source rather than waiting for the read timeout.
+    final long hedgeDelay = latencyTracker == null ? -1 :
+        latencyTracker.getHedgeDelayMillis(reconstructLength);
+    final long hedgeDeadline = Time.monotonicNow() + hedgeDelay;
+    boolean hedgePending =
+        hedgeDelay >= 0 && hedgeDelay < stripedReadTimeoutInMills;
     /*
      * Read from minimum source DNs required, the success list contains
      * source DNs which we think best.
@@ -304,12 +359,19 @@ class StripedReader {
 
     while (!futures.isEmpty()) {
       try {
+        final long timeout = hedgePending ?
+            Math.max(1, hedgeDeadline - Time.monotonicNow()) :
+            stripedReadTimeoutInMills;
         StripingChunkReadResult result =
             StripedBlockUtil.getNextCompletedStripedRead(
-                readService, futures, stripedReadTimeoutInMills);
+                readService, futures, timeout);
         int resultIndex = -1;
         if (result.state == StripingChunkReadResult.SUCCESSFUL) {
           resultIndex = result.index;
+          if (latencyTracker != null) {
+            latencyTracker.addSample(getPeerName(sources[resultIndex]),
+                result.getReadStats());
+          }
         } else if (result.state == StripingChunkReadResult.FAILED) {
           // If read failed for some source DN, we should not use it anymore
           // and schedule read from another source DN.
@@ -319,6 +381,10 @@ class StripedReader {
               reconstructLength, corruptedBlocks);
         } else if (result.state == StripingChunkReadResult.TIMEOUT) {
           // If timeout, we also schedule a new read.
+          if (hedgePending) {
+            hedgePending = false;
+            datanode.getMetrics().incrECReconstructionHedgedReads();
+          }
           resultIndex = scheduleNewRead(usedFlag,
               reconstructLength, corruptedBlocks);
         }
@@ -26,6 +26,7 @@ import org.apache.hadoop.hdfs.server.datanode.CachingStrategy;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.BlockReadStats;
+import org.apache.hadoop.hdfs.util.StripedReadLatencyTracker;
 import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.io.erasurecode.CodecUtil;
@@ -227,6 +228,14 @@ abstract class StripedReconstructor {
     return erasureCodingWorker.createReadService();
   }
 
+  StripedReadLatencyTracker getReadLatencyTracker() {
+    return erasureCodingWorker.getReadLatencyTracker();
+  }
+
+  ErasureCodingWorker getErasureCodingWorker() {
+    return erasureCodingWorker;
+  }
+
   ExtendedBlock getBlockGroup() {
     return blockGroup;
   }
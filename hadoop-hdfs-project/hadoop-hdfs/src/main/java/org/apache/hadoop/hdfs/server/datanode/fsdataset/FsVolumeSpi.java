@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.channels.ClosedChannelException;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,6 +35,8 @@ import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
 import org.apache.hadoop.hdfs.server.common.FileRegion;
+import org.apache.hadoop.hdfs.server.datanode.AsyncBlockWriter;
+import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
 import org.apache.hadoop.hdfs.server.datanode.DirectoryScanner.ReportCompiler;
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
 import org.apache.hadoop.hdfs.server.datanode.checker.Checkable;
@@ -451,6 +454,29 @@ public interface FsVolumeSpi
       LinkedList<ScanInfo> report, ReportCompiler reportCompiler)
       throws InterruptedException, IOException;
 
+  /**
+   * Compile a list of {@link ScanInfo} for the blocks in the finalized
+   * block directories of the block pool with id {@code bpid} changed since
+   * the last report, and in the given sample of block directories.
+   * The default implementation does not track changes, and compiles the
+   * full report of {@link #compileReport} instead.
+   *
+   * @param bpid block pool id to scan
+   * @param report the list onto which blocks reports are placed
+   * @param reportCompiler
+   * @param sample the block directories to scan in any case, by the index
+   *               of {@link DatanodeUtil#idToBlockDirIndex(long)}, or null
+   *               to scan all of them
+   * @return the block directories scanned, or null if all of them were
+   * @throws IOException
+   */
+  default BitSet compileIncrementalReport(String bpid,
+      LinkedList<ScanInfo> report, ReportCompiler reportCompiler,
+      BitSet sample) throws InterruptedException, IOException {
+    compileReport(bpid, report, reportCompiler);
+    return null;
+  }
+
   /**
    * Context for the {@link #check} call.
    */
@@ -460,4 +486,13 @@ public interface FsVolumeSpi
   FileIoProvider getFileIoProvider();
 
   DataNodeVolumeMetrics getMetrics();
+
+  /**
+   * @return the writer of the packets of blocks being received on this
+   *         volume, or null if receivers write their packets themselves,
+   *         as they do by default.
+   */
+  default AsyncBlockWriter getAsyncWriter() {
+    return null;
+  }
 }
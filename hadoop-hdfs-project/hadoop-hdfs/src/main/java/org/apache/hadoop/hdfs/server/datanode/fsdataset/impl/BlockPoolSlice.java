@@ -36,6 +36,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
@@ -101,6 +102,8 @@ class BlockPoolSlice {
   private final boolean deleteDuplicateReplicas;
   private static final String REPLICA_CACHE_FILE = "replicas";
   private final long replicaCacheExpiry = 5*60*1000;
+  /** The replica cache kept up to date at runtime, or null if disabled. */
+  private final ReplicaCacheJournal replicaJournal;
   private AtomicLong numOfBlocks = new AtomicLong();
   private final long cachedDfsUsedCheckTime;
   private final Timer timer;
@@ -162,6 +165,21 @@ class BlockPoolSlice {
 
     this.timer = timer;
 
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_JOURNAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_JOURNAL_ENABLED_DEFAULT) &&
+        !volume.isTransientStorage()) {
+      this.replicaJournal = new ReplicaCacheJournal(fileIoProvider, volume,
+          currentDir, maxDataLength, conf.getLong(
+          DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_CHECKPOINT_RECORDS_KEY,
+          DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_CHECKPOINT_RECORDS_DEFAULT));
+    } else {
+      this.replicaJournal = null;
+      // The cache is not kept up to date, so it must not be loaded if the
+      // journal is enabled again.
+      ReplicaCacheJournal.delete(fileIoProvider, volume, currentDir);
+    }
+
     // Files that were being written when the datanode was last shutdown
     // are now moved back to the data directory. It is possible that
     // in the future, we might want to do some sort of datanode-local
@@ -413,7 +431,11 @@ class BlockPoolSlice {
           "Recovered " + numRecovered + " replicas from " + lazypersistDir);
     }
 
-    boolean  success = readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
+    // The journal only has the finalized replicas.
+    final boolean finalizedCached = replicaJournal != null &&
+        readReplicasFromJournal(volumeMap);
+    boolean success = !finalizedCached &&
+        readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
     if (!success) {
       List<IOException> exceptions = Collections
           .synchronizedList(new ArrayList<IOException>());
@@ -421,9 +443,13 @@ class BlockPoolSlice {
           new ConcurrentLinkedQueue<RecursiveAction>();
 
       // add finalized replicas
-      AddReplicaProcessor task = new AddReplicaProcessor(volumeMap,
-          finalizedDir, lazyWriteReplicaMap, true, exceptions, subTaskQueue);
-      ForkJoinTask<Void> finalizedTask = addReplicaThreadPool.submit(task);
+      AddReplicaProcessor task;
+      ForkJoinTask<Void> finalizedTask = null;
+      if (!finalizedCached) {
+        task = new AddReplicaProcessor(volumeMap, finalizedDir,
+            lazyWriteReplicaMap, true, exceptions, subTaskQueue);
+        finalizedTask = addReplicaThreadPool.submit(task);
+      }
 
       // add rbw replicas
       task = new AddReplicaProcessor(volumeMap, rbwDir, lazyWriteReplicaMap,
@@ -431,7 +457,9 @@ class BlockPoolSlice {
       ForkJoinTask<Void> rbwTask = addReplicaThreadPool.submit(task);
 
       try {
-        finalizedTask.get();
+        if (finalizedTask != null) {
+          finalizedTask.get();
+        }
         rbwTask.get();
       } catch (InterruptedException | ExecutionException e) {
         exceptions.add(new IOException(
@@ -442,6 +470,9 @@ class BlockPoolSlice {
       //wait for all the tasks to finish.
       waitForSubTaskToFinish(subTaskQueue, exceptions);
     }
+    if (replicaJournal != null) {
+      replicaJournal.open();
+    }
   }
 
   /**
@@ -848,7 +879,12 @@ class BlockPoolSlice {
   }
 
   void shutdown(BlockListAsLongs blocksListToPersist) {
-    saveReplicas(blocksListToPersist);
+    if (replicaJournal != null) {
+      // The journal is already up to date.
+      replicaJournal.close();
+    } else {
+      saveReplicas(blocksListToPersist);
+    }
     saveDfsUsed();
     dfsUsedSaved = true;
 
@@ -938,6 +974,111 @@ class BlockPoolSlice {
     }
   }
 
+  /**
+   * Read the finalized replicas from the replica cache kept up to date at
+   * runtime.
+   *
+   * @return false if the replicas need to be read from the disk.
+   */
+  private boolean readReplicasFromJournal(ReplicaMap volumeMap) {
+    final ReplicaMap tmpReplicaMap = new ReplicaMap(new AutoCloseableLock());
+    try {
+      final boolean loaded = replicaJournal.load(
+          new ReplicaCacheJournal.Loader() {
+            @Override
+            public void add(Block block) {
+              final long blockId = block.getBlockId();
+              final ReplicaInfo replica =
+                  new ReplicaBuilder(ReplicaState.FINALIZED)
+                  .setBlockId(blockId)
+                  .setLength(block.getNumBytes())
+                  .setGenerationStamp(block.getGenerationStamp())
+                  .setFsVolume(volume)
+                  .setDirectoryToUse(
+                      DatanodeUtil.idToBlockDir(finalizedDir, blockId))
+                  .build();
+              tmpReplicaMap.add(bpid, replica);
+            }
+
+            @Override
+            public void remove(long blockId) {
+              tmpReplicaMap.remove(bpid, blockId);
+            }
+          });
+      if (!loaded) {
+        LOG.info("Replica cache checkpoint doesn't exist in " + currentDir);
+        return false;
+      }
+    } catch (Exception e) {
+      // Fall back to read the replicas from the disk.
+      LOG.warn("Failed to read the replica cache in " + currentDir, e);
+      return false;
+    }
+    long numReplicas = 0;
+    long numMissing = 0;
+    for (Iterator<ReplicaInfo> iter =
+        tmpReplicaMap.replicas(bpid).iterator(); iter.hasNext(); ) {
+      ReplicaInfo info = iter.next();
+      // We use a lightweight GSet to store replicaInfo, we need to remove
+      // it from one GSet before adding to another.
+      iter.remove();
+      // The journal is not synced, so it may still list replicas which were
+      // deleted before an unclean shutdown. Do not report those.
+      if (!info.blockDataExists() || !info.metadataExists()) {
+        numMissing++;
+        continue;
+      }
+      volumeMap.add(bpid, info);
+      incrNumBlocks();
+      numReplicas++;
+    }
+    LOG.info("Read " + numReplicas + " finalized replicas from the replica"
+        + " cache in " + currentDir + ", skipped " + numMissing
+        + " replicas missing from the disk");
+    return true;
+  }
+
+  /**
+   * Record that a replica of this slice was finalized.
+   * @return whether to call {@link #flushReplicaJournal()}.
+   */
+  boolean journalReplicaAdded(Block replica) {
+    return replicaJournal != null && replicaJournal.add(replica);
+  }
+
+  /**
+   * Record that a replica is no longer a finalized replica of the slice.
+   * @return whether to call {@link #flushReplicaJournal()}.
+   */
+  boolean journalReplicaRemoved(long blockId) {
+    return replicaJournal != null && replicaJournal.remove(blockId);
+  }
+
+  /** Append the recorded replica changes to the replica cache journal. */
+  void flushReplicaJournal() {
+    if (replicaJournal != null) {
+      replicaJournal.flush();
+    }
+  }
+
+  /**
+   * @return whether to write a new checkpoint of the replica cache with
+   *         {@link #checkpointReplicas(Callable)}.
+   */
+  boolean shouldCheckpointReplicas() {
+    return replicaJournal != null && replicaJournal.shouldCheckpoint();
+  }
+
+  /**
+   * Write a new checkpoint of the replica cache.
+   * @param snapshot takes the finalized replicas of the slice.
+   */
+  void checkpointReplicas(Callable<BlockListAsLongs> snapshot) {
+    if (replicaJournal != null) {
+      replicaJournal.checkpoint(snapshot);
+    }
+  }
+
   private void saveReplicas(BlockListAsLongs blocksListToPersist) {
     if (blocksListToPersist == null ||
         blocksListToPersist.getNumberOfBlocks()== 0) {
@@ -36,6 +36,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Condition;
@@ -253,6 +254,8 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
 
   private boolean blockPinningEnabled;
   private final int maxDataLength;
+  /** Whether the replica caches of the volumes are kept up to date. */
+  private final boolean replicaJournalEnabled;
 
   @VisibleForTesting
   final AutoCloseableLock datasetLock;
@@ -315,7 +318,9 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
     }
 
     storageMap = new ConcurrentHashMap<String, DatanodeStorage>();
-    volumeMap = new ReplicaMap(datasetLock);
+    volumeMap = new ReplicaMap(datasetLock, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_STRIPES_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_STRIPES_DEFAULT));
     ramDiskReplicaTracker = RamDiskReplicaTracker.getInstance(conf, this);
 
     @SuppressWarnings("unchecked")
@@ -365,6 +370,9 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
     maxDataLength = conf.getInt(
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH,
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT);
+    replicaJournalEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_JOURNAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_JOURNAL_ENABLED_DEFAULT);
   }
 
   @Override
@@ -1004,6 +1012,103 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
     return newReplicaInfo;
   }
 
+  /**
+   * Record the current state of a replica in the replica caches of the given
+   * volumes, after it was finalized, moved or removed.
+   */
+  private void journalReplica(String bpid, long blockId,
+      FsVolumeSpi... vols) {
+    if (!replicaJournalEnabled) {
+      return;
+    }
+    final List<FsVolumeImpl> toFlush = new ArrayList<>(vols.length);
+    // Hold the lock, so that the records of a replica are in order. They are
+    // only collected in memory, and written to the journal off the lock.
+    try (AutoCloseableLock lock = datasetLock.acquire()) {
+      final ReplicaInfo replica = volumeMap.get(bpid, blockId);
+      for (FsVolumeSpi vol : vols) {
+        if (vol instanceof FsVolumeImpl) {
+          final FsVolumeImpl v = (FsVolumeImpl) vol;
+          if (v.journalReplica(bpid, blockId, replica)) {
+            toFlush.add(v);
+          }
+          if (v.shouldCheckpointReplicas(bpid)) {
+            scheduleReplicaCheckpoint(bpid, v);
+          }
+        }
+      }
+    }
+    for (FsVolumeImpl v : toFlush) {
+      scheduleReplicaJournalFlush(bpid, v);
+    }
+  }
+
+  /** Append the recorded replica changes to the journal of a volume. */
+  private void scheduleReplicaJournalFlush(final String bpid,
+      final FsVolumeImpl v) {
+    try {
+      asyncDiskService.execute(v, new Runnable() {
+        @Override
+        public void run() {
+          v.flushReplicaJournal(bpid);
+        }
+      });
+    } catch (RuntimeException e) {
+      // The volume is being removed or the DataNode shut down, so write the
+      // records here.
+      v.flushReplicaJournal(bpid);
+    }
+  }
+
+  /** Write a new checkpoint of the replica cache of a volume. */
+  private void scheduleReplicaCheckpoint(final String bpid,
+      final FsVolumeImpl v) {
+    final Callable<BlockListAsLongs> snapshot =
+        new Callable<BlockListAsLongs>() {
+      @Override
+      public BlockListAsLongs call() {
+        return getFinalizedReplicas(bpid, v);
+      }
+    };
+    try {
+      asyncDiskService.execute(v, new Runnable() {
+        @Override
+        public void run() {
+          v.checkpointReplicas(bpid, snapshot);
+        }
+      });
+    } catch (RuntimeException e) {
+      // The volume is being removed or the DataNode shut down.
+      LOG.warn("Failed to schedule a replica cache checkpoint on " + v, e);
+    }
+  }
+
+  /** @return the finalized replicas of a block pool on a volume. */
+  private BlockListAsLongs getFinalizedReplicas(String bpid, FsVolumeImpl v) {
+    final BlockListAsLongs.Builder builder =
+        BlockListAsLongs.builder(maxDataLength);
+    final Collection<ReplicaInfo> replicas;
+    try (AutoCloseableLock lock = datasetLock.acquire()) {
+      replicas = volumeMap.snapshot(bpid);
+    }
+    if (replicas == null) {
+      throw new IllegalStateException("Block pool " + bpid + " not found");
+    }
+    for (ReplicaInfo b : replicas) {
+      if (b.getVolume() != v) {
+        continue;
+      }
+      if (b.getState() == ReplicaState.FINALIZED) {
+        builder.add(b);
+      } else if (b.getState() == ReplicaState.RUR &&
+          b.getOriginalReplica().getState() == ReplicaState.FINALIZED) {
+        // The replica is still finalized on the disk.
+        builder.add(b.getOriginalReplica());
+      }
+    }
+    return builder.build();
+  }
+
   /**
    * Cleanup the replicaInfo object passed.
    *
@@ -1011,8 +1116,10 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
    * @param replicaInfo    - ReplicaInfo
    */
   private void cleanupReplica(String bpid, ReplicaInfo replicaInfo) {
+    FsVolumeImpl volume = (FsVolumeImpl) replicaInfo.getVolume();
+    volume.markBlockDirChanged(bpid, replicaInfo.getBlockId());
+    journalReplica(bpid, replicaInfo.getBlockId(), volume);
     if (replicaInfo.deleteBlockData() || !replicaInfo.blockDataExists()) {
-      FsVolumeImpl volume = (FsVolumeImpl) replicaInfo.getVolume();
       volume.onBlockFileDeletion(bpid, replicaInfo.getBytesOnDisk());
       if (replicaInfo.deleteMetadata() || !replicaInfo.metadataExists()) {
         volume.onMetaFileDeletion(bpid, replicaInfo.getMetadataLength());
@@ -1247,6 +1354,7 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
       }
       // Replace finalized replica by a RBW replica in replicas map
       volumeMap.add(bpid, rip.getReplicaInfo());
+      journalReplica(bpid, replicaInfo.getBlockId(), v);
       return rip;
     }
   }
@@ -1775,6 +1883,8 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
           : "Replica should be finalized";
 
       volumeMap.add(bpid, newReplicaInfo);
+      journalReplica(bpid, newReplicaInfo.getBlockId(),
+          newReplicaInfo.getVolume());
       return newReplicaInfo;
     }
   }
@@ -1837,42 +1947,46 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
         new HashMap<String, BlockListAsLongs.Builder>();
 
     List<FsVolumeImpl> curVolumes = null;
+    Collection<ReplicaInfo> replicas;
     try (AutoCloseableLock lock = datasetLock.acquire()) {
       curVolumes = volumes.getVolumes();
       for (FsVolumeSpi v : curVolumes) {
         builders.put(v.getStorageID(), BlockListAsLongs.builder(maxDataLength));
       }
+      // Only take a snapshot of the replicas under the lock, and encode them
+      // after releasing it.
+      replicas = volumeMap.snapshot(bpid);
+    }
 
-      Set<String> missingVolumesReported = new HashSet<>();
-      for (ReplicaInfo b : volumeMap.replicas(bpid)) {
-        // skip PROVIDED replicas.
-        if (b.getVolume().getStorageType() == StorageType.PROVIDED) {
-          continue;
-        }
-        String volStorageID = b.getVolume().getStorageID();
-        if (!builders.containsKey(volStorageID)) {
-          if (!missingVolumesReported.contains(volStorageID)) {
-            LOG.warn("Storage volume: " + volStorageID + " missing for the"
-                + " replica block: " + b + ". Probably being removed!");
-            missingVolumesReported.add(volStorageID);
-          }
-          continue;
-        }
-        switch(b.getState()) {
-        case FINALIZED:
-        case RBW:
-        case RWR:
-          builders.get(volStorageID).add(b);
-          break;
-        case RUR:
-          ReplicaInfo orig = b.getOriginalReplica();
-          builders.get(volStorageID).add(orig);
-          break;
-        case TEMPORARY:
-          break;
-        default:
-          assert false : "Illegal ReplicaInfo state.";
+    Set<String> missingVolumesReported = new HashSet<>();
+    for (ReplicaInfo b : replicas) {
+      // skip PROVIDED replicas.
+      if (b.getVolume().getStorageType() == StorageType.PROVIDED) {
+        continue;
+      }
+      String volStorageID = b.getVolume().getStorageID();
+      if (!builders.containsKey(volStorageID)) {
+        if (!missingVolumesReported.contains(volStorageID)) {
+          LOG.warn("Storage volume: " + volStorageID + " missing for the"
+              + " replica block: " + b + ". Probably being removed!");
+          missingVolumesReported.add(volStorageID);
         }
+        continue;
+      }
+      switch(b.getState()) {
+      case FINALIZED:
+      case RBW:
+      case RWR:
+        builders.get(volStorageID).add(b);
+        break;
+      case RUR:
+        ReplicaInfo orig = b.getOriginalReplica();
+        builders.get(volStorageID).add(orig);
+        break;
+      case TEMPORARY:
+        break;
+      default:
+        assert false : "Illegal ReplicaInfo state.";
       }
     }
 
@@ -2077,6 +2191,8 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
         }
         removing = volumeMap.remove(bpid, invalidBlks[i]);
         addDeletingBlock(bpid, removing.getBlockId());
+        v.markBlockDirChanged(bpid, removing.getBlockId());
+        journalReplica(bpid, removing.getBlockId(), v);
         if (LOG.isDebugEnabled()) {
           LOG.debug("Block file " + removing.getBlockURI()
               + " is to be deleted");
@@ -2344,6 +2460,17 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
   @Override
   public void checkAndUpdate(String bpid, ScanInfo scanInfo)
       throws IOException {
+    final ReplicaInfo memBlockInfo = volumeMap.get(bpid, scanInfo.getBlockId());
+    try {
+      checkAndUpdateReplica(bpid, scanInfo);
+    } finally {
+      journalReplica(bpid, scanInfo.getBlockId(), scanInfo.getVolume(),
+          memBlockInfo != null ? memBlockInfo.getVolume() : null);
+    }
+  }
+
+  private void checkAndUpdateReplica(String bpid, ScanInfo scanInfo)
+      throws IOException {
 
     long blockId = scanInfo.getBlockId();
     File diskFile = scanInfo.getBlockFile();
@@ -2794,6 +2921,14 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
       volumeMap.initBlockPool(bpid);
     }
     volumes.getAllVolumesMap(bpid, volumeMap, ramDiskReplicaTracker);
+    if (replicaJournalEnabled) {
+      // Checkpoint the replicas read from the disk.
+      for (FsVolumeImpl v : volumes.getVolumes()) {
+        if (v.shouldCheckpointReplicas(bpid)) {
+          scheduleReplicaCheckpoint(bpid, v);
+        }
+      }
+    }
   }
 
   @Override
@@ -3168,6 +3303,8 @@ class FsDatasetImpl implements FsDatasetSpi<FsVolumeImpl> {
                   replicaInfo, replicaState);
           // Update the volumeMap entry.
           volumeMap.add(bpid, newReplicaInfo);
+          journalReplica(bpid, newReplicaInfo.getBlockId(),
+              newReplicaInfo.getVolume());
 
           // Update metrics
           datanode.getMetrics().incrRamDiskBlocksEvicted();
@@ -28,12 +28,15 @@ import java.net.URI;
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -46,6 +49,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.DF;
 import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.server.datanode.AsyncBlockWriter;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.checker.VolumeCheckResult;
@@ -142,6 +146,18 @@ public class FsVolumeImpl implements FsVolumeSpi {
    */
   protected ThreadPoolExecutor cacheExecutor;
 
+  /**
+   * Per-volume writer of the packets of blocks being received, or null if
+   * receivers write their packets themselves.
+   */
+  private final AsyncBlockWriter asyncWriter;
+
+  /**
+   * The finalized block directories per block pool in which replicas were
+   * added or removed since the last report, or null if not tracked.
+   */
+  private final Map<String, BitSet> changedBlockDirs;
+
   FsVolumeImpl(FsDatasetImpl dataset, String storageID, StorageDirectory sd,
       FileIoProvider fileIoProvider, Configuration conf) throws IOException {
     // outside tests, usage created in ReservedSpaceCalculator.Builder
@@ -168,12 +184,18 @@ public class FsVolumeImpl implements FsVolumeSpi {
       File parent = currentDir.getParentFile();
       cacheExecutor = initializeCacheExecutor(parent);
       this.metrics = DataNodeVolumeMetrics.create(conf, parent.getPath());
+      this.asyncWriter = initializeAsyncWriter(parent, conf);
     } else {
       cacheExecutor = null;
       this.metrics = null;
+      this.asyncWriter = null;
     }
     this.conf = conf;
     this.fileIoProvider = fileIoProvider;
+    this.changedBlockDirs = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT) ?
+        new HashMap<String, BitSet>() : null;
     this.reserved = new ReservedSpaceCalculator.Builder(conf)
         .setUsage(usage).setStorageType(storageType).build();
   }
@@ -204,6 +226,23 @@ public class FsVolumeImpl implements FsVolumeSpi {
     return executor;
   }
 
+  private AsyncBlockWriter initializeAsyncWriter(File parent,
+      Configuration config) {
+    if (storageType.isTransient() || !config.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_ASYNC_WRITER_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_ASYNC_WRITER_ENABLED_DEFAULT)) {
+      return null;
+    }
+    return new AsyncBlockWriter(parent.toString(), config.getInt(
+        DFSConfigKeys.DFS_DATANODE_ASYNC_WRITER_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_ASYNC_WRITER_QUEUE_SIZE_DEFAULT));
+  }
+
+  @Override
+  public AsyncBlockWriter getAsyncWriter() {
+    return asyncWriter;
+  }
+
   private void printReferenceTraceInfo(String op) {
     StackTraceElement[] stack = Thread.currentThread().getStackTrace();
     for (StackTraceElement ste : stack) {
@@ -956,6 +995,7 @@ public class FsVolumeImpl implements FsVolumeSpi {
       long bytesReserved) throws IOException {
     releaseReservedSpace(bytesReserved);
     File dest = getBlockPoolSlice(bpid).addFinalizedBlock(b, replicaInfo);
+    markBlockDirChanged(bpid, b.getBlockId());
     byte[] checksum = null;
     // copy the last partial checksum if the replica is originally
     // in finalized or rbw state.
@@ -1020,6 +1060,9 @@ public class FsVolumeImpl implements FsVolumeSpi {
     if (cacheExecutor != null) {
       cacheExecutor.shutdown();
     }
+    if (asyncWriter != null) {
+      asyncWriter.shutdown();
+    }
     Set<Entry<String, BlockPoolSlice>> set = bpSlices.entrySet();
     for (Entry<String, BlockPoolSlice> entry : set) {
       entry.getValue().shutdown(null);
@@ -1188,6 +1231,7 @@ public class FsVolumeImpl implements FsVolumeSpi {
 
     assert replicaInfo.getVolume() == this:
       "The volume of the replica should be the same as this volume";
+    markBlockDirChanged(bpid, replicaInfo.getBlockId());
 
     // construct a RBW replica with the new GS
     File newBlkFile = new File(getRbwDir(bpid), replicaInfo.getBlockName());
@@ -1320,6 +1364,107 @@ public class FsVolumeImpl implements FsVolumeSpi {
         getFinalizedDir(bpid), report, reportCompiler);
   }
 
+  /**
+   * Record that a finalized replica was added to or removed from its block
+   * directory, for the next incremental report.
+   */
+  void markBlockDirChanged(String bpid, long blockId) {
+    if (changedBlockDirs == null) {
+      return;
+    }
+    synchronized (changedBlockDirs) {
+      BitSet dirs = changedBlockDirs.get(bpid);
+      if (dirs == null) {
+        dirs = new BitSet(DatanodeUtil.NUM_BLOCK_DIRS);
+        changedBlockDirs.put(bpid, dirs);
+      }
+      dirs.set(DatanodeUtil.idToBlockDirIndex(blockId));
+    }
+  }
+
+  /**
+   * Record the state of a replica in the replica cache of this volume, after
+   * it was finalized, or is no longer a finalized replica of this volume.
+   *
+   * @param replica the current replica with the block ID, or null if none
+   * @return whether to call {@link #flushReplicaJournal(String)}.
+   */
+  boolean journalReplica(String bpid, long blockId, ReplicaInfo replica) {
+    final BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp == null) {
+      return false;
+    }
+    if (replica != null && replica.getVolume() == this &&
+        replica.getState() == ReplicaState.FINALIZED) {
+      return bp.journalReplicaAdded(replica);
+    } else {
+      return bp.journalReplicaRemoved(blockId);
+    }
+  }
+
+  /** Append the recorded replica changes to the replica cache journal. */
+  void flushReplicaJournal(String bpid) {
+    final BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.flushReplicaJournal();
+    }
+  }
+
+  /**
+   * @return whether to write a new checkpoint of the replica cache of the
+   *         block pool with {@link #checkpointReplicas(String, Callable)}.
+   */
+  boolean shouldCheckpointReplicas(String bpid) {
+    final BlockPoolSlice bp = bpSlices.get(bpid);
+    return bp != null && bp.shouldCheckpointReplicas();
+  }
+
+  /**
+   * Write a new checkpoint of the replica cache of the block pool.
+   * @param snapshot takes the finalized replicas of the block pool.
+   */
+  void checkpointReplicas(String bpid, Callable<BlockListAsLongs> snapshot) {
+    final BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.checkpointReplicas(snapshot);
+    }
+  }
+
+  /**
+   * @return the block directories changed since the last call, or null if
+   *         they are not tracked.
+   */
+  private BitSet takeChangedBlockDirs(String bpid) {
+    if (changedBlockDirs == null) {
+      return null;
+    }
+    synchronized (changedBlockDirs) {
+      final BitSet dirs = changedBlockDirs.remove(bpid);
+      return dirs != null ? dirs : new BitSet(DatanodeUtil.NUM_BLOCK_DIRS);
+    }
+  }
+
+  @Override
+  public BitSet compileIncrementalReport(String bpid,
+      LinkedList<ScanInfo> report, ReportCompiler reportCompiler,
+      BitSet sample) throws InterruptedException, IOException {
+    // Changes made while the report is compiled go to the next one.
+    final BitSet dirs = takeChangedBlockDirs(bpid);
+    if (dirs == null || sample == null) {
+      compileReport(bpid, report, reportCompiler);
+      return null;
+    }
+    dirs.or(sample);
+    final File finalizedDir = getFinalizedDir(bpid);
+    for (int i = dirs.nextSetBit(0); i >= 0; i = dirs.nextSetBit(i + 1)) {
+      final File dir = DatanodeUtil.blockDirIndexToDir(finalizedDir, i);
+      if (fileIoProvider.exists(this, dir)) {
+        compileReport(finalizedDir, dir, report, reportCompiler);
+      }
+    }
+    return dirs;
+  }
+
   @Override
   public FileIoProvider getFileIoProvider() {
     return fileIoProvider;
@@ -1481,6 +1626,7 @@ public class FsVolumeImpl implements FsVolumeSpi {
 
   public ReplicaInfo activateSavedReplica(String bpid,
       ReplicaInfo replicaInfo, RamDiskReplica replicaState) throws IOException {
+    markBlockDirChanged(bpid, replicaInfo.getBlockId());
     return getBlockPoolSlice(bpid).activateSavedReplica(replicaInfo,
         replicaState);
   }
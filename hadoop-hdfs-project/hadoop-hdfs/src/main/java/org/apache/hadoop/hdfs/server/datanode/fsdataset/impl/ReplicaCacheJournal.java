@@ -0,0 +1,593 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.io.DataInputByteBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A cache of the finalized replicas of a block pool slice, which is kept up
+ * to date at runtime, so that it is valid after an unclean shutdown too.
+ * <p>
+ * The cache is a checkpoint of the replicas, and journals of the replicas
+ * finalized or removed since. Every change is appended to the current
+ * journal, and the journals are folded into a new checkpoint once they hold
+ * enough records. At startup, the checkpoint is read through a memory
+ * mapping and the journals are replayed on top of it, instead of listing
+ * all block directories. The caller checks that the files of each replica
+ * loaded still exist, since the journal is not synced and may miss the
+ * removal of replicas deleted just before an unclean shutdown. Other
+ * differences are reconciled later by the DirectoryScanner.
+ * <p>
+ * Records are collected in memory while the dataset lock is held, and
+ * appended to the journal later by {@link #flush()}, off the lock. Records
+ * which were not flushed before the host went down are lost, like records
+ * which were not written completely.
+ * <p>
+ * The checkpoint ends with a trailer holding its length and checksum, and
+ * every journal record has its own checksum, so that files which were not
+ * written completely are detected. A record holds the latest state of a
+ * replica, so replaying a journal on top of a checkpoint which already has
+ * some of its records is harmless. A checkpoint hence names the journal
+ * being written when its replicas were taken, to replay from.
+ */
+class ReplicaCacheJournal {
+  static final Logger LOG = LoggerFactory.getLogger(ReplicaCacheJournal.class);
+
+  static final String CHECKPOINT_FILE = "replicas.checkpoint";
+  static final String JOURNAL_FILE_PREFIX = "replicas.journal.";
+
+  private static final int CHECKPOINT_MAGIC = 0x52434350;
+  private static final int JOURNAL_MAGIC = 0x52434a4c;
+  private static final int LAYOUT_VERSION = 1;
+  /** Magic, version, journal to replay from, length and checksum. */
+  private static final int TRAILER_LENGTH = 4 + 4 + 8 + 8 + 8;
+  /** Operation, block ID, generation stamp, length and checksum. */
+  private static final int RECORD_LENGTH = 1 + 8 + 8 + 8 + 4;
+  private static final byte OP_ADD = 1;
+  private static final byte OP_REMOVE = 2;
+
+  /** Receives the replicas loaded from the cache. */
+  interface Loader {
+    /** Add or replace a finalized replica. */
+    void add(Block block) throws IOException;
+
+    /** Remove a replica, if present. */
+    void remove(long blockId);
+  }
+
+  private final FileIoProvider fileIoProvider;
+  private final FsVolumeSpi volume;
+  private final File dir;
+  private final int maxDataLength;
+  /** The number of records after which to write a new checkpoint. */
+  private final long checkpointRecords;
+  /** Serializes writing checkpoints. */
+  private final Object checkpointLock = new Object();
+  /**
+   * Serializes writing to the journal. Taken after the checkpoint lock and
+   * before the monitor of this object.
+   */
+  private final Object writeLock = new Object();
+
+  /** The current journal, or null if closed or failed. */
+  private DataOutputStream journal;
+  /** The sequence number of the current journal. */
+  private long journalSeq = 0;
+  /** The journal the last checkpoint is replayed from. */
+  private long checkpointReplayFrom = 0;
+  private boolean hasCheckpoint = false;
+  private boolean checkpointPending = false;
+  /** The number of records since the last checkpoint. */
+  private long numRecords = 0;
+  private final byte[] record = new byte[RECORD_LENGTH];
+  private final CRC32 recordChecksum = new CRC32();
+  /** The records not written to the journal yet, in order. */
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  /** Whether {@link #flush()} is expected to write the pending records. */
+  private boolean flushScheduled = false;
+
+  /**
+   * @param fileIoProvider the provider of file operations.
+   * @param volume the volume of the block pool slice.
+   * @param dir the directory of the cache files.
+   * @param maxDataLength the maximum size of the checkpoint.
+   * @param checkpointRecords the number of records after which to write a
+   *                          new checkpoint.
+   */
+  ReplicaCacheJournal(FileIoProvider fileIoProvider, FsVolumeSpi volume,
+      File dir, int maxDataLength, long checkpointRecords) {
+    this.fileIoProvider = fileIoProvider;
+    this.volume = volume;
+    this.dir = dir;
+    this.maxDataLength = maxDataLength;
+    this.checkpointRecords = checkpointRecords;
+  }
+
+  /** Delete the cache files in the given directory. */
+  static void delete(FileIoProvider fileIoProvider, FsVolumeSpi volume,
+      File dir) {
+    fileIoProvider.deleteWithExistsCheck(volume,
+        new File(dir, CHECKPOINT_FILE));
+    for (File file : listJournals(dir).values()) {
+      fileIoProvider.deleteWithExistsCheck(volume, file);
+    }
+  }
+
+  /** @return the journals in the given directory by sequence number. */
+  private static TreeMap<Long, File> listJournals(File dir) {
+    final TreeMap<Long, File> journals = new TreeMap<>();
+    final File[] files = dir.listFiles();
+    if (files == null) {
+      return journals;
+    }
+    for (File file : files) {
+      final String name = file.getName();
+      if (name.startsWith(JOURNAL_FILE_PREFIX)) {
+        try {
+          journals.put(Long.parseLong(
+              name.substring(JOURNAL_FILE_PREFIX.length())), file);
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring unexpected file " + file);
+        }
+      }
+    }
+    return journals;
+  }
+
+  /**
+   * Load the replicas from the checkpoint and replay the journals after it.
+   * The loader may have received some replicas if this fails.
+   *
+   * @return false if there is no checkpoint.
+   * @throws IOException if the checkpoint or a journal is not valid.
+   */
+  boolean load(Loader loader) throws IOException {
+    final TreeMap<Long, File> journals = listJournals(dir);
+    final long lastSeq = journals.isEmpty() ? 0 : journals.lastKey();
+    synchronized (this) {
+      journalSeq = lastSeq;
+    }
+    final File checkpointFile = new File(dir, CHECKPOINT_FILE);
+    if (!checkpointFile.exists()) {
+      return false;
+    }
+    final long replayFrom;
+    long numReplayed = 0;
+    try {
+      replayFrom = loadCheckpoint(checkpointFile, loader);
+      for (long seq = replayFrom; seq <= lastSeq || seq == replayFrom;
+          seq++) {
+        final File file = journals.get(seq);
+        if (file == null) {
+          throw new IOException("Missing journal " + seq + " of "
+              + checkpointFile);
+        }
+        numReplayed += replayJournal(file, loader);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Do not load the cache again before a new checkpoint is written.
+      fileIoProvider.deleteWithExistsCheck(volume, checkpointFile);
+      throw e;
+    }
+    synchronized (this) {
+      checkpointReplayFrom = replayFrom;
+      hasCheckpoint = true;
+      numRecords = numReplayed;
+    }
+    return true;
+  }
+
+  /**
+   * Read the checkpoint through a memory mapping.
+   * @return the journal to replay from.
+   */
+  private long loadCheckpoint(File file, Loader loader) throws IOException {
+    final MappedByteBuffer buf;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+         FileChannel channel = raf.getChannel()) {
+      final long size = channel.size();
+      if (size < TRAILER_LENGTH || size > Integer.MAX_VALUE) {
+        throw new IOException("Invalid size " + size + " of " + file);
+      }
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    final ByteBuffer trailer = buf.duplicate();
+    trailer.position(buf.limit() - TRAILER_LENGTH);
+    final int magic = trailer.getInt();
+    final int version = trailer.getInt();
+    final long replayFrom = trailer.getLong();
+    final long length = trailer.getLong();
+    final long checksum = trailer.getLong();
+    if (magic != CHECKPOINT_MAGIC || version != LAYOUT_VERSION ||
+        length != buf.limit() - TRAILER_LENGTH) {
+      throw new IOException("Invalid trailer of " + file);
+    }
+
+    final ByteBuffer body = buf.duplicate();
+    body.limit((int) length);
+    final CRC32 crc = new CRC32();
+    crc.update(body.duplicate());
+    if (crc.getValue() != checksum) {
+      throw new IOException("Checksum mismatch in " + file);
+    }
+    final DataInputByteBuffer in = new DataInputByteBuffer();
+    in.reset(body);
+    final BlockListAsLongs replicas =
+        BlockListAsLongs.readFrom(in, maxDataLength);
+    if (replicas == null) {
+      throw new IOException("No replicas in " + file);
+    }
+    for (BlockReportReplica replica : replicas) {
+      if (replica.getState() == ReplicaState.FINALIZED) {
+        loader.add(replica);
+      }
+    }
+    return replayFrom;
+  }
+
+  /**
+   * Replay the records of a journal. A journal may end with a record which
+   * was not written completely before the host went down, which is ignored;
+   * the DirectoryScanner finds the change it recorded later.
+   *
+   * @return the number of records replayed.
+   */
+  private long replayJournal(File file, Loader loader) throws IOException {
+    long n = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        fileIoProvider.getFileInputStream(volume, file)))) {
+      try {
+        if (in.readInt() != JOURNAL_MAGIC ||
+            in.readInt() != LAYOUT_VERSION) {
+          throw new IOException("Invalid header of " + file);
+        }
+      } catch (EOFException e) {
+        return incomplete(file, n);
+      }
+      final byte[] buf = new byte[RECORD_LENGTH];
+      final CRC32 crc = new CRC32();
+      while (true) {
+        final int first = in.read();
+        if (first < 0) {
+          return n;
+        }
+        buf[0] = (byte) first;
+        try {
+          in.readFully(buf, 1, RECORD_LENGTH - 1);
+        } catch (EOFException e) {
+          return incomplete(file, n);
+        }
+        crc.reset();
+        crc.update(buf, 0, RECORD_LENGTH - 4);
+        final ByteBuffer rec = ByteBuffer.wrap(buf);
+        if (rec.getInt(RECORD_LENGTH - 4) != (int) crc.getValue()) {
+          return incomplete(file, n);
+        }
+        final byte op = rec.get();
+        final long blockId = rec.getLong();
+        final long genStamp = rec.getLong();
+        final long numBytes = rec.getLong();
+        if (op == OP_ADD) {
+          loader.add(new Block(blockId, numBytes, genStamp));
+        } else if (op == OP_REMOVE) {
+          loader.remove(blockId);
+        } else {
+          throw new IOException("Unknown operation " + op + " in " + file);
+        }
+        n++;
+      }
+    }
+  }
+
+  private static long incomplete(File file, long n) {
+    LOG.warn("Ignoring an incomplete record after " + n + " records of "
+        + file);
+    return n;
+  }
+
+  /** Start a new journal after the existing ones. */
+  void open() {
+    synchronized (writeLock) {
+      synchronized (this) {
+        journalSeq++;
+        flushScheduled = false;
+        try {
+          journal = createJournal(journalSeq);
+        } catch (IOException e) {
+          fail(e);
+        }
+      }
+    }
+  }
+
+  private DataOutputStream createJournal(long seq) throws IOException {
+    final File file = new File(dir, JOURNAL_FILE_PREFIX + seq);
+    final FileOutputStream fos = fileIoProvider.getFileOutputStream(
+        volume, file);
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(fos, RECORD_LENGTH * 4));
+    try {
+      out.writeInt(JOURNAL_MAGIC);
+      out.writeInt(LAYOUT_VERSION);
+      out.flush();
+    } catch (IOException e) {
+      IOUtils.cleanup(null, out);
+      throw e;
+    }
+    return out;
+  }
+
+  /**
+   * Record that a replica was finalized.
+   * @return whether the caller is expected to call {@link #flush()}.
+   */
+  boolean add(Block block) {
+    return log(OP_ADD, block.getBlockId(), block.getGenerationStamp(),
+        block.getNumBytes());
+  }
+
+  /**
+   * Record that a replica was removed, or is no longer finalized.
+   * @return whether the caller is expected to call {@link #flush()}.
+   */
+  boolean remove(long blockId) {
+    return log(OP_REMOVE, blockId, 0, 0);
+  }
+
+  private synchronized boolean log(byte op, long blockId, long genStamp,
+      long numBytes) {
+    if (journal == null) {
+      return false;
+    }
+    final ByteBuffer rec = ByteBuffer.wrap(record);
+    rec.put(op).putLong(blockId).putLong(genStamp).putLong(numBytes);
+    recordChecksum.reset();
+    recordChecksum.update(record, 0, RECORD_LENGTH - 4);
+    rec.putInt((int) recordChecksum.getValue());
+    pending.write(record, 0, RECORD_LENGTH);
+    numRecords++;
+    if (flushScheduled) {
+      return false;
+    }
+    flushScheduled = true;
+    return true;
+  }
+
+  /**
+   * Append the pending records to the journal, and hand them to the OS, so
+   * that they survive the process, but do not sync them.
+   */
+  void flush() {
+    synchronized (writeLock) {
+      final DataOutputStream out;
+      final ByteArrayOutputStream records;
+      synchronized (this) {
+        flushScheduled = false;
+        out = journal;
+        records = pending;
+        pending = new ByteArrayOutputStream();
+      }
+      if (out == null || records.size() == 0) {
+        return;
+      }
+      try {
+        records.writeTo(out);
+        out.flush();
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+  }
+
+  /**
+   * Write the pending records to the current journal before it is closed.
+   * The caller holds the write lock and the monitor of this object.
+   */
+  private void writePending() {
+    if (journal != null && pending.size() > 0) {
+      try {
+        pending.writeTo(journal);
+        journal.flush();
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+    pending.reset();
+  }
+
+  /**
+   * Stop journaling after an error, and drop the checkpoint, which cannot
+   * be brought up to date anymore.
+   */
+  private synchronized void fail(IOException e) {
+    LOG.warn("Failed to write the replica cache journal in " + dir
+        + "; the replicas will be read from the disk on the next startup", e);
+    IOUtils.cleanup(null, journal);
+    journal = null;
+    pending.reset();
+    hasCheckpoint = false;
+    fileIoProvider.deleteWithExistsCheck(volume,
+        new File(dir, CHECKPOINT_FILE));
+  }
+
+  /**
+   * Decide whether to write a new checkpoint. If so, the caller is expected
+   * to call {@link #checkpoint(Callable)}.
+   */
+  synchronized boolean shouldCheckpoint() {
+    if (journal == null || checkpointPending ||
+        (hasCheckpoint && numRecords < checkpointRecords)) {
+      return false;
+    }
+    checkpointPending = true;
+    return true;
+  }
+
+  /**
+   * Write a new checkpoint and delete the journals before it.
+   *
+   * @param snapshot takes the finalized replicas of the block pool slice.
+   */
+  void checkpoint(Callable<BlockListAsLongs> snapshot) {
+    synchronized (checkpointLock) {
+      try {
+        final long replayFrom;
+        synchronized (writeLock) {
+          synchronized (this) {
+            writePending();
+            if (journal == null) {
+              return;
+            }
+            // Replicas changed from now on are in the current journal or
+            // later ones.
+            replayFrom = journalSeq;
+            IOUtils.cleanup(null, journal);
+            journal = null;
+            journalSeq++;
+            try {
+              journal = createJournal(journalSeq);
+            } catch (IOException e) {
+              fail(e);
+              return;
+            }
+            numRecords = 0;
+          }
+        }
+        final BlockListAsLongs replicas;
+        try {
+          replicas = snapshot.call();
+        } catch (Exception e) {
+          LOG.warn("Failed to take the replicas for a checkpoint in " + dir,
+              e);
+          return;
+        }
+        if (!writeCheckpoint(replicas, replayFrom)) {
+          return;
+        }
+        synchronized (this) {
+          checkpointReplayFrom = replayFrom;
+          hasCheckpoint = journal != null;
+        }
+        for (Map.Entry<Long, File> old :
+            listJournals(dir).headMap(replayFrom).entrySet()) {
+          fileIoProvider.deleteWithExistsCheck(volume, old.getValue());
+        }
+      } finally {
+        synchronized (this) {
+          checkpointPending = false;
+        }
+      }
+    }
+  }
+
+  private boolean writeCheckpoint(BlockListAsLongs replicas,
+      long replayFrom) {
+    final File tmpFile = new File(dir, CHECKPOINT_FILE + ".tmp");
+    final File file = new File(dir, CHECKPOINT_FILE);
+    OutputStream out = null;
+    try {
+      final FileOutputStream fos =
+          fileIoProvider.getFileOutputStream(volume, tmpFile);
+      out = fos;
+      final CRC32 crc = new CRC32();
+      final CheckedOutputStream body = new CheckedOutputStream(
+          new BufferedOutputStream(fos), crc);
+      out = body;
+      replicas.writeTo(body);
+      body.flush();
+      final long length = fos.getChannel().position();
+      final DataOutputStream trailer = new DataOutputStream(fos);
+      trailer.writeInt(CHECKPOINT_MAGIC);
+      trailer.writeInt(LAYOUT_VERSION);
+      trailer.writeLong(replayFrom);
+      trailer.writeLong(length);
+      trailer.writeLong(crc.getValue());
+      trailer.flush();
+      fileIoProvider.sync(volume, fos);
+      out.close();
+      out = null;
+      synchronized (this) {
+        // A newer checkpoint may have deleted the journals of this one, and
+        // the changes are no longer journaled after a failure.
+        if (journal == null || replayFrom < checkpointReplayFrom) {
+          return false;
+        }
+        fileIoProvider.rename(volume, tmpFile, file);
+      }
+      LOG.info("Wrote a checkpoint of " + replicas.getNumberOfBlocks()
+          + " replicas to " + file);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Failed to write the replica cache checkpoint " + file, e);
+      return false;
+    } finally {
+      IOUtils.cleanup(null, out);
+      fileIoProvider.deleteWithExistsCheck(volume, tmpFile);
+    }
+  }
+
+  /**
+   * Write the pending records and close the current journal. The cache
+   * stays valid.
+   */
+  void close() {
+    synchronized (writeLock) {
+      synchronized (this) {
+        writePending();
+        IOUtils.cleanup(null, journal);
+        journal = null;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getNumRecords() {
+    return numRecords;
+  }
+}
@@ -17,10 +17,15 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -30,13 +35,22 @@ import org.apache.hadoop.util.AutoCloseableLock;
 
 /**
  * Maintains the replica map. 
+ * <p>
+ * The replicas of a block pool are kept in one or more stripes by block id.
+ * Without striping, the map is guarded by the given lock as a whole. With
+ * striping, every stripe has its own read write lock, so that lookups and
+ * updates of different stripes run in parallel, and none of them waits for
+ * the given lock. The given lock is still returned by {@link #getLock()}
+ * for callers that have to update several replicas atomically.
  */
 class ReplicaMap {
   // Lock object to synchronize this instance.
   private final AutoCloseableLock lock;
+  // Number of stripes per block pool, 0 to guard the map with the lock.
+  private final int numStripes;
   
-  // Map of block pool Id to a set of ReplicaInfo.
-  private final Map<String, FoldedTreeSet<ReplicaInfo>> map = new HashMap<>();
+  // Map of block pool Id to the stripes of its ReplicaInfo.
+  private final Map<String, Stripe[]> map = new ConcurrentHashMap<>();
 
   // Special comparator used to compare Long to Block ID in the TreeSet.
   private static final Comparator<Object> LONG_AND_BLOCK_COMPARATOR
@@ -50,12 +64,41 @@ class ReplicaMap {
         }
       };
 
+  private static final Comparator<Block> BLOCK_ID_COMPARATOR =
+      Comparator.comparingLong(Block::getBlockId);
+
+  /** A set of replicas with the locks guarding it. */
+  private static final class Stripe {
+    private final FoldedTreeSet<ReplicaInfo> set = new FoldedTreeSet<>();
+    private final AutoCloseableLock readLock;
+    private final AutoCloseableLock writeLock;
+
+    Stripe(AutoCloseableLock readLock, AutoCloseableLock writeLock) {
+      this.readLock = readLock;
+      this.writeLock = writeLock;
+    }
+  }
+
   ReplicaMap(AutoCloseableLock lock) {
+    this(lock, 0);
+  }
+
+  /**
+   * @param lock the lock callers synchronize on.
+   * @param numStripes the number of stripes per block pool, or 0 to guard
+   *                   the whole map with the lock.
+   */
+  ReplicaMap(AutoCloseableLock lock, int numStripes) {
     if (lock == null) {
       throw new HadoopIllegalArgumentException(
           "Lock to synchronize on cannot be null");
     }
+    if (numStripes < 0) {
+      throw new HadoopIllegalArgumentException(
+          "Number of stripes cannot be negative: " + numStripes);
+    }
     this.lock = lock;
+    this.numStripes = numStripes;
   }
   
   String[] getBlockPoolList() {
@@ -75,6 +118,37 @@ class ReplicaMap {
       throw new IllegalArgumentException("Block is null");
     }
   }
+
+  private Stripe[] newStripes() {
+    if (numStripes == 0) {
+      return new Stripe[] {new Stripe(lock, lock)};
+    }
+    final Stripe[] stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+      stripes[i] = new Stripe(new AutoCloseableLock(rwLock.readLock()),
+          new AutoCloseableLock(rwLock.writeLock()));
+    }
+    return stripes;
+  }
+
+  /** @return the stripes of the block pool, added if it does not exist. */
+  private Stripe[] getOrAddStripes(String bpid) {
+    Stripe[] stripes = map.get(bpid);
+    if (stripes == null) {
+      stripes = map.computeIfAbsent(bpid, k -> newStripes());
+    }
+    return stripes;
+  }
+
+  private static Stripe getStripe(Stripe[] stripes, long blockId) {
+    if (stripes.length == 1) {
+      return stripes[0];
+    }
+    // Consecutive block ids go to different stripes.
+    final int hash = (int) (blockId ^ (blockId >>> 32));
+    return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+  }
   
   /**
    * Get the meta information of the replica that matches both block id 
@@ -104,12 +178,13 @@ class ReplicaMap {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        return null;
-      }
-      return set.get(blockId, LONG_AND_BLOCK_COMPARATOR);
+    final Stripe[] stripes = map.get(bpid);
+    if (stripes == null) {
+      return null;
+    }
+    final Stripe stripe = getStripe(stripes, blockId);
+    try (AutoCloseableLock l = stripe.readLock.acquire()) {
+      return stripe.set.get(blockId, LONG_AND_BLOCK_COMPARATOR);
     }
   }
 
@@ -124,14 +199,11 @@ class ReplicaMap {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
-      }
-      return set.addOrReplace(replicaInfo);
+    // Add an entry for block pool if it does not exist already
+    final Stripe stripe =
+        getStripe(getOrAddStripes(bpid), replicaInfo.getBlockId());
+    try (AutoCloseableLock l = stripe.writeLock.acquire()) {
+      return stripe.set.addOrReplace(replicaInfo);
     }
   }
 
@@ -142,19 +214,16 @@ class ReplicaMap {
   ReplicaInfo addAndGet(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
-      }
-      ReplicaInfo oldReplicaInfo = set.get(replicaInfo.getBlockId(),
+    // Add an entry for block pool if it does not exist already
+    final Stripe stripe =
+        getStripe(getOrAddStripes(bpid), replicaInfo.getBlockId());
+    try (AutoCloseableLock l = stripe.writeLock.acquire()) {
+      ReplicaInfo oldReplicaInfo = stripe.set.get(replicaInfo.getBlockId(),
           LONG_AND_BLOCK_COMPARATOR);
       if (oldReplicaInfo != null) {
         return oldReplicaInfo;
       } else {
-        set.addOrReplace(replicaInfo);
+        stripe.set.addOrReplace(replicaInfo);
       }
       return replicaInfo;
     }
@@ -164,7 +233,12 @@ class ReplicaMap {
    * Add all entries from the given replica map into the local replica map.
    */
   void addAll(ReplicaMap other) {
-    map.putAll(other.map);
+    for (String bpid : other.getBlockPoolList()) {
+      initBlockPool(bpid);
+      for (ReplicaInfo replicaInfo : other.replicas(bpid)) {
+        add(bpid, replicaInfo);
+      }
+    }
   }
   
   /**
@@ -178,14 +252,15 @@ class ReplicaMap {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set != null) {
+    final Stripe[] stripes = map.get(bpid);
+    if (stripes != null) {
+      final Stripe stripe = getStripe(stripes, block.getBlockId());
+      try (AutoCloseableLock l = stripe.writeLock.acquire()) {
         ReplicaInfo replicaInfo =
-            set.get(block.getBlockId(), LONG_AND_BLOCK_COMPARATOR);
+            stripe.set.get(block.getBlockId(), LONG_AND_BLOCK_COMPARATOR);
         if (replicaInfo != null &&
             block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return set.removeAndGet(replicaInfo);
+          return stripe.set.removeAndGet(replicaInfo);
         }
       }
     }
@@ -201,14 +276,29 @@ class ReplicaMap {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set != null) {
-        return set.removeAndGet(blockId, LONG_AND_BLOCK_COMPARATOR);
+    final Stripe[] stripes = map.get(bpid);
+    if (stripes != null) {
+      final Stripe stripe = getStripe(stripes, blockId);
+      try (AutoCloseableLock l = stripe.writeLock.acquire()) {
+        return stripe.set.removeAndGet(blockId, LONG_AND_BLOCK_COMPARATOR);
       }
     }
     return null;
   }
+
+  /** Remove the given replica, if it is still in the map. */
+  private void removeReplica(String bpid, ReplicaInfo replicaInfo) {
+    final Stripe[] stripes = map.get(bpid);
+    if (stripes != null) {
+      final Stripe stripe = getStripe(stripes, replicaInfo.getBlockId());
+      try (AutoCloseableLock l = stripe.writeLock.acquire()) {
+        if (stripe.set.get(replicaInfo.getBlockId(),
+            LONG_AND_BLOCK_COMPARATOR) == replicaInfo) {
+          stripe.set.removeAndGet(replicaInfo);
+        }
+      }
+    }
+  }
  
   /**
    * Get the size of the map for given block pool
@@ -216,36 +306,115 @@ class ReplicaMap {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      return set != null ? set.size() : 0;
+    final Stripe[] stripes = map.get(bpid);
+    if (stripes == null) {
+      return 0;
+    }
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      try (AutoCloseableLock l = stripe.readLock.acquire()) {
+        size += stripe.set.size();
+      }
     }
+    return size;
   }
   
   /**
-   * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the lock, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getLock()} method.
+   * Get a collection of the replicas for given block pool, sorted by
+   * block id.
+   * Without striping, this is the replica set of the block pool itself,
+   * which needs to be synchronized externally using the lock, both for
+   * getting the collection and iterating over it. With striping, it is a
+   * snapshot of the replicas, which is not updated with the map. Removing
+   * a replica through its iterator removes the replica from the map. To
+   * keep the replicas from being changed while the snapshot is used,
+   * callers still need to hold the lock returned by {@link #getLock()}.
    * 
    * @param bpid block pool id
-   * @return a collection of the replicas belonging to the block pool
+   * @return a collection of the replicas belonging to the block pool, or
+   *         null if the block pool does not exist
    */
   Collection<ReplicaInfo> replicas(String bpid) {
-    return map.get(bpid);
+    final Stripe[] stripes = map.get(bpid);
+    if (stripes == null) {
+      return null;
+    }
+    if (numStripes == 0) {
+      return stripes[0].set;
+    }
+    final List<ReplicaInfo> replicas = new ArrayList<>(size(bpid));
+    for (Stripe stripe : stripes) {
+      try (AutoCloseableLock l = stripe.readLock.acquire()) {
+        replicas.addAll(stripe.set);
+      }
+    }
+    // Merges the sorted runs of the stripes.
+    replicas.sort(BLOCK_ID_COMPARATOR);
+    return new ReplicaSnapshot(bpid, replicas);
+  }
+
+  /**
+   * Get a snapshot of the replicas for given block pool, sorted by block id,
+   * which may be used after the lock returned by {@link #getLock()} is
+   * released. It needs to be taken under that lock.
+   *
+   * @param bpid block pool id
+   * @return a snapshot of the replicas belonging to the block pool, or
+   *         null if the block pool does not exist
+   */
+  Collection<ReplicaInfo> snapshot(String bpid) {
+    final Collection<ReplicaInfo> replicas = replicas(bpid);
+    if (replicas == null || numStripes > 0) {
+      return replicas;
+    }
+    return new ArrayList<>(replicas);
+  }
+
+  /** A snapshot of replicas, whose iterator removes from the map. */
+  private final class ReplicaSnapshot extends AbstractCollection<ReplicaInfo> {
+    private final String bpid;
+    private final List<ReplicaInfo> replicas;
+
+    ReplicaSnapshot(String bpid, List<ReplicaInfo> replicas) {
+      this.bpid = bpid;
+      this.replicas = replicas;
+    }
+
+    @Override
+    public int size() {
+      return replicas.size();
+    }
+
+    @Override
+    public Iterator<ReplicaInfo> iterator() {
+      final Iterator<ReplicaInfo> it = replicas.iterator();
+      return new Iterator<ReplicaInfo>() {
+        private ReplicaInfo last;
+
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public ReplicaInfo next() {
+          last = it.next();
+          return last;
+        }
+
+        @Override
+        public void remove() {
+          it.remove();
+          removeReplica(bpid, last);
+        }
+      };
+    }
   }
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
-      }
-    }
+    // Add an entry for block pool if it does not exist already
+    getOrAddStripes(bpid);
   }
   
   void cleanUpBlockPool(String bpid) {
@@ -254,7 +423,7 @@ class ReplicaMap {
       map.remove(bpid);
     }
   }
-  
+
   /**
    * Get the lock object used for synchronizing ReplicasMap
    * @return lock object
@@ -157,6 +157,9 @@ public class DataNodeMetrics {
   private MutableCounterLong ecReconstructionDecodingTimeMillis;
   @Metric("Milliseconds spent on write by erasure coding worker")
   private MutableCounterLong ecReconstructionWriteTimeMillis;
+  @Metric("Count of additional source reads started by erasure coding " +
+      "worker because a source was slow")
+  private MutableCounterLong ecReconstructionHedgedReads;
 
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
@@ -521,4 +524,8 @@ public class DataNodeMetrics {
   public void incrECReconstructionDecodingTime(long millis) {
     ecReconstructionDecodingTimeMillis.incr(millis);
   }
+
+  public void incrECReconstructionHedgedReads() {
+    ecReconstructionHedgedReads.incr();
+  }
 }
@@ -25,9 +25,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,6 +45,7 @@ import org.apache.hadoop.hdfs.server.common.HttpGetFailedException;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.web.URLConnectionFactory;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.security.SecurityUtil;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.authentication.client.AuthenticationException;
@@ -95,7 +101,21 @@ public class EditLogFileInputStream extends EditLogInputStream {
    */
   public EditLogFileInputStream(File name, long firstTxId, long lastTxId,
       boolean isInProgress) {
-    this(new FileLog(name), firstTxId, lastTxId, isInProgress);
+    this(name, firstTxId, lastTxId, isInProgress, false);
+  }
+
+  /**
+   * Open an EditLogInputStream for the given file.
+   * @param name filename to open
+   * @param firstTxId first transaction found in file
+   * @param lastTxId last transaction id found in file
+   * @param mmap whether to read a finalized file through a memory mapping
+   */
+  EditLogFileInputStream(File name, long firstTxId, long lastTxId,
+      boolean isInProgress, boolean mmap) {
+    this(mmap && !isInProgress && name.length() <= Integer.MAX_VALUE ?
+        new MappedFileLog(name) : new FileLog(name),
+        firstTxId, lastTxId, isInProgress);
   }
   
   /**
@@ -134,10 +154,12 @@ public class EditLogFileInputStream extends EditLogInputStream {
   private void init(boolean verifyLayoutVersion)
       throws LogHeaderCorruptException, IOException {
     Preconditions.checkState(state == State.UNINIT);
-    BufferedInputStream bin = null;
+    InputStream bin = null;
     try {
       fStream = log.getInputStream();
-      bin = new BufferedInputStream(fStream);
+      // The reader marks and resets the stream around every op.
+      bin = fStream.markSupported() ?
+          fStream : new BufferedInputStream(fStream);
       tracker = new FSEditLogLoader.PositionTrackingInputStream(bin);
       dataIn = new DataInputStream(tracker);
       try {
@@ -162,6 +184,7 @@ public class EditLogFileInputStream extends EditLogInputStream {
     } finally {
       if (reader == null) {
         IOUtils.cleanup(LOG, dataIn, tracker, bin, fStream);
+        log.release();
         state = State.CLOSED;
       }
     }
@@ -280,6 +303,7 @@ public class EditLogFileInputStream extends EditLogInputStream {
     if (state == State.OPEN) {
       dataIn.close();
     }
+    log.release();
     state = State.CLOSED;
   }
 
@@ -293,6 +317,18 @@ public class EditLogFileInputStream extends EditLogInputStream {
   public boolean isInProgress() {
     return isInProgress;
   }
+
+  @Override
+  public void prefetch(Executor executor) {
+    if (state == State.UNINIT) {
+      log.prefetch(executor);
+    }
+  }
+
+  @VisibleForTesting
+  boolean isMapped() {
+    return log instanceof MappedFileLog && ((MappedFileLog) log).isMapped();
+  }
   
   @Override
   public String toString() {
@@ -375,6 +411,12 @@ public class EditLogFileInputStream extends EditLogInputStream {
     public InputStream getInputStream() throws IOException;
     public long length();
     public String getName();
+
+    /** Start reading the log ahead of time on the executor, if supported. */
+    public void prefetch(Executor executor);
+
+    /** Release the resources held for reading the log. */
+    public void release();
   }
   
   private static class FileLog implements LogSource {
@@ -398,6 +440,142 @@ public class EditLogFileInputStream extends EditLogInputStream {
     public String getName() {
       return file.getPath();
     }
+
+    @Override
+    public void prefetch(Executor executor) {
+    }
+
+    @Override
+    public void release() {
+    }
+  }
+
+  /**
+   * A finalized log file read through a read-only memory mapping, so that
+   * ops are decoded straight from the page cache without copying the file
+   * into a buffer first.
+   * <p>
+   * The mapping is released when the stream is closed, so that purged
+   * files do not keep their disk space until the next garbage collection.
+   */
+  private static class MappedFileLog extends FileLog {
+    private final File file;
+    private MappedByteBuffer buffer;
+    private boolean released = false;
+
+    MappedFileLog(File file) {
+      super(file);
+      this.file = file;
+    }
+
+    private synchronized MappedByteBuffer map() throws IOException {
+      if (released) {
+        throw new IOException(file + " is closed");
+      }
+      if (buffer == null) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+              channel.size());
+        }
+      }
+      return buffer;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return new ByteBufferInputStream(map().duplicate());
+    }
+
+    /**
+     * Page in the file. The mapping is held while it is loaded, so that it
+     * is not unmapped under the prefetcher.
+     */
+    @Override
+    public void prefetch(Executor executor) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (MappedFileLog.this) {
+            if (released) {
+              return;
+            }
+            try {
+              map().load();
+            } catch (IOException e) {
+              LOG.warn("Failed to prefetch " + getName(), e);
+            }
+          }
+        }
+      });
+    }
+
+    @Override
+    public synchronized void release() {
+      released = true;
+      if (buffer != null) {
+        NativeIO.POSIX.munmap(buffer);
+        buffer = null;
+      }
+    }
+
+    synchronized boolean isMapped() {
+      return buffer != null;
+    }
+  }
+
+  /** An input stream over a byte buffer, which supports mark and reset. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buf;
+
+    ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) {
+      final int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+      return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+      buf.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+      buf.reset();
+    }
   }
 
   private static class URLLog implements LogSource {
@@ -462,6 +640,14 @@ public class EditLogFileInputStream extends EditLogInputStream {
     public String getName() {
       return url.toString();
     }
+
+    @Override
+    public void prefetch(Executor executor) {
+    }
+
+    @Override
+    public void release() {
+    }
   }
 
   @Override
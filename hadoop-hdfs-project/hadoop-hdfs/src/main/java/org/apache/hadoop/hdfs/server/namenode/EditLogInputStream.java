@@ -23,6 +23,7 @@ import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * A generic abstract class to support reading edits log data from 
@@ -198,6 +199,14 @@ public abstract class EditLogInputStream implements Closeable {
    * Return true if this stream is in progress, false if it is finalized.
    */
   public abstract boolean isInProgress();
+
+  /**
+   * Hint that the stream is going to be read soon, so that it can start
+   * reading its data in the background on the given executor. The default
+   * does nothing.
+   */
+  public void prefetch(Executor executor) {
+  }
   
   /**
    * Set the maximum opcode size in bytes.
@@ -270,7 +270,9 @@ public class FSDirectory implements Closeable {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    inodeMap = INodeMap.newInstance(rootDir, conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_OPEN_ADDRESSING_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_OPEN_ADDRESSING_DEFAULT));
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
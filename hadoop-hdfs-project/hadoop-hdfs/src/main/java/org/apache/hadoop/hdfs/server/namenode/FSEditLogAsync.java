@@ -25,12 +25,15 @@ import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.util.ExitUtil;
 import com.google.common.annotations.VisibleForTesting;
@@ -53,10 +56,25 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // of the edit log buffer - ie. a sync will eventually be forced.
   private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
 
+  // how long to wait for more edits to sync with the first of a group, and
+  // how many edits to sync without waiting any longer.
+  private final long groupCommitWindowNanos;
+  private final int groupCommitMaxEdits;
+  // only accessed by syncing thread.
+  private long groupStartNanos;
+  private final AtomicLong numGroupCommits = new AtomicLong();
+
   FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
     super(conf, storage, editsDirs);
     // op instances cannot be shared due to queuing for background thread.
     cache.disableCache();
+    groupCommitWindowNanos = conf.getTimeDuration(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_WINDOW_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_WINDOW_DEFAULT,
+        TimeUnit.MICROSECONDS) * 1000;
+    groupCommitMaxEdits = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_EDITS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_EDITS_DEFAULT);
   }
 
   private boolean isSyncThreadAlive() {
@@ -218,7 +236,24 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
 
   private Edit dequeueEdit() throws InterruptedException {
     // only block for next edit if no pending syncs.
-    return syncWaitQ.isEmpty() ? editPendingQ.take() : editPendingQ.poll();
+    if (syncWaitQ.isEmpty()) {
+      return editPendingQ.take();
+    }
+    // with a group commit window, wait for more edits to sync together
+    // until the window closes or the group is large enough.
+    if (groupCommitWindowNanos > 0 && syncWaitQ.size() < groupCommitMaxEdits) {
+      long remaining = groupStartNanos + groupCommitWindowNanos
+          - System.nanoTime();
+      if (remaining > 0) {
+        return editPendingQ.poll(remaining, TimeUnit.NANOSECONDS);
+      }
+    }
+    return editPendingQ.poll();
+  }
+
+  @VisibleForTesting
+  long getNumGroupCommits() {
+    return numGroupCommits.get();
   }
 
   @Override
@@ -230,6 +265,9 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
         if (edit != null) {
           // sync if requested by edit log.
           doSync = edit.logEdit();
+          if (syncWaitQ.isEmpty()) {
+            groupStartNanos = System.nanoTime();
+          }
           syncWaitQ.add(edit);
         } else {
           // sync when editq runs dry, but have edits pending a sync.
@@ -244,6 +282,7 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
           } catch (RuntimeException ex) {
             syncEx = ex;
           }
+          numGroupCommits.incrementAndGet();
           while ((edit = syncWaitQ.poll()) != null) {
             edit.logSyncNotify(syncEx);
           }
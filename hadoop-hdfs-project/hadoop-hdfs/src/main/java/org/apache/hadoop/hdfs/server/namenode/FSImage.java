@@ -34,6 +34,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -75,6 +77,7 @@ import org.apache.hadoop.util.Time;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * FSImage handles checkpointing and logging of the namespace edits.
@@ -879,11 +882,25 @@ public class FSImage implements Closeable {
     prog.beginPhase(Phase.LOADING_EDITS);
     
     long prevLastAppliedTxId = lastAppliedTxId;  
+    ExecutorService prefetcher = null;
     try {    
       FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
       
       // Load latest edits
-      for (EditLogInputStream editIn : editStreams) {
+      Iterator<EditLogInputStream> it = editStreams.iterator();
+      EditLogInputStream next = it.hasNext() ? it.next() : null;
+      while (next != null) {
+        EditLogInputStream editIn = next;
+        next = it.hasNext() ? it.next() : null;
+        if (next != null) {
+          // Read the next segment ahead while this one is applied.
+          if (prefetcher == null) {
+            prefetcher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("Edit log prefetcher").build());
+          }
+          next.prefetch(prefetcher);
+        }
         LOG.info("Reading " + editIn + " expecting start txid #" +
               (lastAppliedTxId + 1));
         try {
@@ -901,6 +918,11 @@ public class FSImage implements Closeable {
         }
       }
     } finally {
+      if (prefetcher != null) {
+        // Streams are closed once their running prefetch is done, and
+        // prefetches which did not start yet find them closed.
+        prefetcher.shutdown();
+      }
       FSEditLog.closeAllStreams(editStreams);
     }
     prog.endPhase(Phase.LOADING_EDITS);
@@ -962,7 +984,8 @@ public class FSImage implements Closeable {
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     long numErrors = saver.save(newFile, compression);
     if (numErrors > 0) {
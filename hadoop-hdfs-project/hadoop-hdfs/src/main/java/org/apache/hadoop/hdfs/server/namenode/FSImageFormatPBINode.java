@@ -18,13 +18,20 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -47,6 +54,7 @@ import org.apache.hadoop.hdfs.protocol.BlockType;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.LoaderContext;
 import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SaverContext;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FilesUnderConstructionSection.FileUnderConstructionEntry;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeDirectorySection;
@@ -65,6 +73,7 @@ import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress.Co
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.util.Time;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -193,9 +202,26 @@ public final class FSImageFormatPBINode {
       }
     }
 
+    /**
+     * Loads the entries of one sub-section of the image.
+     */
+    private interface SubSectionLoader {
+      /**
+       * @return the number of entries loaded.
+       */
+      long load(InputStream in) throws IOException;
+    }
+
+    // Number of inodes a thread loads before adding them to the shared maps
+    private static final int LOAD_BATCH_SIZE = 1000;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
+    // Guard the structures shared by the threads loading sub-sections.
+    private final Object inodeMapLock = new Object();
+    private final Object nameCacheLock = new Object();
+    private final Object blocksMapLock = new Object();
 
     Loader(FSNamesystem fsn, final FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
@@ -204,8 +230,32 @@ public final class FSImageFormatPBINode {
     }
 
     void loadINodeDirectorySection(InputStream in) throws IOException {
+      loadINodeDirectories(in);
+    }
+
+    /**
+     * Load the sub-sections of the inode directory section on the given
+     * pool.
+     */
+    void loadINodeDirectorySectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, String compressionCodec)
+        throws IOException {
+      LOG.info("Loading the inode directory section in parallel with "
+          + sections.size() + " sub-sections");
+      final long loaded = loadInParallel(service, sections, compressionCodec,
+          "inode directories", this::loadINodeDirectories);
+      LOG.info("Completed loading the inode directory section. Loaded "
+          + loaded + " directories.");
+    }
+
+    /**
+     * @return the number of directories loaded from the stream.
+     */
+    private long loadINodeDirectories(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      final List<INode> added = new ArrayList<>(LOAD_BATCH_SIZE);
+      long numDirectories = 0;
       while (true) {
         INodeDirectorySection.DirEntry e = INodeDirectorySection.DirEntry
             .parseDelimitedFrom(in);
@@ -213,36 +263,203 @@ public final class FSImageFormatPBINode {
         if (e == null) {
           break;
         }
+        numDirectories++;
         INodeDirectory p = dir.getInode(e.getParent()).asDirectory();
         for (long id : e.getChildrenList()) {
           INode child = dir.getInode(id);
-          addToParent(p, child);
+          if (addToParent(p, child)) {
+            added.add(child);
+          }
         }
         for (int refId : e.getRefChildrenList()) {
           INodeReference ref = refList.get(refId);
-          addToParent(p, ref);
+          if (addToParent(p, ref)) {
+            added.add(ref);
+          }
+        }
+        if (added.size() >= LOAD_BATCH_SIZE) {
+          addToCacheAndBlockMap(added);
         }
       }
+      addToCacheAndBlockMap(added);
+      return numDirectories;
     }
 
     void loadINodeSection(InputStream in, StartupProgress prog,
         Step currentStep) throws IOException {
+      final long numInodes = loadINodeSectionHeader(in, prog, currentStep);
+      Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
+      final List<INode> loaded = new ArrayList<>(LOAD_BATCH_SIZE);
+      for (int i = 0; i < numInodes; ++i) {
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        loadINode(p, loaded);
+        counter.increment();
+      }
+      addToInodeMap(loaded);
+    }
+
+    /**
+     * Load the sub-sections of the inode section on the given pool. The
+     * first sub-section starts with the header of the section.
+     */
+    void loadINodeSectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, String compressionCodec,
+        StartupProgress prog, Step currentStep) throws IOException {
+      LOG.info("Loading the inode section in parallel with "
+          + sections.size() + " sub-sections");
+      final long expectedInodes;
+      final InputStream first = parent.getInputStreamForSection(
+          sections.get(0), compressionCodec);
+      try {
+        expectedInodes = loadINodeSectionHeader(first, prog, currentStep);
+      } finally {
+        first.close();
+      }
+      final Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE,
+          currentStep);
+      final long loaded = loadInParallel(service, sections, compressionCodec,
+          "inodes", in -> loadINodes(in, counter));
+      if (loaded != expectedInodes) {
+        throw new IOException("Expected to load " + expectedInodes
+            + " inodes in parallel, but loaded " + loaded
+            + ". The image may be corrupt.");
+      }
+      LOG.info("Completed loading the inode section. Loaded " + loaded
+          + " inodes.");
+    }
+
+    /**
+     * @return the number of inodes of the section.
+     */
+    private long loadINodeSectionHeader(InputStream in, StartupProgress prog,
+        Step currentStep) throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.dir.resetLastInodeId(s.getLastInodeId());
       long numInodes = s.getNumInodes();
       LOG.info("Loading " + numInodes + " INodes.");
       prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
-      Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
-      for (int i = 0; i < numInodes; ++i) {
+      return numInodes;
+    }
+
+    /**
+     * @return the number of inodes loaded from the stream.
+     */
+    private long loadINodes(InputStream in, Counter counter)
+        throws IOException {
+      final List<INode> loaded = new ArrayList<>(LOAD_BATCH_SIZE);
+      long numInodes = 0;
+      while (true) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
-        if (p.getId() == INodeId.ROOT_INODE_ID) {
+        // note that in is a LimitedInputStream
+        if (p == null) {
+          break;
+        }
+        loadINode(p, loaded);
+        numInodes++;
+        counter.increment();
+      }
+      addToInodeMap(loaded);
+      return numInodes;
+    }
+
+    private void loadINode(INodeSection.INode p, List<INode> loaded) {
+      if (p.getId() == INodeId.ROOT_INODE_ID) {
+        synchronized (inodeMapLock) {
           loadRootINode(p);
-        } else {
-          INode n = loadINode(p);
+        }
+      } else {
+        loaded.add(loadINode(p));
+        if (loaded.size() >= LOAD_BATCH_SIZE) {
+          addToInodeMap(loaded);
+        }
+      }
+    }
+
+    /**
+     * Load every sub-section on the given pool, with its own stream.
+     *
+     * @return the total number of entries loaded.
+     */
+    private long loadInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, String compressionCodec,
+        String entries, SubSectionLoader loader) throws IOException {
+      final List<Future<Long>> futures = new ArrayList<>(sections.size());
+      for (int i = 0; i < sections.size(); i++) {
+        final FileSummary.Section section = sections.get(i);
+        final boolean skipHeader = i == 0 && SectionName.INODE_SUB.name()
+            .equals(section.getName());
+        futures.add(service.submit(() -> {
+          final long start = Time.monotonicNow();
+          final long loaded;
+          try (InputStream in = parent.getInputStreamForSection(section,
+              compressionCodec)) {
+            if (skipHeader) {
+              INodeSection.parseDelimitedFrom(in);
+            }
+            loaded = loader.load(in);
+          }
+          final long elapsed = Math.max(1, Time.monotonicNow() - start);
+          LOG.info(Thread.currentThread().getName() + " loaded " + loaded
+              + " " + entries + " from the sub-section at offset "
+              + section.getOffset() + " in " + elapsed + " ms ("
+              + loaded * 1000 / elapsed + " " + entries + "/s)");
+          return loaded;
+        }));
+      }
+      long total = 0;
+      IOException failure = null;
+      for (Future<Long> future : futures) {
+        try {
+          total += future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          for (Future<Long> f : futures) {
+            f.cancel(true);
+          }
+          throw new InterruptedIOException(
+              "Interrupted while loading the fsimage " + entries);
+        } catch (ExecutionException e) {
+          LOG.error("Failed to load fsimage " + entries + " in parallel",
+              e.getCause());
+          if (failure == null) {
+            failure = e.getCause() instanceof IOException ?
+                (IOException) e.getCause() : new IOException(e.getCause());
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return total;
+    }
+
+    private void addToInodeMap(List<INode> inodes) {
+      synchronized (inodeMapLock) {
+        for (INode n : inodes) {
           dir.addToInodeMap(n);
         }
-        counter.increment();
       }
+      inodes.clear();
+    }
+
+    /**
+     * Add the names of inodes just added to their parents to the name cache,
+     * and their blocks to the blocks map.
+     */
+    private void addToCacheAndBlockMap(List<INode> inodes) {
+      synchronized (nameCacheLock) {
+        for (INode n : inodes) {
+          dir.cacheName(n);
+        }
+      }
+      synchronized (blocksMapLock) {
+        for (INode n : inodes) {
+          if (n.isFile()) {
+            updateBlocksMap(n.asFile(), fsn.getBlockManager());
+          }
+        }
+      }
+      inodes.clear();
     }
 
     /**
@@ -260,7 +477,11 @@ public final class FSImageFormatPBINode {
       }
     }
 
-    private void addToParent(INodeDirectory parent, INode child) {
+    /**
+     * @return true if the child was added. The caller has to add it to the
+     * name cache and the blocks map then.
+     */
+    private boolean addToParent(INodeDirectory parent, INode child) {
       if (parent == dir.rootDir && FSDirectory.isReservedName(child)) {
         throw new HadoopIllegalArgumentException("File name \""
             + child.getLocalName() + "\" is reserved. Please "
@@ -268,14 +489,7 @@ public final class FSImageFormatPBINode {
             + "name before upgrading to this release.");
       }
       // NOTE: This does not update space counts for parents
-      if (!parent.addChild(child)) {
-        return;
-      }
-      dir.cacheName(child);
-
-      if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
-      }
+      return parent.addChild(child);
     }
 
     private INode loadINode(INodeSection.INode n) {
@@ -564,7 +778,11 @@ public final class FSImageFormatPBINode {
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
+        if (i % parent.getInodesPerSubSection() == 0) {
+          parent.commitSubSection(summary, SectionName.INODE_DIR_SUB);
+        }
       }
+      parent.commitSubSection(summary, SectionName.INODE_DIR_SUB);
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -577,19 +795,80 @@ public final class FSImageFormatPBINode {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
+      if (parent.getSerializerService() != null) {
+        serializeINodesInParallel(out, iter);
+      } else {
+        int i = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (i % parent.getInodesPerSubSection() == 0) {
+            parent.commitSubSection(summary, SectionName.INODE_SUB);
+          }
         }
       }
+      parent.commitSubSection(summary, SectionName.INODE_SUB);
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
+    /**
+     * Serialize chunks of inodes on the serializer pool of the parent, and
+     * write them to the image in iteration order. At most two chunks per
+     * thread are pending at any time.
+     */
+    private void serializeINodesInParallel(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter) throws IOException {
+      final ExecutorService service = parent.getSerializerService();
+      final int maxPending = parent.getParallelThreads() * 2;
+      final int chunkSize = FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL;
+      final Deque<Future<byte[]>> pending = new ArrayDeque<>(maxPending);
+      long written = 0;
+      long nextSubSection = parent.getInodesPerSubSection();
+      try {
+        while (iter.hasNext() || !pending.isEmpty()) {
+          while (iter.hasNext() && pending.size() < maxPending) {
+            final List<INode> chunk = new ArrayList<>(chunkSize);
+            while (iter.hasNext() && chunk.size() < chunkSize) {
+              chunk.add(iter.next());
+            }
+            pending.add(service.submit(() -> serialize(chunk)));
+          }
+          out.write(pending.remove().get());
+          written += chunkSize;
+          context.checkCancelled();
+          if (written >= nextSubSection) {
+            parent.commitSubSection(summary, SectionName.INODE_SUB);
+            nextSubSection = (written / parent.getInodesPerSubSection() + 1)
+                * parent.getInodesPerSubSection();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while serializing the inode section");
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException ?
+            (IOException) e.getCause() : new IOException(e.getCause());
+      } finally {
+        for (Future<byte[]> f : pending) {
+          f.cancel(true);
+        }
+      }
+    }
+
+    private byte[] serialize(List<INode> inodes) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (INode n : inodes) {
+        save(out, n);
+      }
+      return out.toByteArray();
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Collection<Long> filesWithUC = fsn.getLeaseManager()
               .getINodeIdWithLeases();
@@ -40,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicyInfo;
 import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
@@ -48,6 +50,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ErasureCodingPolicyProto;
@@ -74,6 +77,7 @@ import org.apache.hadoop.util.Time;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -149,6 +153,8 @@ public final class FSImageFormatProtobuf {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file being loaded. */
+    private File filename;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -175,6 +181,7 @@ public final class FSImageFormatProtobuf {
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
+      filename = file;
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
@@ -217,13 +224,52 @@ public final class FSImageFormatProtobuf {
           if (n1 == null) {
             return n2 == null ? 0 : -1;
           } else if (n2 == null) {
-            return -1;
+            return 1;
           } else {
             return n1.ordinal() - n2.ordinal();
           }
         }
       });
 
+      final ExecutorService executorService = getParallelExecutorService(
+          sections);
+      try {
+        loadSections(sections, summary, channel, fin, inodeLoader,
+            snapshotLoader, executorService);
+      } finally {
+        if (executorService != null) {
+          executorService.shutdown();
+        }
+      }
+    }
+
+    /**
+     * @return the pool to load the sub-sections of the image in, or null if
+     * the image is to be loaded serially.
+     */
+    private ExecutorService getParallelExecutorService(
+        List<FileSummary.Section> sections) {
+      if (!conf.getBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)) {
+        return null;
+      }
+      if (getSubSectionsOfName(sections, SectionName.INODE_SUB).isEmpty()) {
+        LOG.info("The fsimage has no sub-sections, loading it serially");
+        return null;
+      }
+      final int threads = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT));
+      LOG.info("Loading the fsimage sub-sections with {} threads", threads);
+      return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setNameFormat("FSImageLoader-%d").setDaemon(true).build());
+    }
+
+    private void loadSections(List<FileSummary.Section> sections,
+        FileSummary summary, FileChannel channel, FileInputStream fin,
+        FSImageFormatPBINode.Loader inodeLoader,
+        FSImageFormatPBSnapshot.Loader snapshotLoader,
+        ExecutorService executorService) throws IOException {
       StartupProgress prog = NameNode.getStartupProgress();
       /**
        * beginStep() and the endStep() calls do not match the boundary of the
@@ -241,8 +287,13 @@ public final class FSImageFormatProtobuf {
             summary.getCodec(), in);
 
         String n = s.getName();
+        SectionName name = SectionName.fromString(n);
+        if (name == null) {
+          LOG.warn("Unrecognized section {}", n);
+          continue;
+        }
 
-        switch (SectionName.fromString(n)) {
+        switch (name) {
         case NS_INFO:
           loadNameSystemSection(in);
           break;
@@ -252,14 +303,33 @@ public final class FSImageFormatProtobuf {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in, prog, currentStep);
+          final List<FileSummary.Section> subSections =
+              getSubSectionsOfName(sections, SectionName.INODE_SUB);
+          if (executorService != null && !subSections.isEmpty()) {
+            inodeLoader.loadINodeSectionInParallel(executorService,
+                subSections, summary.getCodec(), prog, currentStep);
+          } else {
+            inodeLoader.loadINodeSection(in, prog, currentStep);
+          }
         }
           break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
-        case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+        case INODE_DIR: {
+          final List<FileSummary.Section> subSections =
+              getSubSectionsOfName(sections, SectionName.INODE_DIR_SUB);
+          if (executorService != null && !subSections.isEmpty()) {
+            inodeLoader.loadINodeDirectorySectionInParallel(executorService,
+                subSections, summary.getCodec());
+          } else {
+            inodeLoader.loadINodeDirectorySection(in);
+          }
+        }
+          break;
+        case INODE_SUB:
+        case INODE_DIR_SUB:
+          // Loaded together with their parent sections.
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -298,6 +368,39 @@ public final class FSImageFormatProtobuf {
       }
     }
 
+    /**
+     * @return the sections of the given name, in the order they are stored.
+     */
+    private static List<FileSummary.Section> getSubSectionsOfName(
+        List<FileSummary.Section> sections, SectionName name) {
+      final List<FileSummary.Section> subSections = new ArrayList<>();
+      for (FileSummary.Section s : sections) {
+        if (name.name.equals(s.getName())) {
+          subSections.add(s);
+        }
+      }
+      return subSections;
+    }
+
+    /**
+     * Open a new stream on the given section of the image being loaded, so
+     * that several sections can be read concurrently.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section,
+        String compressionCodec) throws IOException {
+      final FileInputStream fin = new FileInputStream(filename);
+      try {
+        fin.getChannel().position(section.getOffset());
+        final InputStream in = new BufferedInputStream(new LimitInputStream(
+            fin, section.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf,
+            compressionCodec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+    }
+
     private void loadNameSystemSection(InputStream in) throws IOException {
       NameSystemSection s = NameSystemSection.parseDelimitedFrom(in);
       BlockIdManager blockIdManager = fsn.getBlockManager().getBlockIdManager();
@@ -398,9 +501,36 @@ public final class FSImageFormatProtobuf {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
+    private final boolean parallelSave;
+    private final int parallelThreads;
+    private final int targetSubSections;
+    private final int subSectionInodeThreshold;
+    // whether the inode sections are split into sub-sections
+    private boolean writeSubSections = false;
+    private int inodesPerSubSection = Integer.MAX_VALUE;
+    private long subSectionOffset = currentOffset;
+    // null if the inodes are serialized by the saving thread
+    private ExecutorService serializerService;
+
     Saver(SaveNamespaceContext context) {
+      this(context, new Configuration(false));
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.parallelSave = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_DEFAULT);
+      this.parallelThreads = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT));
+      this.targetSubSections = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT));
+      this.subSectionInodeThreshold = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
     }
 
     public MD5Hash getSavedDigest() {
@@ -429,6 +559,47 @@ public final class FSImageFormatProtobuf {
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    /**
+     * Record the data written since the previous sub-section as a sub-section
+     * of the section being written, if the image is split into sub-sections.
+     * Must be called before committing the section for its last part.
+     */
+    public void commitSubSection(FileSummary.Builder summary,
+        SectionName name) throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      // The position is only accurate once the buffered data is written.
+      sectionOutputStream.flush();
+      long length = fileChannel.position() - subSectionOffset;
+      if (length == 0) {
+        return;
+      }
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(subSectionOffset));
+      subSectionOffset += length;
+    }
+
+    /**
+     * @return the number of inodes to write in each sub-section.
+     */
+    int getInodesPerSubSection() {
+      return inodesPerSubSection;
+    }
+
+    /**
+     * @return the pool to serialize the inodes in, or null if they are
+     * serialized by the saving thread.
+     */
+    ExecutorService getSerializerService() {
+      return serializerService;
+    }
+
+    int getParallelThreads() {
+      return parallelThreads;
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -525,6 +696,37 @@ public final class FSImageFormatProtobuf {
         sectionOutputStream = underlyingOutputStream;
       }
 
+      if (parallelSave) {
+        final long numInodes = context.getSourceNamesystem().dir
+            .getINodeMap().size();
+        // A compressed sub-section cannot be decompressed on its own.
+        if (codec == null && numInodes >= subSectionInodeThreshold) {
+          writeSubSections = true;
+          inodesPerSubSection = (int) Math.max(1,
+              Math.min(Integer.MAX_VALUE, numInodes / targetSubSections));
+        } else if (codec != null) {
+          LOG.info("Not splitting the compressed image {} into sub-sections",
+              filePath);
+        }
+        if (parallelThreads > 1) {
+          serializerService = Executors.newFixedThreadPool(parallelThreads,
+              new ThreadFactoryBuilder().setNameFormat("FSImageSaver-%d")
+                  .setDaemon(true).build());
+        }
+      }
+      try {
+        return saveSections(b, prog, filePath, digester);
+      } finally {
+        if (serializerService != null) {
+          serializerService.shutdownNow();
+          serializerService = null;
+        }
+      }
+    }
+
+    private long saveSections(FileSummary.Builder b, StartupProgress prog,
+        String filePath, MessageDigest digester) throws IOException {
+
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
       // Some unit tests, such as TestSaveNamespace#testCancelSaveNameSpace
@@ -677,7 +879,11 @@ public final class FSImageFormatProtobuf {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    // Sub-sections of the INODE and INODE_DIR sections, so that they can be
+    // loaded in parallel. They are loaded with their parent sections.
+    INODE_SUB("INODE_SUB"),
+    INODE_DIR_SUB("INODE_DIR_SUB");
 
     private static final SectionName[] values = SectionName.values();
 
@@ -32,6 +32,7 @@ import java.util.regex.Pattern;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NodeType;
@@ -351,12 +352,24 @@ public class FileJournalManager implements JournalManager {
           "from among " + elfs.size() + " candidate file(s)");
     }
     addStreamsToCollectionFromFiles(elfs, streams, fromTxId,
-        getLastReadableTxId(), inProgressOk);
+        getLastReadableTxId(), inProgressOk, conf.getBoolean(
+            DFSConfigKeys.DFS_NAMENODE_EDITS_MMAP_ENABLED_KEY,
+            DFSConfigKeys.DFS_NAMENODE_EDITS_MMAP_ENABLED_DEFAULT));
   }
   
   static void addStreamsToCollectionFromFiles(Collection<EditLogFile> elfs,
       Collection<EditLogInputStream> streams, long fromTxId,
       long maxTxIdToScan, boolean inProgressOk) {
+    addStreamsToCollectionFromFiles(elfs, streams, fromTxId, maxTxIdToScan,
+        inProgressOk, false);
+  }
+
+  /**
+   * @param mmap whether to read finalized files through a memory mapping.
+   */
+  static void addStreamsToCollectionFromFiles(Collection<EditLogFile> elfs,
+      Collection<EditLogInputStream> streams, long fromTxId,
+      long maxTxIdToScan, boolean inProgressOk, boolean mmap) {
     for (EditLogFile elf : elfs) {
       if (elf.isInProgress()) {
         if (!inProgressOk) {
@@ -384,7 +397,7 @@ public class FileJournalManager implements JournalManager {
         continue;
       }
       EditLogFileInputStream elfis = new EditLogFileInputStream(elf.getFile(),
-            elf.getFirstTxId(), elf.getLastTxId(), elf.isInProgress());
+            elf.getFirstTxId(), elf.getLastTxId(), elf.isInProgress(), mmap);
       LOG.debug("selecting edit log stream " + elf);
       streams.add(elfis);
     }
@@ -23,6 +23,7 @@ import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.hdfs.util.LongKeyedGSet;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
@@ -34,11 +35,30 @@ import com.google.common.base.Preconditions;
  */
 public class INodeMap {
   
+  /** Initial number of slots of the open addressing map. */
+  private static final int OPEN_ADDRESSING_INITIAL_CAPACITY = 1 << 16;
+
   static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
-    GSet<INode, INodeWithAdditionalFields> map =
-        new LightWeightGSet<>(capacity);
+    return newInstance(rootDir, false);
+  }
+
+  /**
+   * @param openAddressing whether to map the ids with a
+   *                       {@link LongKeyedGSet} rather than a
+   *                       {@link LightWeightGSet}.
+   */
+  static INodeMap newInstance(INodeDirectory rootDir,
+      boolean openAddressing) {
+    GSet<INode, INodeWithAdditionalFields> map;
+    if (openAddressing) {
+      // The map grows with the namespace
+      map = new LongKeyedGSet<>(OPEN_ADDRESSING_INITIAL_CAPACITY,
+          INode::getId);
+    } else {
+      // Compute the map capacity by allocating 1% of total memory
+      int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+      map = new LightWeightGSet<>(capacity);
+    }
     map.put(rootDir);
     return new INodeMap(map);
   }
@@ -88,6 +108,9 @@ public class INodeMap {
    *         such {@link INode} in the map.
    */
   public INode get(long id) {
+    if (map instanceof LongKeyedGSet) {
+      return ((LongKeyedGSet<INode, INodeWithAdditionalFields>) map).get(id);
+    }
     INode inode = new INodeWithAdditionalFields(id, null, new PermissionStatus(
         "", "", new FsPermission((short) 0)), 0, 0) {
       
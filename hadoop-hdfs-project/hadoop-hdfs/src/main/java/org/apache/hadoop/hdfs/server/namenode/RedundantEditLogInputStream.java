@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
@@ -285,4 +286,9 @@ class RedundantEditLogInputStream extends EditLogInputStream {
   public boolean isLocalLog() {
     return streams[curIdx].isLocalLog();
   }
+
+  @Override
+  public void prefetch(Executor executor) {
+    streams[curIdx].prefetch(executor);
+  }
 }
@@ -85,6 +85,12 @@ public class NameNodeMetrics {
   MutableGaugeInt blockOpsQueued;
   @Metric("Number of blockReports and blockReceivedAndDeleted batch processed")
   MutableCounterLong blockOpsBatched;
+  @Metric(value = "Number of incremental block reports coalesced into one " +
+      "batch", valueName = "Count")
+  MutableStat incrementalBlockReportBatchSize;
+  @Metric("Time incremental block reports wait in the block op queue in msec")
+  MutableRate incrementalBlockReportQueueTime;
+  private final MutableQuantiles[] incrementalBlockReportQueueTimeQuantiles;
 
   @Metric("Number of file system operations")
   public long totalFileOps(){
@@ -147,6 +153,13 @@ public class NameNodeMetrics {
   MutableRate editLogTailInterval;
   private final MutableQuantiles[] editLogTailIntervalQuantiles;
 
+  @Metric("Time EC reconstruction tasks wait for dispatch in msec")
+  private MutableRate ecReconstructionQueueTime;
+  private final MutableQuantiles[] ecReconstructionQueueTimeQuantiles;
+  @Metric("Time between the first and the last DataNode receiving the EC " +
+      "reconstruction tasks of a batch in msec")
+  private MutableRate ecReconstructionBatchDispatchSpread;
+
   @Metric("GetImageServlet getEdit")
   MutableRate getEdit;
   @Metric("GetImageServlet getImage")
@@ -173,6 +186,8 @@ public class NameNodeMetrics {
     editLogFetchTimeQuantiles = new MutableQuantiles[len];
     numEditLogLoadedQuantiles = new MutableQuantiles[len];
     editLogTailIntervalQuantiles = new MutableQuantiles[len];
+    ecReconstructionQueueTimeQuantiles = new MutableQuantiles[len];
+    incrementalBlockReportQueueTimeQuantiles = new MutableQuantiles[len];
 
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
@@ -210,6 +225,12 @@ public class NameNodeMetrics {
       editLogTailIntervalQuantiles[i] = registry.newQuantiles(
           "editLogTailInterval" + interval + "s",
           "Edit log tailing interval", "ops", "latency", interval);
+      ecReconstructionQueueTimeQuantiles[i] = registry.newQuantiles(
+          "ecReconstructionQueueTime" + interval + "s",
+          "EC reconstruction task queue time", "ops", "latency", interval);
+      incrementalBlockReportQueueTimeQuantiles[i] = registry.newQuantiles(
+          "incrementalBlockReportQueueTime" + interval + "s",
+          "Incremental block report queue time", "ops", "latency", interval);
     }
   }
 
@@ -334,6 +355,17 @@ public class NameNodeMetrics {
     blockOpsBatched.incr(count);
   }
 
+  public void addIncrementalBlockReportBatchSize(int count) {
+    incrementalBlockReportBatchSize.add(count);
+  }
+
+  public void addIncrementalBlockReportQueueTime(long elapsed) {
+    incrementalBlockReportQueueTime.add(elapsed);
+    for (MutableQuantiles q : incrementalBlockReportQueueTimeQuantiles) {
+      q.add(elapsed);
+    }
+  }
+
   public void addTransaction(long latency) {
     transactions.add(latency);
   }
@@ -446,4 +478,15 @@ public class NameNodeMetrics {
       q.add(elapsed);
     }
   }
+
+  public void addECReconstructionQueueTime(long elapsed) {
+    ecReconstructionQueueTime.add(elapsed);
+    for (MutableQuantiles q : ecReconstructionQueueTimeQuantiles) {
+      q.add(elapsed);
+    }
+  }
+
+  public void addECReconstructionBatchDispatchSpread(long elapsed) {
+    ecReconstructionBatchDispatchSpread.add(elapsed);
+  }
 }
@@ -110,6 +110,10 @@ public interface DatanodeProtocol {
    * @param slowPeers Details of peer DataNodes that were detected as being
    *                  slow to respond to packet writes. Empty report if no
    *                  slow peers were detected by the DataNode.
+   * @param slowDisks Details of disks on DataNodes that were detected as
+   *                  being slow. Empty report if no slow disks were detected.
+   * @param ecReconstructionLoad the erasure coding reconstruction work the
+   *                             DataNode still has in flight.
    * @throws IOException on error
    */
   @Idempotent
@@ -123,7 +127,9 @@ public interface DatanodeProtocol {
                                        VolumeFailureSummary volumeFailureSummary,
                                        boolean requestFullBlockReportLease,
                                        @Nonnull SlowPeerReports slowPeers,
-                                       @Nonnull SlowDiskReports slowDisks)
+                                       @Nonnull SlowDiskReports slowDisks,
+                                       @Nonnull ECReconstructionLoadReport
+                                           ecReconstructionLoad)
       throws IOException;
 
   /**
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The erasure coding reconstruction work a DataNode still has in flight,
+ * split by the role the DataNode plays in it:
+ * <ul>
+ *   <li>source: bytes it still has to serve to reconstructing DataNodes;</li>
+ *   <li>decode: bytes it still has to decode as the reconstructing
+ *   DataNode;</li>
+ *   <li>target: bytes of reconstructed or replicated blocks it is still
+ *   receiving.</li>
+ * </ul>
+ *
+ * The wire representation of this structure is an
+ * ECReconstructionLoadProto message.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public final class ECReconstructionLoadReport {
+
+  /**
+   * A report with no work in flight. Should be used instead of null when
+   * there is nothing to report.
+   */
+  public static final ECReconstructionLoadReport EMPTY_REPORT =
+      new ECReconstructionLoadReport(0, 0, 0);
+
+  private final long sourceReadBytes;
+  private final long decodeBytes;
+  private final long targetWriteBytes;
+
+  private ECReconstructionLoadReport(long sourceReadBytes, long decodeBytes,
+      long targetWriteBytes) {
+    this.sourceReadBytes = sourceReadBytes;
+    this.decodeBytes = decodeBytes;
+    this.targetWriteBytes = targetWriteBytes;
+  }
+
+  public static ECReconstructionLoadReport create(long sourceReadBytes,
+      long decodeBytes, long targetWriteBytes) {
+    if (sourceReadBytes <= 0 && decodeBytes <= 0 && targetWriteBytes <= 0) {
+      return EMPTY_REPORT;
+    }
+    return new ECReconstructionLoadReport(Math.max(0, sourceReadBytes),
+        Math.max(0, decodeBytes), Math.max(0, targetWriteBytes));
+  }
+
+  public long getSourceReadBytes() {
+    return sourceReadBytes;
+  }
+
+  public long getDecodeBytes() {
+    return decodeBytes;
+  }
+
+  public long getTargetWriteBytes() {
+    return targetWriteBytes;
+  }
+
+  public boolean isEmpty() {
+    return this == EMPTY_REPORT;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ECReconstructionLoadReport)) {
+      return false;
+    }
+    ECReconstructionLoadReport that = (ECReconstructionLoadReport) o;
+    return sourceReadBytes == that.sourceReadBytes
+        && decodeBytes == that.decodeBytes
+        && targetWriteBytes == that.targetWriteBytes;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Long.hashCode(sourceReadBytes);
+    result = 31 * result + Long.hashCode(decodeBytes);
+    return 31 * result + Long.hashCode(targetWriteBytes);
+  }
+
+  @Override
+  public String toString() {
+    return "sourceReadBytes=" + sourceReadBytes + ", decodeBytes="
+        + decodeBytes + ", targetWriteBytes=" + targetWriteBytes;
+  }
+}
@@ -138,7 +138,7 @@ class FSImageLoader {
               if (n1 == null) {
                 return n2 == null ? 0 : -1;
               } else if (n2 == null) {
-                return -1;
+                return 1;
               } else {
                 return n1.ordinal() - n2.ordinal();
               }
@@ -155,7 +155,13 @@ class FSImageLoader {
           LOG.debug("Loading section " + s.getName() + " length: " + s.getLength
               ());
         }
-        switch (FSImageFormatProtobuf.SectionName.fromString(s.getName())) {
+        final FSImageFormatProtobuf.SectionName name =
+            FSImageFormatProtobuf.SectionName.fromString(s.getName());
+        if (name == null) {
+          LOG.warn("Unrecognized section " + s.getName());
+          continue;
+        }
+        switch (name) {
           case STRING_TABLE:
             stringTable = loadStringTable(is);
             break;
@@ -453,7 +453,7 @@ abstract class PBImageTextWriter implements Closeable {
               if (n1 == null) {
                 return n2 == null ? 0 : -1;
               } else if (n2 == null) {
-                return -1;
+                return 1;
               } else {
                 return n1.ordinal() - n2.ordinal();
               }
@@ -466,7 +466,12 @@ abstract class PBImageTextWriter implements Closeable {
         is = FSImageUtil.wrapInputStreamForCompression(conf,
             summary.getCodec(), new BufferedInputStream(new LimitInputStream(
                 fin, section.getLength())));
-        switch (SectionName.fromString(section.getName())) {
+        final SectionName name = SectionName.fromString(section.getName());
+        if (name == null) {
+          LOG.warn("Unrecognized section {}", section.getName());
+          continue;
+        }
+        switch (name) {
         case STRING_TABLE:
           LOG.info("Loading string table");
           stringTable = FSImageLoader.loadStringTable(is);
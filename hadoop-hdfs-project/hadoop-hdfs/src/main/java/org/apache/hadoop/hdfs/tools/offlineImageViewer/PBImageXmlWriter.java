@@ -313,7 +313,7 @@ public final class PBImageXmlWriter {
           if (n1 == null) {
             return n2 == null ? 0 : -1;
           } else if (n2 == null) {
-            return -1;
+            return 1;
           } else {
             return n1.ordinal() - n2.ordinal();
           }
@@ -326,7 +326,12 @@ public final class PBImageXmlWriter {
             summary.getCodec(), new BufferedInputStream(new LimitInputStream(
                 fin, s.getLength())));
 
-        switch (SectionName.fromString(s.getName())) {
+        final SectionName name = SectionName.fromString(s.getName());
+        if (name == null) {
+          // Written by a newer version.
+          continue;
+        }
+        switch (name) {
         case NS_INFO:
           dumpNameSection(is);
           break;
@@ -0,0 +1,438 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.GSet;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link GSet} of elements identified by a long key, such as an inode id.
+ * <p>
+ * The keys and elements are kept in two parallel arrays and looked up with
+ * Robin Hood linear probing, so that a lookup reads a few consecutive keys
+ * and compares primitives, without allocating a key object.
+ * <p>
+ * The table doubles when it is three quarters full. The elements of the old
+ * table are moved to the new one a few slots at a time with every following
+ * update, so that no single update has to move the whole table. Lookups
+ * check both tables until the move is done. The table holds up to about
+ * 900 million elements; adding more fails with an
+ * {@link IllegalStateException}, leaving the set unchanged.
+ * <p>
+ * This class does not support null element.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <K> Key type for looking up the elements
+ * @param <E> Element type, which must be
+ *       (1) a subclass of K, and
+ *       (2) implementing {@link #keyOf} consistently with K.
+ */
+@InterfaceAudience.Private
+public class LongKeyedGSet<K, E extends K> implements GSet<K, E> {
+  @VisibleForTesting
+  static final int MAXIMUM_CAPACITY = 1 << 30;
+  private static final float MAX_LOAD_FACTOR = 0.75f;
+  /** The load factor allowed once the table cannot grow anymore. */
+  private static final float MAX_LOAD_FACTOR_AT_MAXIMUM_CAPACITY = 0.9f;
+  /** Number of slots moved to the new table with every update. */
+  private static final int MIGRATION_STEP = 8;
+  /** Marks a slot of the old table whose element has been moved. */
+  private static final Object MOVED = new Object();
+
+  /** An open addressing table. */
+  private static final class Table {
+    private final long[] keys;
+    /** The elements, null for an empty slot. */
+    private final Object[] elements;
+    private final int mask;
+    private final int threshold;
+    private int size = 0;
+
+    Table(int capacity, float loadFactor) {
+      this.keys = new long[capacity];
+      this.elements = new Object[capacity];
+      this.mask = capacity - 1;
+      this.threshold = (int) (capacity * loadFactor);
+    }
+
+    int capacity() {
+      return keys.length;
+    }
+
+    /** @return the distance of the slot from the home slot of its key. */
+    int distance(int slot) {
+      return (slot - hash(keys[slot])) & mask;
+    }
+
+    /** @return the slot of the key, or -1 if it is not in the table. */
+    int find(long key) {
+      int slot = hash(key) & mask;
+      for (int dist = 0; ; dist++) {
+        final Object e = elements[slot];
+        if (e == null) {
+          return -1;
+        }
+        if (keys[slot] == key) {
+          return e == MOVED ? -1 : slot;
+        }
+        // A key is never further from its home slot than the keys after it.
+        if (distance(slot) < dist) {
+          return -1;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    /**
+     * Add the element, replacing the element of the same key if any.
+     * @return the replaced element, or null.
+     */
+    Object insert(long key, Object element) {
+      int slot = hash(key) & mask;
+      for (int dist = 0; ; dist++) {
+        final Object e = elements[slot];
+        if (e == null) {
+          keys[slot] = key;
+          elements[slot] = element;
+          size++;
+          return null;
+        }
+        if (keys[slot] == key) {
+          elements[slot] = element;
+          return e;
+        }
+        final int existingDist = distance(slot);
+        if (existingDist < dist) {
+          // Take the slot from the closer key and go on inserting that one.
+          final long k = keys[slot];
+          keys[slot] = key;
+          elements[slot] = element;
+          key = k;
+          element = e;
+          dist = existingDist;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    /** Remove the element of the slot, shifting the following keys back. */
+    Object removeAt(int slot) {
+      final Object removed = elements[slot];
+      int next = (slot + 1) & mask;
+      while (elements[next] != null && distance(next) > 0) {
+        keys[slot] = keys[next];
+        elements[slot] = elements[next];
+        slot = next;
+        next = (next + 1) & mask;
+      }
+      elements[slot] = null;
+      size--;
+      return removed;
+    }
+  }
+
+  private final ToLongFunction<? super K> keyOf;
+  private final int initialCapacity;
+  private final int maximumCapacity;
+  /** The table updates go to. */
+  private Table table;
+  /** The table being moved to {@link #table}, or null. */
+  private Table resizing;
+  /** The next slot of {@link #resizing} to move. */
+  private int moved;
+  /** Modification version for fail-fast iterators. */
+  private int modification = 0;
+
+  /**
+   * @param initialCapacity the initial number of slots, rounded up to a
+   *                        power of two.
+   * @param keyOf gives the long key of a key object.
+   */
+  public LongKeyedGSet(int initialCapacity, ToLongFunction<? super K> keyOf) {
+    this(initialCapacity, MAXIMUM_CAPACITY, keyOf);
+  }
+
+  @VisibleForTesting
+  LongKeyedGSet(int initialCapacity, int maximumCapacity,
+      ToLongFunction<? super K> keyOf) {
+    Preconditions.checkArgument(maximumCapacity > 1
+        && maximumCapacity <= MAXIMUM_CAPACITY
+        && Integer.bitCount(maximumCapacity) == 1,
+        "Illegal maximum capacity %s", maximumCapacity);
+    Preconditions.checkArgument(initialCapacity > 0
+        && initialCapacity <= maximumCapacity,
+        "Illegal initial capacity %s", initialCapacity);
+    this.keyOf = keyOf;
+    this.maximumCapacity = maximumCapacity;
+    this.initialCapacity = Integer.highestOneBit(initialCapacity - 1) << 1;
+    this.table = newTable(Math.max(2, this.initialCapacity));
+  }
+
+  private Table newTable(int capacity) {
+    return new Table(capacity, capacity == maximumCapacity ?
+        MAX_LOAD_FACTOR_AT_MAXIMUM_CAPACITY : MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Like the hash code of an inode, the hash keeps sequential keys in
+   * consecutive slots, so that keys allocated together are also stored
+   * together.
+   */
+  private static int hash(long key) {
+    return (int) (key ^ (key >>> 32));
+  }
+
+  @Override
+  public int size() {
+    return table.size + (resizing == null ? 0 : resizing.size);
+  }
+
+  @Override
+  public boolean contains(K key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public E get(K key) {
+    Preconditions.checkNotNull(key, "key == null");
+    return get(keyOf.applyAsLong(key));
+  }
+
+  /**
+   * Get the element of the given key, without allocating.
+   * @return the element, or null if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  public E get(long key) {
+    int slot = table.find(key);
+    if (slot >= 0) {
+      return (E) table.elements[slot];
+    }
+    if (resizing != null) {
+      slot = resizing.find(key);
+      if (slot >= 0) {
+        return (E) resizing.elements[slot];
+      }
+    }
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E put(E element) {
+    Preconditions.checkNotNull(element, "Null element is not supported.");
+    final long key = keyOf.applyAsLong(element);
+    // Reject a new key once the table cannot grow anymore, before changing
+    // anything, so that the table never fills up completely.
+    if (table.capacity() == maximumCapacity && size() >= table.threshold
+        && get(key) == null) {
+      throw new IllegalStateException("The set is full with " + size()
+          + " elements");
+    }
+    modification++;
+    moveSlots(MIGRATION_STEP);
+    E previous = removeFromResizing(key);
+    final E replaced = (E) table.insert(key, element);
+    if (replaced != null) {
+      previous = replaced;
+    }
+    if (table.size > table.threshold) {
+      grow();
+    }
+    return previous;
+  }
+
+  @Override
+  public E remove(K key) {
+    Preconditions.checkNotNull(key, "key == null");
+    return remove(keyOf.applyAsLong(key));
+  }
+
+  /**
+   * Remove the element of the given key.
+   * @return the removed element, or null if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public E remove(long key) {
+    modification++;
+    moveSlots(MIGRATION_STEP);
+    final int slot = table.find(key);
+    if (slot >= 0) {
+      return (E) table.removeAt(slot);
+    }
+    return removeFromResizing(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  private E removeFromResizing(long key) {
+    if (resizing == null) {
+      return null;
+    }
+    final int slot = resizing.find(key);
+    if (slot < 0) {
+      return null;
+    }
+    // Keep the key, so that the keys after it can still be found.
+    final E removed = (E) resizing.elements[slot];
+    resizing.elements[slot] = MOVED;
+    resizing.size--;
+    return removed;
+  }
+
+  /** Start moving to a table twice as large. */
+  private void grow() {
+    if (table.capacity() == maximumCapacity) {
+      // put rejects new keys from now on.
+      return;
+    }
+    // The previous move is normally done long before the table fills up.
+    moveSlots(Integer.MAX_VALUE);
+    resizing = table;
+    table = newTable(resizing.capacity() << 1);
+    moved = 0;
+  }
+
+  /** Move up to the given number of slots of the old table. */
+  private void moveSlots(int slots) {
+    if (resizing == null) {
+      return;
+    }
+    final int end = (int) Math.min(resizing.capacity(), (long) moved + slots);
+    for (; moved < end; moved++) {
+      final Object e = resizing.elements[moved];
+      if (e != null && e != MOVED) {
+        table.insert(resizing.keys[moved], e);
+        resizing.elements[moved] = MOVED;
+        resizing.size--;
+      }
+    }
+    if (moved == resizing.capacity()) {
+      resizing = null;
+    }
+  }
+
+  @VisibleForTesting
+  boolean isResizing() {
+    return resizing != null;
+  }
+
+  @VisibleForTesting
+  int getCapacity() {
+    return table.capacity();
+  }
+
+  @Override
+  public void clear() {
+    modification++;
+    table = newTable(Math.max(2, initialCapacity));
+    resizing = null;
+  }
+
+  @Override
+  public Collection<E> values() {
+    return new AbstractCollection<E>() {
+      @Override
+      public int size() {
+        return LongKeyedGSet.this.size();
+      }
+
+      @Override
+      public Iterator<E> iterator() {
+        return LongKeyedGSet.this.iterator();
+      }
+    };
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new SetIterator();
+  }
+
+  /** Iterates over the elements of the old table, then the new one. */
+  private class SetIterator implements Iterator<E> {
+    /** The version of the set this iterator was created for. */
+    private final int iterModification = modification;
+    private final Table[] tables = resizing == null ?
+        new Table[] {table} : new Table[] {resizing, table};
+    private int tableIndex = 0;
+    /** The next slot to look at. */
+    private int slot = 0;
+    private Object next = findNext();
+
+    private Object findNext() {
+      for (; tableIndex < tables.length; tableIndex++, slot = 0) {
+        final Object[] elements = tables[tableIndex].elements;
+        while (slot < elements.length) {
+          final Object e = elements[slot++];
+          if (e != null && e != MOVED) {
+            return e;
+          }
+        }
+      }
+      return null;
+    }
+
+    private void ensureNext() {
+      if (modification != iterModification) {
+        throw new ConcurrentModificationException("modification="
+            + modification + " != iterModification = " + iterModification);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      ensureNext();
+      return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final E e = (E) next;
+      next = findNext();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Remove is not supported.");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(size=" + size()
+        + ", capacity=" + table.capacity()
+        + (resizing == null ? "" : ", resizing from " + resizing.capacity())
+        + ")";
+  }
+}
@@ -74,6 +74,10 @@ public class TestDFSStripedOutputStream {
     return StripedFileTestUtil.getDefaultECPolicy();
   }
 
+  /** Subclasses may set additional client configuration. */
+  protected void setupConf(Configuration conf) {
+  }
+
   @Before
   public void setup() throws IOException {
     /*
@@ -92,6 +96,7 @@ public class TestDFSStripedOutputStream {
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_CONSIDERLOAD_KEY,
         false);
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_STREAMS_KEY, 0);
+    setupConf(conf);
     if (ErasureCodeNative.isNativeCodeLoaded()) {
       conf.set(
           CodecUtil.IO_ERASURECODE_CODEC_RS_RAWCODERS_KEY,
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.net.MultiplexedConnection;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test reading blocks over streams of a multiplexed connection.
+ */
+public class TestMultiplexedDataTransfer {
+  private static final Path TEST_FILE = new Path("/test");
+  private static final int FILE_LEN = 1024 * 1024;
+
+  private MiniDFSCluster cluster;
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private DistributedFileSystem startCluster(boolean datanodeMultiplex,
+      String context) throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFS_DATANODE_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY,
+        datanodeMultiplex);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setBoolean(DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_ENABLED_KEY,
+        true);
+    // Smaller than a packet, so that the streams wait for each other.
+    clientConf.setInt(DFS_CLIENT_DATA_TRANSFER_MULTIPLEX_STREAM_WINDOW_KEY,
+        16 * 1024);
+    clientConf.set(DFS_CLIENT_CONTEXT, context);
+    return (DistributedFileSystem) FileSystem.newInstance(cluster.getURI(),
+        clientConf);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentReadsShareConnection() throws Exception {
+    final DistributedFileSystem fs =
+        startCluster(true, "testConcurrentReadsShareConnection");
+    DFSTestUtil.createFile(fs, TEST_FILE, FILE_LEN, (short) 1, 0L);
+    final byte[] expected = DFSTestUtil.readFileAsBytes(fs, TEST_FILE);
+    assertEquals(FILE_LEN, expected.length);
+
+    final int numReaders = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+    try {
+      List<Future<byte[]>> futures = new ArrayList<>();
+      for (int i = 0; i < numReaders; i++) {
+        final int offset = i * (FILE_LEN / numReaders);
+        futures.add(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            byte[] buf = new byte[FILE_LEN / numReaders];
+            try (FSDataInputStream in = fs.open(TEST_FILE)) {
+              in.readFully(offset, buf);
+            }
+            return buf;
+          }
+        }));
+      }
+      for (int i = 0; i < numReaders; i++) {
+        byte[] buf = futures.get(i).get();
+        for (int j = 0; j < buf.length; j++) {
+          assertEquals(expected[i * buf.length + j], buf[j]);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    DatanodeID dnId = cluster.getDataNodes().get(0).getDatanodeId();
+    MultiplexedConnectionCache cache = fs.getClient().getClientContext()
+        .getMultiplexedConnectionCache();
+    MultiplexedConnection connection = cache.get(dnId);
+    assertNotNull(connection);
+    assertFalse(connection.isClosed());
+    fs.close();
+  }
+
+  @Test(timeout = 60000)
+  public void testFallbackWhenDatanodeRefuses() throws Exception {
+    DistributedFileSystem fs =
+        startCluster(false, "testFallbackWhenDatanodeRefuses");
+    DFSTestUtil.createFile(fs, TEST_FILE, FILE_LEN, (short) 1, 0L);
+    byte[] first = DFSTestUtil.readFileAsBytes(fs, TEST_FILE);
+    byte[] second = DFSTestUtil.readFileAsBytes(fs, TEST_FILE);
+    assertArrayEquals(first, second);
+
+    DatanodeID dnId = cluster.getDataNodes().get(0).getDatanodeId();
+    MultiplexedConnectionCache cache = fs.getClient().getClientContext()
+        .getMultiplexedConnectionCache();
+    assertNull(cache.get(dnId));
+    assertFalse(cache.isSupported(dnId));
+    fs.close();
+  }
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -48,12 +49,14 @@ import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtocol;
 import org.apache.hadoop.hdfs.server.datanode.SimulatedFSDataset;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.log4j.Level;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -556,6 +559,97 @@ public class TestPread {
     }
   }
 
+  @Test(timeout=60000)
+  public void testVectoredRead() throws Exception {
+    Configuration conf = new Configuration();
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path path = new Path("/vectored");
+      DFSTestUtil.createFile(fs, path, fileSize, fileSize, blockSize,
+          (short) 3, seed);
+      byte[] expected = DFSTestUtil.readFileAsBytes(fs, path);
+
+      // Nearby ranges, a range across blocks, an empty range and a range
+      // past the end of the file.
+      List<FileRange> ranges = Arrays.asList(
+          new FileRange(5 * blockSize, 100), new FileRange(100, 50),
+          new FileRange(0, 10), new FileRange(blockSize - 10, 20),
+          new FileRange(200, 0), new FileRange(fileSize - 5, 10));
+      ElasticByteBufferPool pool = new ElasticByteBufferPool();
+      try (DFSInputStream in = fs.getClient().open(path.toString())) {
+        in.readVectored(ranges, pool);
+        for (FileRange range : ranges.subList(0, ranges.size() - 1)) {
+          ByteBuffer data = range.getData().get();
+          assertEquals(range.toString(), range.getLength(), data.remaining());
+          byte[] actual = new byte[range.getLength()];
+          data.get(actual);
+          assertTrue(range.toString(), Arrays.equals(Arrays.copyOfRange(
+              expected, (int) range.getOffset(),
+              (int) range.getOffset() + range.getLength()), actual));
+          pool.putBuffer(data);
+        }
+        try {
+          ranges.get(ranges.size() - 1).getData().get();
+          Assert.fail("Expected the read past the end of the file to fail");
+        } catch (ExecutionException ee) {
+          assertTrue(ee.toString(), ee.getCause() instanceof EOFException);
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testVectoredReadFailsRangesAfterLocationError()
+      throws Exception {
+    Configuration conf = new Configuration();
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path path = new Path("/vectoredLocationError");
+      DFSTestUtil.createFile(fs, path, fileSize, fileSize, blockSize,
+          (short) 3, seed);
+
+      List<FileRange> ranges = Arrays.asList(
+          new FileRange(0, 10), new FileRange(blockSize + 5, 10),
+          new FileRange(2 * blockSize + 1, 10),
+          new FileRange(3 * blockSize, 10));
+      ElasticByteBufferPool pool = new ElasticByteBufferPool();
+      try (DFSInputStream in = fs.getClient().open(path.toString())) {
+        DFSInputStream spy = Mockito.spy(in);
+        final IOException injected = new IOException("Injected");
+        Mockito.doThrow(injected).when(spy)
+            .getBlockAt(AdditionalMatchers.geq(2L * blockSize));
+        try {
+          spy.readVectored(ranges, pool);
+          Assert.fail("Expected the block location error");
+        } catch (IOException e) {
+          assertEquals(injected, e);
+        }
+        // The ranges before the error are read, and the others fail.
+        for (FileRange range : ranges.subList(0, 2)) {
+          ByteBuffer data = range.getData().get();
+          assertEquals(range.toString(), range.getLength(), data.remaining());
+          pool.putBuffer(data);
+        }
+        for (FileRange range : ranges.subList(2, ranges.size())) {
+          try {
+            range.getData().get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected " + range + " to fail");
+          } catch (ExecutionException ee) {
+            assertEquals(injected, ee.getCause());
+          }
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test(timeout=30000)
   public void testHedgedReadFromAllDNFailed() throws IOException {
     Configuration conf = new Configuration();
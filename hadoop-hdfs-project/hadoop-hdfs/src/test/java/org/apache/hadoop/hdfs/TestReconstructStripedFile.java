@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -229,6 +230,60 @@ public class TestReconstructStripedFile {
         ReconstructionType.Any, random.nextInt(parityBlkNum) + 1);
   }
 
+  @Test(timeout = 120000)
+  public void testRecoverWithSourceSocketCache() throws Exception {
+    conf.setInt(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_CAPACITY_KEY, 16);
+    conf.setLong(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_SOCKET_CACHE_EXPIRY_MSEC_KEY,
+        10 * 60 * 1000);
+    restartCluster();
+
+    // Several block groups, so that the same sources are read repeatedly.
+    int fileLen = 3 * dataBlkNum * blockSize;
+    assertFileBlocksReconstruction("/testRecoverWithSourceSocketCache",
+        fileLen, ReconstructionType.DataOnly, 1);
+    int cachedPeers = 0;
+    for (DataNode dn : cluster.getDataNodes()) {
+      cachedPeers += dn.getErasureCodingWorker().getSourcePeerCache().size();
+    }
+    assertTrue("No connection to a source was cached", cachedPeers > 0);
+  }
+
+  @Test(timeout = 120000)
+  public void testRecoverWithDecodePool() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_DECODE_THREADS_KEY, 2);
+    restartCluster();
+
+    int fileLen = 3 * dataBlkNum * blockSize;
+    assertFileBlocksReconstruction("/testRecoverWithDecodePool", fileLen,
+        ReconstructionType.Any, parityBlkNum);
+    long decodes = 0;
+    for (DataNode dn : cluster.getDataNodes()) {
+      decodes += ((ThreadPoolExecutor) dn.getErasureCodingWorker()
+          .getStripedDecodePool()).getCompletedTaskCount();
+    }
+    assertTrue("Nothing was decoded in the decode pool", decodes > 0);
+  }
+
+  /**
+   * Restart the cluster with the current configuration.
+   */
+  private void restartCluster() throws IOException {
+    cluster.shutdown();
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(dnNum).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fs.enableErasureCodingPolicy(ecPolicy.getName());
+    fs.getClient().setErasureCodingPolicy("/", ecPolicy.getName());
+
+    dnMap.clear();
+    List<DataNode> datanodes = cluster.getDataNodes();
+    for (int i = 0; i < dnNum; i++) {
+      dnMap.put(datanodes.get(i).getDatanodeId(), i);
+    }
+  }
+
   private int[] generateDeadDnIndices(ReconstructionType type, int deadNum,
       byte[] indices) {
     List<Integer> deadList = new ArrayList<>(deadNum);
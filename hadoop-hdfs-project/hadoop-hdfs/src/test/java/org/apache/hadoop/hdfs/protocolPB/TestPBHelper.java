@@ -21,6 +21,7 @@ package org.apache.hadoop.hdfs.protocolPB;
 import com.google.protobuf.UninitializedMessageException;
 import org.apache.hadoop.hdfs.protocol.AddErasureCodingPolicyResponse;
 import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
+import org.apache.hadoop.hdfs.server.protocol.ECReconstructionLoadReport;
 import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -818,6 +819,17 @@ public class TestPBHelper {
         slowPeersConverted2.equals(SlowPeerReports.EMPTY_REPORT));
   }
 
+  @Test
+  public void testECReconstructionLoadPBHelper() {
+    final ECReconstructionLoadReport load =
+        ECReconstructionLoadReport.create(1, 2, 3);
+    assertEquals(load, PBHelper.convertECReconstructionLoad(
+        PBHelper.convertECReconstructionLoad(load)));
+    assertTrue(PBHelper.convertECReconstructionLoad(
+        PBHelper.convertECReconstructionLoad(
+            ECReconstructionLoadReport.EMPTY_REPORT)).isEmpty());
+  }
+
   @Test
   public void testSlowDiskInfoPBHelper() {
     // Test with a map that has a few slow disk entries.
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link BlockReportSlices}.
+ */
+public class TestBlockReportSlices {
+
+  private static BlockReportReplica[] reported(long... ids) {
+    BlockReportReplica[] replicas = new BlockReportReplica[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      replicas[i] = new BlockReportReplica(new Block(ids[i], 0, 1001));
+    }
+    return replicas;
+  }
+
+  private static BlockInfo[] stored(long... ids) {
+    BlockInfo[] blocks = new BlockInfo[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      blocks[i] = new BlockInfoContiguous(new Block(ids[i], 0, 1001),
+          (short) 3);
+    }
+    return blocks;
+  }
+
+  /**
+   * Check that the slices cover the report and the stored blocks in order,
+   * and that the stored blocks of a slice lie in its block id range.
+   */
+  private static void checkSlices(BlockReportSlices slices,
+      BlockReportReplica[] reported, BlockInfo[] stored) {
+    List<BlockReportReplica> allReported = new ArrayList<>();
+    List<BlockInfo> allStored = new ArrayList<>();
+    for (int i = 0; i < slices.getNumSlices(); i++) {
+      allReported.addAll(slices.getReported(i));
+      allStored.addAll(slices.getStored(i));
+      if (i + 1 < slices.getNumSlices()) {
+        final long next =
+            BlockReportSlices.groupId(slices.getReported(i + 1).get(0));
+        for (BlockInfo b : slices.getStored(i)) {
+          assertTrue(b.getBlockId() < next);
+        }
+        for (BlockReportReplica r : slices.getReported(i)) {
+          assertTrue(BlockReportSlices.groupId(r) < next);
+        }
+      }
+      if (i > 0) {
+        final long first =
+            BlockReportSlices.groupId(slices.getReported(i).get(0));
+        for (BlockInfo b : slices.getStored(i)) {
+          assertTrue(b.getBlockId() >= first);
+        }
+      }
+    }
+    assertEquals(Arrays.asList(reported), allReported);
+    assertEquals(Arrays.asList(stored), allStored);
+  }
+
+  @Test
+  public void testContiguousBlocks() {
+    long[] reportedIds = new long[100];
+    for (int i = 0; i < reportedIds.length; i++) {
+      reportedIds[i] = 1000 + 2 * i;
+    }
+    long[] storedIds = new long[150];
+    for (int i = 0; i < storedIds.length; i++) {
+      storedIds[i] = 900 + 3 * i;
+    }
+    BlockReportReplica[] reported = reported(reportedIds);
+    BlockInfo[] stored = stored(storedIds);
+    BlockReportSlices slices = new BlockReportSlices(reported, stored, 4);
+    assertEquals(4, slices.getNumSlices());
+    assertEquals(25, slices.getReported(0).size());
+    checkSlices(slices, reported, stored);
+    // Stored blocks below the first reported one go to the first slice.
+    assertEquals(900, slices.getStored(0).get(0).getBlockId());
+  }
+
+  @Test
+  public void testStripedGroupsAreNotSplit() {
+    // Three groups of nine internal blocks each.
+    long[] reportedIds = new long[27];
+    long[] groupIds = {-3200, -1600, -800};
+    for (int g = 0; g < groupIds.length; g++) {
+      for (int i = 0; i < 9; i++) {
+        reportedIds[g * 9 + i] = groupIds[g] + i;
+      }
+    }
+    BlockReportReplica[] reported = reported(reportedIds);
+    BlockInfo[] stored = stored(-3200, -2400, -1600, -800);
+    BlockReportSlices slices = new BlockReportSlices(reported, stored, 5);
+    assertTrue(slices.getNumSlices() <= groupIds.length);
+    checkSlices(slices, reported, stored);
+
+    Map<Long, Integer> sliceOfGroup = new HashMap<>();
+    for (int i = 0; i < slices.getNumSlices(); i++) {
+      for (BlockReportReplica r : slices.getReported(i)) {
+        Integer previous = sliceOfGroup.put(BlockReportSlices.groupId(r), i);
+        assertTrue(previous == null || previous == i);
+      }
+    }
+    assertEquals(groupIds.length, sliceOfGroup.size());
+  }
+
+  @Test
+  public void testEmptyReport() {
+    BlockReportReplica[] reported = reported();
+    BlockInfo[] stored = stored(1, 2, 3);
+    BlockReportSlices slices = new BlockReportSlices(reported, stored, 8);
+    assertEquals(1, slices.getNumSlices());
+    assertEquals(0, slices.getReported(0).size());
+    assertEquals(3, slices.getStored(0).size());
+  }
+
+  @Test
+  public void testMoreSlicesThanReplicas() {
+    BlockReportReplica[] reported = reported(10, 20, 30);
+    BlockInfo[] stored = stored(5, 10, 25, 40);
+    BlockReportSlices slices = new BlockReportSlices(reported, stored, 16);
+    assertEquals(3, slices.getNumSlices());
+    checkSlices(slices, reported, stored);
+    assertEquals(2, slices.getStored(0).size());
+    assertEquals(1, slices.getStored(1).size());
+    assertEquals(1, slices.getStored(2).size());
+  }
+}
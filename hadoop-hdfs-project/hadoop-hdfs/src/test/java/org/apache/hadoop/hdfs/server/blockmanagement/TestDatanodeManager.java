@@ -59,6 +59,7 @@ import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ECReconstructionLoadReport;
 import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
 import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
@@ -589,7 +590,8 @@ public class TestDatanodeManager {
     Mockito.when(dm.getDatanode(dnReg)).thenReturn(nodeInfo);
     DatanodeCommand[] cmds = dm.handleHeartbeat(
         dnReg, new StorageReport[1], "bp-123", 0, 0, 10, maxTransfers, 0, null,
-        SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT);
+        SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT,
+        ECReconstructionLoadReport.EMPTY_REPORT);
 
     long expectedNumCmds = Arrays.stream(
         new int[]{numReplicationTasks, numECTasks})
@@ -627,6 +629,47 @@ public class TestDatanodeManager {
     verifyPendingRecoveryTasks(400, 1, 20, 20, 1);
   }
 
+  @Test
+  public void testECTasksHeldBackByReconstructionLoad() throws IOException {
+    FSNamesystem fsn = Mockito.mock(FSNamesystem.class);
+    Mockito.when(fsn.hasWriteLock()).thenReturn(true);
+    Configuration conf = new Configuration();
+    conf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_DECODE_BYTES_KEY,
+        1024);
+    conf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_EC_RECONSTRUCTION_MAX_SOURCE_READ_BYTES_KEY,
+        1024);
+    DatanodeManager dm = Mockito.spy(mockDatanodeManager(fsn, conf));
+
+    DatanodeDescriptor nodeInfo = new DatanodeDescriptor(
+        new DatanodeID("127.0.0.1", "host1", "uuid1", 1, 2, 3, 4));
+    nodeInfo.setECReconstructionLoad(
+        ECReconstructionLoadReport.create(2048, 512, 4096));
+    assertTrue(dm.isECSourceOverloaded(nodeInfo));
+    assertFalse(dm.isECDecoderOverloaded(nodeInfo));
+    // No cap on target writes.
+    assertFalse(dm.isECTargetOverloaded(nodeInfo));
+    assertTrue(dm.getECTargetOverloadedNodes().isEmpty());
+
+    nodeInfo = Mockito.mock(DatanodeDescriptor.class);
+    Mockito.when(nodeInfo.isRegistered()).thenReturn(true);
+    Mockito.when(nodeInfo.getStorageInfos())
+        .thenReturn(new DatanodeStorageInfo[0]);
+    Mockito.when(nodeInfo.getNumberOfBlocksToBeErasureCoded()).thenReturn(10);
+    Mockito.when(nodeInfo.getECReconstructionLoad()).thenReturn(
+        ECReconstructionLoadReport.create(0, 2048, 0));
+    DatanodeRegistration dnReg = Mockito.mock(DatanodeRegistration.class);
+    Mockito.when(dm.getDatanode(dnReg)).thenReturn(nodeInfo);
+    dm.handleHeartbeat(
+        dnReg, new StorageReport[1], "bp-123", 0, 0, 10, 5, 0, null,
+        SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT,
+        ECReconstructionLoadReport.create(0, 2048, 0));
+    // The node decodes too much already, only batches which other nodes
+    // already work on may be sent.
+    Mockito.verify(nodeInfo).getErasureCodeCommand(0);
+  }
+
   @Test
   public void testNetworkTopologyInstantiation() throws Exception {
     // case 1, dfs.use.dfs.network.topology=true, use the default
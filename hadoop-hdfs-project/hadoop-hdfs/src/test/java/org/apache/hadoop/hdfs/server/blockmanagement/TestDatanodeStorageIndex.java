@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link DatanodeStorageIndex}.
+ */
+public class TestDatanodeStorageIndex {
+
+  @Test
+  public void testIndexIsAssignedWithFirstBlock() {
+    DatanodeStorageInfo storage =
+        DFSTestUtil.createDatanodeStorageInfo("s1", "10.0.0.1");
+    assertEquals(0, storage.getIndex());
+
+    BlockInfo block = new BlockInfoContiguous(new Block(1, 0, 1001),
+        (short) 3);
+    assertEquals(-1, block.findStorageInfo(storage));
+    assertEquals(DatanodeStorageInfo.AddBlockResult.ADDED,
+        storage.addBlock(block));
+    final int index = storage.getIndex();
+    assertTrue(index > 0);
+    assertSame(storage, DatanodeStorageIndex.get(index));
+    assertSame(storage, block.getStorageInfo(0));
+    assertEquals(0, block.findStorageInfo(storage));
+  }
+
+  @Test
+  public void testReleasedSlotsAreReused() {
+    DatanodeStorageIndex storageIndex = DatanodeStorageIndex.newIndex();
+    try {
+      Set<Integer> indices = new HashSet<>();
+      List<DatanodeStorageInfo> storages = new ArrayList<>();
+      // More than the initial capacity of the index.
+      for (int i = 0; i < 3000; i++) {
+        DatanodeStorageInfo storage = newStorage(storageIndex, i);
+        final int index = storage.getOrAssignIndex();
+        assertTrue(indices.add(index));
+        assertSame(storage, DatanodeStorageIndex.get(index));
+        storages.add(storage);
+      }
+
+      for (DatanodeStorageInfo storage : storages) {
+        final int index = storage.getIndex();
+        storage.releaseIndex();
+        assertEquals(0, storage.getIndex());
+        assertNull(DatanodeStorageIndex.get(index));
+      }
+
+      // New storages take the freed slots.
+      for (int i = 0; i < 3000; i++) {
+        DatanodeStorageInfo storage = newStorage(storageIndex, i);
+        assertTrue(indices.remove(storage.getOrAssignIndex()));
+      }
+    } finally {
+      storageIndex.close();
+    }
+  }
+
+  @Test
+  public void testClosedIndexReleasesItsStorages() {
+    DatanodeStorageIndex first = DatanodeStorageIndex.newIndex();
+    DatanodeStorageIndex second = DatanodeStorageIndex.newIndex();
+    try {
+      DatanodeStorageInfo storage1 = newStorage(first, 1);
+      DatanodeStorageInfo storage2 = newStorage(second, 2);
+      final int index1 = storage1.getOrAssignIndex();
+      final int index2 = storage2.getOrAssignIndex();
+      assertNotEquals(index1, index2);
+      assertSame(storage1, DatanodeStorageIndex.get(index1));
+      assertSame(storage2, DatanodeStorageIndex.get(index2));
+
+      first.close();
+      assertNull(DatanodeStorageIndex.get(index1));
+      assertSame(storage2, DatanodeStorageIndex.get(index2));
+      // Releasing a storage of a closed index is harmless.
+      storage1.releaseIndex();
+      assertSame(storage2, DatanodeStorageIndex.get(index2));
+    } finally {
+      first.close();
+      second.close();
+    }
+  }
+
+  @Test
+  public void testIndexIsKeptWhileStoringBlocks() {
+    DatanodeStorageInfo storage =
+        DFSTestUtil.createDatanodeStorageInfo("s2", "10.0.0.2");
+    BlockInfo block = new BlockInfoContiguous(new Block(2, 0, 1001),
+        (short) 3);
+    storage.addBlock(block);
+    final int index = storage.getIndex();
+
+    storage.releaseIndex();
+    assertEquals(index, storage.getIndex());
+    assertSame(storage, block.getStorageInfo(0));
+
+    storage.removeBlock(block);
+    assertNull(block.getStorageInfo(0));
+    storage.releaseIndex();
+    assertEquals(0, storage.getIndex());
+
+    // The storage is indexed again when it stores blocks again.
+    storage.addBlock(block);
+    assertTrue(storage.getIndex() > 0);
+    assertSame(storage, block.getStorageInfo(0));
+  }
+
+  private static DatanodeStorageInfo newStorage(
+      DatanodeStorageIndex storageIndex, int i) {
+    DatanodeStorageInfo storage = DFSTestUtil.createDatanodeStorageInfo(
+        "s" + i, "10.0." + (i / 256) + "." + (i % 256));
+    storage.getDatanodeDescriptor().setStorageIndex(storageIndex);
+    return storage;
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link ErasureCodingTaskQueue}.
+ */
+public class TestErasureCodingTaskQueue {
+
+  private static long nextBlockId = 1;
+
+  private static BlockECReconstructionInfo newTask() {
+    return new BlockECReconstructionInfo(
+        new ExtendedBlock("bp", nextBlockId++), new DatanodeInfo[0],
+        new DatanodeInfo[0], new String[0], new StorageType[0], new byte[0],
+        null);
+  }
+
+  @Test
+  public void testBatchesStayTogether() {
+    ErasureCodingTaskQueue queue = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue.Batch b1 = new ErasureCodingTaskQueue.Batch();
+    ErasureCodingTaskQueue.Batch b2 = new ErasureCodingTaskQueue.Batch();
+    BlockECReconstructionInfo t1 = newTask();
+    BlockECReconstructionInfo t2 = newTask();
+    BlockECReconstructionInfo t3 = newTask();
+    BlockECReconstructionInfo t4 = newTask();
+    queue.offer(t1, b1, 2);
+    queue.offer(t2, b2, 2);
+    queue.offer(t3, b1, 2);
+    queue.offer(t4, b1, 2);
+    assertEquals(4, queue.size());
+    assertEquals(2, queue.getNumBatches());
+
+    // The whole first batch goes out even if it exceeds the budget.
+    assertEquals(Arrays.asList(t1, t3, t4), queue.poll(1));
+    assertEquals(1, queue.size());
+    assertEquals(Arrays.asList(t2), queue.poll(1));
+    assertNull(queue.poll(1));
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testPriorityOrder() {
+    ErasureCodingTaskQueue queue = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue.Batch b1 = new ErasureCodingTaskQueue.Batch();
+    ErasureCodingTaskQueue.Batch b2 = new ErasureCodingTaskQueue.Batch();
+    BlockECReconstructionInfo t1 = newTask();
+    BlockECReconstructionInfo t2 = newTask();
+    BlockECReconstructionInfo t3 = newTask();
+    queue.offer(t1, b1, 3);
+    queue.offer(t2, b2, 2);
+    assertEquals(Arrays.asList(t2), queue.poll(1));
+    // A more urgent task raises the priority of its whole batch.
+    queue.offer(t3, b1, 0);
+    assertEquals(Arrays.asList(t1, t3), queue.poll(2));
+  }
+
+  @Test
+  public void testBudget() {
+    ErasureCodingTaskQueue queue = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue.Batch b1 = new ErasureCodingTaskQueue.Batch();
+    ErasureCodingTaskQueue.Batch b2 = new ErasureCodingTaskQueue.Batch();
+    ErasureCodingTaskQueue.Batch b3 = new ErasureCodingTaskQueue.Batch();
+    BlockECReconstructionInfo t1 = newTask();
+    BlockECReconstructionInfo t2 = newTask();
+    BlockECReconstructionInfo t3 = newTask();
+    BlockECReconstructionInfo t4 = newTask();
+    queue.offer(t1, b1, 1);
+    queue.offer(t2, b2, 1);
+    queue.offer(t3, b2, 1);
+    queue.offer(t4, b3, 1);
+
+    assertNull(queue.poll(0));
+    // b2 does not fit next to b1, the smaller b3 does.
+    assertEquals(Arrays.asList(t1, t4), queue.poll(2));
+    assertEquals(Arrays.asList(t2, t3), queue.poll(2));
+  }
+
+  @Test
+  public void testDispatchedBatchBypassesBudget() {
+    ErasureCodingTaskQueue dn1 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue dn2 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue.Batch old = new ErasureCodingTaskQueue.Batch();
+    ErasureCodingTaskQueue.Batch shared = new ErasureCodingTaskQueue.Batch();
+    BlockECReconstructionInfo t1 = newTask();
+    BlockECReconstructionInfo t2 = newTask();
+    BlockECReconstructionInfo t3 = newTask();
+    dn1.offer(t1, shared, 1);
+    dn2.offer(t2, old, 1);
+    dn2.offer(t3, shared, 1);
+
+    assertFalse(shared.isDispatchStarted());
+    assertEquals(Arrays.asList(t1), dn1.poll(1));
+    assertTrue(shared.isDispatchStarted());
+    // dn2 only has room for the old batch, but the shared batch is already
+    // running on dn1 so it is handed out as well.
+    List<BlockECReconstructionInfo> tasks = dn2.poll(1);
+    assertEquals(Arrays.asList(t2, t3), tasks);
+  }
+
+  @Test
+  public void testDispatchedBatchOvershootIsBounded() {
+    ErasureCodingTaskQueue dn1 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue dn2 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue.Batch old = new ErasureCodingTaskQueue.Batch();
+    ErasureCodingTaskQueue.Batch shared = new ErasureCodingTaskQueue.Batch();
+    BlockECReconstructionInfo t1 = newTask();
+    BlockECReconstructionInfo t2 = newTask();
+    BlockECReconstructionInfo t3 = newTask();
+    BlockECReconstructionInfo t4 = newTask();
+    BlockECReconstructionInfo t5 = newTask();
+    dn1.offer(t1, shared, 1);
+    dn2.offer(t2, old, 1);
+    dn2.offer(t3, shared, 1);
+    dn2.offer(t4, shared, 1);
+    dn2.offer(t5, shared, 1);
+    assertEquals(Arrays.asList(t1), dn1.poll(1));
+
+    // The shared batch would take dn2 to 4 tasks, over twice its budget, so
+    // it waits for the next heartbeat, where it goes first.
+    assertEquals(Arrays.asList(t2), dn2.poll(1));
+    assertNull(dn2.poll(0));
+    assertEquals(Arrays.asList(t3, t4, t5), dn2.poll(1));
+    assertEquals(0, dn2.getNumBatches());
+  }
+
+  @Test
+  public void testDispatchSpread() {
+    ErasureCodingTaskQueue dn1 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue dn2 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue dn3 = new ErasureCodingTaskQueue();
+    ErasureCodingTaskQueue.Batch batch = new ErasureCodingTaskQueue.Batch();
+    dn1.offer(newTask(), batch, 1);
+    dn1.offer(newTask(), batch, 1);
+    dn2.offer(newTask(), batch, 1);
+    dn3.offer(newTask(), batch, 1);
+    dn3.clear();
+
+    assertEquals(-1, batch.dispatch(100));
+    assertEquals(50, batch.dispatch(150));
+  }
+}
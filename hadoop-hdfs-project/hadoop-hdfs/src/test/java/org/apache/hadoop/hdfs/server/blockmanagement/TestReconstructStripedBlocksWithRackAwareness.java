@@ -172,7 +172,8 @@ public class TestReconstructStripedBlocksWithRackAwareness {
 
     // we now should have 9 internal blocks distributed in 5 racks
     Set<String> rackSet = new HashSet<>();
-    for (DatanodeStorageInfo storage : blockInfo.storages) {
+    for (int i = 0; i < blockInfo.getCapacity(); i++) {
+      DatanodeStorageInfo storage = blockInfo.getStorageInfo(i);
       rackSet.add(storage.getDatanodeDescriptor().getNetworkLocation());
     }
     Assert.assertEquals("rackSet size is wrong: " + rackSet, dataBlocks - 1,
@@ -203,7 +204,8 @@ public class TestReconstructStripedBlocksWithRackAwareness {
     // check if redundancy monitor correctly schedule the reconstruction work.
     boolean scheduled = false;
     for (int i = 0; i < 5; i++) { // retry 5 times
-      for (DatanodeStorageInfo storage : blockInfo.storages) {
+      for (int j = 0; j < blockInfo.getCapacity(); j++) {
+        DatanodeStorageInfo storage = blockInfo.getStorageInfo(j);
         if (storage != null) {
           DatanodeDescriptor dn = storage.getDatanodeDescriptor();
           Assert.assertEquals("Block to be erasure coded is wrong for datanode:"
@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.StripedFileTestUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.server.blockmanagement.NumberReplicas.StoredReplicaState;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test {@link StripedDecommissionPlanner}.
+ */
+public class TestStripedDecommissionPlanner {
+
+  private final ErasureCodingPolicy ecPolicy =
+      StripedFileTestUtil.getDefaultECPolicy();
+  private final int dataBlocks = ecPolicy.getNumDataUnits();
+  private final int totalBlocks = dataBlocks + ecPolicy.getNumParityUnits();
+  private final long internalBlockLen = ecPolicy.getCellSize() * 4L;
+
+  private DatanodeDescriptor leaving;
+  private DatanodeDescriptor[] staying;
+  private long nextBlockId = 1;
+
+  @Before
+  public void setup() {
+    leaving = DFSTestUtil.getDatanodeDescriptor("10.0.0.1", "/r1");
+    leaving.startDecommission();
+    staying = new DatanodeDescriptor[totalBlocks - 1];
+    for (int i = 0; i < staying.length; i++) {
+      staying[i] = DFSTestUtil.getDatanodeDescriptor("10.0.1." + i, "/r1");
+    }
+  }
+
+  private ErasureCodingWork newWork(DatanodeDescriptor[] stayingSources) {
+    return newWork(new DatanodeDescriptor[] {leaving}, stayingSources);
+  }
+
+  /**
+   * @return the work to move the internal blocks of a new block group off
+   * the leaving DataNodes. The internal blocks are numbered in the order of
+   * the sources.
+   */
+  private ErasureCodingWork newWork(DatanodeDescriptor[] leavingSources,
+      DatanodeDescriptor[] stayingSources) {
+    return newWork(leavingSources, stayingSources, leavingSources.length);
+  }
+
+  private ErasureCodingWork newWork(DatanodeDescriptor[] leavingSources,
+      DatanodeDescriptor[] stayingSources, int numTargets) {
+    final BlockInfoStriped block = new BlockInfoStriped(
+        new Block(nextBlockId++ * totalBlocks, internalBlockLen * dataBlocks,
+            1001), ecPolicy);
+    final DatanodeDescriptor[] srcNodes = new DatanodeDescriptor[
+        leavingSources.length + stayingSources.length];
+    final byte[] indices = new byte[srcNodes.length];
+    System.arraycopy(leavingSources, 0, srcNodes, 0, leavingSources.length);
+    System.arraycopy(stayingSources, 0, srcNodes, leavingSources.length,
+        stayingSources.length);
+    for (int i = 0; i < srcNodes.length; i++) {
+      indices[i] = (byte) i;
+    }
+    final BlockCollection bc = mock(BlockCollection.class);
+    when(bc.getName()).thenReturn("/file");
+    final ErasureCodingWork work = new ErasureCodingWork("bp", block, bc,
+        srcNodes, new ArrayList<>(Arrays.asList(srcNodes)),
+        new ArrayList<>(), 1, LowRedundancyBlocks.QUEUE_LOW_REDUNDANCY,
+        indices);
+    final DatanodeStorageInfo[] targets =
+        new DatanodeStorageInfo[numTargets];
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = DFSTestUtil.createDatanodeStorageInfo(
+          "s" + nextBlockId + "-" + i, "10.0.2." + nextBlockId);
+    }
+    work.setTargets(targets);
+    return work;
+  }
+
+  private static NumberReplicas decommissioning() {
+    final NumberReplicas numberReplicas = new NumberReplicas();
+    numberReplicas.add(StoredReplicaState.DECOMMISSIONING, 1);
+    return numberReplicas;
+  }
+
+  @Test
+  public void testCopyWhileLeavingNodeIsIdle() {
+    final StripedDecommissionPlanner planner =
+        new StripedDecommissionPlanner();
+    final ErasureCodingWork work = newWork(staying);
+    planner.plan(work);
+    assertEquals(1, planner.getNumCopied());
+    assertEquals(0, planner.getNumReconstructed());
+    assertEquals(internalBlockLen, planner.getSendLoad(leaving));
+
+    work.addTaskToDatanode(decommissioning());
+    assertEquals(1, leaving.getNumberOfBlocksToBeReplicated());
+    assertEquals(0, work.getTargets()[0].getDatanodeDescriptor()
+        .getNumberOfBlocksToBeErasureCoded());
+  }
+
+  @Test
+  public void testReconstructOnceLeavingNodeIsBusy() {
+    final StripedDecommissionPlanner planner =
+        new StripedDecommissionPlanner();
+    final int numWorks = 4 * dataBlocks;
+    final ErasureCodingWork[] works = new ErasureCodingWork[numWorks];
+    for (int i = 0; i < numWorks; i++) {
+      works[i] = newWork(staying);
+      planner.plan(works[i]);
+    }
+    assertTrue(planner.getNumCopied() > 0);
+    assertTrue(planner.getNumReconstructed() > 0);
+    assertEquals(numWorks,
+        planner.getNumCopied() + planner.getNumReconstructed());
+    // The leaving node sends much less than all the blocks on its own.
+    assertTrue(planner.getSendLoad(leaving) < numWorks * internalBlockLen / 2);
+    for (DatanodeDescriptor dn : staying) {
+      assertTrue(planner.getSendLoad(dn) <= planner.getSendLoad(leaving)
+          + internalBlockLen);
+    }
+
+    // A reconstructed block is reconstructed on its target from the staying
+    // sources only.
+    for (ErasureCodingWork work : works) {
+      final DatanodeDescriptor target =
+          work.getTargets()[0].getDatanodeDescriptor();
+      final int replicated = leaving.getNumberOfBlocksToBeReplicated();
+      work.addTaskToDatanode(decommissioning());
+      if (target.getNumberOfBlocksToBeErasureCoded() == 1) {
+        assertEquals(replicated, leaving.getNumberOfBlocksToBeReplicated());
+        assertEquals(staying.length,
+            target.getErasureCodeCommand(1).get(0).getSourceDnInfos().length);
+      } else {
+        assertEquals(replicated + 1,
+            leaving.getNumberOfBlocksToBeReplicated());
+      }
+    }
+    assertEquals(planner.getNumCopied(),
+        leaving.getNumberOfBlocksToBeReplicated());
+  }
+
+  @Test
+  public void testIncompleteBlockGroupIsNotPlanned() {
+    final StripedDecommissionPlanner planner =
+        new StripedDecommissionPlanner();
+    planner.plan(newWork(Arrays.copyOf(staying, staying.length - 1)));
+    assertEquals(0, planner.getNumCopied() + planner.getNumReconstructed());
+    assertEquals(0, planner.getSendLoad(leaving));
+  }
+
+  @Test
+  public void testCopyWithoutEnoughStayingSources() {
+    final int numLeaving = totalBlocks - dataBlocks + 1;
+    final DatanodeDescriptor[] leavingSources =
+        new DatanodeDescriptor[numLeaving];
+    leavingSources[0] = leaving;
+    for (int i = 1; i < numLeaving; i++) {
+      leavingSources[i] =
+          DFSTestUtil.getDatanodeDescriptor("10.0.3." + i, "/r1");
+      leavingSources[i].startDecommission();
+    }
+    final DatanodeDescriptor[] stayingSources =
+        Arrays.copyOf(staying, totalBlocks - numLeaving);
+    final StripedDecommissionPlanner planner =
+        new StripedDecommissionPlanner();
+    for (int i = 0; i < 2 * dataBlocks; i++) {
+      planner.plan(newWork(leavingSources, stayingSources));
+    }
+    assertEquals(2 * dataBlocks, planner.getNumCopied());
+    assertEquals(0, planner.getNumReconstructed());
+    assertEquals(2 * dataBlocks * internalBlockLen,
+        planner.getSendLoad(leaving));
+  }
+
+  @Test
+  public void testCopyWithMoreLeavingSourcesThanTargets() {
+    final DatanodeDescriptor other =
+        DFSTestUtil.getDatanodeDescriptor("10.0.3.1", "/r1");
+    other.startDecommission();
+    final DatanodeDescriptor[] leavingSources = {leaving, other};
+    final DatanodeDescriptor[] stayingSources =
+        Arrays.copyOf(staying, totalBlocks - leavingSources.length);
+    final StripedDecommissionPlanner planner =
+        new StripedDecommissionPlanner();
+    // Busy enough that the leaving DataNodes would be reconstructed from,
+    // but the reconstructing DataNode would not rebuild the planned blocks
+    // with a single target.
+    final int numWorks = 4 * dataBlocks;
+    for (int i = 0; i < numWorks; i++) {
+      final ErasureCodingWork work =
+          newWork(leavingSources, stayingSources, 1);
+      planner.plan(work);
+      work.addTaskToDatanode(decommissioning());
+      assertEquals(0, work.getTargets()[0].getDatanodeDescriptor()
+          .getNumberOfBlocksToBeErasureCoded());
+    }
+    assertEquals(numWorks, planner.getNumCopied());
+    assertEquals(0, planner.getNumReconstructed());
+    assertEquals(numWorks * internalBlockLen, planner.getSendLoad(leaving));
+    assertEquals(0, planner.getSendLoad(other));
+  }
+
+  @Test
+  public void testNoLeavingSources() {
+    leaving.stopDecommission();
+    final StripedDecommissionPlanner planner =
+        new StripedDecommissionPlanner();
+    planner.plan(newWork(staying));
+    assertEquals(0, planner.getNumCopied() + planner.getNumReconstructed());
+    assertEquals(0, planner.getSendLoad(leaving));
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Test {@link AsyncBlockWriter}.
+ */
+public class TestAsyncBlockWriter {
+
+  /** A block recording what is written, flushed and completed. */
+  private static class TestBlock extends AsyncBlockWriter.BlockWrites {
+    private final List<Integer> written =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<Integer> completed =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    private volatile int flushes = 0;
+    private volatile int failAt = -1;
+
+    @Override
+    protected void flush() {
+      flushes++;
+    }
+
+    AsyncBlockWriter.Packet packet(final int n) {
+      return new AsyncBlockWriter.Packet(this) {
+        @Override
+        protected void write() throws IOException {
+          if (n == failAt) {
+            throw new IOException("Injected failure writing packet " + n);
+          }
+          written.add(n);
+        }
+
+        @Override
+        protected void complete() {
+          completed.add(n);
+        }
+      };
+    }
+  }
+
+  @Test
+  public void testBatchIsFlushedOncePerBlock() {
+    TestBlock a = new TestBlock();
+    TestBlock b = new TestBlock();
+    List<AsyncBlockWriter.Packet> batch = Arrays.asList(
+        a.packet(0), b.packet(0), a.packet(1), b.packet(1), a.packet(2));
+    AsyncBlockWriter.writeBatch(batch,
+        new HashSet<AsyncBlockWriter.BlockWrites>());
+
+    assertEquals(Arrays.asList(0, 1, 2), a.written);
+    assertEquals(Arrays.asList(0, 1, 2), a.completed);
+    assertEquals(Arrays.asList(0, 1), b.completed);
+    assertEquals(1, a.flushes);
+    assertEquals(1, b.flushes);
+  }
+
+  @Test
+  public void testFailureStopsTheBlock() throws Exception {
+    TestBlock a = new TestBlock();
+    TestBlock b = new TestBlock();
+    a.failAt = 1;
+    List<AsyncBlockWriter.Packet> batch = Arrays.asList(
+        a.packet(0), a.packet(1), b.packet(0), a.packet(2));
+    AsyncBlockWriter.writeBatch(batch,
+        new HashSet<AsyncBlockWriter.BlockWrites>());
+
+    // Nothing after the failure is written, and the block is not acked.
+    assertEquals(Arrays.asList(0), a.written);
+    assertTrue(a.completed.isEmpty());
+    assertEquals(Arrays.asList(0), b.completed);
+    assertFalse(a.hasPending());
+    try {
+      a.checkError();
+      fail("Expected the write failure");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("packet 1", e.getCause());
+    }
+    b.checkError();
+  }
+
+  @Test(timeout = 60000)
+  public void testSubmitAndAwait() throws Exception {
+    AsyncBlockWriter writer = new AsyncBlockWriter("test", 4);
+    try {
+      TestBlock a = new TestBlock();
+      TestBlock b = new TestBlock();
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        writer.submit(a.packet(i));
+        writer.submit(b.packet(i));
+        expected.add(i);
+      }
+      a.await();
+      b.await();
+      assertEquals(expected, a.completed);
+      assertEquals(expected, b.completed);
+      assertTrue(a.flushes > 0 && a.flushes <= 100);
+    } finally {
+      writer.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testErrorIsReported() throws Exception {
+    AsyncBlockWriter writer = new AsyncBlockWriter("test", 4);
+    try {
+      TestBlock a = new TestBlock();
+      a.failAt = 0;
+      writer.submit(a.packet(0));
+      try {
+        a.await();
+        fail("Expected the write failure");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("earlier packet", e);
+      }
+      try {
+        writer.submit(a.packet(1));
+        fail("Expected the earlier write failure");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("earlier packet", e);
+      }
+    } finally {
+      writer.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testShutdownWritesQueuedPackets() throws Exception {
+    AsyncBlockWriter writer = new AsyncBlockWriter("test", 16);
+    TestBlock a = new TestBlock();
+    for (int i = 0; i < 10; i++) {
+      writer.submit(a.packet(i));
+    }
+    writer.shutdown();
+    assertFalse(a.hasPending());
+    assertEquals(10, a.completed.size());
+    try {
+      writer.submit(a.packet(10));
+      fail("Expected the writer to be shut down");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("shut down", e);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testShutdownWhileSubmitting() throws Exception {
+    final AsyncBlockWriter writer = new AsyncBlockWriter("test", 4);
+    final int numSubmitters = 4;
+    final TestBlock[] blocks = new TestBlock[numSubmitters];
+    Thread[] submitters = new Thread[numSubmitters];
+    for (int i = 0; i < numSubmitters; i++) {
+      final TestBlock block = new TestBlock();
+      blocks[i] = block;
+      submitters[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int n = 0; ; n++) {
+              writer.submit(block.packet(n));
+            }
+          } catch (IOException e) {
+            // The writer was shut down.
+          }
+        }
+      };
+      submitters[i].start();
+    }
+    Thread.sleep(100);
+    writer.shutdown();
+    for (int i = 0; i < numSubmitters; i++) {
+      submitters[i].join();
+      // No packet is left behind, so waiting for the block returns.
+      blocks[i].awaitUninterruptibly();
+      assertFalse(blocks[i].hasPending());
+    }
+  }
+}
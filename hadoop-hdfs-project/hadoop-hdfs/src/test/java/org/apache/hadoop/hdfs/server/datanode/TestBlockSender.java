@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.DataChecksum;
+import org.junit.Test;
+
+/**
+ * Test the packet boundaries and the mapped checksums of
+ * {@link BlockSender}.
+ */
+public class TestBlockSender {
+  private static final int CHUNK_SIZE = 512;
+  private static final long MAX_DATA_LEN = 128 * CHUNK_SIZE;
+
+  /**
+   * @return the ends of the packets sending the range, after the start.
+   */
+  private static long[] packetEnds(long offset, long endOffset,
+      boolean alignPackets) {
+    long[] ends = new long[0];
+    while (offset < endOffset) {
+      final int dataLen = BlockSender.packetDataLength(offset, endOffset,
+          MAX_DATA_LEN, alignPackets);
+      assertTrue(dataLen > 0);
+      assertTrue(dataLen <= MAX_DATA_LEN);
+      offset += dataLen;
+      ends = Arrays.copyOf(ends, ends.length + 1);
+      ends[ends.length - 1] = offset;
+    }
+    return ends;
+  }
+
+  @Test
+  public void testAlignedPacketsEndOnPacketBoundaries() {
+    final long start = 3 * CHUNK_SIZE;
+    final long end = 3 * MAX_DATA_LEN + 100;
+    assertArrayEquals(
+        new long[] {MAX_DATA_LEN, 2 * MAX_DATA_LEN, 3 * MAX_DATA_LEN, end},
+        packetEnds(start, end, true));
+    // Packets ending before the next boundary are not padded.
+    assertArrayEquals(new long[] {start + 2 * CHUNK_SIZE},
+        packetEnds(start, start + 2 * CHUNK_SIZE, true));
+  }
+
+  @Test
+  public void testUnalignedPacketsAreFull() {
+    final long start = 3 * CHUNK_SIZE;
+    final long end = 3 * MAX_DATA_LEN + 100;
+    assertArrayEquals(
+        new long[] {start + MAX_DATA_LEN, start + 2 * MAX_DATA_LEN, end},
+        packetEnds(start, end, false));
+  }
+
+  @Test
+  public void testMappedChecksumsOfRange() throws IOException {
+    final DataChecksum checksum = DataChecksum.newDataChecksum(
+        DataChecksum.Type.CRC32C, CHUNK_SIZE);
+    final int checksumSize = checksum.getChecksumSize();
+    final byte[] data = new byte[10 * CHUNK_SIZE + 100];
+    new Random(0).nextBytes(data);
+    final int numChunks = (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final byte[] sums = new byte[numChunks * checksumSize];
+    checksum.calculateChunkedSums(data, 0, data.length, sums, 0);
+
+    final File dir = GenericTestUtils.getTestDir(getClass().getSimpleName());
+    FileUtils.deleteDirectory(dir);
+    assertTrue(dir.mkdirs());
+    final File meta = new File(dir, "blk_1_1001.meta");
+    try (DataOutputStream out =
+             new DataOutputStream(new FileOutputStream(meta))) {
+      BlockMetadataHeader.writeHeader(out, checksum);
+      out.write(sums);
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(meta, "r");
+         FileChannel channel = raf.getChannel()) {
+      // From the third chunk to the partial last one.
+      final long offset = 2 * CHUNK_SIZE;
+      MappedByteBuffer mapped = BlockSender.mapChecksums(channel, offset,
+          data.length, CHUNK_SIZE, checksumSize);
+      try {
+        assertEquals((numChunks - 2) * checksumSize, mapped.remaining());
+        final byte[] actual = new byte[mapped.remaining()];
+        mapped.get(actual);
+        assertArrayEquals(
+            Arrays.copyOfRange(sums, 2 * checksumSize, sums.length), actual);
+      } finally {
+        NativeIO.POSIX.munmap(mapped);
+      }
+
+      // A range within one chunk maps its checksum only.
+      mapped = BlockSender.mapChecksums(channel, 5 * CHUNK_SIZE,
+          5 * CHUNK_SIZE + 10, CHUNK_SIZE, checksumSize);
+      try {
+        final ByteBuffer expected =
+            ByteBuffer.wrap(sums, 5 * checksumSize, checksumSize);
+        assertEquals(expected, mapped);
+      } finally {
+        NativeIO.POSIX.munmap(mapped);
+      }
+    }
+  }
+}
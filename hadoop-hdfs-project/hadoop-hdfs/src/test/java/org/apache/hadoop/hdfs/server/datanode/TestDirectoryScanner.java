@@ -579,6 +579,66 @@ public class TestDirectoryScanner {
     }
   }
 
+  /**
+   * Test that an incremental scan finds the differences in the block
+   * directories it samples, and that every few scans is a full scan.
+   */
+  @Test (timeout=300000)
+  public void testIncrementalScan() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY,
+        true);
+    // Sample all block directories, so that the results are deterministic.
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SAMPLE_ROUNDS_KEY,
+        1);
+    conf.setInt(DFSConfigKeys
+        .DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_FULL_SCAN_ROUNDS_KEY, 3);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      client = cluster.getFileSystem().getClient();
+      DataNode dataNode = cluster.getDataNodes().get(0);
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * 100, false);
+      long totalBlocks = 100;
+
+      // The first scan is a full scan.
+      scan(totalBlocks, 0, 0, 0, 0, 0);
+      assertFalse(scanner.lastScanIncremental);
+
+      // A block metafile is missing.
+      long blockId = deleteMetaFile();
+      scan(totalBlocks, 1, 1, 0, 0, 1);
+      assertTrue(scanner.lastScanIncremental);
+      verifyGenStamp(blockId, HdfsConstants.GRANDFATHER_GENERATION_STAMP);
+
+      // A block file is missing.
+      blockId = deleteBlockFile();
+      scan(totalBlocks, 1, 0, 1, 0, 0);
+      assertTrue(scanner.lastScanIncremental);
+      totalBlocks--;
+      verifyDeletion(blockId);
+
+      // Every third scan is a full scan again.
+      scan(totalBlocks, 0, 0, 0, 0, 0);
+      assertFalse(scanner.lastScanIncremental);
+      scan(totalBlocks, 0, 0, 0, 0, 0);
+      assertTrue(scanner.lastScanIncremental);
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Test that the timeslice throttle limits the report compiler thread's
    * execution time correctly.  We test by scanning a large block pool and
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link IdlePeerSelector}.
+ */
+public class TestIdlePeerSelector {
+  private IdlePeerSelector selector;
+
+  /** An idle connection over a pipe, counting how it leaves the selector. */
+  private static class PipePeer extends IdlePeerSelector.IdlePeer {
+    private final Pipe pipe;
+    private final CountDownLatch resumed = new CountDownLatch(1);
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    PipePeer(Pipe pipe, long timeoutMs) {
+      super(pipe.source(), timeoutMs);
+      this.pipe = pipe;
+    }
+
+    @Override
+    protected void resume() {
+      resumed.countDown();
+    }
+
+    @Override
+    protected void close() {
+      closed.countDown();
+    }
+
+    void send() throws IOException {
+      pipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+    }
+  }
+
+  private static Pipe newPipe() throws IOException {
+    Pipe pipe = Pipe.open();
+    pipe.source().configureBlocking(false);
+    return pipe;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    selector = new IdlePeerSelector("test");
+  }
+
+  @After
+  public void tearDown() {
+    selector.close();
+  }
+
+  @Test(timeout = 60000)
+  public void testResumeOnNextRequest() throws Exception {
+    Pipe pipe = newPipe();
+    try {
+      PipePeer peer = new PipePeer(pipe, 60000);
+      assertTrue(selector.park(peer));
+      assertFalse(peer.resumed.await(100, TimeUnit.MILLISECONDS));
+      peer.send();
+      peer.resumed.await();
+      assertEquals(1, peer.closed.getCount());
+      assertEquals(0, selector.getNumParked());
+
+      // The same connection can be parked again right away.
+      pipe.source().read(ByteBuffer.allocate(1));
+      PipePeer again = new PipePeer(pipe, 60000);
+      assertTrue(selector.park(again));
+      again.send();
+      again.resumed.await();
+    } finally {
+      IOUtils.cleanup(null, pipe.source(), pipe.sink());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testCloseAfterTimeout() throws Exception {
+    Pipe idle = newPipe();
+    Pipe busy = newPipe();
+    try {
+      PipePeer idlePeer = new PipePeer(idle, 100);
+      PipePeer busyPeer = new PipePeer(busy, 60000);
+      assertTrue(selector.park(idlePeer));
+      assertTrue(selector.park(busyPeer));
+      idlePeer.closed.await();
+      assertEquals(1, idlePeer.resumed.getCount());
+      assertEquals(1, selector.getNumParked());
+
+      busyPeer.send();
+      busyPeer.resumed.await();
+      assertEquals(1, busyPeer.closed.getCount());
+    } finally {
+      IOUtils.cleanup(null, idle.source(), idle.sink(), busy.source(),
+          busy.sink());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testCloseParkedOnShutdown() throws Exception {
+    Pipe pipe = newPipe();
+    try {
+      PipePeer peer = new PipePeer(pipe, 60000);
+      assertTrue(selector.park(peer));
+      selector.close();
+      peer.closed.await();
+      assertEquals(1, peer.resumed.getCount());
+      assertFalse(selector.park(new PipePeer(pipe, 60000)));
+    } finally {
+      IOUtils.cleanup(null, pipe.source(), pipe.sink());
+    }
+  }
+}
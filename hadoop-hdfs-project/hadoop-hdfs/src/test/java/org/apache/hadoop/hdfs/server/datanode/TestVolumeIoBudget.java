@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.server.datanode.VolumeIoBudget.Priority.CLIENT;
+import static org.apache.hadoop.hdfs.server.datanode.VolumeIoBudget.Priority.RECOVERY;
+import static org.apache.hadoop.hdfs.server.datanode.VolumeIoBudget.Priority.SCAN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link VolumeIoBudget}.
+ */
+public class TestVolumeIoBudget {
+  private static final long BYTES_PER_SEC = 1000;
+  private static final long SCAN_FLOOR = 100;
+  private static final long BUSY_MS = 5000;
+
+  private FakeTimer timer;
+  private VolumeIoBudget budget;
+
+  @Before
+  public void setup() {
+    timer = new FakeTimer();
+    budget = new VolumeIoBudget(BYTES_PER_SEC, SCAN_FLOOR, BUSY_MS, timer);
+  }
+
+  @Test
+  public void testClientReadsNeverWait() {
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, budget.tryAcquire(CLIENT, 1000));
+    }
+    // The overdraft is bounded by one second of reads.
+    assertEquals(-BYTES_PER_SEC, budget.getAvailableBytes());
+  }
+
+  @Test
+  public void testRecoveryWaitsForClients() {
+    assertEquals(0, budget.tryAcquire(RECOVERY, 500));
+    assertEquals(0, budget.tryAcquire(CLIENT, 1000));
+    // Overdrawn by 500 bytes, which take half a second to refill.
+    assertEquals(500, budget.tryAcquire(RECOVERY, 100));
+    timer.advance(499);
+    assertTrue(budget.tryAcquire(RECOVERY, 100) > 0);
+    timer.advance(2);
+    assertEquals(0, budget.tryAcquire(RECOVERY, 100));
+  }
+
+  @Test
+  public void testScanUsesSpareBudget() {
+    // Allow recovery to go quiet.
+    timer.advance(BUSY_MS);
+    assertEquals(0, budget.tryAcquire(SCAN, 500));
+    // Only half the budget is left, and it is kept for the other readers.
+    assertEquals(0, budget.tryAcquire(SCAN, 100));
+    assertEquals(100, budget.tryAcquire(SCAN, 100));
+    assertEquals(0, budget.tryAcquire(RECOVERY, 400));
+    assertEquals(0, budget.tryAcquire(CLIENT, 400));
+  }
+
+  @Test
+  public void testScanBacksOffWhileRecoveryIsBusy() {
+    assertEquals(0, budget.tryAcquire(RECOVERY, 100));
+    // The scan is held to the floor rate, despite the spare budget.
+    assertEquals(0, budget.tryAcquire(SCAN, 100));
+    timer.advance(1);
+    assertEquals(0, budget.tryAcquire(SCAN, 100));
+    assertTrue(budget.tryAcquire(SCAN, 100) >= 990);
+    timer.advance(1000);
+    assertEquals(0, budget.tryAcquire(SCAN, 100));
+
+    // Once recovery has been quiet for a while, the scan speeds up.
+    timer.advance(BUSY_MS);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, budget.tryAcquire(SCAN, 100));
+    }
+  }
+
+  @Test
+  public void testScanStopsWhileRecoveryIsBusyWithoutFloor() {
+    budget = new VolumeIoBudget(BYTES_PER_SEC, 0, BUSY_MS, timer);
+    assertEquals(0, budget.tryAcquire(RECOVERY, 100));
+    timer.advance(1000);
+    assertEquals(BUSY_MS - 1000, budget.tryAcquire(SCAN, 100));
+    timer.advance(BUSY_MS);
+    assertEquals(0, budget.tryAcquire(SCAN, 100));
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.junit.Test;
+
+/**
+ * Test {@link VolumeIoBudgetManager}.
+ */
+public class TestVolumeIoBudgetManager {
+  private static FsVolumeSpi mockVolume(String storageId) {
+    FsVolumeSpi volume = mock(FsVolumeSpi.class);
+    doReturn(storageId).when(volume).getStorageID();
+    return volume;
+  }
+
+  @Test
+  public void testRemovedVolumeBudgetIsDropped() {
+    Configuration conf = new Configuration();
+    conf.setLong(DFS_DATANODE_VOLUME_IO_BUDGET_BYTES_PER_SECOND_KEY, 1000);
+    VolumeIoBudgetManager manager = new VolumeIoBudgetManager(conf);
+    FsVolumeSpi volume1 = mockVolume("DS-1");
+    FsVolumeSpi volume2 = mockVolume("DS-2");
+
+    VolumeIoBudget budget1 = manager.getBudget(volume1);
+    assertSame(budget1, manager.getBudget(volume1));
+    manager.getBudget(volume2);
+    assertEquals(2, manager.getNumBudgets());
+
+    manager.removeBudget("DS-1");
+    assertEquals(1, manager.getNumBudgets());
+    // A volume added back under the same storage gets a fresh budget.
+    assertNotSame(budget1, manager.getBudget(volume1));
+    assertEquals(2, manager.getNumBudgets());
+  }
+}
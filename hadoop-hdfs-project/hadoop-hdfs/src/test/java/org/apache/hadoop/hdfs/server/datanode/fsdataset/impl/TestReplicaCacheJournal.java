@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link ReplicaCacheJournal}.
+ */
+public class TestReplicaCacheJournal {
+  private static final int MAX_DATA_LENGTH =
+      CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT;
+
+  private final FileIoProvider fileIoProvider =
+      new FileIoProvider(new Configuration(), null);
+  private File dir;
+
+  /** Collects the replicas loaded from the cache. */
+  private static class Replicas implements ReplicaCacheJournal.Loader {
+    private final Map<Long, Block> blocks = new TreeMap<>();
+
+    @Override
+    public void add(Block block) {
+      blocks.put(block.getBlockId(), new Block(block));
+    }
+
+    @Override
+    public void remove(long blockId) {
+      blocks.remove(blockId);
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    dir = GenericTestUtils.getTestDir(getClass().getSimpleName());
+    FileUtils.deleteDirectory(dir);
+    assertTrue(dir.mkdirs());
+  }
+
+  private ReplicaCacheJournal newJournal(long checkpointRecords) {
+    return new ReplicaCacheJournal(fileIoProvider, null, dir,
+        MAX_DATA_LENGTH, checkpointRecords);
+  }
+
+  private static Callable<BlockListAsLongs> snapshot(final Block... blocks) {
+    return new Callable<BlockListAsLongs>() {
+      @Override
+      public BlockListAsLongs call() {
+        List<BlockReportReplica> replicas = new ArrayList<>();
+        for (Block block : blocks) {
+          replicas.add(new BlockReportReplica(block));
+        }
+        return BlockListAsLongs.encode(replicas);
+      }
+    };
+  }
+
+  private Replicas load() throws IOException {
+    Replicas replicas = new Replicas();
+    assertTrue(newJournal(1000).load(replicas));
+    return replicas;
+  }
+
+  private File[] journalFiles() {
+    File[] files = dir.listFiles();
+    List<File> journals = new ArrayList<>();
+    for (File file : files) {
+      if (file.getName().startsWith(ReplicaCacheJournal.JOURNAL_FILE_PREFIX)) {
+        journals.add(file);
+      }
+    }
+    return journals.toArray(new File[journals.size()]);
+  }
+
+  @Test
+  public void testLoadAfterUncleanShutdown() throws IOException {
+    ReplicaCacheJournal journal = newJournal(1000);
+    assertFalse(journal.load(new Replicas()));
+    journal.open();
+    assertTrue(journal.shouldCheckpoint());
+    journal.checkpoint(snapshot(new Block(1, 10, 1001),
+        new Block(2, 20, 1002), new Block(3, 30, 1003)));
+    journal.add(new Block(4, 40, 1004));
+    journal.remove(2);
+    journal.add(new Block(3, 33, 1005));
+    journal.flush();
+    // Not closed, as if the DataNode went down.
+
+    Replicas replicas = load();
+    assertEquals(Arrays.asList(1L, 3L, 4L),
+        new ArrayList<>(replicas.blocks.keySet()));
+    assertEquals(new Block(3, 33, 1005), replicas.blocks.get(3L));
+    assertEquals(33, replicas.blocks.get(3L).getNumBytes());
+    assertEquals(40, replicas.blocks.get(4L).getNumBytes());
+  }
+
+  @Test
+  public void testRecordsAreWrittenOnFlush() throws IOException {
+    ReplicaCacheJournal journal = newJournal(1000);
+    journal.load(new Replicas());
+    journal.open();
+    assertTrue(journal.shouldCheckpoint());
+    journal.checkpoint(snapshot(new Block(1, 10, 1001)));
+
+    // Only the first pending record asks for a flush.
+    assertTrue(journal.add(new Block(2, 20, 1002)));
+    assertFalse(journal.add(new Block(3, 30, 1003)));
+    assertEquals(2, journal.getNumRecords());
+    assertEquals(Arrays.asList(1L),
+        new ArrayList<>(load().blocks.keySet()));
+
+    journal.flush();
+    assertEquals(Arrays.asList(1L, 2L, 3L),
+        new ArrayList<>(load().blocks.keySet()));
+
+    assertTrue(journal.remove(2));
+    journal.close();
+    assertEquals(Arrays.asList(1L, 3L),
+        new ArrayList<>(load().blocks.keySet()));
+  }
+
+  @Test
+  public void testCheckpointDeletesOldJournals() throws IOException {
+    ReplicaCacheJournal journal = newJournal(2);
+    journal.load(new Replicas());
+    journal.open();
+    assertTrue(journal.shouldCheckpoint());
+    // Only one checkpoint at a time.
+    assertFalse(journal.shouldCheckpoint());
+    journal.checkpoint(snapshot());
+    assertFalse(journal.shouldCheckpoint());
+
+    journal.add(new Block(1, 10, 1001));
+    journal.add(new Block(2, 20, 1002));
+    assertEquals(2, journal.getNumRecords());
+    assertTrue(journal.shouldCheckpoint());
+    journal.checkpoint(snapshot(new Block(1, 10, 1001),
+        new Block(2, 20, 1002)));
+    assertEquals(0, journal.getNumRecords());
+    // The journal current when the replicas were taken is kept.
+    assertEquals(2, journalFiles().length);
+
+    journal.remove(1);
+    journal.close();
+    Replicas replicas = load();
+    assertEquals(Arrays.asList(2L),
+        new ArrayList<>(replicas.blocks.keySet()));
+  }
+
+  @Test
+  public void testIncompleteRecordIsIgnored() throws IOException {
+    ReplicaCacheJournal journal = newJournal(1000);
+    journal.load(new Replicas());
+    journal.open();
+    journal.checkpoint(snapshot(new Block(1, 10, 1001)));
+    journal.add(new Block(2, 20, 1002));
+    journal.close();
+
+    File[] journals = journalFiles();
+    assertEquals(2, journals.length);
+    File last = journals[0].getName().compareTo(journals[1].getName()) > 0 ?
+        journals[0] : journals[1];
+    try (FileOutputStream out = new FileOutputStream(last, true)) {
+      out.write(new byte[] {1, 0, 0, 0});
+    }
+    Replicas replicas = load();
+    assertEquals(Arrays.asList(1L, 2L),
+        new ArrayList<>(replicas.blocks.keySet()));
+  }
+
+  @Test
+  public void testCorruptCheckpointIsNotLoaded() throws IOException {
+    ReplicaCacheJournal journal = newJournal(1000);
+    journal.load(new Replicas());
+    journal.open();
+    journal.checkpoint(snapshot(new Block(1, 10, 1001),
+        new Block(2, 20, 1002)));
+    journal.close();
+
+    File checkpoint = new File(dir, ReplicaCacheJournal.CHECKPOINT_FILE);
+    try (RandomAccessFile raf = new RandomAccessFile(checkpoint, "rw")) {
+      raf.seek(2);
+      int b = raf.read();
+      raf.seek(2);
+      raf.write(b ^ 0xff);
+    }
+    try {
+      newJournal(1000).load(new Replicas());
+      fail("Expected the checkpoint to be rejected");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Checksum mismatch", e);
+    }
+    assertFalse(checkpoint.exists());
+    assertFalse(newJournal(1000).load(new Replicas()));
+  }
+}
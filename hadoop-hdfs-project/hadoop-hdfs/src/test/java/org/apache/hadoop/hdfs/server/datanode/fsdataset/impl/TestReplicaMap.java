@@ -17,12 +17,21 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.util.AutoCloseableLock;
 import org.junit.Before;
 import org.junit.Test;
@@ -108,4 +117,57 @@ public class TestReplicaMap {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  @Test
+  public void testStripedReplicas() {
+    final ReplicaMap striped = new ReplicaMap(new AutoCloseableLock(), 4);
+    for (long id = 100; id > 0; id--) {
+      striped.add(bpid, new FinalizedReplica(new Block(id, 1, 1), null, null));
+    }
+    assertEquals(100, striped.size(bpid));
+    assertNull(striped.replicas("BP-OTHER"));
+
+    // The replicas of all stripes are returned in block id order.
+    long expected = 1;
+    for (ReplicaInfo replica : striped.replicas(bpid)) {
+      assertEquals(expected++, replica.getBlockId());
+    }
+
+    // Removing through the iterator removes from the map.
+    for (Iterator<ReplicaInfo> it = striped.replicas(bpid).iterator();
+         it.hasNext();) {
+      if (it.next().getBlockId() % 2 == 0) {
+        it.remove();
+      }
+    }
+    assertEquals(50, striped.size(bpid));
+    assertNull(striped.get(bpid, 2));
+    assertNotNull(striped.get(bpid, 3));
+
+    // Merging another map keeps the replicas already in the map.
+    final ReplicaMap other = new ReplicaMap(new AutoCloseableLock());
+    other.add(bpid, new FinalizedReplica(new Block(2, 1, 1), null, null));
+    striped.addAll(other);
+    assertEquals(51, striped.size(bpid));
+    assertSame(other.get(bpid, 2), striped.get(bpid, 2));
+  }
+
+  @Test(timeout = 60000)
+  public void testStripedLookupDoesNotTakeLock() throws Exception {
+    final AutoCloseableLock lock = new AutoCloseableLock();
+    final ReplicaMap striped = new ReplicaMap(lock, 4);
+    striped.add(bpid, new FinalizedReplica(block, null, null));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (AutoCloseableLock l = lock.acquire()) {
+      // Another thread finds and adds replicas while the lock is held.
+      Future<ReplicaInfo> future = executor.submit(() -> {
+        striped.add(bpid, new FinalizedReplica(new Block(1), null, null));
+        return striped.get(bpid, block.getBlockId());
+      });
+      assertNotNull(future.get(30, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(2, striped.size(bpid));
+  }
 }
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Measures how fast edit log segments are read and decoded, with buffered
+ * reads and with memory mapped reads, as the standby does when it tails
+ * edits. The ops are only decoded, not applied to a namespace, so that the
+ * reading itself is measured.
+ * <p>
+ * Usage: EditLogReplayBenchmark [numSegments] [opsPerSegment] [runs]
+ * <p>
+ * The segments are written to the directory of test.build.data, or the
+ * temporary directory, and deleted afterwards.
+ */
+public final class EditLogReplayBenchmark {
+  private EditLogReplayBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    final int numSegments = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    final int opsPerSegment = args.length > 1 ?
+        Integer.parseInt(args[1]) : 100000;
+    final int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    final File dir = new File(System.getProperty("test.build.data",
+        System.getProperty("java.io.tmpdir")), "EditLogReplayBenchmark");
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create " + dir);
+    }
+    final List<File> segments = new ArrayList<>();
+    try {
+      System.out.println("Writing " + numSegments + " segments of "
+          + opsPerSegment + " ops to " + dir);
+      long txid = 1;
+      for (int i = 0; i < numSegments; i++) {
+        final File segment = new File(dir, NNStorage.getFinalizedEditsFileName(
+            txid, txid + opsPerSegment - 1));
+        segments.add(segment);
+        writeSegment(segment, txid, opsPerSegment);
+        txid += opsPerSegment;
+      }
+
+      for (int r = 0; r < runs; r++) {
+        System.out.println("Run " + (r + 1) + ":");
+        replay("buffered", segments, opsPerSegment, false);
+        replay("mmap", segments, opsPerSegment, true);
+      }
+    } finally {
+      for (File segment : segments) {
+        if (!segment.delete()) {
+          System.err.println("Failed to delete " + segment);
+        }
+      }
+    }
+  }
+
+  /** Write a mix of namespace ops, like a client creating files. */
+  private static void writeSegment(File file, long firstTxId, int numOps)
+      throws IOException {
+    final Configuration conf = new HdfsConfiguration();
+    final EditLogFileOutputStream out =
+        new EditLogFileOutputStream(conf, file, 1024 * 1024);
+    try {
+      out.create(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+      final FSEditLogOp.OpInstanceCache cache =
+          new FSEditLogOp.OpInstanceCache();
+      final PermissionStatus perms = PermissionStatus.createImmutable(
+          "user", "group", FsPermission.getDefault());
+      for (int i = 0; i < numOps; i++) {
+        final long txid = firstTxId + i;
+        final FSEditLogOp op;
+        switch (i % 3) {
+        case 0:
+          op = FSEditLogOp.MkdirOp.getInstance(cache)
+              .setInodeId(txid)
+              .setPath("/benchmark/dir" + txid)
+              .setPermissionStatus(perms)
+              .setTimestamp(txid);
+          break;
+        case 1:
+          op = FSEditLogOp.SetGenstampV2Op.getInstance(cache)
+              .setGenerationStamp(txid);
+          break;
+        default:
+          op = FSEditLogOp.TimesOp.getInstance(cache)
+              .setPath("/benchmark/dir" + (txid - 2))
+              .setModificationTime(txid)
+              .setAccessTime(txid);
+          break;
+        }
+        op.setTransactionId(txid);
+        out.write(op);
+      }
+      out.setReadyToFlush();
+      out.flushAndSync(true);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void replay(String name, List<File> segments,
+      int opsPerSegment, boolean mmap) throws IOException {
+    final List<EditLogInputStream> streams = new ArrayList<>();
+    long txid = 1;
+    for (File segment : segments) {
+      streams.add(new EditLogFileInputStream(segment, txid,
+          txid + opsPerSegment - 1, false, mmap));
+      txid += opsPerSegment;
+    }
+
+    long ops = 0;
+    final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+    final long start = Time.monotonicNowNanos();
+    try {
+      for (int i = 0; i < streams.size(); i++) {
+        if (i + 1 < streams.size()) {
+          streams.get(i + 1).prefetch(prefetcher);
+        }
+        final EditLogInputStream in = streams.get(i);
+        try {
+          while (in.readOp() != null) {
+            ops++;
+          }
+        } finally {
+          in.close();
+        }
+      }
+    } finally {
+      prefetcher.shutdown();
+    }
+    final long elapsed = Time.monotonicNowNanos() - start;
+    if (ops != (long) opsPerSegment * segments.size()) {
+      throw new IllegalStateException("Read " + ops + " ops, expected "
+          + (long) opsPerSegment * segments.size());
+    }
+    System.out.printf("  %-8s %,d ops in %,d ms, %,.0f ops/s%n", name, ops,
+        elapsed / 1000000, ops * 1e9 / elapsed);
+  }
+}
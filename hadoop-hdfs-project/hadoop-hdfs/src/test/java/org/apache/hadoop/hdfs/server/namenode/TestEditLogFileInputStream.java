@@ -31,6 +31,8 @@ import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.EnumMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -142,4 +144,85 @@ public class TestEditLogFileInputStream {
     }
     elis.close();
   }
+
+  private static File writeMkdirs(String name, int numOps) throws IOException {
+    File editLog = new File(TEST_DIR, name);
+    EditLogFileOutputStream elos = new EditLogFileOutputStream(
+        new Configuration(), editLog, 8192);
+    elos.create(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    FSEditLogOp.OpInstanceCache cache = new FSEditLogOp.OpInstanceCache();
+    PermissionStatus perms = PermissionStatus.createImmutable(
+        "myuser", "mygroup", FsPermission.createImmutable((short)0755));
+    for (int i = 1; i <= numOps; i++) {
+      FSEditLogOp.MkdirOp mkdirOp = FSEditLogOp.MkdirOp.getInstance(cache);
+      mkdirOp.reset();
+      mkdirOp.setTransactionId(i);
+      mkdirOp.setInodeId(1000L + i);
+      mkdirOp.setPath("/dir" + i);
+      mkdirOp.setPermissionStatus(perms);
+      elos.write(mkdirOp);
+    }
+    elos.setReadyToFlush();
+    elos.flushAndSync(false);
+    elos.close();
+    return editLog;
+  }
+
+  private static void checkMkdirs(EditLogInputStream elis, int numOps)
+      throws IOException {
+    for (int i = 1; i <= numOps; i++) {
+      FSEditLogOp op = elis.readOp();
+      assertEquals(FSEditLogOpCodes.OP_MKDIR, op.opCode);
+      assertEquals(i, op.getTransactionId());
+      assertEquals("/dir" + i, ((FSEditLogOp.MkdirOp) op).path);
+    }
+    Assert.assertNull(elis.readOp());
+  }
+
+  @Test(timeout=60000)
+  public void testReadMappedLog() throws Exception {
+    final int numOps = 1000;
+    File editLog = writeMkdirs("testReadMappedLog", numOps);
+    // The file is padded after the last op.
+    Assert.assertTrue(editLog.length() > 0);
+
+    ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+    try {
+      EditLogFileInputStream elis = new EditLogFileInputStream(editLog, 1,
+          numOps, false, true);
+      Assert.assertTrue(elis.isLocalLog());
+      elis.prefetch(prefetcher);
+      checkMkdirs(elis, numOps);
+      Assert.assertEquals(editLog.length(), elis.getPosition());
+      Assert.assertTrue(elis.isMapped());
+      // Closing the stream unmaps the file.
+      elis.close();
+      Assert.assertFalse(elis.isMapped());
+
+      // A stream closed before it is read is not mapped by its prefetch.
+      elis = new EditLogFileInputStream(editLog, 1, numOps, false, true);
+      elis.close();
+      elis.prefetch(prefetcher);
+      prefetcher.submit(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }).get();
+      Assert.assertFalse(elis.isMapped());
+
+      // Read the same ops again through a buffered stream.
+      elis = new EditLogFileInputStream(editLog, 1, numOps, false, false);
+      checkMkdirs(elis, numOps);
+      elis.close();
+
+      // An in-progress log is not mapped, since it may still grow.
+      elis = new EditLogFileInputStream(editLog, 1, numOps, true, true);
+      elis.prefetch(prefetcher);
+      checkMkdirs(elis, numOps);
+      Assert.assertFalse(elis.isMapped());
+      elis.close();
+    } finally {
+      prefetcher.shutdown();
+    }
+  }
 }
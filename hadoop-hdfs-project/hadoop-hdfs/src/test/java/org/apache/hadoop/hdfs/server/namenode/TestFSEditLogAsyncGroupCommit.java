@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
+import org.apache.hadoop.test.PathUtils;
+import org.junit.Test;
+
+/**
+ * Test the group commit window of {@link FSEditLogAsync}.
+ */
+public class TestFSEditLogAsyncGroupCommit {
+  private static final File TEST_DIR =
+      PathUtils.getTestDir(TestFSEditLogAsyncGroupCommit.class);
+  private static final int THREADS = 10;
+  private static final int EDITS_PER_THREAD = 20;
+
+  private FSEditLogAsync openEditLog(String window) throws Exception {
+    File editsDir = new File(TEST_DIR, "edits-" + window);
+    FileUtils.deleteQuietly(editsDir);
+    List<URI> editUris = Collections.singletonList(editsDir.toURI());
+
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING, true);
+    conf.set(DFSConfigKeys
+        .DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_WINDOW_KEY, window);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_EDITS_DIR_KEY,
+        editsDir.toURI().toString());
+    NNStorage storage = new NNStorage(conf,
+        Collections.<URI>emptyList(), editUris);
+    storage.format(new NamespaceInfo());
+    FSEditLog log = FSEditLog.newInstance(conf, storage, editUris);
+    log.initJournalsForWrite();
+    log.openForWrite(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    return (FSEditLogAsync) log;
+  }
+
+  /** Log edits from several threads, each waiting for its edits to sync. */
+  private static void logEdits(final FSEditLog log) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < EDITS_PER_THREAD; i++) {
+              log.logGenerationStamp(i);
+              log.logSync();
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testEditsAreSyncedInGroups() throws Exception {
+    FSEditLogAsync log = openEditLog("20ms");
+    try {
+      final long firstTxId = log.getLastWrittenTxId();
+      final long syncsBefore = log.getNumGroupCommits();
+      logEdits(log);
+
+      final int edits = THREADS * EDITS_PER_THREAD;
+      assertEquals(firstTxId + edits, log.getLastWrittenTxId());
+      assertEquals(log.getLastWrittenTxId(), log.getSyncTxId());
+      // Every thread waits for its edit, so a window gathers an edit of
+      // most threads into a group.
+      final long groups = log.getNumGroupCommits() - syncsBefore;
+      assertTrue("Expected edits to be synced in groups, but " + edits
+          + " edits took " + groups + " syncs", groups <= edits / 2);
+    } finally {
+      log.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testNoWindow() throws Exception {
+    FSEditLogAsync log = openEditLog("0");
+    try {
+      final long firstTxId = log.getLastWrittenTxId();
+      logEdits(log);
+      assertEquals(firstTxId + THREADS * EDITS_PER_THREAD,
+          log.getLastWrittenTxId());
+      assertEquals(log.getLastWrittenTxId(), log.getSyncTxId());
+    } finally {
+      log.close();
+    }
+  }
+}
@@ -320,6 +320,103 @@ public class TestShortCircuitCache {
     cache.close();
   }
   
+  private static ShortCircuitReplicaInfo fetchExisting(
+      ShortCircuitCache cache, final int blockId) {
+    return cache.fetchOrCreate(new ExtendedBlockId(blockId, "test_bp1"),
+        new ShortCircuitReplicaCreator() {
+          @Override
+          public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
+            Assert.fail("expected to use existing entry for " + blockId);
+            return null;
+          }
+        });
+  }
+
+  @Test(timeout=60000)
+  public void testFrequencyAwareEviction() throws Exception {
+    final ShortCircuitCache cache = new ShortCircuitCache(2, 10000000, 1,
+        10000000, 1, 10000, 0, true, 0);
+    final TestFileDescriptorPair pairs[] = new TestFileDescriptorPair[] {
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+    };
+    // Replicas 0 and 1 are used three times each.
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 3; j++) {
+        ShortCircuitReplicaInfo info = cache.fetchOrCreate(
+            new ExtendedBlockId(i, "test_bp1"),
+            new SimpleReplicaCreator(i, cache, pairs[i]));
+        Assert.assertNotNull(info.getReplica());
+        info.getReplica().unref();
+      }
+    }
+    // Replica 2 is used once, so it does not displace the least recently
+    // used replica 0.
+    ShortCircuitReplicaInfo info = cache.fetchOrCreate(
+        new ExtendedBlockId(2, "test_bp1"),
+        new SimpleReplicaCreator(2, cache, pairs[2]));
+    Assert.assertNotNull(info.getReplica());
+    info.getReplica().unref();
+    for (int i = 0; i < 2; i++) {
+      info = fetchExisting(cache, i);
+      Assert.assertTrue(pairs[i].compareWith(info.getReplica().getDataStream(),
+          info.getReplica().getMetaStream()));
+      info.getReplica().unref();
+    }
+    final MutableBoolean calledCreate = new MutableBoolean(false);
+    info = cache.fetchOrCreate(new ExtendedBlockId(2, "test_bp1"),
+        new ShortCircuitReplicaCreator() {
+          @Override
+          public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
+            calledCreate.setValue(true);
+            return null;
+          }
+        });
+    Assert.assertNull(info.getReplica());
+    Assert.assertTrue(calledCreate.isTrue());
+
+    Assert.assertEquals(6, cache.getMetrics().getReplicaHits());
+    Assert.assertEquals(4, cache.getMetrics().getReplicaMisses());
+    Assert.assertEquals(1, cache.getMetrics().getReplicaEvictions());
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i].close();
+    }
+    cache.close();
+  }
+
+  @Test(timeout=60000)
+  public void testMmappedBytesLimit() throws Exception {
+    final ShortCircuitCache cache = new ShortCircuitCache(10, 10000000, 10,
+        10000000, 1, 10000, 0, false, 1);
+    final TestFileDescriptorPair pairs[] = new TestFileDescriptorPair[] {
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+    };
+    ShortCircuitReplica replicas[] = new ShortCircuitReplica[2];
+    for (int i = 0; i < pairs.length; i++) {
+      replicas[i] = cache.fetchOrCreate(new ExtendedBlockId(i, "test_bp1"),
+          new SimpleReplicaCreator(i, cache, pairs[i])).getReplica();
+      ClientMmap mmap = replicas[i].getOrCreateClientMmap(false);
+      Assert.assertNotNull(mmap);
+      mmap.close();
+      replicas[i].unref();
+    }
+    // Each mapping is one byte, so mapping replica 1 unmapped replica 0.
+    Assert.assertEquals(2, cache.getMetrics().getMmapCreates());
+    Assert.assertEquals(1, cache.getMetrics().getMmapDemotions());
+    ClientMmap mmap = fetchExisting(cache, 1).getReplica()
+        .getOrCreateClientMmap(false);
+    Assert.assertEquals(1, cache.getMetrics().getMmapHits());
+    mmap.close();
+    replicas[1].unref();
+    fetchExisting(cache, 0).getReplica().unref();
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i].close();
+    }
+    cache.close();
+  }
+
   @Test(timeout=60000)
   public void testTimeBasedStaleness() throws Exception {
     // Set up the cache with a short staleness time.
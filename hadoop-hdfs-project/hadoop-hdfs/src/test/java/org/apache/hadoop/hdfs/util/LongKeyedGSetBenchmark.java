@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.Random;
+
+import org.apache.hadoop.util.GSet;
+import org.apache.hadoop.util.LightWeightGSet;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Compares the insert and lookup times of {@link LongKeyedGSet} with those
+ * of {@link LightWeightGSet}, keyed by sequential ids like the inode map.
+ * <p>
+ * Usage: LongKeyedGSetBenchmark [numElements] [numLookups]
+ * <p>
+ * The elements take about 40 bytes each, plus the table; run with a heap
+ * of about 100 bytes per element, e.g. -Xmx100g for a billion elements.
+ */
+public final class LongKeyedGSetBenchmark {
+
+  /** An element keyed by id, which can be chained by LightWeightGSet. */
+  private static final class Element
+      implements LightWeightGSet.LinkedElement {
+    private final long id;
+    private LightWeightGSet.LinkedElement next;
+
+    Element(long id) {
+      this.id = id;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    @Override
+    public void setNext(LightWeightGSet.LinkedElement next) {
+      this.next = next;
+    }
+
+    @Override
+    public LightWeightGSet.LinkedElement getNext() {
+      return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Element && ((Element) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(id);
+    }
+  }
+
+  /** The first inode id handed out. */
+  private static final long FIRST_ID = 16385;
+
+  private LongKeyedGSetBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    final long numElements = args.length > 0 ?
+        Long.parseLong(args[0]) : 10000000L;
+    final long numLookups = args.length > 1 ?
+        Long.parseLong(args[1]) : numElements;
+
+    System.out.println("LightWeightGSet with 1% of the heap:");
+    run(new LightWeightGSet<Element, Element>(
+        LightWeightGSet.computeCapacity(1, "benchmark")),
+        numElements, numLookups, false);
+    System.gc();
+
+    System.out.println("LongKeyedGSet:");
+    run(new LongKeyedGSet<Element, Element>(1 << 16, Element::getId),
+        numElements, numLookups, true);
+  }
+
+  private static void run(GSet<Element, Element> set, long numElements,
+      long numLookups, boolean longKeyed) {
+    long start = Time.monotonicNowNanos();
+    for (long i = 0; i < numElements; i++) {
+      set.put(new Element(FIRST_ID + i));
+    }
+    report("insert", numElements, start);
+
+    final Random random = new Random(0);
+    long found = 0;
+    start = Time.monotonicNowNanos();
+    for (long i = 0; i < numLookups; i++) {
+      final long id = FIRST_ID + (long) (random.nextDouble() * numElements);
+      // The inode map allocates a key object to look up a LightWeightGSet.
+      final Element e = longKeyed ?
+          ((LongKeyedGSet<Element, Element>) set).get(id) :
+          set.get(new Element(id));
+      if (e != null) {
+        found++;
+      }
+    }
+    report("lookup", numLookups, start);
+    if (found != numLookups) {
+      throw new IllegalStateException("Found " + found + " of " + numLookups
+          + " elements");
+    }
+  }
+
+  private static void report(String op, long count, long startNanos) {
+    final long elapsed = Time.monotonicNowNanos() - startNanos;
+    System.out.printf("  %-6s %,d in %,d ms, %.1f ns/op%n", op, count,
+        elapsed / 1000000, count == 0 ? 0.0 : (double) elapsed / count);
+  }
+}
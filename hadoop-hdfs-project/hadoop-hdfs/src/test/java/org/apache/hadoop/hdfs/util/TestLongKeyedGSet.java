@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test {@link LongKeyedGSet}.
+ */
+public class TestLongKeyedGSet {
+
+  /** An element keyed by its id. */
+  private static class Element {
+    private final long id;
+
+    Element(long id) {
+      this.id = id;
+    }
+
+    long getId() {
+      return id;
+    }
+  }
+
+  private static LongKeyedGSet<Element, Element> newSet(int capacity) {
+    return new LongKeyedGSet<>(capacity, Element::getId);
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    LongKeyedGSet<Element, Element> set = newSet(4);
+    Element e1 = new Element(16385);
+    Element e2 = new Element(16386);
+    assertNull(set.put(e1));
+    assertNull(set.put(e2));
+    assertEquals(2, set.size());
+    assertSame(e1, set.get(16385));
+    assertSame(e2, set.get(new Element(16386)));
+    assertTrue(set.contains(new Element(16385)));
+    assertNull(set.get(1));
+
+    Element e1Again = new Element(16385);
+    assertSame(e1, set.put(e1Again));
+    assertSame(e1Again, set.get(16385));
+    assertEquals(2, set.size());
+
+    assertSame(e1Again, set.remove(16385));
+    assertNull(set.remove(16385));
+    assertNull(set.get(16385));
+    assertEquals(1, set.size());
+
+    set.clear();
+    assertEquals(0, set.size());
+    assertNull(set.get(16386));
+  }
+
+  @Test
+  public void testIncrementalResize() {
+    LongKeyedGSet<Element, Element> set = newSet(16);
+    final int n = 100000;
+    boolean sawResizing = false;
+    for (long id = 1; id <= n; id++) {
+      set.put(new Element(id));
+      if (set.isResizing()) {
+        sawResizing = true;
+        // Every element stays reachable while the table is moved.
+        assertEquals(id, set.get(id).getId());
+        assertEquals(1, set.get(1).getId());
+      }
+    }
+    assertTrue(sawResizing);
+    assertEquals(n, set.size());
+    assertTrue(set.getCapacity() >= n);
+    for (long id = 1; id <= n; id++) {
+      assertEquals(id, set.get(id).getId());
+    }
+  }
+
+  @Test
+  public void testPutFailsWhenFull() {
+    LongKeyedGSet<Element, Element> set =
+        new LongKeyedGSet<>(4, 16, Element::getId);
+    long id = 0;
+    try {
+      while (true) {
+        set.put(new Element(++id));
+      }
+    } catch (IllegalStateException e) {
+      GenericTestUtils.assertExceptionContains("full", e);
+    }
+    final int full = set.size();
+    assertEquals(id - 1, full);
+    assertTrue(full < set.getCapacity());
+    // The rejected element was not added.
+    assertNull(set.get(id));
+    assertEquals(full, set.size());
+
+    // Existing elements can still be replaced, and removed to make room.
+    Element replacement = new Element(1);
+    assertNotNull(set.put(replacement));
+    assertSame(replacement, set.get(1));
+    set.remove(1);
+    assertNull(set.put(new Element(id)));
+    assertEquals(full, set.size());
+  }
+
+  @Test
+  public void testRandomOperations() {
+    final Random random = new Random(42);
+    LongKeyedGSet<Element, Element> set = newSet(8);
+    Map<Long, Element> expected = new HashMap<>();
+    for (int i = 0; i < 500000; i++) {
+      // A small key range, so that keys are often replaced and removed.
+      final long id = random.nextInt(50000) - 1000;
+      switch (random.nextInt(3)) {
+      case 0:
+      case 1:
+        Element e = new Element(id);
+        assertSame(expected.put(id, e), set.put(e));
+        break;
+      default:
+        assertSame(expected.remove(id), set.remove(id));
+        break;
+      }
+      assertEquals(expected.size(), set.size());
+      if (i % 1000 == 0) {
+        final long probe = random.nextInt(50000) - 1000;
+        assertSame(expected.get(probe), set.get(probe));
+      }
+    }
+    for (Map.Entry<Long, Element> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), set.get(entry.getKey()));
+    }
+    Set<Element> iterated = new HashSet<>();
+    for (Element e : set) {
+      assertTrue(iterated.add(e));
+    }
+    assertEquals(new HashSet<>(expected.values()), iterated);
+    assertEquals(expected.size(), set.values().size());
+  }
+
+  @Test
+  public void testIterationWhileResizing() {
+    LongKeyedGSet<Element, Element> set = newSet(16);
+    long id = 0;
+    while (!set.isResizing()) {
+      set.put(new Element(++id));
+    }
+    set.remove(1);
+    Set<Long> ids = new HashSet<>();
+    for (Element e : set) {
+      assertTrue(ids.add(e.getId()));
+    }
+    assertEquals(set.size(), ids.size());
+    assertFalse(ids.contains(1L));
+  }
+
+  @Test
+  public void testFailFastIterator() {
+    LongKeyedGSet<Element, Element> set = newSet(16);
+    for (long id = 1; id <= 10; id++) {
+      set.put(new Element(id));
+    }
+    Iterator<Element> iter = set.iterator();
+    iter.next();
+    set.put(new Element(11));
+    try {
+      iter.next();
+      fail("Expected ConcurrentModificationException");
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.apache.hadoop.hdfs.server.namenode.AclFeature;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test {@link ReferenceCountMap}.
+ */
+public class TestReferenceCountMap {
+
+  private static final int LOOP_COUNTER = 10000;
+
+  @Test
+  public void testReferenceCountMap() {
+    ReferenceCountMap<AclFeature> countMap = new ReferenceCountMap<>();
+    AclFeature aclFeature1 = new AclFeature(new int[] {1});
+    AclFeature aclFeature2 = new AclFeature(new int[] {2});
+    countMap.put(aclFeature1);
+    countMap.put(aclFeature2);
+    assertEquals(1, countMap.getReferenceCount(aclFeature1));
+    assertEquals(1, countMap.getReferenceCount(aclFeature2));
+
+    countMap.put(aclFeature1);
+    countMap.put(aclFeature2);
+    assertEquals(2, countMap.getReferenceCount(aclFeature1));
+    assertEquals(2, countMap.getReferenceCount(aclFeature2));
+
+    countMap.put(aclFeature1);
+    assertEquals(3, countMap.getReferenceCount(aclFeature1));
+    assertEquals(2, countMap.getUniqueElementsSize());
+
+    countMap.remove(aclFeature1);
+    countMap.remove(aclFeature1);
+    countMap.remove(aclFeature1);
+    assertEquals(0, countMap.getReferenceCount(aclFeature1));
+    assertEquals(1, countMap.getUniqueElementsSize());
+  }
+
+  @Test
+  public void testRefCountMapConcurrently() throws Exception {
+    ReferenceCountMap<AclFeature> countMap = new ReferenceCountMap<>();
+    AclFeature aclFeature1 = new AclFeature(new int[] {1});
+    AclFeature aclFeature2 = new AclFeature(new int[] {2});
+
+    CountDownLatch latch = new CountDownLatch(2);
+    new PutThread(countMap, aclFeature1, aclFeature2, latch).start();
+    new PutThread(countMap, aclFeature1, aclFeature2, latch).start();
+    latch.await();
+    assertEquals(LOOP_COUNTER * 2, countMap.getReferenceCount(aclFeature1));
+    assertEquals(LOOP_COUNTER * 2, countMap.getReferenceCount(aclFeature2));
+
+    CountDownLatch removeLatch = new CountDownLatch(2);
+    new RemoveThread(countMap, aclFeature1, aclFeature2, removeLatch).start();
+    new RemoveThread(countMap, aclFeature1, aclFeature2, removeLatch).start();
+    removeLatch.await();
+    assertEquals(0, countMap.getReferenceCount(aclFeature1));
+    assertEquals(0, countMap.getReferenceCount(aclFeature2));
+    assertEquals(0, countMap.getUniqueElementsSize());
+  }
+
+  private static class PutThread extends Thread {
+    private final ReferenceCountMap<AclFeature> referenceCountMap;
+    private final AclFeature aclFeature1;
+    private final AclFeature aclFeature2;
+    private final CountDownLatch latch;
+
+    PutThread(ReferenceCountMap<AclFeature> referenceCountMap,
+        AclFeature aclFeature1, AclFeature aclFeature2,
+        CountDownLatch latch) {
+      this.referenceCountMap = referenceCountMap;
+      this.aclFeature1 = aclFeature1;
+      this.aclFeature2 = aclFeature2;
+      this.latch = latch;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < LOOP_COUNTER; i++) {
+        referenceCountMap.put(aclFeature1);
+        referenceCountMap.put(aclFeature2);
+      }
+      latch.countDown();
+    }
+  }
+
+  private static class RemoveThread extends Thread {
+    private final ReferenceCountMap<AclFeature> referenceCountMap;
+    private final AclFeature aclFeature1;
+    private final AclFeature aclFeature2;
+    private final CountDownLatch latch;
+
+    RemoveThread(ReferenceCountMap<AclFeature> referenceCountMap,
+        AclFeature aclFeature1, AclFeature aclFeature2,
+        CountDownLatch latch) {
+      this.referenceCountMap = referenceCountMap;
+      this.aclFeature1 = aclFeature1;
+      this.aclFeature2 = aclFeature2;
+      this.latch = latch;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < LOOP_COUNTER; i++) {
+        referenceCountMap.remove(aclFeature1);
+        referenceCountMap.remove(aclFeature2);
+      }
+      latch.countDown();
+    }
+  }
+}
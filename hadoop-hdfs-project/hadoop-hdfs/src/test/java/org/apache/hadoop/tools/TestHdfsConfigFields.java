@@ -42,7 +42,8 @@ public class TestHdfsConfigFields extends TestConfigurationFieldsBase {
     xmlFilename = new String("hdfs-default.xml");
     configurationClasses = new Class[] { HdfsClientConfigKeys.class,
         HdfsClientConfigKeys.Failover.class,
-        HdfsClientConfigKeys.StripedRead.class, DFSConfigKeys.class,
+        HdfsClientConfigKeys.StripedRead.class,
+        HdfsClientConfigKeys.VectoredRead.class, DFSConfigKeys.class,
         HdfsClientConfigKeys.BlockWrite.ReplaceDatanodeOnFailure.class };
 
     // Set error modes
@@ -127,6 +128,14 @@ public class TestHdfsConfigFields extends TestConfigurationFieldsBase {
 
     // Some properties have moved to HdfsClientConfigKeys
     xmlPropsToSkipCompare.add("dfs.client.short.circuit.replica.stale.threshold.ms");
+    xmlPropsToSkipCompare.add("dfs.client.mmap.cache.max.bytes");
+    xmlPropsToSkipCompare.add(
+        "dfs.client.read.shortcircuit.streams.cache.frequency.aware");
+    xmlPropsToSkipCompare.add("dfs.client.write.adaptive-window.enabled");
+    xmlPropsToSkipCompare.add(
+        "dfs.client.write.adaptive-window.max-packets-in-flight");
+    xmlPropsToSkipCompare.add(
+        "dfs.client.write.striped.async-encoding.enabled");
 
     // Ignore HTrace properties
     xmlPropsToSkipCompare.add("fs.client.htrace");